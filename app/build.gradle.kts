@@ -36,6 +36,7 @@ android {
 
 dependencies {
 
+    implementation(project(":sensor-core"))
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.activity)
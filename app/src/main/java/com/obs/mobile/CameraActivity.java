@@ -2,28 +2,25 @@ package com.obs.mobile;
 
 import android.Manifest;
 import android.content.BroadcastReceiver;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.graphics.SurfaceTexture;
-import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
-import android.hardware.camera2.CameraCharacteristics;
-import android.hardware.camera2.CameraDevice;
-import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CaptureRequest;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.HandlerThread;
+import android.os.Environment;
+import android.os.IBinder;
 import android.provider.Settings;
 import android.util.Log;
 import android.view.MenuItem;
 import android.view.Window;
 import android.view.WindowManager;
-import android.view.Surface;
 import android.view.TextureView;
 import android.view.View;
 import android.widget.Button;
@@ -39,29 +36,53 @@ import androidx.appcompat.widget.Toolbar;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import com.obs.mobile.camera.CameraCapabilityCache;
+import com.obs.mobile.camera.CameraController;
+import com.obs.mobile.camera.FaceDetectionCallback;
+import com.obs.mobile.camera.StreamConfigurationSelector;
+import com.obs.mobile.recording.SessionRecorder;
 // Import all sensors
 import com.obs.mobile.sensors.AccelerometerSensor;
 import com.obs.mobile.sensors.GyroscopeSensor;
 import com.obs.mobile.sensors.LightSensor;
 import com.obs.mobile.sensors.ProximitySensor;
 import com.obs.mobile.sensors.MagnetometerSensor;
+import com.obs.mobile.sensors.SensorTimeAligner;
+import com.obs.mobile.stats.SpectrumAnalyzer;
 import com.obs.mobile.utils.SensorPreferences;
+import com.obs.mobile.video.StabilizedRecorder;
 
-import java.util.Collections;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.Locale;
 
 /**
  * CameraActivity - Camera Preview and Recording Screen with Sensors
  *
  * Uses TextureView for camera preview with Camera2 API
+ * The camera is owned by CameraEngineService, so moving to the floating
+ * window hands the open camera over instead of reopening it
  * Supports PiP mode and floating window
  * Shows sensor data overlays on camera view when enabled
  */
 public class CameraActivity extends AppCompatActivity {
 
     private static final String TAG = "CameraActivity";
+
+    // Boolean extra turning the vibration spectrum on for this launch, e.g. for
+    // machine-monitoring setups: am start ... --ez com.obs.mobile.extra.VIBRATION_SPECTRUM true
+    public static final String EXTRA_VIBRATION_SPECTRUM = "com.obs.mobile.extra.VIBRATION_SPECTRUM";
     private static final int REQUEST_CAMERA_PERMISSION = 100;
 
+    // Lines of the recording HUD
+    private static final int HUD_LINE_GYRO = 0;
+    private static final int HUD_LINE_ACCEL = 1;
+    private static final int HUD_LINE_LIGHT = 2;
+    private static final int HUD_LINE_PROXIMITY = 3;
+    private static final int HUD_LINE_COMPASS = 4;
+
     private TextureView textureView;
     private TextView tvStatus;
     private Button btnRecord;
@@ -88,15 +109,12 @@ public class CameraActivity extends AppCompatActivity {
     private View magnetometerOverlay;
     private TextView tvMagnetData;
 
-    private CameraManager cameraManager;
-    private CameraDevice cameraDevice;
-    private CameraCaptureSession captureSession;
-    private CaptureRequest.Builder previewRequestBuilder;
-
-    private HandlerThread backgroundThread;
-    private Handler backgroundHandler;
+    private CameraEngineService cameraEngine;
+    private CameraController cameraController;
+    private volatile SensorTimeAligner sensorTimeAligner;
+    private boolean isEngineBound = false;
+    private StreamConfigurationSelector.Policy streamPolicy = StreamConfigurationSelector.Policy.LOW_LATENCY;
 
-    private boolean isFrontCamera = false;
     private boolean isRecording = false;
     private boolean autoBrightnessEnabled = false;
     private boolean autoFocusOnProximityEnabled = false;
@@ -104,6 +122,9 @@ public class CameraActivity extends AppCompatActivity {
     // Sensor data streamer for Python integration
     private SensorDataStreamer sensorDataStreamer;
 
+    // On-device log of raw sensor events, one directory per session
+    private SessionRecorder sessionRecorder;
+
     // ActivityResultLauncher for overlay permission
     private ActivityResultLauncher<Intent> overlayPermissionLauncher;
 
@@ -127,7 +148,9 @@ public class CameraActivity extends AppCompatActivity {
             // Initialize UI components
             initializeViews();
 
-            cameraManager = (CameraManager) getSystemService(Context.CAMERA_SERVICE);
+            // Shared camera engine - keeps the camera open across full-screen and floating window
+            isEngineBound = bindService(new Intent(this, CameraEngineService.class),
+                    engineConnection, BIND_AUTO_CREATE);
 
             // Set button listeners
             btnRecord.setOnClickListener(v -> toggleRecording());
@@ -146,6 +169,16 @@ public class CameraActivity extends AppCompatActivity {
             // Update with your computer IP address (e.g., 192.168.1.100)
             sensorDataStreamer.initialize("192.168.1.113", 5000);
             sensorDataStreamer.start();
+            // Receivers running sensor_receiver.py are picked up automatically, but
+            // only when enabled: any host on the LAN can announce itself
+            if (SensorPreferences.isReceiverDiscoveryEnabled(this)) {
+                sensorDataStreamer.setTrustedReceivers(SensorPreferences.getTrustedReceivers(this));
+                sensorDataStreamer.startDiscovery();
+            }
+            if (SensorPreferences.isVibrationSpectrumEnabled(this)
+                    || getIntent().getBooleanExtra(EXTRA_VIBRATION_SPECTRUM, false)) {
+                sensorDataStreamer.setSpectrumAnalyzer(new SpectrumAnalyzer());
+            }
             Log.d(TAG, "✅ Sensor data streamer started");
 
             // Initialize broadcast receiver
@@ -170,8 +203,12 @@ public class CameraActivity extends AppCompatActivity {
                 @Override
                 public boolean onSurfaceTextureDestroyed(@NonNull SurfaceTexture surface) {
                     Log.d(TAG, "TextureView destroyed");
-                    closeCamera();
-                    return true;
+                    if (cameraEngine == null) {
+                        return true;
+                    }
+                    // Released by the camera engine once no frame is in flight
+                    cameraEngine.detachPreview(surface, true);
+                    return false;
                 }
 
                 @Override
@@ -282,6 +319,32 @@ public class CameraActivity extends AppCompatActivity {
         setupLightSensor();
         setupProximitySensor();
         setupMagnetometerSensor();
+        startSessionRecording();
+    }
+
+    /**
+     * Record raw events of all sensors into files/sessions/<date_time>
+     */
+    private void startSessionRecording() {
+        if (!SensorPreferences.isSessionRecordingEnabled(this)) return;
+        File sessions = getExternalFilesDir("sessions");
+        if (sessions == null) {
+            Log.e(TAG, "❌ Session storage unavailable");
+            return;
+        }
+        String name = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        try {
+            sessionRecorder = new SessionRecorder(new File(sessions, name));
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Session recording failed to start: " + e.getMessage());
+            return;
+        }
+        accelerometerSensor.setSessionRecorder(sessionRecorder);
+        gyroscopeSensor.setSessionRecorder(sessionRecorder);
+        lightSensor.setSessionRecorder(sessionRecorder);
+        proximitySensor.setSessionRecorder(sessionRecorder);
+        magnetometerSensor.setSessionRecorder(sessionRecorder);
+        Log.d(TAG, "✅ Recording sensor session to " + sessionRecorder.getDirectory());
     }
 
     /**
@@ -309,9 +372,24 @@ public class CameraActivity extends AppCompatActivity {
                     float degZ = (float)GyroscopeSensor.radiansToDegrees(rotationZ);
                     sensorDataStreamer.updateGyroscope(degX, degY, degZ);
                 }
+
+                updateHud(HUD_LINE_GYRO, String.format(Locale.US, "GYRO %6.1f %6.1f %6.1f deg/s",
+                        GyroscopeSensor.radiansToDegrees(rotationX),
+                        GyroscopeSensor.radiansToDegrees(rotationY),
+                        GyroscopeSensor.radiansToDegrees(rotationZ)));
             })
         );
 
+        // Raw samples go into the frame alignment history and the IMU batch
+        gyroscopeSensor.setOnSampleListener((timestampNs, x, y, z) -> {
+            if (sensorTimeAligner != null) {
+                sensorTimeAligner.addGyroSample(timestampNs, x, y, z);
+            }
+            if (sensorDataStreamer != null) {
+                sensorDataStreamer.addGyroscopeSample(timestampNs, x, y, z);
+            }
+        });
+
         // Initialize gyroscope sensor
         if (gyroscopeSensor.initialize()) {
             Log.d(TAG, "Gyroscope sensor initialized");
@@ -357,9 +435,21 @@ public class CameraActivity extends AppCompatActivity {
                 if (sensorDataStreamer != null) {
                     sensorDataStreamer.updateAccelerometer(x, y, z, magnitude);
                 }
+
+                updateHud(HUD_LINE_ACCEL, String.format(Locale.US, "ACCEL %6.2f %6.2f %6.2f m/s2", x, y, z));
             })
         );
 
+        // Raw samples go into the frame alignment history, the IMU batch and the vibration spectrum
+        accelerometerSensor.setOnSampleListener((timestampNs, x, y, z) -> {
+            if (sensorTimeAligner != null) {
+                sensorTimeAligner.addAccelSample(timestampNs, x, y, z);
+            }
+            if (sensorDataStreamer != null) {
+                sensorDataStreamer.addAccelerometerSample(timestampNs, x, y, z);
+            }
+        });
+
         // Initialize accelerometer sensor
         if (accelerometerSensor.initialize()) {
             Log.d(TAG, "Accelerometer sensor initialized");
@@ -410,6 +500,8 @@ public class CameraActivity extends AppCompatActivity {
                 if (sensorDataStreamer != null) {
                     sensorDataStreamer.updateLight(lux, category.getName());
                 }
+
+                updateHud(HUD_LINE_LIGHT, String.format(Locale.US, "LIGHT %.0f lux %s", lux, category.getName()));
             })
         );
 
@@ -459,7 +551,7 @@ public class CameraActivity extends AppCompatActivity {
                 }
 
                 // Auto-focus on proximity detection
-                if (autoFocusOnProximityEnabled && captureSession != null && previewRequestBuilder != null) {
+                if (autoFocusOnProximityEnabled && cameraController != null && cameraController.isStreaming()) {
                     adjustCameraFocusByProximity(distance, isNear);
                 }
 
@@ -467,6 +559,9 @@ public class CameraActivity extends AppCompatActivity {
                 if (sensorDataStreamer != null) {
                     sensorDataStreamer.updateProximity(distance, isNear);
                 }
+
+                updateHud(HUD_LINE_PROXIMITY, String.format(Locale.US, "PROX %.1f cm %s",
+                        distance, isNear ? "NEAR" : "FAR"));
             })
         );
 
@@ -518,6 +613,9 @@ public class CameraActivity extends AppCompatActivity {
                 if (sensorDataStreamer != null) {
                     sensorDataStreamer.updateMagnetometer(azimuth, direction.getName());
                 }
+
+                updateHud(HUD_LINE_COMPASS, String.format(Locale.US, "COMPASS %s %.0f deg",
+                        direction.getAbbreviation(), azimuth));
             })
         );
 
@@ -561,6 +659,7 @@ public class CameraActivity extends AppCompatActivity {
                             }
                         } else {
                             accelerometerSensor.stopListening();
+                            updateHud(HUD_LINE_ACCEL, null);
                             if (accelerometerOverlay != null) {
                                 accelerometerOverlay.setVisibility(View.GONE);
                             }
@@ -580,6 +679,7 @@ public class CameraActivity extends AppCompatActivity {
                             }
                         } else {
                             gyroscopeSensor.stopListening();
+                            updateHud(HUD_LINE_GYRO, null);
                             if (gyroscopeOverlay != null) {
                                 gyroscopeOverlay.setVisibility(View.GONE);
                             }
@@ -600,6 +700,7 @@ public class CameraActivity extends AppCompatActivity {
                             }
                         } else {
                             lightSensor.stopListening();
+                            updateHud(HUD_LINE_LIGHT, null);
                             autoBrightnessEnabled = false;
                             if (lightOverlay != null) {
                                 lightOverlay.setVisibility(View.GONE);
@@ -623,6 +724,7 @@ public class CameraActivity extends AppCompatActivity {
                             }
                         } else {
                             proximitySensor.stopListening();
+                            updateHud(HUD_LINE_PROXIMITY, null);
                             autoFocusOnProximityEnabled = false;
                             if (proximityOverlay != null) {
                                 proximityOverlay.setVisibility(View.GONE);
@@ -643,6 +745,7 @@ public class CameraActivity extends AppCompatActivity {
                             }
                         } else {
                             magnetometerSensor.stopListening();
+                            updateHud(HUD_LINE_COMPASS, null);
                             if (magnetometerOverlay != null) {
                                 magnetometerOverlay.setVisibility(View.GONE);
                             }
@@ -656,6 +759,15 @@ public class CameraActivity extends AppCompatActivity {
         });
     }
 
+    /**
+     * Set one line of the HUD burned into recordings; null removes it
+     */
+    private void updateHud(int line, String text) {
+        if (cameraEngine != null) {
+            cameraEngine.getRecorder().getHudText().setLine(line, text);
+        }
+    }
+
     /**
      * Hide all UI elements (for PiP mode)
      */
@@ -709,7 +821,6 @@ public class CameraActivity extends AppCompatActivity {
             ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.CAMERA}, REQUEST_CAMERA_PERMISSION);
         } else {
             tvStatus.setText(R.string.permission_already_granted);
-            startBackgroundThread();
             if (textureView.isAvailable()) {
                 openCamera();
             }
@@ -722,7 +833,6 @@ public class CameraActivity extends AppCompatActivity {
         if (requestCode == REQUEST_CAMERA_PERMISSION) {
             if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
                 tvStatus.setText(R.string.camera_permission_granted);
-                startBackgroundThread();
                 if (textureView.isAvailable()) {
                     openCamera();
                 }
@@ -733,195 +843,192 @@ public class CameraActivity extends AppCompatActivity {
         }
     }
 
-    private final CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {
+    /**
+     * Repeating request settings, applied every time the controller builds a session
+     */
+    private final CameraController.RequestConfigurator cameraRequestConfigurator =
+            new CameraController.RequestConfigurator() {
         @Override
-        public void onOpened(@NonNull CameraDevice camera) {
-            Log.d(TAG, "Camera opened successfully");
-            cameraDevice = camera;
-            runOnUiThread(() -> tvStatus.setText(R.string.camera_opened));
-            createCameraPreviewSession();
+        public void configure(CaptureRequest.Builder builder, CameraCapabilityCache.CameraInfo cameraInfo) {
+            // Fixed-focus (mostly front) cameras have no continuous AF
+            if (cameraInfo.supportsAfMode(CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE)) {
+                builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+            }
+            builder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
+            builder.set(CaptureRequest.CONTROL_AWB_MODE, CaptureRequest.CONTROL_AWB_MODE_AUTO);
+
+            // Hardware face detection - rects are streamed instead of scanning frames on the desktop
+            if (cameraInfo.bestFaceDetectMode != CaptureRequest.STATISTICS_FACE_DETECT_MODE_OFF) {
+                builder.set(CaptureRequest.STATISTICS_FACE_DETECT_MODE, cameraInfo.bestFaceDetectMode);
+                Log.d(TAG, "Face detection enabled, mode: " + cameraInfo.bestFaceDetectMode);
+            } else {
+                Log.d(TAG, "Face detection not supported by camera " + cameraInfo.id);
+            }
         }
 
         @Override
-        public void onDisconnected(@NonNull CameraDevice camera) {
-            Log.d(TAG, "Camera disconnected");
-            camera.close();
-            cameraDevice = null;
-            runOnUiThread(() -> tvStatus.setText(R.string.camera_disconnected));
+        public CameraCaptureSession.CaptureCallback createCaptureCallback(CameraCapabilityCache.CameraInfo cameraInfo) {
+            if (cameraInfo.bestFaceDetectMode == CaptureRequest.STATISTICS_FACE_DETECT_MODE_OFF) return null;
+            return new FaceDetectionCallback(sensorDataStreamer, cameraInfo);
         }
+    };
 
+    private final CameraController.Listener cameraListener = new CameraController.Listener() {
         @Override
-        public void onError(@NonNull CameraDevice camera, int error) {
-            Log.e(TAG, "Camera error: " + error);
-            camera.close();
-            cameraDevice = null;
-            runOnUiThread(() -> {
-                tvStatus.setText(getString(R.string.camera_error, error));
-                Toast.makeText(CameraActivity.this, "Camera error: " + error, Toast.LENGTH_SHORT).show();
-            });
+        public void onCameraOpened(String cameraId) {
+            Log.d(TAG, "Camera opened successfully");
+            runOnUiThread(() -> tvStatus.setText(R.string.camera_opened));
         }
-    };
 
-    private void openCamera() {
-        if (cameraManager == null) {
-            cameraManager = (CameraManager) getSystemService(Context.CAMERA_SERVICE);
+        @Override
+        public void onPreviewStarted(CameraCapabilityCache.CameraInfo cameraInfo,
+                                     StreamConfigurationSelector.StreamConfiguration configuration) {
+            Log.d(TAG, "✅ Preview started - " + configuration);
+            runOnUiThread(() -> tvStatus.setVisibility(View.GONE));
         }
 
-        if (cameraManager == null) {
-            Log.e(TAG, "openCamera: CameraManager is null");
-            runOnUiThread(() -> Toast.makeText(this, "Camera not available", Toast.LENGTH_LONG).show());
-            return;
+        @Override
+        public void onFirstFrame(String cameraId, long latencyMs) {
+            Log.d(TAG, "Camera " + cameraId + " ready in " + latencyMs + " ms");
         }
 
-        try {
-            String cameraId = chooseCameraId();
-            if (cameraId == null) {
-                Log.e(TAG, "openCamera: no camera available");
-                return;
+        @Override
+        public void onSessionClosed(String cameraId) {
+            // Faces of a closed session would otherwise go out with every packet
+            if (sensorDataStreamer != null) {
+                sensorDataStreamer.clearFaces();
             }
+        }
 
-            if (ActivityCompat.checkSelfPermission(this, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
-                Log.w(TAG, "openCamera: camera permission not granted");
+        @Override
+        public void onCameraError(String cameraId, int error) {
+            if (error == CameraController.ERROR_DISCONNECTED) {
+                runOnUiThread(() -> tvStatus.setText(R.string.camera_disconnected));
                 return;
             }
-
-            Log.d(TAG, "Opening camera: " + cameraId);
-            cameraManager.openCamera(cameraId, stateCallback, backgroundHandler);
-        } catch (Exception e) {
-            Log.e(TAG, "openCamera error: ", e);
-            runOnUiThread(() -> Toast.makeText(this, "Failed to open camera", Toast.LENGTH_LONG).show());
-        }
-    }
-
-    private String chooseCameraId() throws CameraAccessException {
-        if (cameraManager == null) return null;
-
-        String[] cameraIdList = cameraManager.getCameraIdList();
-        if (cameraIdList.length == 0) return null;
-
-        for (String id : cameraIdList) {
-            CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(id);
-            Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
-            if (facing == null) continue;
-            if (isFrontCamera && facing == CameraCharacteristics.LENS_FACING_FRONT) return id;
-            if (!isFrontCamera && facing == CameraCharacteristics.LENS_FACING_BACK) return id;
+            runOnUiThread(() -> {
+                tvStatus.setVisibility(View.VISIBLE);
+                tvStatus.setText(getString(R.string.camera_error, error));
+                Toast.makeText(CameraActivity.this, "Camera error: " + error, Toast.LENGTH_SHORT).show();
+            });
         }
+    };
 
-        return cameraIdList[0];
-    }
-
-    private void createCameraPreviewSession() {
-        try {
-            if (cameraDevice == null || !textureView.isAvailable()) {
-                Log.w(TAG, "Cannot create preview session - camera or texture not ready");
-                return;
-            }
+    private final ServiceConnection engineConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            cameraEngine = ((CameraEngineService.LocalBinder) service).getService();
+            cameraController = cameraEngine.getCameraController();
+            cameraController.setRequestConfigurator(cameraRequestConfigurator);
+            cameraController.setListener(cameraListener);
+            sensorTimeAligner = cameraEngine.getSensorTimeAligner();
+            sensorTimeAligner.addOnFrameAlignedListener(frameAlignedListener);
+            Log.d(TAG, "✅ Camera engine connected");
 
-            SurfaceTexture texture = textureView.getSurfaceTexture();
-            if (texture == null) {
-                Log.w(TAG, "SurfaceTexture is null");
-                return;
+            if (textureView.isAvailable()) {
+                openCamera();
             }
+        }
 
-            // Set buffer size to 1920x1080
-            texture.setDefaultBufferSize(1920, 1080);
-
-            Surface surface = new Surface(texture);
-            previewRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-            previewRequestBuilder.addTarget(surface);
-
-            cameraDevice.createCaptureSession(Collections.singletonList(surface),
-                    new CameraCaptureSession.StateCallback() {
-                        @Override
-                        public void onConfigured(@NonNull CameraCaptureSession session) {
-                            if (cameraDevice == null) return;
-
-                            captureSession = session;
-                            try {
-                                previewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
-                                        CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
-                                previewRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                                        CaptureRequest.CONTROL_AE_MODE_ON);
-                                previewRequestBuilder.set(CaptureRequest.CONTROL_AWB_MODE,
-                                        CaptureRequest.CONTROL_AWB_MODE_AUTO);
-
-                                captureSession.setRepeatingRequest(previewRequestBuilder.build(), null, backgroundHandler);
-                                Log.d(TAG, "✅ Preview started - YOU SHOULD SEE THE CAMERA NOW!");
-
-                                runOnUiThread(() -> {
-                                    tvStatus.setVisibility(View.GONE);
-                                    Toast.makeText(CameraActivity.this,
-                                            "✅ Camera preview is ACTIVE!", Toast.LENGTH_LONG).show();
-                                });
-                            } catch (Exception e) {
-                                Log.e(TAG, "Failed to start preview", e);
-                            }
-                        }
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            sensorTimeAligner = null;
+            cameraEngine = null;
+            cameraController = null;
+        }
+    };
 
-                        @Override
-                        public void onConfigureFailed(@NonNull CameraCaptureSession session) {
-                            Log.e(TAG, "Failed to configure camera session");
-                        }
-                    }, backgroundHandler);
-        } catch (Exception e) {
-            Log.e(TAG, "createCameraPreviewSession error: ", e);
+    /**
+     * Per-frame gyro/accel state, streamed alongside the sensor values
+     */
+    private final SensorTimeAligner.OnFrameAlignedListener frameAlignedListener = state -> {
+        if (sensorDataStreamer != null) {
+            sensorDataStreamer.addFrameImu(state);
         }
-    }
+    };
 
-    private void closeCamera() {
-        Log.d(TAG, "Closing camera");
-        try {
-            if (captureSession != null) {
-                captureSession.close();
-                captureSession = null;
-            }
-            if (cameraDevice != null) {
-                cameraDevice.close();
-                cameraDevice = null;
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "closeCamera error: ", e);
+    private void openCamera() {
+        if (cameraEngine == null || !textureView.isAvailable()) {
+            Log.w(TAG, "openCamera: camera or texture not ready");
+            return;
         }
-    }
 
-    private void startBackgroundThread() {
-        if (backgroundThread == null) {
-            backgroundThread = new HandlerThread("CameraBackground");
-            backgroundThread.start();
-            backgroundHandler = new Handler(backgroundThread.getLooper());
+        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            Log.w(TAG, "openCamera: camera permission not granted");
+            return;
         }
+
+        cameraEngine.attachPreview(textureView.getSurfaceTexture(),
+                textureView.getWidth(), textureView.getHeight(), streamPolicy);
     }
 
-    private void stopBackgroundThread() {
-        if (backgroundThread != null) {
-            backgroundThread.quitSafely();
-            try {
-                backgroundThread.join();
-            } catch (InterruptedException e) {
-                Log.w(TAG, "stopBackgroundThread interrupted", e);
-            }
-            backgroundThread = null;
-            backgroundHandler = null;
+    /**
+     * Stop showing the preview - the engine keeps the camera open briefly in
+     * case the floating window takes over
+     */
+    private void closeCamera() {
+        Log.d(TAG, "Detaching camera preview");
+        if (cameraEngine != null && textureView.isAvailable()) {
+            cameraEngine.detachPreview(textureView.getSurfaceTexture(), false);
         }
     }
 
     private void toggleRecording() {
+        if (cameraEngine == null) {
+            Toast.makeText(this, "Camera not ready", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        StabilizedRecorder recorder = cameraEngine.getRecorder();
+        recorder.setListener(recorderListener);
         isRecording = !isRecording;
         if (isRecording) {
             btnRecord.setText(R.string.btn_stop_record);
             recordingIndicator.setVisibility(View.VISIBLE);
+            recorder.start(createRecordingFile());
         } else {
             btnRecord.setText(R.string.btn_record);
             recordingIndicator.setVisibility(View.GONE);
+            recorder.stop();
         }
         Toast.makeText(this, isRecording ? "Recording..." : "Stopped", Toast.LENGTH_SHORT).show();
     }
 
+    private File createRecordingFile() {
+        File directory = getExternalFilesDir(Environment.DIRECTORY_MOVIES);
+        if (directory == null) {
+            directory = getFilesDir();
+        }
+        String name = "OBS_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date()) + ".mp4";
+        return new File(directory, name);
+    }
+
+    private final StabilizedRecorder.Listener recorderListener = new StabilizedRecorder.Listener() {
+        @Override
+        public void onRecordingStarted(File outputFile) {
+            Log.d(TAG, "🔴 Recording to " + outputFile);
+        }
+
+        @Override
+        public void onRecordingStopped(File outputFile, long frameCount) {
+            Log.d(TAG, "⏹ Recorded " + frameCount + " frames to " + outputFile);
+        }
+
+        @Override
+        public void onRecordingError(String message) {
+            runOnUiThread(() -> {
+                isRecording = false;
+                btnRecord.setText(R.string.btn_record);
+                recordingIndicator.setVisibility(View.GONE);
+                Toast.makeText(CameraActivity.this, message, Toast.LENGTH_SHORT).show();
+            });
+        }
+    };
+
     private void switchCamera() {
-        isFrontCamera = !isFrontCamera;
-        closeCamera();
-        if (textureView != null) {
-            textureView.postDelayed(this::openCamera, 300);
+        // The controller chains the new open from onClosed(), no fixed delay needed
+        if (cameraEngine != null && textureView.isAvailable()) {
+            cameraEngine.switchCamera();
         }
     }
 
@@ -1024,9 +1131,9 @@ public class CameraActivity extends AppCompatActivity {
         }
 
         try {
-            // Start floating camera service
+            // Start floating camera service - the camera engine is already in the foreground
             Intent serviceIntent = new Intent(this, FloatingCameraService.class);
-            startForegroundService(serviceIntent);
+            startService(serviceIntent);
 
             Log.d(TAG, "✅ Floating camera service started");
             Toast.makeText(this, "Floating camera started", Toast.LENGTH_SHORT).show();
@@ -1049,7 +1156,6 @@ public class CameraActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        startBackgroundThread();
         if (textureView.isAvailable() && ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA)
                 == PackageManager.PERMISSION_GRANTED) {
             openCamera();
@@ -1065,18 +1171,39 @@ public class CameraActivity extends AppCompatActivity {
     @Override
     protected void onPause() {
         super.onPause();
-        closeCamera();
-        stopBackgroundThread();
 
         // Stop all sensor listening
         stopAllSensors();
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Not in onPause() - the preview stays visible in PiP mode
+        closeCamera();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        closeCamera();
-        stopBackgroundThread();
+        if (cameraController != null) {
+            cameraController.setListener(null);
+            cameraController.setRequestConfigurator(null);
+        }
+        if (cameraEngine != null) {
+            // A running recording keeps going in the engine
+            cameraEngine.getRecorder().setListener(null);
+        }
+        if (sensorTimeAligner != null) {
+            sensorTimeAligner.removeOnFrameAlignedListener(frameAlignedListener);
+            sensorTimeAligner = null;
+        }
+        if (isEngineBound) {
+            unbindService(engineConnection);
+            isEngineBound = false;
+        }
+        cameraEngine = null;
+        cameraController = null;
 
         // Stop sensor data streamer
         if (sensorDataStreamer != null) {
@@ -1099,6 +1226,16 @@ public class CameraActivity extends AppCompatActivity {
         if (lightSensor != null) lightSensor.stopListening();
         if (proximitySensor != null) proximitySensor.stopListening();
         if (magnetometerSensor != null) magnetometerSensor.stopListening();
+
+        // Final flush of the session happens off the main thread
+        if (sessionRecorder != null) {
+            SessionRecorder recorder = sessionRecorder;
+            sessionRecorder = null;
+            new Thread(() -> {
+                recorder.close();
+                Log.d(TAG, "💾 Session recorded: " + recorder);
+            }, "SessionRecorder-close").start();
+        }
     }
 
     /**
@@ -1147,51 +1284,35 @@ public class CameraActivity extends AppCompatActivity {
      * Uses proximity data to automatically trigger focus on detected faces/objects
      */
     private void adjustCameraFocusByProximity(float distanceCm, boolean isNear) {
-        try {
-            if (captureSession == null || previewRequestBuilder == null || cameraDevice == null) {
-                return;
-            }
-
-            if (isNear) {
-                // Object is near - trigger autofocus
-                Log.d(TAG, String.format(Locale.US,
-                    "Auto Focus: Object detected at %.1f cm - focusing...", distanceCm));
-
-                // Trigger autofocus on detected object
-                previewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
-                        CaptureRequest.CONTROL_AF_TRIGGER_START);
-
-                // Update to continuous autofocus for tracking
-                previewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
-                        CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
-
-                try {
-                    captureSession.capture(previewRequestBuilder.build(), null, backgroundHandler);
+        if (cameraController == null || !cameraController.isStreaming()) {
+            return;
+        }
 
+        if (isNear) {
+            // Object is near - trigger autofocus
+            Log.d(TAG, String.format(Locale.US,
+                "Auto Focus: Object detected at %.1f cm - focusing...", distanceCm));
+
+            cameraController.triggerThenRepeat(
+                    builder -> {
+                        // Trigger autofocus on detected object
+                        builder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                                CaptureRequest.CONTROL_AF_TRIGGER_START);
+                        // Update to continuous autofocus for tracking
+                        builder.set(CaptureRequest.CONTROL_AF_MODE,
+                                CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+                    },
                     // Reset trigger after focus attempt
-                    previewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
-                            CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
-                    captureSession.setRepeatingRequest(previewRequestBuilder.build(), null, backgroundHandler);
-
-                } catch (CameraAccessException e) {
-                    Log.w(TAG, "Could not trigger focus: " + e.getMessage());
-                }
-            } else {
-                // Object is far - maintain continuous focus
-                Log.d(TAG, String.format(Locale.US,
-                    "Auto Focus: Object far (%.1f cm) - continuous focus active", distanceCm));
-
-                previewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
-                        CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+                    builder -> builder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                            CaptureRequest.CONTROL_AF_TRIGGER_IDLE));
+        } else {
+            // Object is far - maintain continuous focus
+            Log.d(TAG, String.format(Locale.US,
+                "Auto Focus: Object far (%.1f cm) - continuous focus active", distanceCm));
 
-                try {
-                    captureSession.setRepeatingRequest(previewRequestBuilder.build(), null, backgroundHandler);
-                } catch (CameraAccessException e) {
-                    Log.w(TAG, "Could not set continuous focus: " + e.getMessage());
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error adjusting camera focus by proximity: " + e.getMessage());
+            cameraController.updateRepeatingRequest(builder ->
+                    builder.set(CaptureRequest.CONTROL_AF_MODE,
+                            CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE));
         }
     }
 
@@ -1199,25 +1320,19 @@ public class CameraActivity extends AppCompatActivity {
      * Reset camera focus to default continuous mode
      */
     private void resetCameraFocus() {
-        try {
-            if (captureSession == null || previewRequestBuilder == null) {
-                return;
-            }
+        if (cameraController == null) {
+            return;
+        }
 
+        cameraController.updateRepeatingRequest(builder -> {
             // Reset to continuous autofocus
-            previewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
+            builder.set(CaptureRequest.CONTROL_AF_MODE,
                     CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
-
             // Cancel any active focus trigger
-            previewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+            builder.set(CaptureRequest.CONTROL_AF_TRIGGER,
                     CaptureRequest.CONTROL_AF_TRIGGER_CANCEL);
-
-            captureSession.setRepeatingRequest(previewRequestBuilder.build(), null, backgroundHandler);
-
-            Log.d(TAG, "Camera focus reset to continuous autofocus mode");
-        } catch (CameraAccessException e) {
-            Log.e(TAG, "Error resetting camera focus: " + e.getMessage());
-        }
+        });
+        Log.d(TAG, "Camera focus reset to continuous autofocus mode");
     }
 }
 
@@ -0,0 +1,293 @@
+package com.obs.mobile;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.graphics.SurfaceTexture;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+import com.obs.mobile.camera.CameraController;
+import com.obs.mobile.camera.FrameAlignmentCallback;
+import com.obs.mobile.camera.StreamConfigurationSelector;
+import com.obs.mobile.sensors.SensorTimeAligner;
+import com.obs.mobile.video.StabilizedRecorder;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * CameraEngineService - Foreground service that owns the one camera
+ *
+ * CameraActivity and FloatingCameraService bind to this service and attach
+ * their TextureView to the shared CameraController instead of opening the
+ * camera themselves. The CameraDevice stays open while the preview moves
+ * between full-screen and the floating window; only the output surfaces are
+ * swapped.
+ *
+ * Every frame is also aligned with the gyroscope and accelerometer history
+ * (getSensorTimeAligner()), whichever UI is showing the preview, and the
+ * stabilised recorder (getRecorder()) lives here so a recording survives the
+ * hand-off as well.
+ *
+ * Hand-off is make-before-break: when the last preview is detached while its
+ * SurfaceTexture stays alive (CameraActivity.onStop() as the floating window
+ * opens), the surface is kept attached until the next UI has attached its
+ * own, and only then removed. Removing the last target would rebuild the
+ * capture session and black out the preview; this way the new surface is
+ * added to the shared output first (see CameraController).
+ *
+ * The service goes to the foreground (type camera) when the first preview is
+ * attached and closes the camera, leaves the foreground and stops itself
+ * IDLE_TIMEOUT_MS after the last preview is detached. The delay covers the
+ * gap between one UI detaching and the next one attaching.
+ *
+ * Usage:
+ *      bindService(new Intent(this, CameraEngineService.class), connection, BIND_AUTO_CREATE);
+ *      engine.attachPreview(surfaceTexture, width, height, Policy.LOW_LATENCY);
+ *      engine.detachPreview(surfaceTexture, true);
+ */
+public class CameraEngineService extends Service {
+
+    private static final String TAG = "CameraEngineService";
+    private static final String CHANNEL_ID = "CameraEngineChannel";
+    private static final int NOTIFICATION_ID = 1001;
+
+    // Time to wait for another UI to attach before the camera is closed
+    private static final long IDLE_TIMEOUT_MS = 2000L;
+
+    private final IBinder binder = new LocalBinder();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private CameraController cameraController;
+    private final SensorTimeAligner sensorTimeAligner = new SensorTimeAligner();
+    private StabilizedRecorder recorder;
+    private boolean isFrontCamera = false;
+    private boolean isForeground = false;
+
+    // Previews attached through this service, and the last one, kept attached
+    // until the next UI attaches - main thread only
+    private final Set<SurfaceTexture> attachedPreviews = new HashSet<>();
+    private SurfaceTexture handOffPreview;
+
+    /**
+     * Binder for in-process clients
+     */
+    public class LocalBinder extends Binder {
+        public CameraEngineService getService() {
+            return CameraEngineService.this;
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Log.d(TAG, "🟢 Camera engine created");
+
+        cameraController = new CameraController(this);
+        cameraController.setPreOpenEnabled(true);
+        cameraController.setIdleListener(() -> mainHandler.post(this::scheduleIdleStop));
+        cameraController.addFrameListener(new FrameAlignmentCallback(this, sensorTimeAligner));
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        Log.d(TAG, "🟡 onStartCommand called");
+        enterForeground();
+        return START_NOT_STICKY;
+    }
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    /**
+     * The shared controller, for request settings and listeners
+     */
+    public CameraController getCameraController() {
+        return cameraController;
+    }
+
+    /**
+     * Feed IMU samples in here, per-frame IMU state comes out of its listeners
+     */
+    public SensorTimeAligner getSensorTimeAligner() {
+        return sensorTimeAligner;
+    }
+
+    /**
+     * Gyro-stabilised recorder sharing the camera stream
+     */
+    public StabilizedRecorder getRecorder() {
+        if (recorder == null) {
+            recorder = new StabilizedRecorder(cameraController, sensorTimeAligner);
+        }
+        return recorder;
+    }
+
+    public boolean isFrontCamera() {
+        return isFrontCamera;
+    }
+
+    /**
+     * Show the camera in a SurfaceTexture, opening the camera if needed.
+     * Call on the main thread.
+     */
+    public void attachPreview(SurfaceTexture texture, int width, int height,
+                              StreamConfigurationSelector.Policy policy) {
+        mainHandler.removeCallbacks(idleStop);
+        if (!isForeground) {
+            // onStartCommand() moves the service to the foreground
+            ContextCompat.startForegroundService(this, new Intent(this, CameraEngineService.class));
+        }
+
+        attachedPreviews.add(texture);
+        cameraController.attachPreview(texture, width, height, policy);
+        cameraController.open(isFrontCamera);
+
+        // Make before break: the previous UI's surface goes only now
+        if (handOffPreview == texture) {
+            handOffPreview = null;
+        } else {
+            finishHandOff();
+        }
+    }
+
+    /**
+     * Stop showing the camera in a SurfaceTexture. The camera stays open for
+     * IDLE_TIMEOUT_MS in case another UI attaches; the last preview stays
+     * attached until then unless its texture is being released.
+     * Call on the main thread.
+     */
+    public void detachPreview(SurfaceTexture texture, boolean releaseTexture) {
+        if (texture == handOffPreview) {
+            handOffPreview = null;
+        } else if (!releaseTexture && attachedPreviews.size() == 1 && attachedPreviews.contains(texture)) {
+            handOffPreview = texture;
+            scheduleIdleStop();
+            return;
+        }
+        attachedPreviews.remove(texture);
+        cameraController.detachPreview(texture, releaseTexture);
+    }
+
+    /**
+     * Detach the surface kept for a hand-off, if any
+     */
+    private void finishHandOff() {
+        if (handOffPreview == null) return;
+        SurfaceTexture texture = handOffPreview;
+        handOffPreview = null;
+        attachedPreviews.remove(texture);
+        cameraController.detachPreview(texture, false);
+    }
+
+    /**
+     * Switch between the front and back camera for every attached preview
+     */
+    public void switchCamera() {
+        isFrontCamera = !isFrontCamera;
+        cameraController.open(isFrontCamera);
+    }
+
+    public void setFrontCamera(boolean front) {
+        if (front != isFrontCamera) {
+            switchCamera();
+        }
+    }
+
+    private void scheduleIdleStop() {
+        mainHandler.removeCallbacks(idleStop);
+        mainHandler.postDelayed(idleStop, IDLE_TIMEOUT_MS);
+    }
+
+    private final Runnable idleStop = () -> {
+        if (handOffPreview != null) {
+            // Nobody took over - detached in order before the close below
+            finishHandOff();
+        } else if (cameraController.hasPreview()) {
+            return;
+        }
+
+        Log.d(TAG, "⏸ No preview attached - closing camera");
+        cameraController.close();
+        if (isForeground) {
+            stopForeground(STOP_FOREGROUND_REMOVE);
+            isForeground = false;
+        }
+        // Bound clients keep the service (not the camera) alive
+        stopSelf();
+    };
+
+    private void enterForeground() {
+        if (isForeground) return;
+
+        createNotificationChannel();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            startForeground(NOTIFICATION_ID, createNotification(), ServiceInfo.FOREGROUND_SERVICE_TYPE_CAMERA);
+        } else {
+            startForeground(NOTIFICATION_ID, createNotification());
+        }
+        isForeground = true;
+        Log.d(TAG, "📱 Foreground service started");
+    }
+
+    private void createNotificationChannel() {
+        NotificationChannel channel = new NotificationChannel(
+            CHANNEL_ID,
+            "Camera",
+            NotificationManager.IMPORTANCE_LOW
+        );
+        channel.setDescription("Shown while the camera is in use");
+
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager != null) {
+            manager.createNotificationChannel(channel);
+        }
+    }
+
+    private Notification createNotification() {
+        Intent intent = new Intent(this, CameraActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+            this, 0, intent, PendingIntent.FLAG_IMMUTABLE
+        );
+
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+            .setContentTitle(getString(R.string.camera_engine_active))
+            .setContentText(getString(R.string.camera_engine_notification_text))
+            .setSmallIcon(R.drawable.ic_launcher_foreground)
+            .setContentIntent(pendingIntent)
+            .setPriority(NotificationCompat.PRIORITY_LOW)
+            .build();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        Log.d(TAG, "🔴 Camera engine destroyed");
+
+        mainHandler.removeCallbacks(idleStop);
+        if (recorder != null) {
+            recorder.release();
+            recorder = null;
+        }
+        if (cameraController != null) {
+            cameraController.release();
+            cameraController = null;
+        }
+    }
+}
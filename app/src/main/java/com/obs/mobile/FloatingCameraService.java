@@ -1,28 +1,17 @@
 package com.obs.mobile;
 
-import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
+import android.content.ComponentName;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.graphics.PixelFormat;
 import android.graphics.SurfaceTexture;
-import android.hardware.camera2.CameraAccessException;
-import android.hardware.camera2.CameraCaptureSession;
-import android.hardware.camera2.CameraCharacteristics;
-import android.hardware.camera2.CameraDevice;
-import android.hardware.camera2.CameraManager;
-import android.hardware.camera2.CaptureRequest;
-import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.IBinder;
 import android.provider.Settings;
 import android.util.Log;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
-import android.view.Surface;
 import android.view.TextureView;
 import android.view.View;
 import android.view.WindowManager;
@@ -33,18 +22,21 @@ import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.core.app.NotificationCompat;
 
-import java.util.Collections;
+import com.obs.mobile.camera.StreamConfigurationSelector;
+
 
 /**
  * FloatingCameraService - Service that shows a resizable floating camera window
+ *
+ * The camera itself belongs to CameraEngineService (which also holds the
+ * foreground notification); this service only owns the window and attaches
+ * its TextureView to the shared camera, so opening the floating window does
+ * not reopen the camera.
  */
 public class FloatingCameraService extends Service {
 
     private static final String TAG = "FloatingCameraService";
-    private static final String CHANNEL_ID = "FloatingCameraChannel";
-    private static final int NOTIFICATION_ID = 1001;
 
     private WindowManager windowManager;
     private View floatingView;
@@ -52,13 +44,9 @@ public class FloatingCameraService extends Service {
     private ImageButton btnClose;
     private ImageButton btnResize;
 
-    private CameraManager cameraManager;
-    private CameraDevice cameraDevice;
-    private CameraCaptureSession captureSession;
-    private HandlerThread backgroundThread;
-    private Handler backgroundHandler;
+    private CameraEngineService cameraEngine;
+    private boolean isEngineBound = false;
 
-    private boolean isFrontCamera = true;
     private int currentSize = 1; // 0=small, 1=medium, 2=large
 
     // Window parameters for drag
@@ -81,25 +69,21 @@ public class FloatingCameraService extends Service {
             Log.d(TAG, "✅ Overlay permission verified");
 
             windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
-            cameraManager = (CameraManager) getSystemService(CAMERA_SERVICE);
 
-            if (windowManager == null || cameraManager == null) {
+            if (windowManager == null) {
                 Log.e(TAG, "❌ Failed to get system services");
                 stopSelf();
                 return;
             }
             Log.d(TAG, "✅ System services obtained");
 
-            createNotificationChannel();
-            startForeground(NOTIFICATION_ID, createNotification());
-            Log.d(TAG, "📱 Foreground service started");
+            // Shared camera - already open when coming from CameraActivity
+            isEngineBound = bindService(new Intent(this, CameraEngineService.class),
+                    engineConnection, BIND_AUTO_CREATE);
 
-            // Create floating window immediately
-            if (createFloatingWindow()) {
-                startBackgroundThread();
-                // Delay camera opening to ensure TextureView is ready
-                new Handler().postDelayed(this::openCamera, 1000);
-            } else {
+            // Create floating window immediately - the preview attaches once both
+            // the surface and the engine are available
+            if (!createFloatingWindow()) {
                 Log.e(TAG, "❌ Failed to create floating window");
                 stopSelf();
             }
@@ -220,9 +204,9 @@ public class FloatingCameraService extends Service {
 
         btnSwitchCam.setOnClickListener(v -> {
             Log.d(TAG, "🔄 Switch camera clicked");
-            isFrontCamera = !isFrontCamera;
-            closeCamera();
-            new Handler().postDelayed(this::openCamera, 300);
+            if (cameraEngine != null) {
+                cameraEngine.switchCamera();
+            }
         });
 
         // Spacer to push buttons to edges
@@ -339,8 +323,12 @@ public class FloatingCameraService extends Service {
                 @Override
                 public boolean onSurfaceTextureDestroyed(@NonNull SurfaceTexture surface) {
                     Log.d(TAG, "📹 TextureView surface destroyed");
-                    closeCamera();
-                    return true;
+                    if (cameraEngine == null) {
+                        return true;
+                    }
+                    // Released by the camera engine once no frame is in flight
+                    cameraEngine.detachPreview(surface, true);
+                    return false;
                 }
 
                 @Override
@@ -368,170 +356,38 @@ public class FloatingCameraService extends Service {
         Log.d(TAG, "📏 Resized to: " + params.width + "x" + params.height);
     }
 
-    private void openCamera() {
-        Log.d(TAG, "📹 Opening camera...");
-
-        if (cameraManager == null || textureView == null || !textureView.isAvailable()) {
-            Log.w(TAG, "⚠️ Cannot open camera - not ready");
-            return;
+    private final ServiceConnection engineConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            Log.d(TAG, "✅ Camera engine connected");
+            cameraEngine = ((CameraEngineService.LocalBinder) service).getService();
+            openCamera();
         }
 
-        try {
-            String cameraId = chooseCameraId();
-            if (cameraId == null) {
-                Log.e(TAG, "❌ No camera available");
-                return;
-            }
-
-            Log.d(TAG, "📹 Opening camera ID: " + cameraId);
-            cameraManager.openCamera(cameraId, new CameraDevice.StateCallback() {
-                @Override
-                public void onOpened(@NonNull CameraDevice camera) {
-                    Log.d(TAG, "✅ Camera opened successfully");
-                    cameraDevice = camera;
-                    createCameraPreview();
-                }
-
-                @Override
-                public void onDisconnected(@NonNull CameraDevice camera) {
-                    Log.d(TAG, "📹 Camera disconnected");
-                    camera.close();
-                    cameraDevice = null;
-                }
-
-                @Override
-                public void onError(@NonNull CameraDevice camera, int error) {
-                    Log.e(TAG, "❌ Camera error: " + error);
-                    camera.close();
-                    cameraDevice = null;
-                }
-            }, backgroundHandler);
-
-        } catch (SecurityException | CameraAccessException e) {
-            Log.e(TAG, "❌ Error opening camera", e);
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            cameraEngine = null;
         }
-    }
-
-    private String chooseCameraId() throws CameraAccessException {
-        String[] cameraIdList = cameraManager.getCameraIdList();
-        if (cameraIdList.length == 0) return null;
-
-        for (String id : cameraIdList) {
-            CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(id);
-            Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
-            if (facing == null) continue;
-            if (isFrontCamera && facing == CameraCharacteristics.LENS_FACING_FRONT) return id;
-            if (!isFrontCamera && facing == CameraCharacteristics.LENS_FACING_BACK) return id;
-        }
-
-        return cameraIdList[0];
-    }
-
-    private void createCameraPreview() {
-        try {
-            if (cameraDevice == null || !textureView.isAvailable()) return;
-
-            SurfaceTexture texture = textureView.getSurfaceTexture();
-            if (texture == null) return;
-
-            texture.setDefaultBufferSize(640, 480);
-            Surface surface = new Surface(texture);
-
-            CaptureRequest.Builder builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-            builder.addTarget(surface);
-
-            cameraDevice.createCaptureSession(Collections.singletonList(surface),
-                new CameraCaptureSession.StateCallback() {
-                    @Override
-                    public void onConfigured(@NonNull CameraCaptureSession session) {
-                        if (cameraDevice == null) return;
-
-                        captureSession = session;
-                        try {
-                            builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
-                            builder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
-                            session.setRepeatingRequest(builder.build(), null, backgroundHandler);
-                            Log.d(TAG, "✅ Camera preview started in floating window!");
-                        } catch (CameraAccessException e) {
-                            Log.e(TAG, "❌ Failed to start preview", e);
-                        }
-                    }
-
-                    @Override
-                    public void onConfigureFailed(@NonNull CameraCaptureSession session) {
-                        Log.e(TAG, "❌ Failed to configure camera");
-                    }
-                }, backgroundHandler);
+    };
 
-        } catch (CameraAccessException e) {
-            Log.e(TAG, "❌ Error creating preview", e);
-        }
-    }
+    private void openCamera() {
+        Log.d(TAG, "📹 Opening camera...");
 
-    private void closeCamera() {
-        if (captureSession != null) {
-            captureSession.close();
-            captureSession = null;
-        }
-        if (cameraDevice != null) {
-            cameraDevice.close();
-            cameraDevice = null;
+        if (cameraEngine == null || textureView == null || !textureView.isAvailable()) {
+            Log.w(TAG, "⚠️ Cannot open camera - not ready");
+            return;
         }
-    }
 
-    private void startBackgroundThread() {
-        backgroundThread = new HandlerThread("CameraBackground");
-        backgroundThread.start();
-        backgroundHandler = new Handler(backgroundThread.getLooper());
-        Log.d(TAG, "✅ Background thread started");
-    }
-
-    private void stopBackgroundThread() {
-        if (backgroundThread != null) {
-            backgroundThread.quitSafely();
-            try {
-                backgroundThread.join();
-            } catch (InterruptedException e) {
-                Log.e(TAG, "Error stopping thread", e);
-            }
-            backgroundThread = null;
-            backgroundHandler = null;
-        }
+        // Small window - LOW_POWER only applies if the camera is not already streaming
+        cameraEngine.attachPreview(textureView.getSurfaceTexture(),
+                textureView.getWidth(), textureView.getHeight(),
+                StreamConfigurationSelector.Policy.LOW_POWER);
     }
 
     private int dpToPx(int dp) {
         return (int) (dp * getResources().getDisplayMetrics().density);
     }
 
-    private void createNotificationChannel() {
-        NotificationChannel channel = new NotificationChannel(
-            CHANNEL_ID,
-            "Floating Camera",
-            NotificationManager.IMPORTANCE_LOW
-        );
-        channel.setDescription("Shows floating camera window");
-
-        NotificationManager manager = getSystemService(NotificationManager.class);
-        if (manager != null) {
-            manager.createNotificationChannel(channel);
-        }
-    }
-
-    private Notification createNotification() {
-        Intent intent = new Intent(this, CameraActivity.class);
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-            this, 0, intent, PendingIntent.FLAG_IMMUTABLE
-        );
-
-        return new NotificationCompat.Builder(this, CHANNEL_ID)
-            .setContentTitle("Floating Camera Active")
-            .setContentText("Floating window should be visible")
-            .setSmallIcon(R.drawable.ic_launcher_foreground)
-            .setContentIntent(pendingIntent)
-            .setPriority(NotificationCompat.PRIORITY_LOW)
-            .build();
-    }
-
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "🟡 onStartCommand called");
@@ -549,17 +405,21 @@ public class FloatingCameraService extends Service {
         super.onDestroy();
         Log.d(TAG, "🔴 Service destroyed");
 
-        closeCamera();
-        stopBackgroundThread();
-
         if (floatingView != null && windowManager != null) {
             try {
-                windowManager.removeView(floatingView);
+                // Immediate, so onSurfaceTextureDestroyed() detaches from the engine before we unbind
+                windowManager.removeViewImmediate(floatingView);
                 Log.d(TAG, "✅ Floating view removed");
             } catch (Exception e) {
                 Log.e(TAG, "❌ Error removing view", e);
             }
             floatingView = null;
         }
+
+        if (isEngineBound) {
+            unbindService(engineConnection);
+            isEngineBound = false;
+        }
+        cameraEngine = null;
     }
 }
@@ -1,122 +1,314 @@
 package com.obs.mobile;
 
 import android.content.Context;
+import android.net.wifi.WifiManager;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.Log;
 
-import org.json.JSONObject;
-
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
+import com.obs.mobile.sensors.FrameImuState;
+import com.obs.mobile.sensors.ImuRingBuffer;
+import com.obs.mobile.stats.DerivedChannels;
+import com.obs.mobile.stats.SpectrumAnalyzer;
+import com.obs.mobile.streaming.AdaptiveRateController;
+import com.obs.mobile.streaming.BatchCodec;
+import com.obs.mobile.streaming.DiscoveryProtocol;
+import com.obs.mobile.streaming.FeedbackMessage;
+import com.obs.mobile.streaming.ReceiverDiscovery;
+import com.obs.mobile.streaming.SampleBatch;
+import com.obs.mobile.streaming.SensorPacket;
+import com.obs.mobile.streaming.SensorPacketJson;
+import com.obs.mobile.streaming.StreamDestination;
+import com.obs.mobile.streaming.StreamFanout;
+import com.obs.mobile.streaming.Transport;
+
+import org.json.JSONArray;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * SensorDataStreamer - Sends sensor data to Python script
  *
  * Streams all sensor readings to a Python application for real-time
  * processing and display. Uses UDP for low-latency communication.
+ *
+ * Every packet carries timestamp_ns (elapsedRealtimeNanos) and, when the
+ * camera is running, the IMU state of each frame since the last packet
+ * ("frame_imu"), on the same clock.
+ *
+ * Packets are numbered ("seq", +1 per packet, shared by all destinations)
+ * and carry the capture time of the newest sensor value they contain
+ * ("capture_ts_ns"), so receivers can measure loss, reordering and latency;
+ * see ReferenceReceiver. Sender-side counters are in getTelemetrySummary().
+ *
+ * Each packet is encoded once and fanned out to every destination
+ * (StreamFanout); the address given to initialize() is the "default"
+ * destination, more can be added with addDestination(). Every destination
+ * has its own rate limit, enable flag and counters. UDP is the default
+ * transport; consumers that need every sample (e.g. a recorder) can be added
+ * with a TcpTransport instead.
+ *
+ * Receivers running sensor_receiver.py announce themselves on a multicast
+ * group; startDiscovery() adds each one as a destination while it keeps
+ * announcing. Any host on the LAN can announce, so discovery is only started
+ * on request, and setTrustedReceivers() limits it to known hosts.
+ * setMulticastStreaming(true) sends every packet once to
+ * DiscoveryProtocol.STREAM_GROUP instead of once per receiver.
+ *
+ * The packet rate is not fixed: an AdaptiveRateController raises it while
+ * receivers report no loss (FeedbackMessage) and halves it on loss, a growing
+ * round-trip time or local send errors. Gyroscope + accelerometer samples are
+ * kept in a small ring and each packet carries getBatchSize() of them
+ * ("imu": [[capture_ts_ns, gx, gy, gz, ax, ay, az], ...]), so a lower packet
+ * rate costs latency before it costs IMU fidelity. The samples come from the
+ * sensor thread (addGyroscopeSample(), addAccelerometerSample()) with the
+ * sensor event timestamps: one per gyro event, gyro in deg/s, paired with
+ * the accelerometer interpolated at the gyro timestamp. With setImuCodec() the
+ * batch is sent as "imu_packed" instead, a base64 BatchCodec payload (e.g.
+ * DeltaVarintCodec.forImu(), about 5x smaller than the JSON array even
+ * after base64).
+ *
+ * Clock sync: every CLOCK_SYNC_INTERVAL_MS (faster right after start) each
+ * unicast receiver gets an NTP-style OBS-SYNC request; the phone estimates
+ * that receiver's clock offset and drift and sends it the result
+ * (ClockSyncMessage), so receivers map timestamp_ns, capture_ts_ns and the
+ * IMU sample times onto their own clock instead of stamping on arrival.
+ *
+ * Derived channels: every IMU sample also feeds a DerivedChannels
+ * (DerivedChannels.forImu() by default: vibration RMS, p95 and smoothed
+ * |a|, peak |w|), computed over the full sensor rate and sent with each
+ * packet as "derived": {"accel_rms": ..., ...}; setDerivedChannels()
+ * replaces the set, null turns it off.
+ *
+ * Vibration spectrum: with setSpectrumAnalyzer() (CameraActivity sets one
+ * when SensorPreferences.isVibrationSpectrumEnabled() or the
+ * EXTRA_VIBRATION_SPECTRUM intent extra asks for it) a SpectrumAnalyzer
+ * runs a windowed FFT at a configurable hop over the accelerometer history
+ * that addAccelerometerSample() fills for the IMU batch, and each new
+ * spectrum goes out once, with the next packet, as "spectrum":
+ * {"timestamp_ns", "sample_rate_hz", "peaks": [[hz, m/s^2], ...],
+ * "band_edges_hz": [...], "band_rms": [...]}. For machine monitoring,
+ * setImuBatchEnabled(false) then drops the 200 Hz IMU batch: a spectrum of
+ * 5 peaks and 5 bands is ~270 bytes, ~850 B/s at a hop of 64 samples,
+ * against 3 kB/s ("imu_packed") to 15 kB/s ("imu") of raw IMU samples.
+ *
+ * Store-and-forward: packets a unicast receiver misses while it is
+ * unreachable are spooled under files/stream-spool (PacketSpool, 64 MB and
+ * 6 hours at most) and sent again, marked as backfill, once it is back.
  */
 public class SensorDataStreamer {
 
     private static final String TAG = "SensorDataStreamer";
 
+    // Name of the destination set by initialize() / setServerAddress()
+    public static final String DEFAULT_DESTINATION = "default";
+    public static final String MULTICAST_DESTINATION = "multicast";
+    private static final String DISCOVERED_PREFIX = "discovered:";
+
     // Network settings
     private String serverHost = "192.168.1.100";  // Update with your computer IP
     private int serverPort = 5000;
 
-    // Socket and threading
-    private DatagramSocket socket;
+    // Destinations and threading
+    private final StreamFanout fanout = new StreamFanout();
+    private final Context context;
+    private ReceiverDiscovery receiverDiscovery;
+    private volatile Set<String> trustedReceivers = Collections.emptySet();
+    private WifiManager.MulticastLock multicastLock;
     private HandlerThread senderThread;
     private Handler senderHandler;
     private boolean isRunning = false;
 
     // Sensor data
-    private SensorValues currentSensorValues = new SensorValues();
-
-    // Send rate (ms)
-    private static final int SEND_INTERVAL_MS = 100;  // Send every 100ms
+    private final SensorPacket currentSensorValues = new SensorPacket();
+
+    // Send rate, adapted to network feedback (sender thread)
+    private final AdaptiveRateController rateController = new AdaptiveRateController();
+    private final Map<String, FeedbackMessage> previousFeedback = new HashMap<>();
+    private long lastLocalErrors = 0L;
+    private long lastLocalOverflows = 0L;
+    // Feedback is read between sends too, so RTT is not off by a send interval
+    private static final long FEEDBACK_POLL_INTERVAL_MS = 20L;
+    private static final long TELEMETRY_LOG_INTERVAL_MS = 10_000L;
+
+    // Clock sync: a burst after start, then a steady rate; replies are polled
+    // every ms for a short window so their arrival time is precise
+    private static final long CLOCK_SYNC_INTERVAL_MS = 1000L;
+    private static final long CLOCK_SYNC_BURST_INTERVAL_MS = 200L;
+    private static final int CLOCK_SYNC_BURST_ROUNDS = 10;
+    private static final long CLOCK_SYNC_REPLY_WINDOW_MS = 50L;
+    private int clockSyncRounds = 0;
+
+    // Telemetry, sender thread
+    private long nextSequence = 0L;
+    private long encodeErrors = 0L;
+    private long lastTelemetryLogMs = 0L;
+
+    // Recent IMU samples for batching: [capture_ts_ns, gx, gy, gz, ax, ay, az]
+    private static final int IMU_RING_SIZE = 256;
+    private static final int IMU_CHANNELS = 6;
+    private final long[] imuTimestamps = new long[IMU_RING_SIZE];
+    private final float[][] imuSamples = new float[IMU_RING_SIZE][6];
+    private int imuNext = 0;
+    private long imuTotal = 0L;
+    private long imuSentTotal = 0L;
+    private final SampleBatch imuBatch = new SampleBatch(AdaptiveRateController.DEFAULT_MAX_BATCH_SIZE, IMU_CHANNELS);
+    private final float[] imuSampleScratch = new float[IMU_CHANNELS];
+    // Raw accelerometer at the sensor rate, paired with each gyro sample
+    private static final int ACCEL_HISTORY_SIZE = 512;
+    private final ImuRingBuffer accelHistory = new ImuRingBuffer(ACCEL_HISTORY_SIZE);
+    private final float[] accelScratch = new float[3];
+    private volatile BatchCodec imuCodec;
+    // Statistics over every IMU sample, guarded by imuSamples
+    private DerivedChannels derivedChannels = DerivedChannels.forImu();
+    // Accelerometer spectrum, off by default, updated under imuSamples
+    private volatile SpectrumAnalyzer spectrumAnalyzer;
+    private long sentSpectrumCount = 0L;
+    private volatile boolean imuBatchEnabled = true;
+    private final SensorPacketJson packetJson = new SensorPacketJson();
+
+    // Per-frame IMU state queued between sends (~3 frames per packet at 30 fps)
+    private static final int MAX_PENDING_FRAMES = 16;
+    private final FrameImuState[] pendingFrames = new FrameImuState[MAX_PENDING_FRAMES];
+    private int pendingFrameStart = 0;
+    private int pendingFrameCount = 0;
 
     /**
-     * Container for all sensor values
+     * Constructor
      */
-    public static class SensorValues {
-        public float accelX = 0.0f;
-        public float accelY = 0.0f;
-        public float accelZ = 0.0f;
-        public float accelMagnitude = 0.0f;
-
-        public float gyroX = 0.0f;
-        public float gyroY = 0.0f;
-        public float gyroZ = 0.0f;
+    public SensorDataStreamer(Context context) {
+        this.context = context.getApplicationContext();
+        this.senderThread = new HandlerThread("SensorDataStreamer");
+        for (int i = 0; i < MAX_PENDING_FRAMES; i++) {
+            pendingFrames[i] = new FrameImuState();
+        }
+        fanout.setClock(SystemClock::elapsedRealtimeNanos);
+        fanout.setFeedbackListener(this::onFeedback);
+        fanout.setSpoolDirectory(new File(this.context.getFilesDir(), "stream-spool"));
+    }
 
-        public float lightLux = 0.0f;
-        public String lightCategory = "Normal";
+    /**
+     * Initialize the streamer
+     */
+    public void initialize(String host, int port) {
+        this.serverHost = host;
+        this.serverPort = port;
+        fanout.addDestination(new StreamDestination(DEFAULT_DESTINATION, host, port, StreamDestination.UNLIMITED));
+    }
 
-        public float proximityDistance = 0.0f;
-        public boolean proximityIsNear = false;
+    /**
+     * Add (or replace, by name) an extra receiver of the same packets
+     *
+     * @param maxPacketsPerSecond rate limit, or StreamDestination.UNLIMITED
+     */
+    public StreamDestination addDestination(String name, String host, int port, int maxPacketsPerSecond) {
+        return addDestination(new StreamDestination(name, host, port, maxPacketsPerSecond));
+    }
 
-        public float magnetometerAzimuth = 0.0f;
-        public String magnetometerDirection = "N";
+    /**
+     * Add a receiver with its own transport, e.g.
+     * new TcpTransport(64, TcpTransport.OverflowPolicy.DROP_OLDEST)
+     */
+    public StreamDestination addDestination(String name, String host, int port, int maxPacketsPerSecond,
+                                            Transport transport) {
+        return addDestination(new StreamDestination(name, host, port, maxPacketsPerSecond, transport));
+    }
 
-        /**
-         * Convert to JSON for transmission
-         */
-        public JSONObject toJSON() throws Exception {
-            JSONObject json = new JSONObject();
+    private StreamDestination addDestination(StreamDestination destination) {
+        fanout.addDestination(destination);
+        Log.d(TAG, "Destination added: " + destination);
+        return destination;
+    }
 
-            JSONObject accel = new JSONObject();
-            accel.put("x", accelX);
-            accel.put("y", accelY);
-            accel.put("z", accelZ);
-            accel.put("magnitude", accelMagnitude);
-            json.put("accelerometer", accel);
+    public void removeDestination(String name) {
+        fanout.removeDestination(name);
+        Log.d(TAG, "Destination removed: " + name);
+    }
 
-            JSONObject gyro = new JSONObject();
-            gyro.put("x", gyroX);
-            gyro.put("y", gyroY);
-            gyro.put("z", gyroZ);
-            json.put("gyroscope", gyro);
+    /**
+     * Destinations with their enable flags and counters
+     */
+    public List<StreamDestination> getDestinations() {
+        return fanout.getDestinations();
+    }
 
-            JSONObject light = new JSONObject();
-            light.put("lux", lightLux);
-            light.put("category", lightCategory);
-            json.put("light", light);
+    /**
+     * Bounds for the adaptive packet rate, e.g. (1, 5) on metered links
+     */
+    public void setRateLimits(float minPacketsPerSecond, float maxPacketsPerSecond) {
+        rateController.setRateLimits(minPacketsPerSecond, maxPacketsPerSecond);
+        Log.d(TAG, "Rate limits " + minPacketsPerSecond + "-" + maxPacketsPerSecond + " Hz");
+    }
 
-            JSONObject proximity = new JSONObject();
-            proximity.put("distance", proximityDistance);
-            proximity.put("is_near", proximityIsNear);
-            json.put("proximity", proximity);
+    /**
+     * Bounds for the batched IMU sample rate: the floor keeps the packet rate
+     * high enough for it, the maximum caps the batch
+     */
+    public void setImuRateLimits(float minSamplesPerSecond, float maxSamplesPerSecond) {
+        rateController.setImuRateLimits(minSamplesPerSecond, maxSamplesPerSecond);
+        Log.d(TAG, "IMU rate limits " + minSamplesPerSecond + "-" + maxSamplesPerSecond + " Hz");
+    }
 
-            JSONObject magnetometer = new JSONObject();
-            magnetometer.put("azimuth", magnetometerAzimuth);
-            magnetometer.put("direction", magnetometerDirection);
-            json.put("magnetometer", magnetometer);
+    /**
+     * Compress the IMU batch with a BatchCodec ("imu_packed"), or null for
+     * the plain JSON "imu" array
+     */
+    public void setImuCodec(BatchCodec codec) {
+        this.imuCodec = codec;
+        Log.d(TAG, "IMU codec: " + (codec != null ? codec.getName() : "json"));
+    }
 
-            return json;
+    /**
+     * Statistics computed over every IMU sample [gx, gy, gz, ax, ay, az] and
+     * sent as "derived", or null to send none
+     */
+    public void setDerivedChannels(DerivedChannels channels) {
+        synchronized (imuSamples) {
+            derivedChannels = channels;
+            if (channels == null) {
+                currentSensorValues.derivedNames = new String[0];
+            }
         }
+        Log.d(TAG, "Derived channels: " + (channels != null ? String.join(",", channels.getNames()) : "none"));
     }
 
     /**
-     * Constructor
+     * Analyze the accelerometer and send each new spectrum, e.g.
+     * new SpectrumAnalyzer(256, 64, 5, SpectrumAnalyzer.DEFAULT_BAND_EDGES_HZ);
+     * null stops it
+     *
+     * @throws IllegalArgumentException if the FFT is longer than the
+     *         accelerometer history it reads
      */
-    public SensorDataStreamer(Context context) {
-        this.senderThread = new HandlerThread("SensorDataStreamer");
+    public void setSpectrumAnalyzer(SpectrumAnalyzer analyzer) {
+        if (analyzer != null && analyzer.getFftSize() > ACCEL_HISTORY_SIZE) {
+            throw new IllegalArgumentException("FFT size " + analyzer.getFftSize()
+                    + " exceeds the accelerometer history (" + ACCEL_HISTORY_SIZE + ")");
+        }
+        synchronized (imuSamples) {
+            spectrumAnalyzer = analyzer;
+            sentSpectrumCount = 0L;
+            currentSensorValues.spectrumTimestampNs = 0L;
+        }
+        Log.d(TAG, "Spectrum: " + (analyzer != null
+                ? analyzer.getFftSize() + "-point FFT every " + analyzer.getHopSize() + " samples" : "off"));
     }
 
     /**
-     * Initialize the streamer
+     * Send the IMU batch with each packet (default), or only the latest
+     * values, e.g. when spectra carry what a receiver needs
      */
-    public void initialize(String host, int port) {
-        this.serverHost = host;
-        this.serverPort = port;
-
-        try {
-            socket = new DatagramSocket();
-            Log.d(TAG, "DatagramSocket created");
-        } catch (Exception e) {
-            Log.e(TAG, "Error creating socket: " + e.getMessage());
-        }
+    public void setImuBatchEnabled(boolean enabled) {
+        this.imuBatchEnabled = enabled;
+        Log.d(TAG, "IMU batch " + (enabled ? "on" : "off"));
     }
 
     /**
@@ -137,9 +329,12 @@ public class SensorDataStreamer {
 
         // Start periodic sending
         sendSensorData();
+        pollFeedback();
+        clockSyncRounds = 0;
+        syncClocks();
 
         Log.d(TAG, "Sensor data streaming started");
-        Log.d(TAG, "Sending to " + serverHost + ":" + serverPort);
+        Log.d(TAG, "Sending to " + fanout.getDestinations().size() + " destination(s)");
     }
 
     /**
@@ -147,35 +342,177 @@ public class SensorDataStreamer {
      */
     public void stop() {
         isRunning = false;
+        stopDiscovery();
 
         if (senderHandler != null) {
             senderHandler.removeCallbacksAndMessages(null);
+            // Sockets belong to the sender thread
+            senderHandler.post(fanout::close);
+        }
+
+        Log.d(TAG, "Sensor data streaming stopped");
+    }
+
+    // ============================================================
+    // Discovery and multicast
+    // ============================================================
+
+    /**
+     * Only stream to discovered receivers whose host or host:port is in the
+     * set; empty accepts every receiver that announces itself
+     */
+    public void setTrustedReceivers(Set<String> receivers) {
+        trustedReceivers = Collections.unmodifiableSet(new HashSet<>(receivers));
+    }
+
+    /**
+     * Listen for receivers announcing on the LAN and stream to each of them
+     * (see setTrustedReceivers())
+     */
+    public synchronized void startDiscovery() {
+        if (receiverDiscovery != null) return;
+
+        acquireMulticastLock();
+        receiverDiscovery = new ReceiverDiscovery(null, discoveryListener);
+        try {
+            receiverDiscovery.start();
+            Log.d(TAG, "🔍 Receiver discovery started");
+        } catch (Exception e) {
+            Log.e(TAG, "Error starting discovery: " + e.getMessage());
+            receiverDiscovery = null;
+            releaseMulticastLockIfUnused();
         }
+    }
+
+    public synchronized void stopDiscovery() {
+        if (receiverDiscovery == null) return;
 
-        if (socket != null && !socket.isClosed()) {
-            socket.close();
+        receiverDiscovery.stop();
+        receiverDiscovery = null;
+        for (StreamDestination destination : fanout.getDestinations()) {
+            if (destination.getName().startsWith(DISCOVERED_PREFIX)) {
+                fanout.removeDestination(destination.getName());
+            }
         }
+        releaseMulticastLockIfUnused();
+        Log.d(TAG, "Receiver discovery stopped");
+    }
 
-        Log.d(TAG, "Sensor data streaming stopped");
+    /**
+     * Also send every packet once to the multicast stream group, which every
+     * receiver started with --multicast listens on
+     */
+    public synchronized void setMulticastStreaming(boolean enabled) {
+        if (enabled) {
+            fanout.addDestination(new StreamDestination(MULTICAST_DESTINATION,
+                    DiscoveryProtocol.STREAM_GROUP, DiscoveryProtocol.STREAM_PORT, StreamDestination.UNLIMITED));
+        } else {
+            fanout.removeDestination(MULTICAST_DESTINATION);
+        }
+        Log.d(TAG, "Multicast streaming " + (enabled ? "on" : "off"));
+    }
+
+    private final ReceiverDiscovery.Listener discoveryListener = new ReceiverDiscovery.Listener() {
+        @Override
+        public void onReceiverFound(ReceiverDiscovery.Receiver receiver) {
+            Set<String> trusted = trustedReceivers;
+            if (!trusted.isEmpty() && !trusted.contains(receiver.host) && !trusted.contains(receiver.getKey())) {
+                Log.w(TAG, "Ignoring untrusted receiver: " + receiver);
+                return;
+            }
+            fanout.addDestination(new StreamDestination(DISCOVERED_PREFIX + receiver.getKey(),
+                    receiver.host, receiver.port, StreamDestination.UNLIMITED));
+            Log.d(TAG, "📡 Receiver found: " + receiver);
+        }
+
+        @Override
+        public void onReceiverLost(ReceiverDiscovery.Receiver receiver) {
+            fanout.removeDestination(DISCOVERED_PREFIX + receiver.getKey());
+            Log.d(TAG, "Receiver lost: " + receiver);
+        }
+    };
+
+    private void acquireMulticastLock() {
+        if (multicastLock == null) {
+            WifiManager wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+            if (wifiManager == null) return;
+            multicastLock = wifiManager.createMulticastLock(TAG);
+            multicastLock.setReferenceCounted(false);
+        }
+        multicastLock.acquire();
+    }
+
+    private void releaseMulticastLockIfUnused() {
+        if (multicastLock != null && multicastLock.isHeld()) {
+            multicastLock.release();
+        }
     }
 
     /**
      * Update accelerometer data
      */
     public void updateAccelerometer(float x, float y, float z, float magnitude) {
+        long nowNs = SystemClock.elapsedRealtimeNanos();
         currentSensorValues.accelX = x;
         currentSensorValues.accelY = y;
         currentSensorValues.accelZ = z;
         currentSensorValues.accelMagnitude = magnitude;
+        currentSensorValues.captureTimestampNs = nowNs;
+    }
+
+    /**
+     * One raw accelerometer event in m/s^2, from AccelerometerSensor's
+     * OnSampleListener: the event timestamp (elapsedRealtimeNanos), not the
+     * callback time, so delivery jitter does not smear the IMU batch or the
+     * spectrum frequencies
+     */
+    public void addAccelerometerSample(long timestampNs, float x, float y, float z) {
+        // No lock unless a spectrum is on: the batch path does not need one
+        if (!accelHistory.add(timestampNs, x, y, z) || spectrumAnalyzer == null) {
+            return;
+        }
+        synchronized (imuSamples) {
+            SpectrumAnalyzer analyzer = spectrumAnalyzer;
+            if (analyzer != null) {
+                analyzer.addFrom(accelHistory);
+            }
+        }
     }
 
     /**
-     * Update gyroscope data
+     * Update gyroscope data (deg/s), the packet's "gyroscope" values only
      */
     public void updateGyroscope(float x, float y, float z) {
+        long nowNs = SystemClock.elapsedRealtimeNanos();
         currentSensorValues.gyroX = x;
         currentSensorValues.gyroY = y;
         currentSensorValues.gyroZ = z;
+        currentSensorValues.captureTimestampNs = nowNs;
+    }
+
+    /**
+     * One raw gyroscope event in rad/s, from GyroscopeSensor's
+     * OnSampleListener, with its event timestamp: one IMU batch sample and
+     * one derived channel update, in deg/s, paired with the accelerometer at
+     * the same timestamp (the nearest one held, zeros before the first)
+     */
+    public void addGyroscopeSample(long timestampNs, float x, float y, float z) {
+        synchronized (imuSamples) {
+            float[] sample = imuSamples[imuNext];
+            sample[0] = (float) Math.toDegrees(x);
+            sample[1] = (float) Math.toDegrees(y);
+            sample[2] = (float) Math.toDegrees(z);
+            if (accelHistory.interpolate(timestampNs, Long.MAX_VALUE, accelScratch) < 0L) {
+                accelScratch[0] = accelScratch[1] = accelScratch[2] = 0f;
+            }
+            System.arraycopy(accelScratch, 0, sample, 3, 3);
+            imuTimestamps[imuNext] = timestampNs;
+            imuNext = (imuNext + 1) % IMU_RING_SIZE;
+            imuTotal++;
+            if (derivedChannels != null) {
+                derivedChannels.update(timestampNs, sample, 0);
+            }
+        }
     }
 
     /**
@@ -184,6 +521,7 @@ public class SensorDataStreamer {
     public void updateLight(float lux, String category) {
         currentSensorValues.lightLux = lux;
         currentSensorValues.lightCategory = category;
+        currentSensorValues.captureTimestampNs = SystemClock.elapsedRealtimeNanos();
     }
 
     /**
@@ -192,6 +530,7 @@ public class SensorDataStreamer {
     public void updateProximity(float distance, boolean isNear) {
         currentSensorValues.proximityDistance = distance;
         currentSensorValues.proximityIsNear = isNear;
+        currentSensorValues.captureTimestampNs = SystemClock.elapsedRealtimeNanos();
     }
 
     /**
@@ -200,6 +539,216 @@ public class SensorDataStreamer {
     public void updateMagnetometer(float azimuth, String direction) {
         currentSensorValues.magnetometerAzimuth = azimuth;
         currentSensorValues.magnetometerDirection = direction;
+        currentSensorValues.captureTimestampNs = SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Update hardware face detection results for one camera frame
+     *
+     * @param frameTimestampNs SENSOR_TIMESTAMP moved onto elapsedRealtimeNanos
+     *
+     * @param packedRects [left, top, right, bottom, score] per face, only the
+     *                    first faceCount entries are used and they are copied
+     */
+    public void updateFaces(long frameTimestampNs, int activeArrayWidth, int activeArrayHeight,
+                            int sensorOrientation, boolean mirrored, int[] packedRects, int faceCount) {
+        int[] rects = new int[faceCount * 5];
+        System.arraycopy(packedRects, 0, rects, 0, rects.length);
+
+        currentSensorValues.faceActiveArrayWidth = activeArrayWidth;
+        currentSensorValues.faceActiveArrayHeight = activeArrayHeight;
+        currentSensorValues.faceSensorOrientation = sensorOrientation;
+        currentSensorValues.faceMirrored = mirrored;
+        currentSensorValues.faceRects = rects;
+        currentSensorValues.faceFrameTimestampNs = frameTimestampNs;
+        currentSensorValues.captureTimestampNs = SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Drop the last faces, e.g. when the capture session closes, so they are
+     * not repeated in every packet after the camera stops
+     */
+    public void clearFaces() {
+        currentSensorValues.faceFrameTimestampNs = 0L;
+        currentSensorValues.faceRects = new int[0];
+    }
+
+    /**
+     * Queue the IMU state of one camera frame, sent with the next packet.
+     * The oldest frame is dropped when more than MAX_PENDING_FRAMES pile up.
+     */
+    public void addFrameImu(FrameImuState state) {
+        synchronized (pendingFrames) {
+            int slot;
+            if (pendingFrameCount < MAX_PENDING_FRAMES) {
+                slot = (pendingFrameStart + pendingFrameCount) % MAX_PENDING_FRAMES;
+                pendingFrameCount++;
+            } else {
+                slot = pendingFrameStart;
+                pendingFrameStart = (pendingFrameStart + 1) % MAX_PENDING_FRAMES;
+            }
+            pendingFrames[slot].copyFrom(state);
+        }
+    }
+
+    /**
+     * Queued frames as JSON, emptying the queue
+     */
+    private JSONArray drainFrameImu() throws Exception {
+        JSONArray frames = new JSONArray();
+        synchronized (pendingFrames) {
+            for (int i = 0; i < pendingFrameCount; i++) {
+                frames.put(SensorPacketJson.frameToJSON(pendingFrames[(pendingFrameStart + i) % MAX_PENDING_FRAMES]));
+            }
+            pendingFrameStart = 0;
+            pendingFrameCount = 0;
+        }
+        return frames;
+    }
+
+    /**
+     * Up to batchSize IMU samples since the previous packet, evenly spaced and
+     * always including the newest one
+     */
+    private void drainImuBatch(int batchSize) {
+        imuBatch.reset(IMU_CHANNELS);
+        synchronized (imuSamples) {
+            long available = Math.min(imuTotal - imuSentTotal, IMU_RING_SIZE);
+            if (available <= 0L) return;
+
+            int count = (int) Math.min(batchSize, available);
+            for (int i = count - 1; i >= 0; i--) {
+                // Age in samples of the i-th newest pick, spread over the window
+                long age = i * available / count;
+                int slot = (int) Math.floorMod(imuNext - 1 - age, (long) IMU_RING_SIZE);
+                System.arraycopy(imuSamples[slot], 0, imuSampleScratch, 0, IMU_CHANNELS);
+                imuBatch.add(imuTimestamps[slot], imuSampleScratch);
+            }
+            imuSentTotal = imuTotal;
+        }
+    }
+
+    /**
+     * Current derived values into the packet
+     */
+    private void drainDerived() {
+        synchronized (imuSamples) {
+            DerivedChannels channels = derivedChannels;
+            if (channels == null) return;
+            if (currentSensorValues.derivedValues.length < channels.size()) {
+                currentSensorValues.derivedValues = new float[channels.size()];
+            }
+            channels.getValues(currentSensorValues.derivedValues);
+            currentSensorValues.derivedNames = channels.getNames();
+        }
+    }
+
+    /**
+     * The newest spectrum into the packet if it was not sent yet
+     */
+    private void drainSpectrum() {
+        SensorPacket values = currentSensorValues;
+        synchronized (imuSamples) {
+            SpectrumAnalyzer analyzer = spectrumAnalyzer;
+            if (analyzer == null || analyzer.getSpectrumCount() == sentSpectrumCount) {
+                values.spectrumTimestampNs = 0L;
+                return;
+            }
+            sentSpectrumCount = analyzer.getSpectrumCount();
+
+            int peaks = analyzer.getPeakCount();
+            if (values.spectrumPeakHz.length < peaks) {
+                values.spectrumPeakHz = new float[peaks];
+                values.spectrumPeakAmplitudes = new float[peaks];
+            }
+            for (int i = 0; i < peaks; i++) {
+                values.spectrumPeakHz[i] = analyzer.getPeakFrequencyHz(i);
+                values.spectrumPeakAmplitudes[i] = analyzer.getPeakAmplitude(i);
+            }
+            values.spectrumPeakCount = peaks;
+
+            if (values.spectrumBandRms.length != analyzer.getBandCount()) {
+                values.spectrumBandRms = new float[analyzer.getBandCount()];
+            }
+            for (int band = 0; band < values.spectrumBandRms.length; band++) {
+                values.spectrumBandRms[band] = analyzer.getBandRms(band);
+            }
+            values.spectrumBandEdgesHz = analyzer.getBandEdgesHz();
+            values.spectrumSampleRateHz = analyzer.getSampleRateHz();
+            values.spectrumTimestampNs = analyzer.getSpectrumTimestampNs();
+        }
+    }
+
+    // ============================================================
+    // Rate adaptation (sender thread)
+    // ============================================================
+
+    /**
+     * Receiver report: loss over the interval since that receiver's previous
+     * report, and the round-trip time of the echoed packet
+     */
+    private void onFeedback(StreamDestination destination, FeedbackMessage feedback) {
+        long nowNs = SystemClock.elapsedRealtimeNanos();
+        long rttNs = feedback.echoSendNs > 0L ? nowNs - feedback.echoSendNs - feedback.holdNs : 0L;
+
+        double lossRate = 0.0;
+        FeedbackMessage previous = previousFeedback.put(destination.getName(), feedback);
+        if (previous != null) {
+            long received = feedback.received - previous.received;
+            long lost = feedback.lost - previous.lost;
+            if (received >= 0L && lost > 0L) {
+                lossRate = (double) lost / (received + lost);
+            }
+        }
+        rateController.onFeedback(lossRate, rttNs, nowNs);
+    }
+
+    /**
+     * Send errors and packets dropped by a full socket buffer or send queue
+     * (rate-limit drops are deliberate and not congestion)
+     */
+    private void checkLocalCongestion(long nowNs) {
+        long errors = fanout.getErrors();
+        long overflows = 0L;
+        for (StreamDestination destination : fanout.getDestinations()) {
+            overflows += destination.getPacketsDropped() - destination.getPacketsRateLimited();
+        }
+        if (errors > lastLocalErrors || overflows > lastLocalOverflows) {
+            rateController.onLocalCongestion(nowNs);
+        }
+        lastLocalErrors = errors;
+        lastLocalOverflows = overflows;
+    }
+
+    private void pollFeedback() {
+        if (!isRunning || senderHandler == null) {
+            return;
+        }
+        fanout.poll();
+        senderHandler.postDelayed(this::pollFeedback, FEEDBACK_POLL_INTERVAL_MS);
+    }
+
+    private void syncClocks() {
+        if (!isRunning || senderHandler == null) {
+            return;
+        }
+        if (fanout.syncClocks() > 0) {
+            long deadlineMs = SystemClock.uptimeMillis() + CLOCK_SYNC_REPLY_WINDOW_MS;
+            senderHandler.postDelayed(() -> pollClockSyncReplies(deadlineMs), 1L);
+        }
+        clockSyncRounds++;
+        senderHandler.postDelayed(this::syncClocks, clockSyncRounds < CLOCK_SYNC_BURST_ROUNDS
+                ? CLOCK_SYNC_BURST_INTERVAL_MS : CLOCK_SYNC_INTERVAL_MS);
+    }
+
+    private void pollClockSyncReplies(long deadlineMs) {
+        if (!isRunning || senderHandler == null) {
+            return;
+        }
+        fanout.poll();
+        if (fanout.isClockSyncPending() && SystemClock.uptimeMillis() < deadlineMs) {
+            senderHandler.postDelayed(() -> pollClockSyncReplies(deadlineMs), 1L);
+        }
     }
 
     /**
@@ -212,25 +761,34 @@ public class SensorDataStreamer {
 
         // Send current values
         try {
-            JSONObject data = currentSensorValues.toJSON();
-            byte[] buffer = data.toString().getBytes();
+            currentSensorValues.sequence = nextSequence++;
+            currentSensorValues.timestampNs = SystemClock.elapsedRealtimeNanos();
+            drainDerived();
+            drainSpectrum();
+            JSONArray frames = drainFrameImu();
+            drainImuBatch(imuBatchEnabled ? rateController.getBatchSize() : 0);
+            byte[] buffer = packetJson.assemble(currentSensorValues, frames, imuBatch, imuCodec);
 
-            InetAddress address = InetAddress.getByName(serverHost);
-            DatagramPacket packet = new DatagramPacket(
-                    buffer, buffer.length, address, serverPort
-            );
-
-            if (socket != null && !socket.isClosed()) {
-                socket.send(packet);
-                Log.d(TAG, "Sensor data sent");
-            }
+            // One encode, one send per destination
+            fanout.send(ByteBuffer.wrap(buffer), currentSensorValues.sequence);
 
         } catch (Exception e) {
+            encodeErrors++;
             Log.e(TAG, "Error sending data: " + e.getMessage());
         }
 
+        long nowNs = SystemClock.elapsedRealtimeNanos();
+        checkLocalCongestion(nowNs);
+        rateController.update(nowNs);
+
+        long nowMs = SystemClock.elapsedRealtime();
+        if (nowMs - lastTelemetryLogMs >= TELEMETRY_LOG_INTERVAL_MS) {
+            lastTelemetryLogMs = nowMs;
+            Log.d(TAG, "📊 " + getTelemetrySummary());
+        }
+
         // Schedule next send
-        senderHandler.postDelayed(this::sendSensorData, SEND_INTERVAL_MS);
+        senderHandler.postDelayed(this::sendSensorData, rateController.getSendIntervalMs());
     }
 
     /**
@@ -239,9 +797,27 @@ public class SensorDataStreamer {
     public void setServerAddress(String host, int port) {
         this.serverHost = host;
         this.serverPort = port;
+        StreamDestination current = fanout.getDestination(DEFAULT_DESTINATION);
+        int rateLimit = current != null ? current.getMaxPacketsPerSecond() : StreamDestination.UNLIMITED;
+        fanout.addDestination(new StreamDestination(DEFAULT_DESTINATION, host, port, rateLimit));
         Log.d(TAG, "Server address updated: " + host + ":" + port);
     }
 
+    /**
+     * Sender counters: packets built, sent, dropped by policy (rate limit,
+     * full buffer or queue), backfilled, errors, the per-destination send
+     * time and the adaptive rate
+     */
+    public String getTelemetrySummary() {
+        return "packets=" + nextSequence
+                + " sent=" + fanout.getPacketsSent()
+                + " dropped=" + fanout.getPacketsDropped()
+                + " backfilled=" + fanout.getPacketsBackfilled()
+                + " errors=" + (fanout.getErrors() + encodeErrors)
+                + " send " + fanout.getSendDurations().summary()
+                + " " + rateController;
+    }
+
     /**
      * Check if streaming is active
      */
@@ -252,7 +828,7 @@ public class SensorDataStreamer {
     /**
      * Get current sensor values
      */
-    public SensorValues getCurrentValues() {
+    public SensorPacket getCurrentValues() {
         return currentSensorValues;
     }
 }
@@ -6,6 +6,8 @@ import android.os.Handler;
 import android.os.Looper;
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.obs.mobile.camera.CameraCapabilityCache;
+
 /**
  * SplashActivity - Entry point of OBS Mobile application
  *
@@ -26,6 +28,9 @@ public class SplashActivity extends AppCompatActivity {
             getSupportActionBar().hide();
         }
 
+        // Read camera capabilities in the background while the splash is shown
+        CameraCapabilityCache.getInstance(this).warmUp();
+
         // Navigate to Main Menu after delay
         new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
             @Override
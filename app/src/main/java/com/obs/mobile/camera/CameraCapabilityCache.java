@@ -0,0 +1,210 @@
+package com.obs.mobile.camera;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Range;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * CameraCapabilityCache - Process-wide cache of camera IDs and capabilities
+ *
+ * getCameraIdList() and getCameraCharacteristics() are binder calls into the
+ * camera service. Camera characteristics never change for a camera ID, so
+ * they are read once (off the main thread, started from SplashActivity) and
+ * every open and camera switch reads from here instead.
+ *
+ * Usage:
+ *      CameraCapabilityCache.getInstance(context).warmUp();      // app start
+ *      String id = CameraCapabilityCache.getInstance(context).findCameraId(true);
+ *      CameraCapabilityCache.CameraInfo info = cache.getInfo(id);
+ */
+public class CameraCapabilityCache {
+
+    private static final String TAG = "CameraCapabilityCache";
+
+    private static volatile CameraCapabilityCache instance;
+
+    private final CameraManager cameraManager;
+    private volatile Map<String, CameraInfo> cameras;
+
+    /**
+     * Everything we need to know about one camera, read once
+     */
+    public static class CameraInfo {
+        public final String id;
+        public final CameraCharacteristics characteristics;
+        public final int lensFacing;
+        public final int sensorOrientation;
+        public final StreamConfigurationMap streamConfigurationMap;
+        public final Range<Integer>[] aeFpsRanges;
+        public final int[] afModes;
+        public final int[] aeModes;
+        public final int[] faceDetectModes;
+        public final int maxFaceCount;
+        public final int bestFaceDetectMode;
+        public final Rect activeArraySize;
+        public final int timestampSource;
+
+        CameraInfo(String id, CameraCharacteristics characteristics) {
+            this.id = id;
+            this.characteristics = characteristics;
+
+            Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+            this.lensFacing = facing != null ? facing : CameraCharacteristics.LENS_FACING_EXTERNAL;
+
+            Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+            this.sensorOrientation = orientation != null ? orientation : 0;
+
+            this.streamConfigurationMap = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            this.aeFpsRanges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+            this.afModes = orEmpty(characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES));
+            this.aeModes = orEmpty(characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_MODES));
+            this.faceDetectModes = orEmpty(characteristics.get(
+                    CameraCharacteristics.STATISTICS_INFO_AVAILABLE_FACE_DETECT_MODES));
+
+            Integer faceCount = characteristics.get(CameraCharacteristics.STATISTICS_INFO_MAX_FACE_COUNT);
+            this.maxFaceCount = faceCount != null ? faceCount : 0;
+            this.bestFaceDetectMode = chooseFaceDetectMode(faceDetectModes);
+            this.activeArraySize = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+
+            Integer source = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+            this.timestampSource = source != null ? source : CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_UNKNOWN;
+        }
+
+        /**
+         * True when SENSOR_TIMESTAMP is on the elapsedRealtimeNanos clock (same
+         * as sensor events), false when it is on the uptime (System.nanoTime) clock
+         */
+        public boolean isRealtimeTimestamp() {
+            return timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+        }
+
+        public boolean isFront() {
+            return lensFacing == CameraCharacteristics.LENS_FACING_FRONT;
+        }
+
+        public boolean supportsAfMode(int mode) {
+            return contains(afModes, mode);
+        }
+
+        public boolean supportsAeMode(int mode) {
+            return contains(aeModes, mode);
+        }
+
+        private static boolean contains(int[] values, int value) {
+            for (int v : values) {
+                if (v == value) return true;
+            }
+            return false;
+        }
+
+        private static int[] orEmpty(int[] values) {
+            return values != null ? values : new int[0];
+        }
+
+        /**
+         * Best face detect mode from the supported list (FULL > SIMPLE > OFF)
+         */
+        private static int chooseFaceDetectMode(int[] modes) {
+            int best = CaptureRequest.STATISTICS_FACE_DETECT_MODE_OFF;
+            for (int mode : modes) {
+                if (mode == CaptureRequest.STATISTICS_FACE_DETECT_MODE_FULL) {
+                    return mode;
+                }
+                if (mode == CaptureRequest.STATISTICS_FACE_DETECT_MODE_SIMPLE) {
+                    best = mode;
+                }
+            }
+            return best;
+        }
+    }
+
+    private CameraCapabilityCache(Context context) {
+        this.cameraManager = (CameraManager) context.getApplicationContext()
+                .getSystemService(Context.CAMERA_SERVICE);
+    }
+
+    public static CameraCapabilityCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (CameraCapabilityCache.class) {
+                if (instance == null) {
+                    instance = new CameraCapabilityCache(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Populate the cache on a background thread, safe to call more than once
+     */
+    public void warmUp() {
+        if (cameras != null) return;
+        Thread thread = new Thread(this::populate, "CameraCapabilityCache");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Camera ID for the requested facing, or the first camera when there is none
+     */
+    public String findCameraId(boolean front) {
+        Map<String, CameraInfo> all = getCameras();
+        if (all.isEmpty()) return null;
+
+        int wanted = front ? CameraCharacteristics.LENS_FACING_FRONT : CameraCharacteristics.LENS_FACING_BACK;
+        for (CameraInfo info : all.values()) {
+            if (info.lensFacing == wanted) return info.id;
+        }
+        return all.keySet().iterator().next();
+    }
+
+    /**
+     * Cached capabilities for a camera ID, or null if the ID is unknown
+     */
+    public CameraInfo getInfo(String cameraId) {
+        return cameraId != null ? getCameras().get(cameraId) : null;
+    }
+
+    /**
+     * All cameras in camera-ID-list order, populated on first use if warmUp()
+     * has not finished yet
+     */
+    public Map<String, CameraInfo> getCameras() {
+        Map<String, CameraInfo> current = cameras;
+        return current != null ? current : populate();
+    }
+
+    private synchronized Map<String, CameraInfo> populate() {
+        if (cameras != null) return cameras;
+
+        long start = SystemClock.elapsedRealtime();
+        Map<String, CameraInfo> result = new LinkedHashMap<>();
+        if (cameraManager != null) {
+            try {
+                for (String id : cameraManager.getCameraIdList()) {
+                    result.put(id, new CameraInfo(id, cameraManager.getCameraCharacteristics(id)));
+                }
+            } catch (CameraAccessException | RuntimeException e) {
+                // Not cached, the next lookup tries again
+                Log.e(TAG, "Error reading camera characteristics: " + e.getMessage());
+                return Collections.unmodifiableMap(result);
+            }
+        }
+
+        cameras = Collections.unmodifiableMap(result);
+        Log.d(TAG, "Cached " + result.size() + " cameras in "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
+        return cameras;
+    }
+}
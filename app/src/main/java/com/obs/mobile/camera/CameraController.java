@@ -0,0 +1,1006 @@
+package com.obs.mobile.camera;
+
+import android.content.Context;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureFailure;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.OutputConfiguration;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * CameraController - Event-driven Camera2 state machine
+ *
+ * Replaces the "close, then postDelayed(openCamera, 300)" pattern. Every
+ * transition is driven by a Camera2 callback:
+ *
+ *      CLOSED -> OPENING -> CONFIGURING -> STREAMING -> CLOSING -> CLOSED
+ *
+ * A camera switch closes the current device and the next open is chained
+ * from CameraDevice.StateCallback.onClosed(), with no fixed sleeps. The
+ * stream configuration is computed once per camera.
+ *
+ * Preview outputs are attached and detached while the device stays open. On
+ * API 28+ the session uses a single deferred, surface-sharing
+ * OutputConfiguration: a new TextureView surface is added with
+ * updateOutputConfiguration() and the old one is removed afterwards, once
+ * no request in flight targets it. That needs the old surface to still be
+ * attached when the new one arrives - CameraEngineService holds on to the
+ * last preview for that - because detaching the last target rebuilds the
+ * session. Moving the preview between full-screen and the floating window
+ * then never stops the stream. Older devices rebuild the capture session
+ * (but still keep the CameraDevice open).
+ *
+ * When the device can keep both cameras open at the same time
+ * (CameraManager.getConcurrentCameraIds(), API 30+) and pre-open is enabled,
+ * the other camera is opened in the background while streaming, so a switch
+ * only has to build a new capture session.
+ *
+ * Frame listeners receive every capture result, independent of the request
+ * configurator installed by the current UI.
+ *
+ * Open, switch and hand-off latency is measured from the request (open(),
+ * or attachPreview() while streaming) to the first completed capture of a
+ * repeating request built after it, i.e. one that targets the new surface,
+ * logged as "first frame after N ms" and reported to
+ * Listener.onFirstFrame().
+ *
+ * All Camera2 work happens on the controller's own camera thread; public
+ * methods can be called from any thread. A single instance is owned by
+ * CameraEngineService and shared by every UI.
+ */
+public class CameraController {
+
+    private static final String TAG = "CameraController";
+
+    // release() quits the camera thread at the latest this long after closing
+    private static final long RELEASE_TIMEOUT_MS = 2000L;
+
+    /** Passed to Listener.onCameraError() when the camera was disconnected */
+    public static final int ERROR_DISCONNECTED = -1;
+
+    public enum State { CLOSED, OPENING, CONFIGURING, STREAMING, CLOSING }
+
+    /**
+     * Fills in the repeating request for a camera, applied to a fresh
+     * TEMPLATE_PREVIEW builder every time the request is rebuilt
+     */
+    public interface RequestConfigurator {
+        void configure(CaptureRequest.Builder builder, CameraCapabilityCache.CameraInfo cameraInfo);
+
+        /**
+         * Optional per-camera capture callback (e.g. face detection)
+         */
+        default CameraCaptureSession.CaptureCallback createCaptureCallback(
+                CameraCapabilityCache.CameraInfo cameraInfo) {
+            return null;
+        }
+    }
+
+    /**
+     * Continuous AF when available, auto exposure - used when no UI installs its own
+     */
+    public static final RequestConfigurator DEFAULT_REQUEST_CONFIGURATOR = (builder, cameraInfo) -> {
+        if (cameraInfo.supportsAfMode(CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE)) {
+            builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+        }
+        builder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
+    };
+
+    /**
+     * Modifies the current repeating request on the camera thread
+     */
+    public interface RequestUpdate {
+        void apply(CaptureRequest.Builder builder);
+    }
+
+    /**
+     * State notifications, called on the camera thread
+     */
+    public interface Listener {
+        void onCameraOpened(String cameraId);
+        void onPreviewStarted(CameraCapabilityCache.CameraInfo cameraInfo,
+                              StreamConfigurationSelector.StreamConfiguration configuration);
+        void onFirstFrame(String cameraId, long latencyMs);
+        void onCameraError(String cameraId, int error);
+
+        /**
+         * A capture session closed, also when it is only being rebuilt:
+         * per-session results (e.g. faces) are stale until the next frame
+         */
+        default void onSessionClosed(String cameraId) {}
+    }
+
+    private final CameraManager cameraManager;
+    private final CameraCapabilityCache capabilityCache;
+
+    private HandlerThread cameraThread;
+    private Handler cameraHandler;
+
+    // State - only touched on the camera thread
+    private State state = State.CLOSED;
+    private String openingCameraId;
+    private String pendingCameraId;
+    private boolean closeWhenOpened = false;
+    private CameraDevice cameraDevice;
+    private CameraCaptureSession captureSession;
+    private CameraCaptureSession sessionToReplace;
+    private CaptureRequest.Builder requestBuilder;
+    private volatile CameraCapabilityCache.CameraInfo cameraInfo;
+    private CameraCaptureSession.CaptureCallback captureCallback;
+    private final List<CameraCaptureSession.CaptureCallback> frameListeners = new CopyOnWriteArrayList<>();
+
+    // Pre-opened second camera
+    private boolean preOpenEnabled = false;
+    private CameraDevice standbyDevice;
+    private String standbyCameraId;
+
+    // Preview targets, attached and detached while the device stays open
+    private final Map<SurfaceTexture, Surface> previewTargets = new LinkedHashMap<>();
+    private final List<Surface> surfacesToRemove = new ArrayList<>();
+    private final List<SurfaceTexture> texturesToRelease = new ArrayList<>();
+    private OutputConfiguration previewOutput;
+    private boolean previewOutputFinalized = false;
+    private int viewWidth;
+    private int viewHeight;
+    private StreamConfigurationSelector.Policy policy = StreamConfigurationSelector.Policy.LOW_LATENCY;
+    private volatile StreamConfigurationSelector.StreamConfiguration streamConfiguration;
+    private final Map<String, StreamConfigurationSelector.StreamConfiguration> configurations = new HashMap<>();
+
+    // Requests are tagged with a generation so we know when old targets are out of flight
+    private int requestGeneration = 0;
+    private int removalGeneration = -1;
+
+    private RequestConfigurator requestConfigurator = DEFAULT_REQUEST_CONFIGURATOR;
+    private Listener listener;
+    private Runnable idleListener;
+    private volatile int attachedPreviewCount = 0;
+
+    // Devices opened and not yet reported by onClosed(); release() quits the thread once this is 0
+    private int openDevices = 0;
+    private boolean quitWhenClosed = false;
+
+    // Latency measurement
+    private long requestStartNanos = 0L;
+    private int firstFrameGeneration = -1;
+
+    public CameraController(Context context) {
+        this.cameraManager = (CameraManager) context.getApplicationContext()
+                .getSystemService(Context.CAMERA_SERVICE);
+        this.capabilityCache = CameraCapabilityCache.getInstance(context);
+    }
+
+    /**
+     * Install the request settings, null restores the defaults. Applied
+     * immediately when streaming.
+     */
+    public void setRequestConfigurator(RequestConfigurator configurator) {
+        post(() -> {
+            requestConfigurator = configurator != null ? configurator : DEFAULT_REQUEST_CONFIGURATOR;
+            if (state == State.STREAMING) {
+                rebuildRequest();
+            }
+        });
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Receive every capture result regardless of which UI configured the request
+     * (frame timestamps, metadata). Called on the camera thread.
+     */
+    public void addFrameListener(CameraCaptureSession.CaptureCallback frameListener) {
+        if (!frameListeners.contains(frameListener)) {
+            frameListeners.add(frameListener);
+        }
+    }
+
+    public void removeFrameListener(CameraCaptureSession.CaptureCallback frameListener) {
+        frameListeners.remove(frameListener);
+    }
+
+    /**
+     * Called on the camera thread when the last preview target is detached
+     */
+    public void setIdleListener(Runnable idleListener) {
+        this.idleListener = idleListener;
+    }
+
+    /**
+     * Keep the other camera open while streaming so a switch skips the device open.
+     * Only takes effect on devices that support concurrent cameras (API 30+).
+     */
+    public void setPreOpenEnabled(boolean enabled) {
+        post(() -> {
+            preOpenEnabled = enabled;
+            if (!enabled) {
+                closeStandby();
+            } else if (state == State.STREAMING) {
+                preOpenStandby();
+            }
+        });
+    }
+
+    /**
+     * Show the preview in a SurfaceTexture. The size and policy of the first
+     * attached view decide the stream configuration; later views get the same
+     * buffer size so they can share the output.
+     */
+    public void attachPreview(SurfaceTexture texture, int width, int height,
+                              StreamConfigurationSelector.Policy policy) {
+        post(() -> {
+            if (previewTargets.containsKey(texture)) return;
+
+            if (previewTargets.isEmpty() && state == State.CLOSED) {
+                viewWidth = width;
+                viewHeight = height;
+                if (policy != this.policy) configurations.clear();
+                this.policy = policy;
+            }
+            if (streamConfiguration != null) {
+                texture.setDefaultBufferSize(streamConfiguration.previewSize.getWidth(),
+                        streamConfiguration.previewSize.getHeight());
+            }
+
+            Surface surface = new Surface(texture);
+            previewTargets.put(texture, surface);
+            attachedPreviewCount = previewTargets.size();
+            Log.d(TAG, "Preview attached (" + previewTargets.size() + " targets)");
+
+            if (state == State.STREAMING) {
+                startLatencyMeasurement();
+                if (!addSharedSurface(surface)) {
+                    createSession();
+                    return;
+                }
+                rebuildRequest();
+            }
+        });
+    }
+
+    /**
+     * Stop showing the preview in a SurfaceTexture. The camera stays open.
+     *
+     * @param releaseTexture release the SurfaceTexture once the camera no
+     *                       longer renders into it (pass true when the
+     *                       TextureView listener returned false from
+     *                       onSurfaceTextureDestroyed)
+     */
+    public void detachPreview(SurfaceTexture texture, boolean releaseTexture) {
+        post(() -> {
+            Surface surface = previewTargets.remove(texture);
+            attachedPreviewCount = previewTargets.size();
+            if (surface == null) {
+                if (releaseTexture) texture.release();
+                return;
+            }
+            Log.d(TAG, "Preview detached (" + previewTargets.size() + " targets)");
+
+            surfacesToRemove.add(surface);
+            if (releaseTexture) texturesToRelease.add(texture);
+
+            if (state == State.STREAMING) {
+                if (previewOutputFinalized && !previewTargets.isEmpty()) {
+                    // Removed from the OutputConfiguration once no request in flight targets it
+                    rebuildRequest();
+                    removalGeneration = requestGeneration;
+                } else {
+                    // Not finalized yet, or the last target: a shared output cannot
+                    // drop its last surface, and with no repeating request no frame
+                    // would show it out of flight. Rebuild the session instead; the
+                    // surface is released once the old session has closed.
+                    createSession();
+                }
+            } else if (state != State.CONFIGURING) {
+                // A session being configured may still use it - released with that session
+                releaseRemovedSurfaces();
+            }
+
+            if (previewTargets.isEmpty() && idleListener != null) {
+                idleListener.run();
+            }
+        });
+    }
+
+    /**
+     * Configuration of the running stream (all attached targets share its
+     * preview size), null before the first session
+     */
+    public StreamConfigurationSelector.StreamConfiguration getStreamConfiguration() {
+        return streamConfiguration;
+    }
+
+    /**
+     * Capabilities of the open camera, null when closed
+     */
+    public CameraCapabilityCache.CameraInfo getCameraInfo() {
+        return cameraInfo;
+    }
+
+    public boolean hasPreview() {
+        return attachedPreviewCount > 0;
+    }
+
+    /**
+     * Open the front or back camera. If another camera is open this is a
+     * switch: the current camera is closed and the new one opened from onClosed().
+     */
+    public void open(boolean front) {
+        post(() -> {
+            String cameraId = capabilityCache.findCameraId(front);
+            if (cameraId == null) {
+                Log.e(TAG, "No camera available");
+                return;
+            }
+            requestCamera(cameraId);
+        });
+    }
+
+    /**
+     * Close the camera (and the pre-opened one), keeping the camera thread alive
+     */
+    public void close() {
+        post(() -> {
+            pendingCameraId = null;
+            closeStandby();
+            closeActive();
+        });
+    }
+
+    /**
+     * Close everything and stop the camera thread. The thread quits from the
+     * last onClosed(), so the close callbacks still run on it.
+     */
+    public void release() {
+        close();
+        post(() -> {
+            for (Surface surface : previewTargets.values()) {
+                surface.release();
+            }
+            previewTargets.clear();
+            attachedPreviewCount = 0;
+            releaseRemovedSurfaces();
+
+            quitWhenClosed = true;
+            quitIfReleased();
+            // A device that never reports onClosed() must not keep the thread alive
+            if (cameraHandler != null) cameraHandler.postDelayed(this::quitThread, RELEASE_TIMEOUT_MS);
+        });
+    }
+
+    /**
+     * Change the repeating request, e.g. AF or AE mode
+     */
+    public void updateRepeatingRequest(RequestUpdate update) {
+        post(() -> {
+            if (state != State.STREAMING || requestBuilder == null) return;
+            update.apply(requestBuilder);
+            setRepeating();
+        });
+    }
+
+    /**
+     * Send a one-shot trigger request (e.g. AF_TRIGGER_START), then reset the
+     * builder and continue the repeating request
+     */
+    public void triggerThenRepeat(RequestUpdate trigger, RequestUpdate reset) {
+        post(() -> {
+            if (state != State.STREAMING || requestBuilder == null) return;
+            try {
+                trigger.apply(requestBuilder);
+                captureSession.capture(requestBuilder.build(), frameCallback, cameraHandler);
+                reset.apply(requestBuilder);
+                setRepeating();
+            } catch (CameraAccessException | IllegalStateException e) {
+                Log.w(TAG, "Trigger request failed: " + e.getMessage());
+            }
+        });
+    }
+
+    public boolean isStreaming() {
+        return state == State.STREAMING;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // ============================================================
+    // State machine (camera thread)
+    // ============================================================
+
+    private void requestCamera(String cameraId) {
+        startLatencyMeasurement();
+
+        switch (state) {
+            case CLOSED:
+                openDevice(cameraId);
+                break;
+
+            case OPENING:
+                if (cameraId.equals(openingCameraId)) {
+                    closeWhenOpened = false;
+                    pendingCameraId = null;
+                    return;
+                }
+                pendingCameraId = cameraId;
+                closeActive();
+                break;
+
+            case CONFIGURING:
+            case STREAMING:
+                if (cameraDevice != null && cameraId.equals(cameraDevice.getId())) {
+                    pendingCameraId = null;
+                    return;
+                }
+                if (standbyDevice != null && cameraId.equals(standbyCameraId)) {
+                    swapToStandby();
+                } else {
+                    pendingCameraId = cameraId;
+                    closeActive();
+                }
+                break;
+
+            case CLOSING:
+                // Opened from onClosed()
+                pendingCameraId = cameraId;
+                break;
+        }
+    }
+
+    private void openDevice(String cameraId) {
+        if (standbyDevice != null && cameraId.equals(standbyCameraId)) {
+            cameraDevice = standbyDevice;
+            standbyDevice = null;
+            standbyCameraId = null;
+            Log.d(TAG, "Using pre-opened camera " + cameraId);
+            onDeviceReady();
+            return;
+        }
+
+        try {
+            state = State.OPENING;
+            openingCameraId = cameraId;
+            closeWhenOpened = false;
+            Log.d(TAG, "Opening camera " + cameraId);
+            cameraManager.openCamera(cameraId, deviceCallback, cameraHandler);
+            openDevices++;
+        } catch (CameraAccessException | SecurityException | IllegalArgumentException e) {
+            Log.e(TAG, "Error opening camera " + cameraId + ": " + e.getMessage());
+            state = State.CLOSED;
+            openingCameraId = null;
+            if (listener != null) listener.onCameraError(cameraId, CameraDevice.StateCallback.ERROR_CAMERA_DEVICE);
+        }
+    }
+
+    private void closeActive() {
+        switch (state) {
+            case OPENING:
+                // Device not delivered yet - closed as soon as onOpened() arrives
+                state = State.CLOSING;
+                closeWhenOpened = true;
+                break;
+
+            case CONFIGURING:
+            case STREAMING:
+                state = State.CLOSING;
+                resetSession();
+                closeStandby();
+                cameraDevice.close();
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private void resetSession() {
+        removalGeneration = -1;
+        captureSession = null;
+        sessionToReplace = null;
+        requestBuilder = null;
+        previewOutput = null;
+        previewOutputFinalized = false;
+        releaseRemovedSurfaces();
+    }
+
+    private void onDeviceReady() {
+        cameraInfo = capabilityCache.getInfo(cameraDevice.getId());
+        if (listener != null) listener.onCameraOpened(cameraDevice.getId());
+        createSession();
+    }
+
+    /**
+     * Build a capture session for the current device. Uses a deferred,
+     * surface-sharing output on API 28+ so targets can be swapped later
+     * without another session.
+     */
+    private void createSession() {
+        if (cameraDevice == null || cameraInfo == null) return;
+        if (sessionToReplace != null) return;
+
+        // Old session still owns the surfaces - continue from its onClosed()
+        if (captureSession != null) {
+            sessionToReplace = captureSession;
+            captureSession = null;
+            requestBuilder = null;
+            removalGeneration = -1;
+            state = State.CONFIGURING;
+            sessionToReplace.close();
+            return;
+        }
+
+        state = State.CONFIGURING;
+        previewOutput = null;
+        previewOutputFinalized = false;
+        releaseRemovedSurfaces();
+
+        try {
+            streamConfiguration = configurations.get(cameraInfo.id);
+            if (streamConfiguration == null) {
+                streamConfiguration = StreamConfigurationSelector.select(cameraInfo, viewWidth, viewHeight, policy);
+                configurations.put(cameraInfo.id, streamConfiguration);
+                Log.d(TAG, "Stream configuration for camera " + cameraInfo.id + ": " + streamConfiguration);
+            }
+            for (SurfaceTexture texture : previewTargets.keySet()) {
+                texture.setDefaultBufferSize(streamConfiguration.previewSize.getWidth(),
+                        streamConfiguration.previewSize.getHeight());
+            }
+
+            final CameraDevice sessionDevice = cameraDevice;
+            CameraCaptureSession.StateCallback sessionCallback = new CameraCaptureSession.StateCallback() {
+                @Override
+                public void onConfigured(@NonNull CameraCaptureSession session) {
+                    if (sessionDevice != cameraDevice || state != State.CONFIGURING) {
+                        session.close();
+                        return;
+                    }
+                    captureSession = session;
+                    if (previewOutput != null) {
+                        finalizeSharedOutput();
+                    }
+                    if (rebuildRequest()) {
+                        state = State.STREAMING;
+                        Log.d(TAG, "✅ Preview started on camera " + sessionDevice.getId());
+                        if (listener != null) listener.onPreviewStarted(cameraInfo, streamConfiguration);
+                        preOpenStandby();
+                    }
+                }
+
+                @Override
+                public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+                    Log.e(TAG, "Failed to configure camera session");
+                    if (sessionDevice == cameraDevice && listener != null) {
+                        listener.onCameraError(sessionDevice.getId(),
+                                CameraDevice.StateCallback.ERROR_CAMERA_SERVICE);
+                    }
+                }
+
+                @Override
+                public void onClosed(@NonNull CameraCaptureSession session) {
+                    if (listener != null) listener.onSessionClosed(sessionDevice.getId());
+                    // The new session is built once the old one let go of the surfaces
+                    if (session == sessionToReplace) {
+                        sessionToReplace = null;
+                        createSession();
+                    }
+                }
+            };
+
+            if (supportsSurfaceSwap()) {
+                previewOutput = new OutputConfiguration(streamConfiguration.previewSize, SurfaceTexture.class);
+                previewOutput.enableSurfaceSharing();
+                cameraDevice.createCaptureSessionByOutputConfigurations(
+                        Collections.singletonList(previewOutput), sessionCallback, cameraHandler);
+            } else {
+                if (previewTargets.isEmpty()) {
+                    // Nothing to show yet - a session is built when a preview is attached
+                    state = State.STREAMING;
+                    return;
+                }
+                cameraDevice.createCaptureSession(new ArrayList<>(previewTargets.values()),
+                        sessionCallback, cameraHandler);
+            }
+        } catch (CameraAccessException | IllegalStateException | IllegalArgumentException e) {
+            Log.e(TAG, "createSession error: " + e.getMessage());
+        }
+    }
+
+    private static boolean supportsSurfaceSwap() {
+        // updateOutputConfiguration() and OutputConfiguration.removeSurface() are API 28
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P;
+    }
+
+    /**
+     * First surfaces for the deferred output, sent with finalizeOutputConfigurations()
+     */
+    private void finalizeSharedOutput() {
+        if (previewTargets.isEmpty()) return;
+        try {
+            for (Surface surface : previewTargets.values()) {
+                previewOutput.addSurface(surface);
+            }
+            captureSession.finalizeOutputConfigurations(Collections.singletonList(previewOutput));
+            previewOutputFinalized = true;
+        } catch (CameraAccessException | IllegalStateException | IllegalArgumentException e) {
+            Log.e(TAG, "Failed to finalize preview output: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Add a surface to the running session. Returns false when the session has
+     * to be rebuilt instead.
+     */
+    private boolean addSharedSurface(Surface surface) {
+        if (previewOutput == null || captureSession == null) return false;
+        if (!previewOutputFinalized) {
+            finalizeSharedOutput();
+            return previewOutputFinalized;
+        }
+        if (previewOutput.getSurfaces().size() >= previewOutput.getMaxSharedSurfaceCount()) {
+            return false;
+        }
+        try {
+            previewOutput.addSurface(surface);
+            captureSession.updateOutputConfiguration(previewOutput);
+            return true;
+        } catch (CameraAccessException | IllegalStateException | IllegalArgumentException e) {
+            Log.w(TAG, "Could not add shared surface: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Remove detached surfaces from the shared output, once requests that
+     * still targeted them are done
+     */
+    private void removeSharedSurfaces() {
+        removalGeneration = -1;
+        if (previewOutput != null && captureSession != null) {
+            try {
+                for (Surface surface : surfacesToRemove) {
+                    // Not part of this output if it was detached before the output was finalized
+                    if (previewOutput.getSurfaces().contains(surface)) {
+                        previewOutput.removeSurface(surface);
+                    }
+                }
+                captureSession.updateOutputConfiguration(previewOutput);
+            } catch (CameraAccessException | IllegalStateException | IllegalArgumentException e) {
+                // The session may still render into them - released once it has closed
+                Log.w(TAG, "Could not remove shared surface, rebuilding the session: " + e.getMessage());
+                createSession();
+                return;
+            }
+        }
+        releaseRemovedSurfaces();
+    }
+
+    private void releaseRemovedSurfaces() {
+        for (Surface surface : surfacesToRemove) {
+            surface.release();
+        }
+        surfacesToRemove.clear();
+        for (SurfaceTexture texture : texturesToRelease) {
+            texture.release();
+        }
+        texturesToRelease.clear();
+    }
+
+    /**
+     * Build the repeating request for the attached targets from scratch
+     */
+    private boolean rebuildRequest() {
+        if (captureSession == null || cameraDevice == null) return false;
+
+        try {
+            if (previewTargets.isEmpty()) {
+                // Device and session stay up, frames are simply not produced
+                captureSession.stopRepeating();
+                requestBuilder = null;
+                return true;
+            }
+
+            requestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+            for (Surface surface : previewTargets.values()) {
+                requestBuilder.addTarget(surface);
+            }
+            if (streamConfiguration.fpsRange != null) {
+                requestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, streamConfiguration.fpsRange);
+            }
+            requestConfigurator.configure(requestBuilder, cameraInfo);
+            captureCallback = requestConfigurator.createCaptureCallback(cameraInfo);
+            return setRepeating();
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(TAG, "Failed to build request: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean setRepeating() {
+        try {
+            requestGeneration++;
+            requestBuilder.setTag(requestGeneration);
+            captureSession.setRepeatingRequest(requestBuilder.build(), frameCallback, cameraHandler);
+            return true;
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(TAG, "Failed to set repeating request: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Switch to the pre-opened camera: only the capture session is rebuilt
+     */
+    private void swapToStandby() {
+        CameraDevice previous = cameraDevice;
+
+        cameraDevice = standbyDevice;
+        standbyDevice = null;
+        standbyCameraId = null;
+        cameraInfo = capabilityCache.getInfo(cameraDevice.getId());
+        Log.d(TAG, "Swapping to pre-opened camera " + cameraDevice.getId());
+        if (listener != null) listener.onCameraOpened(cameraDevice.getId());
+
+        // Waits for the old session to release the surfaces if there is one
+        createSession();
+
+        // Reopened as standby from onClosed()
+        previous.close();
+    }
+
+    private void preOpenStandby() {
+        if (!preOpenEnabled || standbyDevice != null || standbyCameraId != null || cameraDevice == null) return;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R || cameraInfo == null) return;
+
+        String otherId = null;
+        for (CameraCapabilityCache.CameraInfo info : capabilityCache.getCameras().values()) {
+            if (!info.id.equals(cameraDevice.getId()) && info.isFront() != cameraInfo.isFront()) {
+                otherId = info.id;
+                break;
+            }
+        }
+        if (otherId == null || !supportsConcurrent(cameraDevice.getId(), otherId)) return;
+
+        try {
+            standbyCameraId = otherId;
+            Log.d(TAG, "Pre-opening camera " + otherId);
+            cameraManager.openCamera(otherId, deviceCallback, cameraHandler);
+            openDevices++;
+        } catch (CameraAccessException | SecurityException | IllegalArgumentException e) {
+            Log.w(TAG, "Could not pre-open camera " + otherId + ": " + e.getMessage());
+            standbyCameraId = null;
+        }
+    }
+
+    private boolean supportsConcurrent(String firstId, String secondId) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) return false;
+        try {
+            for (Set<String> combination : cameraManager.getConcurrentCameraIds()) {
+                if (combination.contains(firstId) && combination.contains(secondId)) return true;
+            }
+        } catch (CameraAccessException e) {
+            Log.w(TAG, "Could not query concurrent cameras: " + e.getMessage());
+        }
+        return false;
+    }
+
+    private void closeStandby() {
+        if (standbyDevice != null) {
+            standbyDevice.close();
+            standbyDevice = null;
+        }
+        // An open still in flight is closed in onOpened()
+        standbyCameraId = null;
+    }
+
+    private boolean isStandbyOpen(CameraDevice camera) {
+        return standbyCameraId != null && camera.getId().equals(standbyCameraId)
+                && camera != cameraDevice && state != State.OPENING;
+    }
+
+    private final CameraDevice.StateCallback deviceCallback = new CameraDevice.StateCallback() {
+        @Override
+        public void onOpened(@NonNull CameraDevice camera) {
+            if (isStandbyOpen(camera) && standbyDevice == null) {
+                standbyDevice = camera;
+                Log.d(TAG, "Camera " + camera.getId() + " pre-opened");
+                return;
+            }
+
+            if (state == State.CLOSING && closeWhenOpened && camera.getId().equals(openingCameraId)) {
+                // Closed before it finished opening - onClosed() continues with the pending camera
+                closeWhenOpened = false;
+                cameraDevice = camera;
+                camera.close();
+                return;
+            }
+
+            if (state != State.OPENING || !camera.getId().equals(openingCameraId)) {
+                // Stale open (e.g. standby no longer wanted)
+                camera.close();
+                return;
+            }
+
+            Log.d(TAG, "Camera " + camera.getId() + " opened");
+            cameraDevice = camera;
+            openingCameraId = null;
+            onDeviceReady();
+        }
+
+        @Override
+        public void onClosed(@NonNull CameraDevice camera) {
+            openDevices--;
+            handleDeviceClosed(camera);
+            quitIfReleased();
+        }
+
+        @Override
+        public void onDisconnected(@NonNull CameraDevice camera) {
+            Log.d(TAG, "Camera " + camera.getId() + " disconnected");
+            handleDeviceFailure(camera, ERROR_DISCONNECTED);
+        }
+
+        @Override
+        public void onError(@NonNull CameraDevice camera, int error) {
+            Log.e(TAG, "Camera " + camera.getId() + " error: " + error);
+            handleDeviceFailure(camera, error);
+        }
+    };
+
+    private void handleDeviceClosed(CameraDevice camera) {
+        if (camera == standbyDevice) {
+            standbyDevice = null;
+            standbyCameraId = null;
+            return;
+        }
+        if (camera != cameraDevice) {
+            // Device we swapped away from - keep it warm as the next standby
+            if (state == State.STREAMING) preOpenStandby();
+            return;
+        }
+
+        Log.d(TAG, "Camera " + camera.getId() + " closed");
+        cameraDevice = null;
+        cameraInfo = null;
+        openingCameraId = null;
+        state = State.CLOSED;
+        resetSession();
+
+        String next = pendingCameraId;
+        pendingCameraId = null;
+        if (next != null) {
+            openDevice(next);
+        }
+    }
+
+    private void handleDeviceFailure(CameraDevice camera, int error) {
+        if (camera == standbyDevice || (standbyDevice == null && camera.getId().equals(standbyCameraId)
+                && camera != cameraDevice && state != State.OPENING)) {
+            standbyDevice = null;
+            standbyCameraId = null;
+            camera.close();
+            return;
+        }
+
+        boolean active = camera == cameraDevice || camera.getId().equals(openingCameraId);
+        if (active) {
+            cameraDevice = camera;
+            state = State.CLOSING;
+            captureSession = null;
+            requestBuilder = null;
+            if (listener != null) listener.onCameraError(camera.getId(), error);
+        }
+        camera.close();
+    }
+
+    // ============================================================
+    // Latency measurement
+    // ============================================================
+
+    private void startLatencyMeasurement() {
+        requestStartNanos = SystemClock.elapsedRealtimeNanos();
+        // Any frame from a request built after this point counts
+        firstFrameGeneration = requestGeneration + 1;
+    }
+
+    /**
+     * Wraps the per-camera capture callback: times the first frame and
+     * removes detached surfaces once they are out of flight
+     */
+    private final CameraCaptureSession.CaptureCallback frameCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureStarted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                     long timestamp, long frameNumber) {
+            if (captureCallback != null) {
+                captureCallback.onCaptureStarted(session, request, timestamp, frameNumber);
+            }
+        }
+
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            Object tag = request.getTag();
+            int generation = tag instanceof Integer ? (Integer) tag : 0;
+
+            if (firstFrameGeneration >= 0 && generation >= firstFrameGeneration && session == captureSession) {
+                firstFrameGeneration = -1;
+                long latencyMs = (SystemClock.elapsedRealtimeNanos() - requestStartNanos) / 1_000_000L;
+                String cameraId = session.getDevice().getId();
+                Log.d(TAG, "⏱ Camera " + cameraId + " first frame after " + latencyMs + " ms");
+                if (listener != null) listener.onFirstFrame(cameraId, latencyMs);
+            }
+
+            if (removalGeneration >= 0 && generation >= removalGeneration && session == captureSession) {
+                removeSharedSurfaces();
+            }
+
+            if (captureCallback != null) {
+                captureCallback.onCaptureCompleted(session, request, result);
+            }
+            for (CameraCaptureSession.CaptureCallback frameListener : frameListeners) {
+                frameListener.onCaptureCompleted(session, request, result);
+            }
+        }
+
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                    @NonNull CaptureFailure failure) {
+            if (captureCallback != null) {
+                captureCallback.onCaptureFailed(session, request, failure);
+            }
+        }
+    };
+
+    // ============================================================
+    // Threading
+    // ============================================================
+
+    private void quitIfReleased() {
+        if (quitWhenClosed && openDevices <= 0) {
+            quitThread();
+        }
+    }
+
+    /**
+     * Stop the camera thread, called on it; a later post() starts a new one
+     */
+    private synchronized void quitThread() {
+        HandlerThread thread = cameraThread;
+        if (thread == null || Thread.currentThread() != thread) return;
+        quitWhenClosed = false;
+        thread.quitSafely();
+        cameraThread = null;
+        cameraHandler = null;
+    }
+
+    private synchronized void post(Runnable action) {
+        if (cameraThread == null) {
+            cameraThread = new HandlerThread("CameraController");
+            cameraThread.start();
+            cameraHandler = new Handler(cameraThread.getLooper());
+        }
+        cameraHandler.post(action);
+    }
+}
@@ -0,0 +1,88 @@
+package com.obs.mobile.camera;
+
+import android.graphics.Rect;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.Face;
+
+import androidx.annotation.NonNull;
+
+import com.obs.mobile.SensorDataStreamer;
+import com.obs.mobile.sensors.SensorClock;
+
+/**
+ * FaceDetectionCallback - Reads Camera2 hardware face detection results
+ *
+ * The camera HAL reports face rectangles for free when
+ * STATISTICS_FACE_DETECT_MODE is enabled. This callback picks them up from
+ * every completed capture and forwards them, together with the frame's
+ * SENSOR_TIMESTAMP, to the SensorDataStreamer "faces" channel so the desktop
+ * receiver can crop ROIs instead of scanning whole frames. The timestamp is
+ * moved onto elapsedRealtimeNanos first, like FrameAlignmentCallback does,
+ * so it is on the same clock as the sensor samples and camera frames.
+ *
+ * Rectangles are in sensor active-array coordinates; the active array size,
+ * sensor orientation and mirroring are sent alongside so the receiver can map
+ * them onto the frame it is looking at.
+ */
+public class FaceDetectionCallback extends CameraCaptureSession.CaptureCallback {
+
+    // Values per face in the packed array: left, top, right, bottom, score
+    public static final int VALUES_PER_FACE = 5;
+
+    private final SensorDataStreamer streamer;
+    private final int activeArrayWidth;
+    private final int activeArrayHeight;
+    private final int sensorOrientation;
+    private final boolean mirrored;
+    private final boolean realtimeTimestamps;
+
+    // Reused between frames, the streamer copies what it keeps
+    private int[] packedFaces = new int[0];
+    private int lastFaceCount = -1;
+
+    public FaceDetectionCallback(SensorDataStreamer streamer, CameraCapabilityCache.CameraInfo cameraInfo) {
+        this.streamer = streamer;
+
+        Rect activeArray = cameraInfo.activeArraySize;
+        this.activeArrayWidth = activeArray != null ? activeArray.width() : 0;
+        this.activeArrayHeight = activeArray != null ? activeArray.height() : 0;
+        this.sensorOrientation = cameraInfo.sensorOrientation;
+        this.mirrored = cameraInfo.isFront();
+        this.realtimeTimestamps = cameraInfo.isRealtimeTimestamp();
+    }
+
+    @Override
+    public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                                   @NonNull CaptureRequest request,
+                                   @NonNull TotalCaptureResult result) {
+        Face[] faces = result.get(CaptureResult.STATISTICS_FACES);
+        Long sensorTimestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if (faces == null || sensorTimestamp == null || streamer == null) return;
+
+        // Nothing seen now and nothing seen last frame - skip the update
+        if (faces.length == 0 && lastFaceCount == 0) return;
+        lastFaceCount = faces.length;
+
+        int needed = faces.length * VALUES_PER_FACE;
+        if (packedFaces.length < needed) {
+            packedFaces = new int[needed];
+        }
+
+        for (int i = 0; i < faces.length; i++) {
+            Rect bounds = faces[i].getBounds();
+            int offset = i * VALUES_PER_FACE;
+            packedFaces[offset] = bounds.left;
+            packedFaces[offset + 1] = bounds.top;
+            packedFaces[offset + 2] = bounds.right;
+            packedFaces[offset + 3] = bounds.bottom;
+            packedFaces[offset + 4] = faces[i].getScore();
+        }
+
+        long frameTimestamp = SensorClock.cameraToRealtimeNanos(sensorTimestamp, realtimeTimestamps);
+        streamer.updateFaces(frameTimestamp, activeArrayWidth, activeArrayHeight,
+                sensorOrientation, mirrored, packedFaces, faces.length);
+    }
+}
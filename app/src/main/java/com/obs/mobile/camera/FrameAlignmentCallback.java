@@ -0,0 +1,64 @@
+package com.obs.mobile.camera;
+
+import android.content.Context;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+
+import androidx.annotation.NonNull;
+
+import com.obs.mobile.sensors.SensorClock;
+import com.obs.mobile.sensors.SensorTimeAligner;
+
+/**
+ * FrameAlignmentCallback - Feeds camera frame timestamps into SensorTimeAligner
+ *
+ * Reads SENSOR_TIMESTAMP, exposure time and rolling shutter skew from every
+ * completed capture and moves the timestamp onto the elapsedRealtimeNanos
+ * clock the sensor samples use:
+ *
+ *  - SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME: already on that clock
+ *  - SENSOR_INFO_TIMESTAMP_SOURCE_UNKNOWN:  uptime based, shifted by the
+ *                                           current realtime - uptime offset
+ *
+ * Registered on the CameraController with addFrameListener().
+ */
+public class FrameAlignmentCallback extends CameraCaptureSession.CaptureCallback {
+
+    private final CameraCapabilityCache capabilityCache;
+    private final SensorTimeAligner aligner;
+
+    // Camera of the last frame, looked up again only when it changes
+    private String cameraId;
+    private boolean realtimeTimestamps;
+
+    public FrameAlignmentCallback(Context context, SensorTimeAligner aligner) {
+        this.capabilityCache = CameraCapabilityCache.getInstance(context);
+        this.aligner = aligner;
+    }
+
+    @Override
+    public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                                   @NonNull CaptureRequest request,
+                                   @NonNull TotalCaptureResult result) {
+        Long sensorTimestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if (sensorTimestamp == null) return;
+
+        String id = session.getDevice().getId();
+        if (!id.equals(cameraId)) {
+            CameraCapabilityCache.CameraInfo info = capabilityCache.getInfo(id);
+            realtimeTimestamps = info != null && info.isRealtimeTimestamp();
+            cameraId = id;
+        }
+
+        long frameTimestamp = SensorClock.cameraToRealtimeNanos(sensorTimestamp, realtimeTimestamps);
+
+        Long exposureTime = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+        Long rollingShutterSkew = result.get(CaptureResult.SENSOR_ROLLING_SHUTTER_SKEW);
+
+        aligner.alignFrame(result.getFrameNumber(), sensorTimestamp, frameTimestamp,
+                exposureTime != null ? exposureTime : 0L,
+                rollingShutterSkew != null ? rollingShutterSkew : 0L);
+    }
+}
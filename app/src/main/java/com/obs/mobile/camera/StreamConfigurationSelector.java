@@ -0,0 +1,228 @@
+package com.obs.mobile.camera;
+
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.MediaRecorder;
+import android.util.Range;
+import android.util.Size;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * StreamConfigurationSelector - Picks preview, analysis and encoder sizes
+ * plus an AE target FPS range from cached camera capabilities
+ *
+ * Replaces the hard-coded 1920x1080 preview buffer. The preview buffer is
+ * sized to the view it is shown in (a small floating window does not need a
+ * full HD buffer), the analysis and encoder sizes are capped per policy and
+ * the FPS range follows the same policy:
+ *
+ *  - LOW_LATENCY: view-sized preview, highest fixed frame rate
+ *  - LOW_POWER:   smallest usable buffers, lowest frame rate >= 15 fps
+ *  - MAX_QUALITY: largest buffers up to 1080p, 30 fps with a low floor so AE
+ *                 can use longer exposures in the dark
+ */
+public class StreamConfigurationSelector {
+
+    public enum Policy {
+        LOW_LATENCY(new Size(1920, 1080), new Size(640, 480), new Size(1280, 720)),
+        LOW_POWER(new Size(1280, 720), new Size(640, 480), new Size(1280, 720)),
+        MAX_QUALITY(new Size(1920, 1080), new Size(1280, 720), new Size(1920, 1080));
+
+        private final Size maxPreview;
+        private final Size maxAnalysis;
+        private final Size maxEncoder;
+
+        Policy(Size maxPreview, Size maxAnalysis, Size maxEncoder) {
+            this.maxPreview = maxPreview;
+            this.maxAnalysis = maxAnalysis;
+            this.maxEncoder = maxEncoder;
+        }
+    }
+
+    // Minimum frame rate we accept for anything shown to the user
+    private static final int MIN_USABLE_FPS = 15;
+
+    // Aspect ratios closer than this are treated as equal
+    private static final float ASPECT_TOLERANCE = 0.05f;
+
+    private static final Size FALLBACK_SIZE = new Size(640, 480);
+    private static final float ENCODER_ASPECT = 16f / 9f;
+
+    /**
+     * Result of a selection, sizes are in sensor (landscape) orientation
+     */
+    public static class StreamConfiguration {
+        public final Size previewSize;
+        public final Size analysisSize;
+        public final Size encoderSize;
+        public final Range<Integer> fpsRange;
+        public final Policy policy;
+
+        StreamConfiguration(Size previewSize, Size analysisSize, Size encoderSize,
+                            Range<Integer> fpsRange, Policy policy) {
+            this.previewSize = previewSize;
+            this.analysisSize = analysisSize;
+            this.encoderSize = encoderSize;
+            this.fpsRange = fpsRange;
+            this.policy = policy;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s preview=%s analysis=%s encoder=%s fps=%s",
+                    policy, previewSize, analysisSize, encoderSize, fpsRange);
+        }
+    }
+
+    private StreamConfigurationSelector() {}
+
+    /**
+     * Select a stream configuration for a preview shown in a view of the given size
+     *
+     * @param viewWidth  view width in pixels (display orientation)
+     * @param viewHeight view height in pixels (display orientation)
+     */
+    public static StreamConfiguration select(CameraCapabilityCache.CameraInfo cameraInfo,
+                                             int viewWidth, int viewHeight, Policy policy) {
+        StreamConfigurationMap map = cameraInfo.streamConfigurationMap;
+        int sensorOrientation = cameraInfo.sensorOrientation;
+        Range<Integer>[] fpsRanges = cameraInfo.aeFpsRanges;
+
+        // Camera buffers are landscape, rotate the view size into sensor orientation
+        boolean swap = sensorOrientation == 90 || sensorOrientation == 270;
+        int targetWidth = Math.max(1, swap ? viewHeight : viewWidth);
+        int targetHeight = Math.max(1, swap ? viewWidth : viewHeight);
+        float viewAspect = (float) targetWidth / targetHeight;
+
+        Size[] previewSizes = map != null ? map.getOutputSizes(SurfaceTexture.class) : null;
+        Size[] analysisSizes = map != null ? map.getOutputSizes(ImageFormat.YUV_420_888) : null;
+        Size[] encoderSizes = map != null ? map.getOutputSizes(MediaRecorder.class) : null;
+
+        Size preview;
+        if (policy == Policy.MAX_QUALITY) {
+            preview = chooseLargest(previewSizes, policy.maxPreview, viewAspect);
+        } else {
+            preview = chooseSmallestCovering(previewSizes, targetWidth, targetHeight,
+                    policy.maxPreview, viewAspect);
+        }
+
+        float previewAspect = (float) preview.getWidth() / preview.getHeight();
+        Size analysis = chooseLargest(analysisSizes, policy.maxAnalysis, previewAspect);
+        Size encoder = chooseLargest(encoderSizes, policy.maxEncoder, ENCODER_ASPECT);
+        Range<Integer> fps = chooseFpsRange(fpsRanges, policy);
+
+        return new StreamConfiguration(preview, analysis, encoder, fps, policy);
+    }
+
+    /**
+     * Smallest size that covers the target and fits under the cap, falling back
+     * to the largest size under the cap when none covers it
+     */
+    private static Size chooseSmallestCovering(Size[] sizes, int targetWidth, int targetHeight,
+                                               Size max, float aspect) {
+        if (sizes == null || sizes.length == 0) return FALLBACK_SIZE;
+
+        Size bestMatching = null;
+        Size bestAny = null;
+        for (Size size : sizes) {
+            if (!fits(size, max)) continue;
+            if (size.getWidth() < targetWidth || size.getHeight() < targetHeight) continue;
+            if (bestAny == null || area(size) < area(bestAny)) {
+                bestAny = size;
+            }
+            if (matchesAspect(size, aspect) && (bestMatching == null || area(size) < area(bestMatching))) {
+                bestMatching = size;
+            }
+        }
+        if (bestMatching != null) return bestMatching;
+        if (bestAny != null) return bestAny;
+        return chooseLargest(sizes, max, aspect);
+    }
+
+    /**
+     * Largest size under the cap, preferring the requested aspect ratio
+     */
+    private static Size chooseLargest(Size[] sizes, Size max, float aspect) {
+        if (sizes == null || sizes.length == 0) return FALLBACK_SIZE;
+
+        Size bestMatching = null;
+        Size bestAny = null;
+        for (Size size : sizes) {
+            if (!fits(size, max)) continue;
+            if (bestAny == null || area(size) > area(bestAny)) {
+                bestAny = size;
+            }
+            if (matchesAspect(size, aspect) && (bestMatching == null || area(size) > area(bestMatching))) {
+                bestMatching = size;
+            }
+        }
+        if (bestMatching != null) return bestMatching;
+        if (bestAny != null) return bestAny;
+
+        // Everything is larger than the cap - take the smallest one
+        Size smallest = sizes[0];
+        for (Size size : sizes) {
+            if (area(size) < area(smallest)) smallest = size;
+        }
+        return smallest;
+    }
+
+    private static Range<Integer> chooseFpsRange(Range<Integer>[] ranges, Policy policy) {
+        if (ranges == null || ranges.length == 0) return null;
+
+        Range<Integer> best = null;
+        for (Range<Integer> range : ranges) {
+            int lower = range.getLower();
+            int upper = range.getUpper();
+            if (upper < MIN_USABLE_FPS) continue;
+            if (best == null) {
+                best = range;
+                continue;
+            }
+
+            int bestLower = best.getLower();
+            int bestUpper = best.getUpper();
+            switch (policy) {
+                case LOW_LATENCY:
+                    // Highest frame rate, then the most stable (fixed) range
+                    if (upper > bestUpper || (upper == bestUpper && lower > bestLower)) {
+                        best = range;
+                    }
+                    break;
+                case LOW_POWER:
+                    // Lowest frame rate, then the widest range so AE can drop further
+                    if (upper < bestUpper || (upper == bestUpper && lower < bestLower)) {
+                        best = range;
+                    }
+                    break;
+                case MAX_QUALITY:
+                    // Closest to 30 fps, then the lowest floor for long exposures
+                    int distance = Math.abs(upper - 30);
+                    int bestDistance = Math.abs(bestUpper - 30);
+                    if (distance < bestDistance || (distance == bestDistance && lower < bestLower)) {
+                        best = range;
+                    }
+                    break;
+            }
+        }
+        return best != null ? best : ranges[0];
+    }
+
+    private static boolean fits(Size size, Size max) {
+        return size.getWidth() <= max.getWidth() && size.getHeight() <= max.getHeight();
+    }
+
+    private static boolean matchesAspect(Size size, float aspect) {
+        float sizeAspect = (float) size.getWidth() / size.getHeight();
+        return Math.abs(sizeAspect - aspect) <= ASPECT_TOLERANCE * aspect;
+    }
+
+    private static long area(Size size) {
+        return (long) size.getWidth() * size.getHeight();
+    }
+}
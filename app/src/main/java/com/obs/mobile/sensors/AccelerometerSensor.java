@@ -6,6 +6,9 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 
+import com.obs.mobile.recording.SessionRecord;
+import com.obs.mobile.recording.SessionRecorder;
+
 public class AccelerometerSensor {
 
     private Context context;
@@ -16,11 +19,10 @@ public class AccelerometerSensor {
     // Callbacks
     private OnShakeListener onShakeListener;
     private OnDataChangedListener onDataChangedListener;
+    private OnSampleListener onSampleListener;
+    private SessionRecorder sessionRecorder;
 
-    // Shake detection variables
-    private long lastShakeTime = 0;
-    private static final float SHAKE_THRESHOLD = 15.0f;
-    private static final int SHAKE_TIME_THRESHOLD = 500;
+    private final ShakeDetector shakeDetector = new ShakeDetector();
 
     public AccelerometerSensor(Context context) {
         this.context = context;
@@ -39,28 +41,12 @@ public class AccelerometerSensor {
         listener = new SensorEventListener() {
             @Override
             public void onSensorChanged(SensorEvent event) {
-                float x = event.values[0];
-                float y = event.values[1];
-                float z = event.values[2];
-
-                // Calculate total acceleration
-                float acceleration = (float) Math.sqrt(x * x + y * y + z * z);
-
-                // Notify data listener
-                if (onDataChangedListener != null) {
-                    onDataChangedListener.onDataChanged(x, y, z, acceleration);
-                }
-
-                // Check for shake
-                if (acceleration > SHAKE_THRESHOLD) {
-                    long currentTime = System.currentTimeMillis();
-                    if (currentTime - lastShakeTime > SHAKE_TIME_THRESHOLD) {
-                        lastShakeTime = currentTime;
-                        if (onShakeListener != null) {
-                            onShakeListener.onShake(acceleration);
-                        }
-                    }
+                long timestampNs = SensorClock.toRealtimeNanos(event.timestamp);
+                if (sessionRecorder != null) {
+                    sessionRecorder.append(SessionRecord.ACCELEROMETER, timestampNs,
+                            event.values[0], event.values[1], event.values[2]);
                 }
+                dispatch(timestampNs, event.values[0], event.values[1], event.values[2]);
             }
 
             @Override
@@ -72,6 +58,30 @@ public class AccelerometerSensor {
         sensorManager.registerListener(listener, accelerometer, SensorManager.SENSOR_DELAY_GAME);
     }
 
+    /**
+     * Process one sample in m/s^2, from the sensor or from a replayed session.
+     * Shake timing follows the sample timestamps, so a replay detects the
+     * same shakes at any speed.
+     */
+    public void dispatch(long timestampNs, float x, float y, float z) {
+        boolean shake = shakeDetector.onSample(timestampNs, x, y, z);
+        float acceleration = shakeDetector.getMagnitude();
+
+        // Timestamped sample for frame alignment
+        if (onSampleListener != null) {
+            onSampleListener.onSample(timestampNs, x, y, z);
+        }
+
+        // Notify data listener
+        if (onDataChangedListener != null) {
+            onDataChangedListener.onDataChanged(x, y, z, acceleration);
+        }
+
+        if (shake && onShakeListener != null) {
+            onShakeListener.onShake(acceleration);
+        }
+    }
+
     public void stopListening() {
         if (sensorManager != null && listener != null) {
             sensorManager.unregisterListener(listener);
@@ -91,6 +101,17 @@ public class AccelerometerSensor {
         this.onDataChangedListener = listener;
     }
 
+    public void setOnSampleListener(OnSampleListener listener) {
+        this.onSampleListener = listener;
+    }
+
+    /**
+     * Record every raw accelerometer event into a session; null to stop
+     */
+    public void setSessionRecorder(SessionRecorder recorder) {
+        this.sessionRecorder = recorder;
+    }
+
     public interface OnShakeListener {
         void onShake(float intensity);
     }
@@ -98,4 +119,12 @@ public class AccelerometerSensor {
     public interface OnDataChangedListener {
         void onDataChanged(float x, float y, float z, float magnitude);
     }
+
+    /**
+     * Raw sample in m/s^2 with its timestamp in elapsedRealtimeNanos,
+     * called on the sensor thread for every event
+     */
+    public interface OnSampleListener {
+        void onSample(long timestampNs, float x, float y, float z);
+    }
 }
\ No newline at end of file
@@ -6,6 +6,9 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 
+import com.obs.mobile.recording.SessionRecord;
+import com.obs.mobile.recording.SessionRecorder;
+
 public class GyroscopeSensor {
 
     private Context context;
@@ -16,10 +19,10 @@ public class GyroscopeSensor {
     // Callbacks
     private OnRotationListener onRotationListener;
     private OnRotationGestureListener onRotationGestureListener;
+    private OnSampleListener onSampleListener;
+    private SessionRecorder sessionRecorder;
 
-    private static final float FAST_ROTATION_THRESHOLD = 100f;
-    private static final int GESTURE_TIME_THRESHOLD = 300;
-    private long lastFastRotationTime = 0;
+    private final RotationGestureDetector gestureDetector = new RotationGestureDetector();
 
     public GyroscopeSensor(Context context) {
         this.context = context;
@@ -38,29 +41,12 @@ public class GyroscopeSensor {
         listener = new SensorEventListener() {
             @Override
             public void onSensorChanged(SensorEvent event) {
-                float rotationX = event.values[0];
-                float rotationY = event.values[1];
-                float rotationZ = event.values[2];
-
-                // Convert to degrees per second
-                float rotationZDeg = radiansToDegrees(rotationZ);
-
-                // Notify rotation listener
-                if (onRotationListener != null) {
-                    onRotationListener.onRotation(rotationX, rotationY, rotationZ);
-                }
-
-                // Detect fast rotation gestures
-                long currentTime = System.currentTimeMillis();
-                if (Math.abs(rotationZDeg) > FAST_ROTATION_THRESHOLD) {
-                    if (currentTime - lastFastRotationTime > GESTURE_TIME_THRESHOLD) {
-                        lastFastRotationTime = currentTime;
-                        boolean clockwise = rotationZ > 0;
-                        if (onRotationGestureListener != null) {
-                            onRotationGestureListener.onFastRotation(rotationZDeg, clockwise);
-                        }
-                    }
+                long timestampNs = SensorClock.toRealtimeNanos(event.timestamp);
+                if (sessionRecorder != null) {
+                    sessionRecorder.append(SessionRecord.GYROSCOPE, timestampNs,
+                            event.values[0], event.values[1], event.values[2]);
                 }
+                dispatch(timestampNs, event.values[0], event.values[1], event.values[2]);
             }
 
             @Override
@@ -70,6 +56,29 @@ public class GyroscopeSensor {
         sensorManager.registerListener(listener, gyroscope, SensorManager.SENSOR_DELAY_GAME);
     }
 
+    /**
+     * Process one sample in rad/s, from the sensor or from a replayed session.
+     * Gesture timing follows the sample timestamps, so a replay detects the
+     * same gestures at any speed.
+     */
+    public void dispatch(long timestampNs, float rotationX, float rotationY, float rotationZ) {
+        // Timestamped sample for frame alignment
+        if (onSampleListener != null) {
+            onSampleListener.onSample(timestampNs, rotationX, rotationY, rotationZ);
+        }
+
+        // Notify rotation listener
+        if (onRotationListener != null) {
+            onRotationListener.onRotation(rotationX, rotationY, rotationZ);
+        }
+
+        // Detect fast rotation gestures
+        if (gestureDetector.onSample(timestampNs, rotationZ) && onRotationGestureListener != null) {
+            onRotationGestureListener.onFastRotation(gestureDetector.getDegreesPerSecond(),
+                    gestureDetector.isClockwise());
+        }
+    }
+
     public void stopListening() {
         if (sensorManager != null && listener != null) {
             sensorManager.unregisterListener(listener);
@@ -93,10 +102,29 @@ public class GyroscopeSensor {
         this.onRotationGestureListener = listener;
     }
 
+    public void setOnSampleListener(OnSampleListener listener) {
+        this.onSampleListener = listener;
+    }
+
+    /**
+     * Record every raw gyroscope event into a session; null to stop
+     */
+    public void setSessionRecorder(SessionRecorder recorder) {
+        this.sessionRecorder = recorder;
+    }
+
     public interface OnRotationListener {
         void onRotation(float rotationX, float rotationY, float rotationZ);
     }
 
+    /**
+     * Raw sample in rad/s with its timestamp in elapsedRealtimeNanos,
+     * called on the sensor thread for every event
+     */
+    public interface OnSampleListener {
+        void onSample(long timestampNs, float x, float y, float z);
+    }
+
     public interface OnRotationGestureListener {
         void onFastRotation(float degreesPerSecond, boolean clockwise);
         // OR if you want to keep speed:
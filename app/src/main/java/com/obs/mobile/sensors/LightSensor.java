@@ -6,6 +6,9 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 
+import com.obs.mobile.recording.SessionRecord;
+import com.obs.mobile.recording.SessionRecorder;
+
 public class LightSensor {
 
     private Context context;
@@ -14,30 +17,7 @@ public class LightSensor {
     private SensorEventListener listener;
 
     private OnLightChangedListener onLightChangedListener;
-
-    private static final float VERY_DARK_THRESHOLD = 10f;
-    private static final float DARK_THRESHOLD = 50f;
-    private static final float NORMAL_THRESHOLD = 500f;
-    private static final float BRIGHT_THRESHOLD = 10000f;
-
-    public enum LightCategory {
-        VERY_DARK("Very Dark", "0-10 lux"),
-        DARK("Dark", "10-50 lux"),
-        NORMAL("Normal", "50-500 lux"),
-        BRIGHT("Bright", "500-10000 lux"),
-        VERY_BRIGHT("Very Bright", "10000+ lux");
-
-        private final String name;
-        private final String range;
-
-        LightCategory(String name, String range) {
-            this.name = name;
-            this.range = range;
-        }
-
-        public String getName() { return name; }
-        public String getRange() { return range; }
-    }
+    private SessionRecorder sessionRecorder;
 
     public LightSensor(Context context) {
         this.context = context;
@@ -58,12 +38,11 @@ public class LightSensor {
             public void onSensorChanged(SensorEvent event) {
                 if (event.values == null || event.values.length == 0) return;
 
-                float lux = event.values[0];
-                LightCategory category = categorizeLightLevel(lux);
-
-                if (onLightChangedListener != null) {
-                    onLightChangedListener.onLightChanged(lux, category);
+                long timestampNs = SensorClock.toRealtimeNanos(event.timestamp);
+                if (sessionRecorder != null) {
+                    sessionRecorder.append(SessionRecord.LIGHT, timestampNs, event.values[0]);
                 }
+                dispatch(timestampNs, event.values[0]);
             }
 
             @Override
@@ -73,6 +52,17 @@ public class LightSensor {
         sensorManager.registerListener(listener, lightSensor, SensorManager.SENSOR_DELAY_NORMAL);
     }
 
+    /**
+     * Process one reading in lux, from the sensor or from a replayed session
+     */
+    public void dispatch(long timestampNs, float lux) {
+        LightCategory category = LightCategory.of(lux);
+
+        if (onLightChangedListener != null) {
+            onLightChangedListener.onLightChanged(lux, category);
+        }
+    }
+
     public void stopListening() {
         if (sensorManager != null && listener != null) {
             sensorManager.unregisterListener(listener);
@@ -80,30 +70,8 @@ public class LightSensor {
         }
     }
 
-    private LightCategory categorizeLightLevel(float lux) {
-        if (lux < VERY_DARK_THRESHOLD) {
-            return LightCategory.VERY_DARK;
-        } else if (lux < DARK_THRESHOLD) {
-            return LightCategory.DARK;
-        } else if (lux < NORMAL_THRESHOLD) {
-            return LightCategory.NORMAL;
-        } else if (lux < BRIGHT_THRESHOLD) {
-            return LightCategory.BRIGHT;
-        } else {
-            return LightCategory.VERY_BRIGHT;
-        }
-    }
-
     public String getCameraRecommendation(float lux) {
-        LightCategory category = categorizeLightLevel(lux);
-        switch (category) {
-            case VERY_DARK: return "Enable night mode";
-            case DARK: return "Increase ISO";
-            case NORMAL: return "Good indoor lighting";
-            case BRIGHT: return "Optimal conditions";
-            case VERY_BRIGHT: return "Reduce exposure";
-            default: return "Normal mode";
-        }
+        return LightCategory.of(lux).getCameraRecommendation();
     }
 
     public boolean isAvailable() {
@@ -114,6 +82,13 @@ public class LightSensor {
         this.onLightChangedListener = listener;
     }
 
+    /**
+     * Record every raw light event into a session; null to stop
+     */
+    public void setSessionRecorder(SessionRecorder recorder) {
+        this.sessionRecorder = recorder;
+    }
+
     public interface OnLightChangedListener {
         void onLightChanged(float lux, LightCategory category);
     }
@@ -6,6 +6,9 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 
+import com.obs.mobile.recording.SessionRecord;
+import com.obs.mobile.recording.SessionRecorder;
+
 /**
  * MagnetometerSensor - Independent sensor class for compass/magnetometer
  *
@@ -47,46 +50,12 @@ public class MagnetometerSensor {
     // Callbacks
     private OnCompassChangeListener onCompassChangeListener;
     private OnDirectionChangeListener onDirectionChangeListener;
+    private SessionRecorder sessionRecorder;
 
-    // Sensor data arrays
-    private float[] gravity = new float[3];
-    private float[] geomagnetic = new float[3];
-    private float[] rotationMatrix = new float[9];
-    private float[] orientation = new float[3];
-
-    // State tracking
-    private boolean hasGravity = false;
-    private boolean hasGeomagnetic = false;
+    // Heading from the latest gravity and field samples
+    private final Compass compass = new Compass();
     private CompassDirection currentDirection = null;
 
-    /**
-     * Compass direction enum
-     */
-    public enum CompassDirection {
-        NORTH("North", 0, "N"),
-        NORTH_EAST("North-East", 45, "NE"),
-        EAST("East", 90, "E"),
-        SOUTH_EAST("South-East", 135, "SE"),
-        SOUTH("South", 180, "S"),
-        SOUTH_WEST("South-West", 225, "SW"),
-        WEST("West", 270, "W"),
-        NORTH_WEST("North-West", 315, "NW");
-
-        private final String name;
-        private final int degrees;
-        private final String abbreviation;
-
-        CompassDirection(String name, int degrees, String abbreviation) {
-            this.name = name;
-            this.degrees = degrees;
-            this.abbreviation = abbreviation;
-        }
-
-        public String getName() { return name; }
-        public int getDegrees() { return degrees; }
-        public String getAbbreviation() { return abbreviation; }
-    }
-
     /**
      * Constructor
      */
@@ -117,11 +86,11 @@ public class MagnetometerSensor {
         magnetometerListener = new SensorEventListener() {
             @Override
             public void onSensorChanged(SensorEvent event) {
-                geomagnetic[0] = event.values[0];
-                geomagnetic[1] = event.values[1];
-                geomagnetic[2] = event.values[2];
-                hasGeomagnetic = true;
-                calculateOrientation();
+                if (sessionRecorder != null) {
+                    sessionRecorder.append(SessionRecord.MAGNETIC_FIELD, SensorClock.toRealtimeNanos(event.timestamp),
+                            event.values[0], event.values[1], event.values[2]);
+                }
+                dispatchMagneticField(event.values[0], event.values[1], event.values[2]);
             }
 
             @Override
@@ -136,11 +105,7 @@ public class MagnetometerSensor {
         accelerometerListener = new SensorEventListener() {
             @Override
             public void onSensorChanged(SensorEvent event) {
-                gravity[0] = event.values[0];
-                gravity[1] = event.values[1];
-                gravity[2] = event.values[2];
-                hasGravity = true;
-                calculateOrientation();
+                dispatchGravity(event.values[0], event.values[1], event.values[2]);
             }
 
             @Override
@@ -160,73 +125,44 @@ public class MagnetometerSensor {
     }
 
     /**
-     * COMPLETED: Calculate compass orientation
-     *
-     * Combines magnetometer and accelerometer data to calculate device orientation
-     * Converts to degrees and determines compass direction
+     * Process one magnetic field sample in uT, from the sensor or from a replayed session
      */
-    private void calculateOrientation() {
-        if (!hasGravity || !hasGeomagnetic) {
-            return;
+    public void dispatchMagneticField(float x, float y, float z) {
+        if (compass.onMagneticField(x, y, z)) {
+            notifyHeading();
         }
+    }
 
-        boolean success = SensorManager.getRotationMatrix(rotationMatrix, null,
-                gravity, geomagnetic);
-
-        if (success) {
-            SensorManager.getOrientation(rotationMatrix, orientation);
-
-            // Azimuth is rotation around Z axis in radians
-            float azimuthRad = orientation[0];
-
-            // Convert to degrees
-            float azimuthDeg = (float) Math.toDegrees(azimuthRad);
-
-            // Normalize to 0-360
-            azimuthDeg = (azimuthDeg + 360) % 360;
-
-            // Get direction
-            CompassDirection direction = getDirectionFromAzimuth(azimuthDeg);
-
-            // Notify compass listener
-            if (onCompassChangeListener != null) {
-                onCompassChangeListener.onCompassChange(azimuthDeg, direction);
-            }
-
-            // Detect direction change
-            if (direction != currentDirection) {
-                currentDirection = direction;
-                if (onDirectionChangeListener != null) {
-                    onDirectionChangeListener.onDirectionChange(direction);
-                }
-            }
+    /**
+     * Process one accelerometer sample in m/s^2, from the sensor or from a replayed session
+     */
+    public void dispatchGravity(float x, float y, float z) {
+        if (compass.onGravity(x, y, z)) {
+            notifyHeading();
         }
     }
 
     /**
-     * COMPLETED: Convert azimuth to compass direction
+     * COMPLETED: Report the compass orientation
      *
-     * Maps degree values to 8 compass directions
+     * Compass combines magnetometer and accelerometer data into an azimuth
+     * in degrees and its compass direction
      */
-    private CompassDirection getDirectionFromAzimuth(float azimuth) {
-        int rounded = Math.round(azimuth);
+    private void notifyHeading() {
+        float azimuthDeg = compass.getAzimuth();
+        CompassDirection direction = compass.getDirection();
+
+        // Notify compass listener
+        if (onCompassChangeListener != null) {
+            onCompassChangeListener.onCompassChange(azimuthDeg, direction);
+        }
 
-        if ((rounded >= 0 && rounded < 22) || (rounded >= 338 && rounded <= 360)) {
-            return CompassDirection.NORTH;
-        } else if (rounded >= 22 && rounded < 67) {
-            return CompassDirection.NORTH_EAST;
-        } else if (rounded >= 67 && rounded < 112) {
-            return CompassDirection.EAST;
-        } else if (rounded >= 112 && rounded < 157) {
-            return CompassDirection.SOUTH_EAST;
-        } else if (rounded >= 157 && rounded < 202) {
-            return CompassDirection.SOUTH;
-        } else if (rounded >= 202 && rounded < 247) {
-            return CompassDirection.SOUTH_WEST;
-        } else if (rounded >= 247 && rounded < 292) {
-            return CompassDirection.WEST;
-        } else {
-            return CompassDirection.NORTH_WEST;
+        // Detect direction change
+        if (direction != currentDirection) {
+            currentDirection = direction;
+            if (onDirectionChangeListener != null) {
+                onDirectionChangeListener.onDirectionChange(direction);
+            }
         }
     }
 
@@ -245,8 +181,7 @@ public class MagnetometerSensor {
             }
         }
 
-        hasGravity = false;
-        hasGeomagnetic = false;
+        compass.reset();
     }
 
     /**
@@ -277,6 +212,13 @@ public class MagnetometerSensor {
         this.onDirectionChangeListener = listener;
     }
 
+    /**
+     * Record every raw magnetic field event (uT) into a session; null to stop
+     */
+    public void setSessionRecorder(SessionRecorder recorder) {
+        this.sessionRecorder = recorder;
+    }
+
     /**
      * Callback interface for compass changes
      */
@@ -6,6 +6,9 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 
+import com.obs.mobile.recording.SessionRecord;
+import com.obs.mobile.recording.SessionRecorder;
+
 /**
  * ProximitySensor
  * ---------------------------------------------------------
@@ -38,14 +41,11 @@ public class ProximitySensor {
     private OnProximityChangedListener onProximityChangedListener;
     private OnNearListener onNearListener;
     private OnFarListener onFarListener;
+    private SessionRecorder sessionRecorder;
 
     // State
-    private boolean isNear = false;
+    private final ProximityDebouncer debouncer = new ProximityDebouncer();
     private float maxRange = 5f;
-    private long lastTriggerTime = 0;
-
-    private static final float NEAR_THRESHOLD = 3f; // in centimeters
-    private static final int DEBOUNCE_DELAY = 300; // ms
 
     /**
      * Constructor
@@ -94,28 +94,11 @@ public class ProximitySensor {
         listener = new SensorEventListener() {
             @Override
             public void onSensorChanged(SensorEvent event) {
-                float distance = event.values[0];
-                boolean currentlyNear = distance < NEAR_THRESHOLD;
-
-                long now = System.currentTimeMillis();
-                if (now - lastTriggerTime < DEBOUNCE_DELAY) return;
-
-                if (currentlyNear != isNear) {
-                    isNear = currentlyNear;
-                    lastTriggerTime = now;
-
-                    // Global callback
-                    if (onProximityChangedListener != null) {
-                        onProximityChangedListener.onProximityChanged(distance, isNear);
-                    }
-
-                    // Specific callbacks
-                    if (isNear && onNearListener != null) {
-                        onNearListener.onNear();
-                    } else if (!isNear && onFarListener != null) {
-                        onFarListener.onFar();
-                    }
+                long timestampNs = SensorClock.toRealtimeNanos(event.timestamp);
+                if (sessionRecorder != null) {
+                    sessionRecorder.append(SessionRecord.PROXIMITY, timestampNs, event.values[0]);
                 }
+                dispatch(timestampNs, event.values[0]);
             }
 
             @Override
@@ -129,6 +112,28 @@ public class ProximitySensor {
         );
     }
 
+    /**
+     * Processes one distance reading in cm, from the sensor or from a
+     * replayed session. Debouncing follows the reading timestamps, so a replay
+     * gives the same NEAR/FAR sequence at any speed.
+     */
+    public void dispatch(long timestampNs, float distance) {
+        if (!debouncer.onReading(timestampNs, distance)) return;
+        boolean isNear = debouncer.isNear();
+
+        // Global callback
+        if (onProximityChangedListener != null) {
+            onProximityChangedListener.onProximityChanged(distance, isNear);
+        }
+
+        // Specific callbacks
+        if (isNear && onNearListener != null) {
+            onNearListener.onNear();
+        } else if (!isNear && onFarListener != null) {
+            onFarListener.onFar();
+        }
+    }
+
     /**
      * Stops listening to sensor updates.
      * Must be called in Activity.onPause().
@@ -154,7 +159,7 @@ public class ProximitySensor {
      * @return true if last detected state is "near"
      */
     public boolean isObjectNear() {
-        return isNear;
+        return debouncer.isNear();
     }
 
     /**
@@ -185,6 +190,13 @@ public class ProximitySensor {
         this.onFarListener = listener;
     }
 
+    /**
+     * Records every raw distance into a session, before debouncing; null to stop.
+     */
+    public void setSessionRecorder(SessionRecorder recorder) {
+        this.sessionRecorder = recorder;
+    }
+
     // ============================================================
     // Callback Interfaces
     // ============================================================
@@ -197,14 +209,14 @@ public class ProximitySensor {
     }
 
     /**
-     * Called when distance < NEAR_THRESHOLD.
+     * Called when distance < ProximityDebouncer.DEFAULT_NEAR_THRESHOLD_CM.
      */
     public interface OnNearListener {
         void onNear();
     }
 
     /**
-     * Called when distance >= NEAR_THRESHOLD.
+     * Called when distance >= ProximityDebouncer.DEFAULT_NEAR_THRESHOLD_CM.
      */
     public interface OnFarListener {
         void onFar();
@@ -0,0 +1,57 @@
+package com.obs.mobile.sensors;
+
+import android.os.SystemClock;
+
+/**
+ * SensorClock - Maps SensorEvent timestamps onto elapsedRealtimeNanos
+ *
+ * SensorEvent.timestamp is elapsedRealtimeNanos on current devices, but some
+ * older HALs report System.nanoTime() (uptime, stops in deep sleep). The
+ * base is detected from the first event by comparing it with both clocks and
+ * an uptime timestamp is shifted by the current realtime - uptime offset.
+ * Camera SENSOR_TIMESTAMPs get the same shift unless the camera reports a
+ * realtime timestamp source.
+ */
+public final class SensorClock {
+
+    private static final int BASE_UNKNOWN = 0;
+    private static final int BASE_REALTIME = 1;
+    private static final int BASE_UPTIME = 2;
+
+    private static volatile int timestampBase = BASE_UNKNOWN;
+
+    private SensorClock() {}
+
+    /**
+     * Convert a SensorEvent.timestamp to elapsedRealtimeNanos
+     */
+    public static long toRealtimeNanos(long eventTimestampNs) {
+        if (timestampBase == BASE_UNKNOWN) {
+            long realtimeDistance = Math.abs(SystemClock.elapsedRealtimeNanos() - eventTimestampNs);
+            long uptimeDistance = Math.abs(System.nanoTime() - eventTimestampNs);
+            timestampBase = realtimeDistance <= uptimeDistance ? BASE_REALTIME : BASE_UPTIME;
+        }
+        if (timestampBase == BASE_REALTIME) {
+            return eventTimestampNs;
+        }
+        return eventTimestampNs + uptimeToRealtimeOffsetNs();
+    }
+
+    /**
+     * Convert a camera SENSOR_TIMESTAMP to elapsedRealtimeNanos
+     *
+     * @param realtimeSource SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME; with UNKNOWN
+     *                       the timestamp is uptime based and gets shifted
+     */
+    public static long cameraToRealtimeNanos(long sensorTimestampNs, boolean realtimeSource) {
+        return realtimeSource ? sensorTimestampNs : sensorTimestampNs + uptimeToRealtimeOffsetNs();
+    }
+
+    /**
+     * Offset to add to a System.nanoTime()-based timestamp to get elapsedRealtimeNanos.
+     * Grows whenever the device sleeps, so read it close to the timestamp.
+     */
+    public static long uptimeToRealtimeOffsetNs() {
+        return SystemClock.elapsedRealtimeNanos() - System.nanoTime();
+    }
+}
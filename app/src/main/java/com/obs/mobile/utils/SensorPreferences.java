@@ -3,6 +3,10 @@ package com.obs.mobile.utils;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * SensorPreferences - Utility class for managing sensor preferences
  */
@@ -14,6 +18,10 @@ public class SensorPreferences {
     private static final String KEY_LIGHT_SENSOR_ENABLED = "light_sensor_enabled";
     private static final String KEY_PROXIMITY_ENABLED = "proximity_enabled";
     private static final String KEY_MAGNETOMETER_ENABLED = "magnetometer_enabled";
+    private static final String KEY_SESSION_RECORDING_ENABLED = "session_recording_enabled";
+    private static final String KEY_RECEIVER_DISCOVERY_ENABLED = "receiver_discovery_enabled";
+    private static final String KEY_TRUSTED_RECEIVERS = "trusted_receivers";
+    private static final String KEY_VIBRATION_SPECTRUM_ENABLED = "vibration_spectrum_enabled";
 
     private static SharedPreferences getPreferences(Context context) {
         return context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
@@ -74,6 +82,52 @@ public class SensorPreferences {
                 .apply();
     }
 
+    // Session recording of raw sensor events - Default: ENABLED
+    public static boolean isSessionRecordingEnabled(Context context) {
+        return getPreferences(context).getBoolean(KEY_SESSION_RECORDING_ENABLED, true);
+    }
+
+    public static void setSessionRecordingEnabled(Context context, boolean enabled) {
+        getPreferences(context).edit()
+                .putBoolean(KEY_SESSION_RECORDING_ENABLED, enabled)
+                .apply();
+    }
+
+    // Streaming to receivers discovered on the LAN - Default: DISABLED, since
+    // any host can announce itself and would receive sensor and face data
+    public static boolean isReceiverDiscoveryEnabled(Context context) {
+        return getPreferences(context).getBoolean(KEY_RECEIVER_DISCOVERY_ENABLED, false);
+    }
+
+    public static void setReceiverDiscoveryEnabled(Context context, boolean enabled) {
+        getPreferences(context).edit()
+                .putBoolean(KEY_RECEIVER_DISCOVERY_ENABLED, enabled)
+                .apply();
+    }
+
+    // Hosts (or host:port) a discovered receiver must match - Default: empty, any receiver
+    public static Set<String> getTrustedReceivers(Context context) {
+        Set<String> stored = getPreferences(context).getStringSet(KEY_TRUSTED_RECEIVERS, Collections.emptySet());
+        return new HashSet<>(stored);
+    }
+
+    public static void setTrustedReceivers(Context context, Set<String> receivers) {
+        getPreferences(context).edit()
+                .putStringSet(KEY_TRUSTED_RECEIVERS, new HashSet<>(receivers))
+                .apply();
+    }
+
+    // Accelerometer vibration spectrum with each packet - Default: DISABLED
+    public static boolean isVibrationSpectrumEnabled(Context context) {
+        return getPreferences(context).getBoolean(KEY_VIBRATION_SPECTRUM_ENABLED, false);
+    }
+
+    public static void setVibrationSpectrumEnabled(Context context, boolean enabled) {
+        getPreferences(context).edit()
+                .putBoolean(KEY_VIBRATION_SPECTRUM_ENABLED, enabled)
+                .apply();
+    }
+
     /**
      * Get count of enabled sensors
      */
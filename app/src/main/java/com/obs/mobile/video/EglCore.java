@@ -0,0 +1,108 @@
+package com.obs.mobile.video;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.view.Surface;
+
+/**
+ * EglCore - EGL display, context and window surface for a MediaCodec input surface
+ *
+ * Creates a GLES 2 context with EGL_RECORDABLE_ANDROID so the window surface
+ * can feed a video encoder directly. All calls must happen on the thread the
+ * context is current on.
+ */
+public class EglCore {
+
+    // EGL_RECORDABLE_ANDROID from EGL_ANDROID_recordable
+    private static final int EGL_RECORDABLE_ANDROID = 0x3142;
+
+    private EGLDisplay display = EGL14.EGL_NO_DISPLAY;
+    private EGLContext context = EGL14.EGL_NO_CONTEXT;
+    private EGLConfig config;
+    private EGLSurface surface = EGL14.EGL_NO_SURFACE;
+
+    public EglCore() {
+        display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        if (display == EGL14.EGL_NO_DISPLAY) {
+            throw new IllegalStateException("eglGetDisplay failed");
+        }
+        int[] version = new int[2];
+        if (!EGL14.eglInitialize(display, version, 0, version, 1)) {
+            throw new IllegalStateException("eglInitialize failed");
+        }
+
+        int[] attributes = {
+                EGL14.EGL_RED_SIZE, 8,
+                EGL14.EGL_GREEN_SIZE, 8,
+                EGL14.EGL_BLUE_SIZE, 8,
+                EGL14.EGL_ALPHA_SIZE, 8,
+                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                EGL_RECORDABLE_ANDROID, 1,
+                EGL14.EGL_NONE
+        };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        if (!EGL14.eglChooseConfig(display, attributes, 0, configs, 0, 1, numConfigs, 0)
+                || numConfigs[0] == 0) {
+            throw new IllegalStateException("No recordable EGL config");
+        }
+        config = configs[0];
+
+        int[] contextAttributes = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE};
+        context = EGL14.eglCreateContext(display, config, EGL14.EGL_NO_CONTEXT, contextAttributes, 0);
+        checkError("eglCreateContext");
+    }
+
+    /**
+     * Create the window surface for an encoder input surface and make it current
+     */
+    public void createWindowSurface(Surface encoderSurface) {
+        int[] surfaceAttributes = {EGL14.EGL_NONE};
+        surface = EGL14.eglCreateWindowSurface(display, config, encoderSurface, surfaceAttributes, 0);
+        checkError("eglCreateWindowSurface");
+        makeCurrent();
+    }
+
+    public void makeCurrent() {
+        if (!EGL14.eglMakeCurrent(display, surface, surface, context)) {
+            throw new IllegalStateException("eglMakeCurrent failed");
+        }
+    }
+
+    /**
+     * Timestamp of the frame being drawn, becomes the encoder's presentation time
+     */
+    public void setPresentationTime(long timestampNs) {
+        EGLExt.eglPresentationTimeANDROID(display, surface, timestampNs);
+    }
+
+    public boolean swapBuffers() {
+        return EGL14.eglSwapBuffers(display, surface);
+    }
+
+    public void release() {
+        if (display != EGL14.EGL_NO_DISPLAY) {
+            EGL14.eglMakeCurrent(display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            if (surface != EGL14.EGL_NO_SURFACE) {
+                EGL14.eglDestroySurface(display, surface);
+            }
+            EGL14.eglDestroyContext(display, context);
+            EGL14.eglReleaseThread();
+            EGL14.eglTerminate(display);
+        }
+        display = EGL14.EGL_NO_DISPLAY;
+        context = EGL14.EGL_NO_CONTEXT;
+        surface = EGL14.EGL_NO_SURFACE;
+    }
+
+    private static void checkError(String operation) {
+        int error = EGL14.eglGetError();
+        if (error != EGL14.EGL_SUCCESS) {
+            throw new IllegalStateException(operation + " failed: 0x" + Integer.toHexString(error));
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.obs.mobile.video;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * HudOverlayRenderer - Composites the sensor HUD over the camera frame on the GPU
+ *
+ * The printable ASCII glyphs are rasterised once into a texture atlas when
+ * the renderer is created. After that the HUD is just a list of textured
+ * quads; they are rebuilt only when HudText reports a new version and then
+ * alpha-blended over every frame in the encoder pass. Nothing is read back
+ * from the GPU.
+ *
+ * Text is laid out upright for the recording's orientation hint (the encoder
+ * buffer is in sensor orientation) so it reads correctly on playback.
+ */
+public class HudOverlayRenderer {
+
+    private static final String VERTEX_SHADER =
+            "uniform mat4 uTransform;\n" +
+            "attribute vec2 aPosition;\n" +
+            "attribute vec2 aTexCoord;\n" +
+            "attribute vec4 aColor;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "varying vec4 vColor;\n" +
+            "void main() {\n" +
+            "    gl_Position = uTransform * vec4(aPosition, 0.0, 1.0);\n" +
+            "    vTexCoord = aTexCoord;\n" +
+            "    vColor = aColor;\n" +
+            "}\n";
+
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "varying vec4 vColor;\n" +
+            "uniform sampler2D sAtlas;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = vColor * texture2D(sAtlas, vTexCoord).a;\n" +
+            "}\n";
+
+    // Atlas layout: 16 x 6 cells, ASCII 32..126 plus a solid block for backgrounds
+    private static final int FIRST_CHAR = 32;
+    private static final int LAST_CHAR = 126;
+    private static final int BLOCK_GLYPH = LAST_CHAR + 1;
+    private static final int ATLAS_COLUMNS = 16;
+    private static final int ATLAS_ROWS = 6;
+    private static final int CELL_WIDTH = 32;
+    private static final int CELL_HEIGHT = 48;
+    private static final int ATLAS_WIDTH = 512;
+    private static final int ATLAS_HEIGHT = 512;
+
+    // Per vertex: x, y, u, v, r, g, b, a - six vertices per quad
+    private static final int FLOATS_PER_VERTEX = 8;
+    private static final int FLOATS_PER_QUAD = FLOATS_PER_VERTEX * 6;
+    private static final int MAX_CHARS_PER_LINE = 48;
+    private static final int MAX_QUADS = HudText.MAX_LINES * (MAX_CHARS_PER_LINE + 1);
+
+    // HUD line height as a fraction of the upright frame height
+    private static final float LINE_HEIGHT_FRACTION = 1f / 28f;
+    private static final float MARGIN_FRACTION = 0.02f;
+
+    private static final float[] TEXT_COLOR = {1f, 1f, 1f, 1f};
+    private static final float[] BACKGROUND_COLOR = {0f, 0f, 0f, 0.5f};
+
+    private final FloatBuffer vertices;
+    private final float[] quadScratch = new float[FLOATS_PER_QUAD];
+    private final String[] lines = new String[HudText.MAX_LINES];
+    private final float[] transform = new float[16];
+
+    private int program;
+    private int positionLocation;
+    private int texCoordLocation;
+    private int colorLocation;
+    private int transformLocation;
+    private int atlasTexture;
+
+    private int builtVersion = -1;
+    private int quadCount = 0;
+
+    // Upright frame size in pixels, after the orientation hint is applied
+    private int uprightWidth;
+    private int uprightHeight;
+
+    public HudOverlayRenderer() {
+        vertices = ByteBuffer.allocateDirect(MAX_QUADS * FLOATS_PER_QUAD * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+    }
+
+    /**
+     * Compile the program and upload the glyph atlas, GL context must be current
+     *
+     * @param bufferWidth      encoder buffer width
+     * @param bufferHeight     encoder buffer height
+     * @param orientationHint  rotation applied on playback, degrees clockwise
+     */
+    public void init(int bufferWidth, int bufferHeight, int orientationHint) {
+        program = GlUtil.createProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+        positionLocation = GLES20.glGetAttribLocation(program, "aPosition");
+        texCoordLocation = GLES20.glGetAttribLocation(program, "aTexCoord");
+        colorLocation = GLES20.glGetAttribLocation(program, "aColor");
+        transformLocation = GLES20.glGetUniformLocation(program, "uTransform");
+        atlasTexture = createAtlas();
+
+        boolean swap = orientationHint == 90 || orientationHint == 270;
+        uprightWidth = swap ? bufferHeight : bufferWidth;
+        uprightHeight = swap ? bufferWidth : bufferHeight;
+        buildTransform(orientationHint);
+        builtVersion = -1;
+    }
+
+    /**
+     * Blend the HUD over the current frame, rebuilding the quads if the text changed
+     */
+    public void draw(HudText hudText, int bufferWidth, int bufferHeight) {
+        if (hudText.getVersion() != builtVersion) {
+            builtVersion = hudText.snapshot(lines);
+            buildQuads();
+        }
+        if (quadCount == 0) return;
+
+        GLES20.glViewport(0, 0, bufferWidth, bufferHeight);
+        GLES20.glEnable(GLES20.GL_BLEND);
+        GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        GLES20.glUseProgram(program);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, atlasTexture);
+        GLES20.glUniformMatrix4fv(transformLocation, 1, false, transform, 0);
+
+        int stride = FLOATS_PER_VERTEX * 4;
+        vertices.position(0);
+        GLES20.glVertexAttribPointer(positionLocation, 2, GLES20.GL_FLOAT, false, stride, vertices);
+        GLES20.glEnableVertexAttribArray(positionLocation);
+        vertices.position(2);
+        GLES20.glVertexAttribPointer(texCoordLocation, 2, GLES20.GL_FLOAT, false, stride, vertices);
+        GLES20.glEnableVertexAttribArray(texCoordLocation);
+        vertices.position(4);
+        GLES20.glVertexAttribPointer(colorLocation, 4, GLES20.GL_FLOAT, false, stride, vertices);
+        GLES20.glEnableVertexAttribArray(colorLocation);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, quadCount * 6);
+
+        GLES20.glDisableVertexAttribArray(positionLocation);
+        GLES20.glDisableVertexAttribArray(texCoordLocation);
+        GLES20.glDisableVertexAttribArray(colorLocation);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+        GLES20.glDisable(GLES20.GL_BLEND);
+    }
+
+    public void release() {
+        if (program != 0) {
+            GLES20.glDeleteProgram(program);
+            program = 0;
+        }
+        if (atlasTexture != 0) {
+            GLES20.glDeleteTextures(1, new int[]{atlasTexture}, 0);
+            atlasTexture = 0;
+        }
+    }
+
+    // ============================================================
+    // Layout
+    // ============================================================
+
+    /**
+     * Lay out every line as glyph quads in upright pixel coordinates (origin
+     * top-left), each line on a translucent background strip
+     */
+    private void buildQuads() {
+        vertices.clear();
+        quadCount = 0;
+
+        float lineHeight = uprightHeight * LINE_HEIGHT_FRACTION;
+        float glyphWidth = lineHeight * CELL_WIDTH / CELL_HEIGHT;
+        float margin = uprightHeight * MARGIN_FRACTION;
+
+        float y = margin;
+        for (String line : lines) {
+            if (line == null || line.isEmpty()) continue;
+            int length = Math.min(line.length(), MAX_CHARS_PER_LINE);
+
+            addQuad(margin, y, margin + glyphWidth * length, y + lineHeight, BLOCK_GLYPH, BACKGROUND_COLOR);
+            float x = margin;
+            for (int i = 0; i < length; i++) {
+                char c = line.charAt(i);
+                if (c != ' ') {
+                    int glyph = c >= FIRST_CHAR && c <= LAST_CHAR ? c : '?';
+                    addQuad(x, y, x + glyphWidth, y + lineHeight, glyph, TEXT_COLOR);
+                }
+                x += glyphWidth;
+            }
+            y += lineHeight;
+        }
+        vertices.flip();
+    }
+
+    private void addQuad(float left, float top, float right, float bottom, int glyph, float[] color) {
+        if (quadCount >= MAX_QUADS) return;
+
+        int cell = glyph - FIRST_CHAR;
+        float u0 = (float) (cell % ATLAS_COLUMNS) * CELL_WIDTH / ATLAS_WIDTH;
+        float v0 = (float) (cell / ATLAS_COLUMNS) * CELL_HEIGHT / ATLAS_HEIGHT;
+        float u1 = u0 + (float) CELL_WIDTH / ATLAS_WIDTH;
+        float v1 = v0 + (float) CELL_HEIGHT / ATLAS_HEIGHT;
+
+        // Two triangles: top-left, bottom-left, top-right / top-right, bottom-left, bottom-right
+        int o = 0;
+        o = putVertex(o, left, top, u0, v0, color);
+        o = putVertex(o, left, bottom, u0, v1, color);
+        o = putVertex(o, right, top, u1, v0, color);
+        o = putVertex(o, right, top, u1, v0, color);
+        o = putVertex(o, left, bottom, u0, v1, color);
+        putVertex(o, right, bottom, u1, v1, color);
+
+        vertices.put(quadScratch);
+        quadCount++;
+    }
+
+    private int putVertex(int offset, float x, float y, float u, float v, float[] color) {
+        quadScratch[offset] = x;
+        quadScratch[offset + 1] = y;
+        quadScratch[offset + 2] = u;
+        quadScratch[offset + 3] = v;
+        quadScratch[offset + 4] = color[0] * color[3];   // Premultiplied alpha
+        quadScratch[offset + 5] = color[1] * color[3];
+        quadScratch[offset + 6] = color[2] * color[3];
+        quadScratch[offset + 7] = color[3];
+        return offset + FLOATS_PER_VERTEX;
+    }
+
+    /**
+     * Upright pixels (origin top-left) -> clip space, then rotated back into
+     * the sensor-oriented buffer so the playback rotation makes it upright
+     */
+    private void buildTransform(int orientationHint) {
+        float sx = 2f / uprightWidth;
+        float sy = -2f / uprightHeight;
+
+        // Playback rotates clockwise by the hint, so draw rotated counter-clockwise
+        double theta = Math.toRadians(orientationHint);
+        float cos = (float) Math.cos(theta);
+        float sin = (float) Math.sin(theta);
+
+        // Column-major: rotate(translate(scale(p)))
+        for (int i = 0; i < 16; i++) transform[i] = 0f;
+        transform[0] = cos * sx;
+        transform[1] = sin * sx;
+        transform[4] = -sin * sy;
+        transform[5] = cos * sy;
+        transform[10] = 1f;
+        transform[12] = cos * -1f - sin * 1f;
+        transform[13] = sin * -1f + cos * 1f;
+        transform[15] = 1f;
+    }
+
+    // ============================================================
+    // Glyph atlas
+    // ============================================================
+
+    /**
+     * Rasterise the glyphs once into an alpha texture
+     */
+    private int createAtlas() {
+        Bitmap bitmap = Bitmap.createBitmap(ATLAS_WIDTH, ATLAS_HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(Color.WHITE);
+        paint.setTypeface(Typeface.create(Typeface.MONOSPACE, Typeface.BOLD));
+        paint.setTextSize(CELL_HEIGHT * 0.8f);
+        paint.setTextAlign(Paint.Align.CENTER);
+
+        Paint.FontMetrics metrics = paint.getFontMetrics();
+        float baseline = (CELL_HEIGHT - (metrics.descent - metrics.ascent)) / 2f - metrics.ascent;
+        char[] glyph = new char[1];
+        for (int c = FIRST_CHAR; c <= LAST_CHAR; c++) {
+            int cell = c - FIRST_CHAR;
+            float left = (cell % ATLAS_COLUMNS) * CELL_WIDTH;
+            float top = (cell / ATLAS_COLUMNS) * CELL_HEIGHT;
+            glyph[0] = (char) c;
+            canvas.drawText(glyph, 0, 1, left + CELL_WIDTH / 2f, top + baseline, paint);
+        }
+
+        // Solid cell for background strips
+        int blockCell = BLOCK_GLYPH - FIRST_CHAR;
+        float blockLeft = (blockCell % ATLAS_COLUMNS) * CELL_WIDTH;
+        float blockTop = (blockCell / ATLAS_COLUMNS) * CELL_HEIGHT;
+        canvas.drawRect(blockLeft, blockTop, blockLeft + CELL_WIDTH, blockTop + CELL_HEIGHT, paint);
+
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+        bitmap.recycle();
+        GlUtil.checkError("HUD atlas upload");
+        return textures[0];
+    }
+}
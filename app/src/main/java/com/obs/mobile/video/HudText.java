@@ -0,0 +1,47 @@
+package com.obs.mobile.video;
+
+/**
+ * HudText - Lines of sensor text burned into the recording
+ *
+ * Written from the UI/sensor thread, read by the render thread. Every change
+ * bumps a version number; the overlay renderer rebuilds its glyph quads only
+ * when the version moves, so unchanged readouts cost nothing per frame.
+ * Only printable ASCII is drawn, anything else shows as '?'.
+ */
+public class HudText {
+
+    public static final int MAX_LINES = 8;
+
+    private final String[] lines = new String[MAX_LINES];
+    private volatile int version = 0;
+
+    /**
+     * Set or clear (null) one line; a no-op if the text did not change
+     */
+    public synchronized void setLine(int index, String text) {
+        if (index < 0 || index >= MAX_LINES) return;
+        String current = lines[index];
+        if (current == null ? text == null : current.equals(text)) return;
+        lines[index] = text;
+        version++;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < MAX_LINES; i++) {
+            lines[i] = null;
+        }
+        version++;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Copy the current lines (null entries are empty) and return their version
+     */
+    public synchronized int snapshot(String[] out) {
+        System.arraycopy(lines, 0, out, 0, Math.min(out.length, MAX_LINES));
+        return version;
+    }
+}
@@ -0,0 +1,338 @@
+package com.obs.mobile.video;
+
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraCharacteristics;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Range;
+import android.util.Size;
+import android.util.SizeF;
+
+import com.obs.mobile.camera.CameraCapabilityCache;
+import com.obs.mobile.camera.CameraController;
+import com.obs.mobile.camera.StreamConfigurationSelector;
+import com.obs.mobile.sensors.FrameImuState;
+import com.obs.mobile.sensors.GyroStabilizer;
+import com.obs.mobile.sensors.SensorTimeAligner;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * StabilizedRecorder - Gyro-stabilised H.264 recording, entirely on the GPU
+ *
+ * Pipeline, one frame at a time on the recorder's GL thread:
+ *
+ *      camera -> SurfaceTexture (OES) -> GLES crop/warp -> encoder Surface -> MP4
+ *
+ * The SurfaceTexture is attached to the shared CameraController as one more
+ * output next to the on-screen previews, so recording does not restart the
+ * camera. For every frame GyroStabilizer integrates the gyroscope over the
+ * interval since the previous frame's exposure midpoint and returns a crop
+ * transform that is folded into the texture matrix. Frame pixels are never
+ * copied to the CPU.
+ *
+ * The sensor HUD (getHudText()) is composited over each frame in the same
+ * pass by HudOverlayRenderer, so recordings carry the overlay without any
+ * drawing on the receiving side.
+ *
+ * The encoder runs at the configuration's encoder size (1080p with
+ * Policy.MAX_QUALITY, 720p with the other policies) and the upper bound of
+ * its AE FPS range. The camera texture has to keep the preview size, since
+ * the shared output has one buffer size; the GL pass scales it into the
+ * encoder surface, center-cropped to the encoder's aspect ratio. Detail is
+ * still bounded by the preview stream: a smaller preview is upscaled.
+ *
+ * Usage:
+ *      recorder.start(new File(dir, "clip.mp4"));
+ *      recorder.stop();
+ */
+public class StabilizedRecorder implements SurfaceTexture.OnFrameAvailableListener {
+
+    private static final String TAG = "StabilizedRecorder";
+
+    // 10% margin per side, smoothing constant of ~10 frames
+    private static final float CROP_MARGIN = 0.1f;
+    private static final float SMOOTHING = 0.9f;
+    private static final int DEFAULT_FRAME_RATE = 30;
+
+    // Typical phone camera: ~70 degrees horizontal field of view
+    private static final float DEFAULT_FOCAL_RATIO = 0.7f;
+
+    /**
+     * Called on the recorder thread
+     */
+    public interface Listener {
+        void onRecordingStarted(File outputFile);
+        void onRecordingStopped(File outputFile, long frameCount);
+        void onRecordingError(String message);
+    }
+
+    private final CameraController cameraController;
+    private final SensorTimeAligner sensorTimeAligner;
+    private final GyroStabilizer stabilizer;
+    private final HudText hudText = new HudText();
+
+    private HandlerThread renderThread;
+    private Handler renderHandler;
+    private Listener listener;
+
+    // Render thread state
+    private EglCore eglCore;
+    private CameraTextureRenderer renderer;
+    private HudOverlayRenderer hudRenderer;
+    private VideoEncoder encoder;
+    private SurfaceTexture cameraTexture;
+    private File outputFile;
+    // Encoder size, and the part of the camera texture it shows
+    private int width;
+    private int height;
+    private float cropScaleX;
+    private long frameCount;
+    private String stabilizedCameraId;
+    private final float[] surfaceTransform = new float[16];
+    private final float[] aspectCrop = new float[16];
+    private final float[] croppedTransform = new float[16];
+    private final float[] stabilization = new float[16];
+    private final float[] texMatrix = new float[16];
+
+    private volatile boolean isRecording = false;
+
+    // Latest camera-to-realtime offset and half exposure, from the aligner (camera thread)
+    private volatile long cameraToRealtimeOffsetNs = 0L;
+    private volatile long halfExposureNs = 0L;
+
+    public StabilizedRecorder(CameraController cameraController, SensorTimeAligner sensorTimeAligner) {
+        this.cameraController = cameraController;
+        this.sensorTimeAligner = sensorTimeAligner;
+        this.stabilizer = new GyroStabilizer(sensorTimeAligner.getGyroHistory(), CROP_MARGIN, SMOOTHING);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * HUD lines burned into the recording, may be updated from any thread
+     */
+    public HudText getHudText() {
+        return hudText;
+    }
+
+    public boolean isRecording() {
+        return isRecording;
+    }
+
+    /**
+     * Start recording into a file; the camera must already be streaming
+     */
+    public void start(File file) {
+        post(() -> startInternal(file));
+    }
+
+    public void stop() {
+        post(this::stopInternal);
+    }
+
+    /**
+     * Stop and end the render thread
+     */
+    public void release() {
+        stop();
+        HandlerThread thread = renderThread;
+        if (thread != null) {
+            thread.quitSafely();
+            renderThread = null;
+            renderHandler = null;
+        }
+    }
+
+    // ============================================================
+    // Render thread
+    // ============================================================
+
+    private void startInternal(File file) {
+        if (isRecording) return;
+
+        StreamConfigurationSelector.StreamConfiguration configuration = cameraController.getStreamConfiguration();
+        CameraCapabilityCache.CameraInfo cameraInfo = cameraController.getCameraInfo();
+        if (configuration == null || cameraInfo == null) {
+            reportError("Camera is not streaming");
+            return;
+        }
+
+        Size previewSize = configuration.previewSize;
+        Size encoderSize = configuration.encoderSize;
+        width = encoderSize.getWidth();
+        height = encoderSize.getHeight();
+        setAspectCrop(previewSize.getWidth(), previewSize.getHeight());
+        Range<Integer> fps = configuration.fpsRange;
+        int frameRate = fps != null ? fps.getUpper() : DEFAULT_FRAME_RATE;
+
+        try {
+            encoder = new VideoEncoder(width, height, frameRate, cameraInfo.sensorOrientation, file);
+            eglCore = new EglCore();
+            eglCore.createWindowSurface(encoder.getInputSurface());
+
+            renderer = new CameraTextureRenderer();
+            int textureId = renderer.init();
+            cameraTexture = new SurfaceTexture(textureId);
+            cameraTexture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
+
+            hudRenderer = new HudOverlayRenderer();
+            hudRenderer.init(width, height, cameraInfo.sensorOrientation);
+            cameraTexture.setOnFrameAvailableListener(this, renderHandler);
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to start recording", e);
+            releaseRenderState();
+            reportError("Failed to start recording: " + e.getMessage());
+            return;
+        }
+
+        outputFile = file;
+        frameCount = 0;
+        stabilizedCameraId = null;
+        isRecording = true;
+
+        sensorTimeAligner.addOnFrameAlignedListener(frameAlignedListener);
+        cameraController.attachPreview(cameraTexture, previewSize.getWidth(), previewSize.getHeight(),
+                configuration.policy);
+
+        Log.d(TAG, "🔴 Recording started: " + file + " (" + previewSize + " -> " + width + "x" + height + ")");
+        if (listener != null) listener.onRecordingStarted(file);
+    }
+
+    @Override
+    public void onFrameAvailable(SurfaceTexture surfaceTexture) {
+        if (!isRecording || surfaceTexture != cameraTexture) return;
+
+        try {
+            cameraTexture.updateTexImage();
+            cameraTexture.getTransformMatrix(surfaceTransform);
+            long timestampNs = cameraTexture.getTimestamp();
+
+            updateCameraGeometry();
+            stabilizer.update(timestampNs + cameraToRealtimeOffsetNs + halfExposureNs, stabilization);
+            GyroStabilizer.multiply(croppedTransform, surfaceTransform, aspectCrop);
+            GyroStabilizer.multiply(texMatrix, croppedTransform, stabilization);
+
+            renderer.draw(texMatrix, width, height);
+            hudRenderer.draw(hudText, width, height);
+            eglCore.setPresentationTime(timestampNs);
+            eglCore.swapBuffers();
+            encoder.drain(false);
+            frameCount++;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "❌ Frame render failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Texture matrix selecting the centered part of a preview buffer with the
+     * encoder's aspect ratio, applied between the stabilisation crop and the
+     * SurfaceTexture transform
+     */
+    private void setAspectCrop(int previewWidth, int previewHeight) {
+        float previewAspect = (float) previewWidth / previewHeight;
+        float encoderAspect = (float) width / height;
+        cropScaleX = previewAspect > encoderAspect ? encoderAspect / previewAspect : 1f;
+        float cropScaleY = previewAspect > encoderAspect ? 1f : previewAspect / encoderAspect;
+
+        Arrays.fill(aspectCrop, 0f);
+        aspectCrop[0] = cropScaleX;
+        aspectCrop[5] = cropScaleY;
+        aspectCrop[10] = 1f;
+        aspectCrop[12] = (1f - cropScaleX) / 2f;
+        aspectCrop[13] = (1f - cropScaleY) / 2f;
+        aspectCrop[15] = 1f;
+    }
+
+    /**
+     * Pick up the camera's field of view and orientation, again after a switch
+     */
+    private void updateCameraGeometry() {
+        CameraCapabilityCache.CameraInfo cameraInfo = cameraController.getCameraInfo();
+        if (cameraInfo == null || cameraInfo.id.equals(stabilizedCameraId)) return;
+        stabilizedCameraId = cameraInfo.id;
+
+        float focalX = DEFAULT_FOCAL_RATIO;
+        float[] focalLengths = cameraInfo.characteristics.get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
+        SizeF physicalSize = cameraInfo.characteristics.get(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE);
+        if (focalLengths != null && focalLengths.length > 0 && physicalSize != null
+                && physicalSize.getWidth() > 0f && physicalSize.getHeight() > 0f) {
+            focalX = focalLengths[0] / physicalSize.getWidth();
+        }
+        // Relative to the visible width; the preview is cropped to the stream
+        // aspect ratio along the sensor height, then to the encoder's
+        focalX /= cropScaleX;
+        float focalY = focalX * width / height;
+        stabilizer.setCameraGeometry(cameraInfo.sensorOrientation, cameraInfo.isFront(), focalX, focalY);
+    }
+
+    private final SensorTimeAligner.OnFrameAlignedListener frameAlignedListener = new SensorTimeAligner.OnFrameAlignedListener() {
+        @Override
+        public void onFrameAligned(FrameImuState state) {
+            cameraToRealtimeOffsetNs = state.frameTimestampNs - state.sensorTimestampNs;
+            halfExposureNs = state.exposureMidTimestampNs - state.frameTimestampNs;
+        }
+    };
+
+    private void stopInternal() {
+        if (!isRecording) return;
+        isRecording = false;
+
+        // The camera releases the texture once no frame targets it any more
+        cameraTexture.setOnFrameAvailableListener(null);
+        cameraController.detachPreview(cameraTexture, true);
+        cameraTexture = null;
+        sensorTimeAligner.removeOnFrameAlignedListener(frameAlignedListener);
+
+        try {
+            encoder.drain(true);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Encoder drain failed: " + e.getMessage());
+        }
+        releaseRenderState();
+
+        Log.d(TAG, "⏹ Recording stopped: " + frameCount + " frames -> " + outputFile);
+        if (listener != null) listener.onRecordingStopped(outputFile, frameCount);
+    }
+
+    private void releaseRenderState() {
+        if (cameraTexture != null) {
+            cameraTexture.release();
+            cameraTexture = null;
+        }
+        if (renderer != null) {
+            renderer.release();
+            renderer = null;
+        }
+        if (hudRenderer != null) {
+            hudRenderer.release();
+            hudRenderer = null;
+        }
+        // EGL surface before the encoder's input surface it renders into
+        if (eglCore != null) {
+            eglCore.release();
+            eglCore = null;
+        }
+        if (encoder != null) {
+            encoder.release();
+            encoder = null;
+        }
+    }
+
+    private void reportError(String message) {
+        if (listener != null) listener.onRecordingError(message);
+    }
+
+    private synchronized void post(Runnable action) {
+        if (renderThread == null) {
+            renderThread = new HandlerThread("StabilizedRecorder");
+            renderThread.start();
+            renderHandler = new Handler(renderThread.getLooper());
+        }
+        renderHandler.post(action);
+    }
+}
@@ -0,0 +1,130 @@
+package com.obs.mobile.video;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * VideoEncoder - H.264 MediaCodec fed from an input Surface, muxed to MP4
+ *
+ * Frames are rendered into getInputSurface() with GLES; drain() moves encoded
+ * output into the muxer without blocking the render thread.
+ */
+public class VideoEncoder {
+
+    private static final String TAG = "VideoEncoder";
+    private static final String MIME_TYPE = MediaFormat.MIMETYPE_VIDEO_AVC;
+
+    // ~0.13 bits per pixel per frame: about 8 Mbit/s at 1080p30
+    private static final float BITS_PER_PIXEL = 0.13f;
+    private static final int I_FRAME_INTERVAL_S = 1;
+    private static final long EOS_TIMEOUT_US = 10_000L;
+    // Give up on end of stream after this long, e.g. when no frame was ever submitted
+    private static final long EOS_DEADLINE_NS = 3_000_000_000L;
+
+    private final MediaCodec codec;
+    private final MediaMuxer muxer;
+    private final Surface inputSurface;
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
+    private int trackIndex = -1;
+    private boolean muxerStarted = false;
+
+    public VideoEncoder(int width, int height, int frameRate, int orientationHint, File outputFile)
+            throws IOException {
+        MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, width, height);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, (int) (width * height * frameRate * BITS_PER_PIXEL));
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL_S);
+
+        codec = MediaCodec.createEncoderByType(MIME_TYPE);
+        codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        inputSurface = codec.createInputSurface();
+        codec.start();
+
+        muxer = new MediaMuxer(outputFile.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        muxer.setOrientationHint(orientationHint);
+        Log.d(TAG, "Encoder started: " + width + "x" + height + " @" + frameRate + " -> " + outputFile);
+    }
+
+    public Surface getInputSurface() {
+        return inputSurface;
+    }
+
+    /**
+     * Move all available output into the muxer
+     *
+     * @param endOfStream signal end of input and wait until the encoder is
+     *                    empty, at most EOS_DEADLINE_NS
+     */
+    public void drain(boolean endOfStream) {
+        long deadlineNs = 0L;
+        if (endOfStream) {
+            codec.signalEndOfInputStream();
+            deadlineNs = System.nanoTime() + EOS_DEADLINE_NS;
+        }
+
+        while (true) {
+            int index = codec.dequeueOutputBuffer(bufferInfo, endOfStream ? EOS_TIMEOUT_US : 0L);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream) return;
+                if (System.nanoTime() - deadlineNs > 0L) {
+                    Log.w(TAG, "No end of stream from the encoder after "
+                            + EOS_DEADLINE_NS / 1_000_000L + " ms, releasing anyway");
+                    return;
+                }
+                continue;
+            }
+            if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                trackIndex = muxer.addTrack(codec.getOutputFormat());
+                muxer.start();
+                muxerStarted = true;
+                continue;
+            }
+            if (index < 0) continue;
+
+            ByteBuffer data = codec.getOutputBuffer(index);
+            if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                // Already part of the output format
+                bufferInfo.size = 0;
+            }
+            if (bufferInfo.size > 0 && muxerStarted && data != null) {
+                data.position(bufferInfo.offset);
+                data.limit(bufferInfo.offset + bufferInfo.size);
+                muxer.writeSampleData(trackIndex, data, bufferInfo);
+            }
+            codec.releaseOutputBuffer(index, false);
+
+            if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                return;
+            }
+        }
+    }
+
+    public void release() {
+        try {
+            codec.stop();
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Encoder stop: " + e.getMessage());
+        }
+        codec.release();
+        inputSurface.release();
+
+        if (muxerStarted) {
+            try {
+                muxer.stop();
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "Muxer stop failed: " + e.getMessage());
+            }
+        }
+        muxer.release();
+    }
+}
@@ -0,0 +1,36 @@
+// JMH benchmarks for the per-event paths in :sensor-core and :ingest, run with the GC
+// profiler so every result has ns/op and allocated B/op:
+//      ./gradlew :benchmarks:jmh
+//      ./gradlew :benchmarks:jmh -Pjmh.includes=PacketEncoding
+// Results are also written to build/reports/jmh/results.json for comparing
+// runs.
+plugins {
+    java
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    implementation(project(":sensor-core"))
+    implementation(project(":ingest"))
+    implementation(libs.jmh.core)
+    implementation(libs.json)
+    annotationProcessor(libs.jmh.generator.annprocess)
+}
+
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks with the GC profiler"
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+
+    val includes = project.findProperty("jmh.includes")?.toString() ?: ".*"
+    val results = layout.buildDirectory.file("reports/jmh/results.json").get().asFile
+    args(includes, "-prof", "gc", "-rf", "json", "-rff", results.absolutePath)
+    doFirst {
+        results.parentFile.mkdirs()
+    }
+}
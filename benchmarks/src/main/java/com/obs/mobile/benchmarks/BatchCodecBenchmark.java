@@ -0,0 +1,108 @@
+package com.obs.mobile.benchmarks;
+
+import com.obs.mobile.streaming.BatchCodec;
+import com.obs.mobile.streaming.DeltaVarintCodec;
+import com.obs.mobile.streaming.GorillaXorCodec;
+import com.obs.mobile.streaming.SampleBatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BatchCodecBenchmark - Encode and decode time of one IMU batch per BatchCodec
+ *
+ * Synthetic 200 Hz IMU data (slow motion plus sensor noise, timestamp
+ * jitter) cut into batches of the size the streamer sends; each invocation
+ * takes the next of BATCHES batches so the values keep changing. Divide by
+ * batchSize for ns per sample. The encoded sizes are checked by
+ * BatchCodecTest, and the JSON "imu" array the streamer sends without a
+ * codec is measured in the whole packet by PacketEncodingBenchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchCodecBenchmark {
+
+    private static final int BATCHES = 64;
+    private static final int CHANNELS = 6;
+    private static final long SAMPLE_INTERVAL_NS = 5_000_000L;   // 200 Hz
+
+    @Param({"delta-varint", "gorilla"})
+    public String codecName;
+
+    @Param({"10", "50"})
+    public int batchSize;
+
+    private final SampleBatch[] batches = new SampleBatch[BATCHES];
+    private final ByteBuffer[] encoded = new ByteBuffer[BATCHES];
+    private final SampleBatch decoded = new SampleBatch();
+    private BatchCodec codec;
+    private ByteBuffer buffer;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        codec = "gorilla".equals(codecName) ? new GorillaXorCodec() : DeltaVarintCodec.forImu();
+        buffer = ByteBuffer.allocate(codec.maxEncodedSize(batchSize, CHANNELS));
+
+        Random random = new Random(42);
+        long t = 1_000_000_000_000L;
+        float[] sample = new float[CHANNELS];
+        for (int b = 0; b < BATCHES; b++) {
+            SampleBatch batch = new SampleBatch(batchSize, CHANNELS);
+            for (int i = 0; i < batchSize; i++) {
+                // Gyro in deg/s and accelerometer in m/s^2, like the streamer's samples
+                double seconds = (b * batchSize + i) * SAMPLE_INTERVAL_NS / 1e9;
+                double motion = Math.sin(2 * Math.PI * 0.5 * seconds);
+                sample[0] = (float) (20.0 * motion + 0.3 * random.nextGaussian());
+                sample[1] = (float) (-8.0 * motion + 0.3 * random.nextGaussian());
+                sample[2] = (float) (3.0 * Math.cos(2 * Math.PI * 0.2 * seconds) + 0.3 * random.nextGaussian());
+                sample[3] = (float) (0.5 * motion + 0.02 * random.nextGaussian());
+                sample[4] = (float) (9.81 + 0.02 * random.nextGaussian());
+                sample[5] = (float) (0.3 * motion + 0.02 * random.nextGaussian());
+                batch.add(t, sample);
+                t += SAMPLE_INTERVAL_NS + (long) (20_000 * random.nextGaussian());
+            }
+            batches[b] = batch;
+
+            ByteBuffer payload = ByteBuffer.allocate(codec.maxEncodedSize(batchSize, CHANNELS));
+            codec.encode(batch, payload);
+            payload.flip();
+            encoded[b] = payload;
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        buffer.clear();
+        codec.encode(batches[next], buffer);
+        next = (next + 1) & (BATCHES - 1);
+        return buffer;
+    }
+
+    @Benchmark
+    public SampleBatch decode() {
+        ByteBuffer payload = encoded[next];
+        payload.rewind();
+        BatchCodec.decode(payload, decoded);
+        next = (next + 1) & (BATCHES - 1);
+        return decoded;
+    }
+}
@@ -0,0 +1,122 @@
+package com.obs.mobile.benchmarks;
+
+import com.obs.mobile.ingest.DeviceStream;
+import com.obs.mobile.ingest.PacketDecoder;
+import com.obs.mobile.streaming.BatchCodec;
+import com.obs.mobile.streaming.DeltaVarintCodec;
+import com.obs.mobile.streaming.SampleBatch;
+import com.obs.mobile.streaming.SensorPacket;
+import com.obs.mobile.streaming.SensorPacketWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IngestDecodeBenchmark - Per-packet cost of the ingest server's receive thread
+ *
+ * decode: PacketDecoder alone; ingest: decode plus DeviceStream.onPacket()
+ * (stats, latest state, ring buffers), i.e. everything a receive thread does
+ * between two receive() calls. Packets are SensorPacketWriter output with the
+ * three IMU encodings; 1 / (ns/op) is the packet rate one core sustains.
+ * Should be 0 B/op under -prof gc.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IngestDecodeBenchmark {
+
+    private static final int PACKETS = 256;
+
+    /** IMU batch in the packet: none, "imu" array, or "imu_packed" */
+    @Param({"none", "json", "packed"})
+    public String imu;
+
+    @Param({"10"})
+    public int batchSize;
+
+    private final byte[][] packets = new byte[PACKETS][];
+    private final PacketDecoder decoder = new PacketDecoder();
+    private final SensorPacket packet = new SensorPacket();
+    private final SampleBatch batch = new SampleBatch(32, 6);
+    private DeviceStream device;
+
+    private int next = 0;
+    private long receiveNs = 0L;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        BatchCodec codec = "packed".equals(imu) ? DeltaVarintCodec.forImu() : null;
+        SensorPacketWriter writer = new SensorPacketWriter();
+        SensorPacket source = new SensorPacket();
+        SampleBatch sourceBatch = new SampleBatch(32, 6);
+        float[] sample = new float[6];
+        for (int p = 0; p < PACKETS; p++) {
+            source.sequence = p + 1;
+            source.timestampNs = 1_000_000_000L + p * 50_000_000L;
+            source.captureTimestampNs = source.timestampNs - 1_500_000L;
+            source.accelX = (float) random.nextGaussian();
+            source.accelZ = 9.81f + (float) random.nextGaussian() * 0.3f;
+            source.accelMagnitude = 9.9f;
+            source.gyroY = (float) random.nextGaussian() * 20f;
+            source.lightLux = 250f + random.nextFloat() * 10f;
+            source.lightCategory = "Normal";
+            source.magnetometerAzimuth = random.nextFloat() * 360f;
+            source.magnetometerDirection = "North-East";
+            sourceBatch.reset(6);
+            if (!"none".equals(imu)) {
+                for (int i = 0; i < batchSize; i++) {
+                    for (int c = 0; c < 6; c++) {
+                        sample[c] = (float) random.nextGaussian() + (c == 5 ? 9.81f : 0f);
+                    }
+                    sourceBatch.add(source.timestampNs - (batchSize - i) * 5_000_000L, sample);
+                }
+            }
+            ByteBuffer bytes = writer.write(source, sourceBatch, codec);
+            packets[p] = Arrays.copyOf(bytes.array(), bytes.limit());
+        }
+        device = new DeviceStream(1, new InetSocketAddress(5000), 4096, 1024);
+    }
+
+    @Benchmark
+    public long decode() {
+        byte[] data = packets[next];
+        next = (next + 1) & (PACKETS - 1);
+        decoder.decode(data, 0, data.length, packet, batch);
+        return packet.sequence;
+    }
+
+    @Benchmark
+    public boolean ingest() {
+        byte[] data = packets[next];
+        next = (next + 1) & (PACKETS - 1);
+        decoder.decode(data, 0, data.length, packet, batch);
+        // Keep the stream moving forward so every packet is stored, not rejected as stale
+        long shiftNs = (receiveNs += 50_000_000L) - packet.timestampNs;
+        packet.timestampNs += shiftNs;
+        for (int i = 0; i < batch.count; i++) {
+            batch.timestampsNs[i] += shiftNs;
+        }
+        packet.sequence = receiveNs / 50_000_000L;
+        return device.onPacket(packet, batch, receiveNs);
+    }
+}
@@ -0,0 +1,127 @@
+package com.obs.mobile.benchmarks;
+
+import com.obs.mobile.streaming.BatchCodec;
+import com.obs.mobile.streaming.DeltaVarintCodec;
+import com.obs.mobile.streaming.SampleBatch;
+import com.obs.mobile.streaming.SensorPacket;
+import com.obs.mobile.streaming.SensorPacketJson;
+import com.obs.mobile.streaming.SensorPacketWriter;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PacketEncodingBenchmark - Cost of building one stream packet
+ *
+ * Compares the org.json packet the app ships (SensorPacketJson.toJSON()
+ * alone, and the whole packet with its IMU batch as bytes) with
+ * SensorPacketWriter, for the three IMU encodings the streamer can send: no
+ * batch, the "imu" JSON array and DeltaVarint "imu_packed". The Maven
+ * org.json is not Android's copy, so treat its numbers as an estimate of
+ * the on-device cost. Sensor values change on every invocation,
+ * like live data. Run with -prof gc: B/op is the garbage per packet.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PacketEncodingBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    /** IMU batch in the packet: none, "imu" array, or "imu_packed" */
+    @Param({"none", "json", "packed"})
+    public String imu;
+
+    @Param({"10"})
+    public int batchSize;
+
+    private final SensorPacket packet = new SensorPacket();
+    private final SampleBatch batch = new SampleBatch(32, 6);
+    private final SensorPacketJson orgJson = new SensorPacketJson();
+    private final SensorPacketWriter writer = new SensorPacketWriter();
+    private BatchCodec codec;
+
+    private final float[][] samples = new float[SAMPLES][6];
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        for (float[] sample : samples) {
+            for (int c = 0; c < 3; c++) {
+                sample[c] = (float) (random.nextGaussian() * 0.5);
+                sample[3 + c] = (float) (random.nextGaussian() * 0.3) + (c == 2 ? 9.81f : 0f);
+            }
+        }
+        codec = "packed".equals(imu) ? DeltaVarintCodec.forImu() : null;
+        packet.lightCategory = "Normal";
+        packet.magnetometerDirection = "NE";
+        packet.captureTimestampNs = 1L;
+    }
+
+    /**
+     * Next packet's values and IMU batch, as the sender thread has them
+     */
+    private void advance() {
+        float[] sample = samples[next];
+        next = (next + 1) & (SAMPLES - 1);
+
+        packet.sequence++;
+        packet.timestampNs += 20_000_000L;
+        packet.captureTimestampNs = packet.timestampNs - 1_500_000L;
+        packet.gyroX = sample[0];
+        packet.gyroY = sample[1];
+        packet.gyroZ = sample[2];
+        packet.accelX = sample[3];
+        packet.accelY = sample[4];
+        packet.accelZ = sample[5];
+        packet.accelMagnitude = (float) Math.sqrt(sample[3] * sample[3] + sample[4] * sample[4] + sample[5] * sample[5]);
+        packet.lightLux = 250f + sample[0];
+        packet.proximityDistance = 5f;
+        packet.magnetometerAzimuth = 45f + sample[1];
+
+        batch.reset(6);
+        if (!"none".equals(imu)) {
+            for (int i = 0; i < batchSize; i++) {
+                batch.add(packet.timestampNs - (batchSize - i) * 5_000_000L,
+                        samples[(next + i) & (SAMPLES - 1)]);
+            }
+        }
+    }
+
+    @Benchmark
+    public JSONObject orgJsonToJson() {
+        advance();
+        return SensorPacketJson.toJSON(packet);
+    }
+
+    @Benchmark
+    public byte[] orgJsonPacket() {
+        advance();
+        return orgJson.assemble(packet, null, batch, codec);
+    }
+
+    @Benchmark
+    public ByteBuffer writerPacket() {
+        advance();
+        return writer.write(packet, batch, codec);
+    }
+}
@@ -0,0 +1,136 @@
+package com.obs.mobile.benchmarks;
+
+import com.obs.mobile.sensors.Compass;
+import com.obs.mobile.sensors.CompassDirection;
+import com.obs.mobile.sensors.LightCategory;
+import com.obs.mobile.sensors.ProximityDebouncer;
+import com.obs.mobile.sensors.RotationGestureDetector;
+import com.obs.mobile.sensors.ShakeDetector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SensorMathBenchmark - Per-event work of the sensor wrappers
+ *
+ * One benchmark per detector the wrappers run on every SensorEvent:
+ * acceleration magnitude and shake detection, rotation gestures, proximity
+ * debouncing, light classification, and the compass (azimuth math alone,
+ * azimuth to direction, and a full update from a new field sample). Inputs
+ * cycle through a table of recorded-like samples so nothing is constant
+ * folded; timestamps advance 5 ms per event (200 Hz). None of these should
+ * allocate: -prof gc must show ~0 B/op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SensorMathBenchmark {
+
+    private static final int SAMPLES = 1024;
+    private static final long INTERVAL_NS = 5_000_000L;
+
+    private final float[][] accel = new float[SAMPLES][3];
+    private final float[][] field = new float[SAMPLES][3];
+    private final float[] gyroZ = new float[SAMPLES];
+    private final float[] lux = new float[SAMPLES];
+    private final float[] distance = new float[SAMPLES];
+    private final float[] azimuth = new float[SAMPLES];
+
+    private final ShakeDetector shakeDetector = new ShakeDetector();
+    private final RotationGestureDetector gestureDetector = new RotationGestureDetector();
+    private final ProximityDebouncer debouncer = new ProximityDebouncer();
+    private final Compass compass = new Compass();
+
+    private int next = 0;
+    private long timestampNs = 0L;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            // Mostly gravity plus hand motion, with the odd shake
+            float shake = random.nextInt(50) == 0 ? 15f : 1f;
+            accel[i][0] = (float) random.nextGaussian() * shake;
+            accel[i][1] = (float) random.nextGaussian() * shake;
+            accel[i][2] = 9.81f + (float) random.nextGaussian() * shake;
+
+            double heading = random.nextDouble() * 2 * Math.PI;
+            field[i][0] = (float) (30 * Math.sin(heading));
+            field[i][1] = (float) (30 * Math.cos(heading));
+            field[i][2] = -40f + (float) random.nextGaussian();
+
+            gyroZ[i] = (float) random.nextGaussian() * 1.2f;
+            lux[i] = (float) Math.pow(10, random.nextDouble() * 5);
+            distance[i] = random.nextBoolean() ? 0f : 5f;
+            azimuth[i] = random.nextFloat() * 360f;
+        }
+        compass.onGravity(0f, 0f, 9.81f);
+    }
+
+    private int advance() {
+        int i = next;
+        next = (next + 1) & (SAMPLES - 1);
+        timestampNs += INTERVAL_NS;
+        return i;
+    }
+
+    @Benchmark
+    public float magnitude() {
+        float[] a = accel[advance()];
+        return ShakeDetector.magnitude(a[0], a[1], a[2]);
+    }
+
+    @Benchmark
+    public boolean shake() {
+        float[] a = accel[advance()];
+        return shakeDetector.onSample(timestampNs, a[0], a[1], a[2]);
+    }
+
+    @Benchmark
+    public boolean rotationGesture() {
+        return gestureDetector.onSample(timestampNs, gyroZ[advance()]);
+    }
+
+    @Benchmark
+    public boolean proximity() {
+        return debouncer.onReading(timestampNs, distance[advance()]);
+    }
+
+    @Benchmark
+    public LightCategory lightCategory() {
+        return LightCategory.of(lux[advance()]);
+    }
+
+    @Benchmark
+    public float compassAzimuth() {
+        int i = advance();
+        return Compass.azimuth(accel[i], field[i]);
+    }
+
+    @Benchmark
+    public CompassDirection compassDirection() {
+        return CompassDirection.fromAzimuth(azimuth[advance()]);
+    }
+
+    @Benchmark
+    public CompassDirection compassUpdate() {
+        float[] m = field[advance()];
+        compass.onMagneticField(m[0], m[1], m[2]);
+        return compass.getDirection();
+    }
+}
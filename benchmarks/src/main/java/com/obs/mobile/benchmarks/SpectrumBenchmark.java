@@ -0,0 +1,94 @@
+package com.obs.mobile.benchmarks;
+
+import com.obs.mobile.stats.RealFft;
+import com.obs.mobile.stats.SpectrumAnalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SpectrumBenchmark - Cost of the accelerometer vibration spectrum
+ *
+ * accelSample: one 200 Hz accelerometer sample into the default
+ * SpectrumAnalyzer (256-point FFT every 64 samples), the per-event cost the
+ * app pays with the FFTs amortized. spectrum: one full spectrum (three
+ * windowed FFTs, peaks and bands), via a hop of 1. fft256: one RealFft
+ * power spectrum alone. None may allocate: -prof gc must show ~0 B/op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SpectrumBenchmark {
+
+    private static final int SAMPLES = 1024;
+    private static final long INTERVAL_NS = 5_000_000L;
+
+    private final float[][] accel = new float[SAMPLES][3];
+    private final SpectrumAnalyzer analyzer = new SpectrumAnalyzer();
+    private final SpectrumAnalyzer everySample = new SpectrumAnalyzer(SpectrumAnalyzer.DEFAULT_FFT_SIZE, 1,
+            SpectrumAnalyzer.DEFAULT_PEAK_COUNT, SpectrumAnalyzer.DEFAULT_BAND_EDGES_HZ);
+    private final RealFft fft = new RealFft(SpectrumAnalyzer.DEFAULT_FFT_SIZE);
+    private final float[] frame = new float[SpectrumAnalyzer.DEFAULT_FFT_SIZE];
+    private final float[] power = new float[SpectrumAnalyzer.DEFAULT_FFT_SIZE / 2 + 1];
+
+    private int next = 0;
+    private long timestampNs = 0L;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            // A motor at 37 Hz and its harmonic on top of noise and gravity
+            double t = i * INTERVAL_NS / 1e9;
+            accel[i][0] = (float) (0.5 * Math.sin(2 * Math.PI * 37 * t) + 0.05 * random.nextGaussian());
+            accel[i][1] = (float) (0.1 * Math.sin(2 * Math.PI * 74 * t) + 0.05 * random.nextGaussian());
+            accel[i][2] = 9.81f + (float) (0.05 * random.nextGaussian());
+        }
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = accel[i][0];
+        }
+        for (int i = 0; i < SAMPLES; i++) {
+            accelSample();
+            spectrum();
+        }
+    }
+
+    private float[] advance() {
+        next = (next + 1) & (SAMPLES - 1);
+        timestampNs += INTERVAL_NS;
+        return accel[next];
+    }
+
+    @Benchmark
+    public boolean accelSample() {
+        float[] sample = advance();
+        return analyzer.add(timestampNs, sample[0], sample[1], sample[2]);
+    }
+
+    @Benchmark
+    public boolean spectrum() {
+        float[] sample = advance();
+        return everySample.add(timestampNs, sample[0], sample[1], sample[2]);
+    }
+
+    @Benchmark
+    public float[] fft256() {
+        fft.powerSpectrum(frame, power);
+        return power;
+    }
+}
@@ -0,0 +1,132 @@
+package com.obs.mobile.benchmarks;
+
+import com.obs.mobile.stats.DerivedChannels;
+import com.obs.mobile.stats.Ewma;
+import com.obs.mobile.stats.QuantileSketch;
+import com.obs.mobile.stats.RunningStats;
+import com.obs.mobile.stats.SlidingMinMax;
+import com.obs.mobile.stats.SlidingRms;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StreamingStatsBenchmark - Per-sample cost of the streaming operators
+ *
+ * One benchmark per operator fed the accelerometer magnitude of a 200 Hz
+ * stream (the windowed ones with a 1 s window, i.e. 200 samples in it), plus
+ * the whole DerivedChannels.forImu() set over full IMU samples as the phone
+ * and the ingest server run it, and reading the set once per packet. All of
+ * it must be O(1) per sample and show ~0 B/op with -prof gc.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StreamingStatsBenchmark {
+
+    private static final int SAMPLES = 1024;
+    private static final long INTERVAL_NS = 5_000_000L;
+    private static final long SECOND_NS = 1_000_000_000L;
+
+    private final float[][] imu = new float[SAMPLES][6];
+    private final float[] magnitude = new float[SAMPLES];
+
+    private final RunningStats runningStats = new RunningStats();
+    private final Ewma ewma = new Ewma(SECOND_NS);
+    private final SlidingMinMax minMax = new SlidingMinMax(SECOND_NS, 512);
+    private final SlidingRms rms = new SlidingRms(SECOND_NS, 512, true);
+    private final QuantileSketch quantiles = new QuantileSketch(0.95, 0.01, 10 * SECOND_NS);
+    private final DerivedChannels derived = DerivedChannels.forImu();
+    private final float[] derivedValues = new float[derived.size()];
+
+    private int next = 0;
+    private long timestampNs = 0L;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            for (int c = 0; c < 3; c++) {
+                imu[i][c] = (float) random.nextGaussian() * 20f;
+                imu[i][3 + c] = (float) random.nextGaussian() * 0.5f;
+            }
+            imu[i][5] += 9.81f;
+            magnitude[i] = (float) Math.sqrt(imu[i][3] * imu[i][3] + imu[i][4] * imu[i][4] + imu[i][5] * imu[i][5]);
+        }
+        // Fill the windows and the sketch before measuring
+        for (int i = 0; i < 4 * SAMPLES; i++) {
+            advance();
+            quantiles.add(timestampNs, magnitude[next]);
+            derived.update(timestampNs, imu[next], 0);
+        }
+    }
+
+    private int advance() {
+        next = (next + 1) & (SAMPLES - 1);
+        timestampNs += INTERVAL_NS;
+        return next;
+    }
+
+    @Benchmark
+    public double welford() {
+        runningStats.add(timestampNs, magnitude[advance()]);
+        return runningStats.getVariance();
+    }
+
+    @Benchmark
+    public double ewma() {
+        ewma.add(timestampNs, magnitude[advance()]);
+        return ewma.getValue();
+    }
+
+    @Benchmark
+    public double slidingMinMax() {
+        minMax.add(timestampNs, magnitude[advance()]);
+        return minMax.getRange();
+    }
+
+    @Benchmark
+    public double slidingRms() {
+        rms.add(timestampNs, magnitude[advance()]);
+        return rms.getValue();
+    }
+
+    @Benchmark
+    public long quantileSketchAdd() {
+        quantiles.add(timestampNs, magnitude[advance()]);
+        return quantiles.getCount();
+    }
+
+    @Benchmark
+    public double quantileSketchRead() {
+        return quantiles.getQuantile(0.95);
+    }
+
+    @Benchmark
+    public int derivedImuSample() {
+        int i = advance();
+        derived.update(timestampNs, imu[i], 0);
+        return i;
+    }
+
+    @Benchmark
+    public float[] derivedValues() {
+        derived.getValues(derivedValues);
+        return derivedValues;
+    }
+}
@@ -0,0 +1,93 @@
+package com.obs.mobile.benchmarks;
+
+import com.obs.mobile.ingest.DeviceStream;
+import com.obs.mobile.ingest.SeriesResult;
+import com.obs.mobile.ingest.TimeSeries;
+import com.obs.mobile.streaming.DeltaVarintCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TimeSeriesBenchmark - Ingest and dashboard costs of one device's TimeSeries
+ *
+ * The series is filled with HOURS of 200 Hz IMU data (6 channels, chunks
+ * compressed with DeltaVarintCodec like DeviceStream's) before measuring.
+ * append: one IMU sample, including the three rollups and the amortized
+ * chunk compression. Queries as a dashboard issues them, 600
+ * points each: all HOURS (answered by the 1 min rollup), the last 10
+ * minutes (1 s rollup) and the last 10 seconds (raw chunks).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimeSeriesBenchmark {
+
+    private static final int HOURS = 3;
+    private static final long INTERVAL_NS = 5_000_000L;
+    private static final int POINTS = 600;
+
+    private final TimeSeries series = new TimeSeries(DeviceStream.IMU_CHANNELS, TimeSeries.DEFAULT_RAW_RETENTION_NS,
+            DeltaVarintCodec.forImu());
+    private final SeriesResult result = new SeriesResult();
+    private final float[][] samples = new float[1024][DeviceStream.IMU_CHANNELS];
+    private long timestampNs = 1_000_000_000L;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        for (float[] sample : samples) {
+            for (int c = 0; c < sample.length; c++) {
+                sample[c] = (float) random.nextGaussian() + (c == 5 ? 9.81f : 0f);
+            }
+        }
+        long count = HOURS * 3600L * 1_000_000_000L / INTERVAL_NS;
+        for (long i = 0; i < count; i++) {
+            append();
+        }
+    }
+
+    private boolean append() {
+        float[] sample = samples[next];
+        next = (next + 1) & (samples.length - 1);
+        timestampNs += INTERVAL_NS;
+        return series.append(timestampNs, sample, 0);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean appendSample() {
+        return append();
+    }
+
+    @Benchmark
+    public int queryAllHours() {
+        return series.queryPoints(5, timestampNs - HOURS * 3600L * 1_000_000_000L, timestampNs, POINTS, result);
+    }
+
+    @Benchmark
+    public int queryTenMinutes() {
+        return series.queryPoints(5, timestampNs - 600L * 1_000_000_000L, timestampNs, POINTS, result);
+    }
+
+    @Benchmark
+    public int queryTenSecondsRaw() {
+        return series.queryPoints(5, timestampNs - 10L * 1_000_000_000L, timestampNs, POINTS, result);
+    }
+}
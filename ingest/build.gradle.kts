@@ -0,0 +1,21 @@
+// Receiver for many phones at once: multi-threaded NIO UDP (and TCP) ingest
+// into per-device ring buffers, with a local HTTP API on top:
+//      ./gradlew :ingest:run --args="5000 --threads 4 --tcp"
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+application {
+    mainClass.set("com.obs.mobile.ingest.IngestServer")
+}
+
+dependencies {
+    implementation(project(":sensor-core"))
+    testImplementation(libs.junit)
+    testImplementation(libs.json)
+}
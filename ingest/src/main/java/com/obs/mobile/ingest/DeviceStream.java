@@ -0,0 +1,338 @@
+package com.obs.mobile.ingest;
+
+import com.obs.mobile.stats.DerivedChannels;
+import com.obs.mobile.streaming.ClockSyncMessage;
+import com.obs.mobile.streaming.DeltaVarintCodec;
+import com.obs.mobile.streaming.FeedbackMessage;
+import com.obs.mobile.streaming.SampleBatch;
+import com.obs.mobile.streaming.SensorPacket;
+import com.obs.mobile.streaming.StreamStats;
+
+import java.net.SocketAddress;
+
+/**
+ * DeviceStream - Everything the ingest server keeps about one sending phone
+ *
+ * The latest packet, two short histories, their long-term TimeSeries and
+ * the stream statistics:
+ *  - imu: one sample per IMU reading, [gx, gy, gz, ax, ay, az] in the
+ *    packet's units, from the packet's IMU batch, or from the packet's own
+ *    gyroscope and accelerometer values when it carries none
+ *  - scalars: one sample per packet, see the SCALAR_* channels
+ *  - derived: DerivedChannels over the IMU samples (DerivedChannels.forImu()
+ *    unless the server is given another set), one value per channel per
+ *    packet. Computed here from the samples received, so every phone gets
+ *    them, whatever its app version sends in its own "derived" section.
+ * The rings hold the last seconds for cheap window reads; getImuSeries(),
+ * getScalarSeries() and getDerivedSeries() hold the same channels for
+ * hours, with rollups.
+ * Timestamps are the phone's clock (elapsedRealtimeNanos); windows are
+ * asked for relative to the newest sample, so no clock sync is needed to
+ * read "the last two seconds".
+ *
+ * Written by a receive thread, read by API threads: every method is
+ * synchronized. Packets from one phone normally reach one receive thread
+ * (SO_REUSEPORT hashes by source), so the lock is uncontended.
+ */
+public class DeviceStream {
+
+    public static final int IMU_CHANNELS = 6;
+
+    public static final int SCALAR_ACCEL_MAGNITUDE = 0;
+    public static final int SCALAR_LIGHT_LUX = 1;
+    public static final int SCALAR_PROXIMITY_DISTANCE = 2;
+    public static final int SCALAR_MAGNETOMETER_AZIMUTH = 3;
+    public static final int SCALAR_CHANNELS = 4;
+
+    private static final long FEEDBACK_INTERVAL_NS = 500_000_000L;
+
+    public final int id;
+    public final SocketAddress source;
+
+    private final SensorPacket latest = new SensorPacket();
+    private final SampleRing imu;
+    private final SampleRing scalars;
+    private final TimeSeries imuSeries;
+    private final TimeSeries scalarSeries;
+    private final DerivedChannels derived;
+    private final float[] derivedValues;
+    private final TimeSeries derivedSeries;
+    private final StreamStats stats = new StreamStats();
+    private final float[] sample = new float[IMU_CHANNELS];
+
+    private boolean hasPacket = false;
+    private long lastReceiveNs = System.nanoTime();   // Idle since creation until the first packet
+    private long lastFeedbackNs = 0L;
+    private long backfilled = 0L;
+    private ClockSyncMessage clock;
+
+    public DeviceStream(int id, SocketAddress source, int imuCapacity, int scalarCapacity) {
+        this(id, source, imuCapacity, scalarCapacity, TimeSeries.DEFAULT_RAW_RETENTION_NS);
+    }
+
+    /**
+     * @param rawRetentionNs how long the TimeSeries keep raw samples (rollups are kept longer)
+     */
+    public DeviceStream(int id, SocketAddress source, int imuCapacity, int scalarCapacity, long rawRetentionNs) {
+        this(id, source, imuCapacity, scalarCapacity, rawRetentionNs, DerivedChannels.forImu());
+    }
+
+    /**
+     * @param derived statistics over the IMU samples, owned by this stream from now on
+     */
+    public DeviceStream(int id, SocketAddress source, int imuCapacity, int scalarCapacity, long rawRetentionNs,
+                        DerivedChannels derived) {
+        if (derived.getInputChannels() > IMU_CHANNELS) {
+            throw new IllegalArgumentException("derived channels need " + derived.getInputChannels()
+                    + " IMU channels");
+        }
+        this.id = id;
+        this.source = source;
+        this.imu = new SampleRing(imuCapacity, IMU_CHANNELS);
+        this.scalars = new SampleRing(scalarCapacity, SCALAR_CHANNELS);
+        this.imuSeries = new TimeSeries(IMU_CHANNELS, rawRetentionNs, DeltaVarintCodec.forImu());
+        this.scalarSeries = new TimeSeries(SCALAR_CHANNELS, rawRetentionNs);
+        this.derived = derived;
+        this.derivedValues = new float[Math.max(1, derived.size())];
+        this.derivedSeries = new TimeSeries(Math.max(1, derived.size()), rawRetentionNs);
+    }
+
+    // ============================================================
+    // Receive side
+    // ============================================================
+
+    /**
+     * Account and store one decoded packet
+     *
+     * @return true if a FeedbackMessage is due for this phone
+     */
+    public synchronized boolean onPacket(SensorPacket packet, SampleBatch batch, long receiveNs) {
+        lastReceiveNs = receiveNs;
+        if (packet.sequence >= 0L) {
+            stats.onPacket(packet.sequence, Math.max(0L, packet.captureTimestampNs),
+                    Math.max(0L, packet.timestampNs), receiveNs);
+        }
+
+        // Only packets newer than the stored one replace the latest state
+        if (!hasPacket || packet.timestampNs > latest.timestampNs) {
+            store(packet, batch);
+        }
+
+        if (packet.sequence < 0L || receiveNs - lastFeedbackNs < FEEDBACK_INTERVAL_NS) return false;
+        lastFeedbackNs = receiveNs;
+        return true;
+    }
+
+    /**
+     * Feedback for the last packet, see onPacket()
+     */
+    public synchronized FeedbackMessage feedback(long holdNs) {
+        return new FeedbackMessage(latest.sequence, latest.timestampNs, holdNs,
+                stats.getReceived(), stats.getLost());
+    }
+
+    /**
+     * A packet the phone spooled during an outage, resent late
+     *
+     * Its samples are merged into the TimeSeries (the rings only hold the
+     * last seconds and keep their order). Derived channels are running
+     * statistics and cannot be recomputed for the past: the gap stays empty
+     * in getDerivedSeries(). A packet already received live is dropped by
+     * sequence number, within StreamStats' window. No feedback: the phone
+     * paces backfill on its own.
+     */
+    public synchronized void onBackfill(SensorPacket packet, SampleBatch batch, long receiveNs) {
+        lastReceiveNs = receiveNs;
+        if (packet.sequence >= 0L && !stats.onBackfill(packet.sequence)) return;
+        backfilled++;
+
+        // Newer than anything live, e.g. the receiver restarted during the outage
+        if (!hasPacket || packet.timestampNs > latest.timestampNs) {
+            store(packet, batch);
+            return;
+        }
+        if (batch.count > 0) {
+            imuSeries.insertAll(batch);
+        } else {
+            imuSample(packet);
+            imuSeries.insert(packet.timestampNs, sample, 0);
+        }
+        scalarSample(packet);
+        scalarSeries.insert(packet.timestampNs, sample, 0);
+    }
+
+    public synchronized void onClockEstimate(ClockSyncMessage estimate) {
+        clock = estimate;
+        stats.setClockOffset(estimate.offsetNs);
+    }
+
+    // ============================================================
+    // Read side
+    // ============================================================
+
+    /**
+     * Copy the newest packet into out
+     *
+     * @return false if nothing was received yet
+     */
+    public synchronized boolean getLatest(SensorPacket out) {
+        if (!hasPacket) return false;
+        copy(latest, out);
+        return true;
+    }
+
+    /**
+     * IMU samples of the last windowNs before the newest one
+     *
+     * @return samples copied into out
+     */
+    public synchronized int getImuWindow(long windowNs, SampleBatch out) {
+        long newest = imu.newestTimestamp();
+        return imu.window(newest - windowNs, newest, out);
+    }
+
+    /**
+     * IMU samples between two phone timestamps
+     */
+    public synchronized int getImuWindow(long fromNs, long toNs, SampleBatch out) {
+        return imu.window(fromNs, toNs, out);
+    }
+
+    /**
+     * Per-packet scalars of the last windowNs before the newest one
+     */
+    public synchronized int getScalarWindow(long windowNs, SampleBatch out) {
+        long newest = scalars.newestTimestamp();
+        return scalars.window(newest - windowNs, newest, out);
+    }
+
+    /**
+     * Long-term IMU history, same channels as getImuWindow(); has its own lock
+     */
+    public TimeSeries getImuSeries() {
+        return imuSeries;
+    }
+
+    /**
+     * Long-term per-packet scalars, SCALAR_* channels
+     */
+    public TimeSeries getScalarSeries() {
+        return scalarSeries;
+    }
+
+    /**
+     * Names of the derived channels, in value and TimeSeries channel order
+     */
+    public String[] getDerivedNames() {
+        return derived.getNames();
+    }
+
+    /**
+     * Current derived values into out[0..getDerivedNames().length)
+     *
+     * @return false if nothing was received yet
+     */
+    public synchronized boolean getDerived(float[] out) {
+        if (!hasPacket) return false;
+        System.arraycopy(derivedValues, 0, out, 0, derived.size());
+        return true;
+    }
+
+    /**
+     * Long-term derived values, one sample per packet
+     */
+    public TimeSeries getDerivedSeries() {
+        return derivedSeries;
+    }
+
+    public synchronized long getReceived() {
+        return stats.getReceived();
+    }
+
+    public synchronized long getLost() {
+        return stats.getLost();
+    }
+
+    public synchronized long getBackfilled() {
+        return backfilled;
+    }
+
+    public synchronized long getLastReceiveNs() {
+        return lastReceiveNs;
+    }
+
+    /**
+     * Phone -> receiver clock, null until the phone sent an estimate
+     */
+    public synchronized ClockSyncMessage getClock() {
+        return clock;
+    }
+
+    /**
+     * Summary like ReferenceReceiver's report: loss, reordering, latency
+     */
+    public synchronized String describe() {
+        return stats.toString() + (backfilled > 0 ? " backfilled=" + backfilled : "");
+    }
+
+    /**
+     * Make packet the latest state and append its samples everywhere
+     */
+    private void store(SensorPacket packet, SampleBatch batch) {
+        copy(packet, latest);
+        hasPacket = true;
+
+        if (batch.count > 0) {
+            imu.addAll(batch);
+            imuSeries.appendAll(batch);
+            if (batch.channels == IMU_CHANNELS) derived.updateAll(batch);
+        } else {
+            imuSample(packet);
+            imu.add(packet.timestampNs, sample, 0);
+            imuSeries.append(packet.timestampNs, sample, 0);
+            derived.update(packet.timestampNs, sample, 0);
+        }
+        if (derived.size() > 0) {
+            derived.getValues(derivedValues);
+            derivedSeries.append(packet.timestampNs, derivedValues, 0);
+        }
+        scalarSample(packet);
+        scalars.add(packet.timestampNs, sample, 0);
+        scalarSeries.append(packet.timestampNs, sample, 0);
+    }
+
+    private void imuSample(SensorPacket packet) {
+        sample[0] = packet.gyroX;
+        sample[1] = packet.gyroY;
+        sample[2] = packet.gyroZ;
+        sample[3] = packet.accelX;
+        sample[4] = packet.accelY;
+        sample[5] = packet.accelZ;
+    }
+
+    private void scalarSample(SensorPacket packet) {
+        sample[SCALAR_ACCEL_MAGNITUDE] = packet.accelMagnitude;
+        sample[SCALAR_LIGHT_LUX] = packet.lightLux;
+        sample[SCALAR_PROXIMITY_DISTANCE] = packet.proximityDistance;
+        sample[SCALAR_MAGNETOMETER_AZIMUTH] = packet.magnetometerAzimuth;
+    }
+
+    private static void copy(SensorPacket from, SensorPacket to) {
+        to.sequence = from.sequence;
+        to.timestampNs = from.timestampNs;
+        to.captureTimestampNs = from.captureTimestampNs;
+        to.accelX = from.accelX;
+        to.accelY = from.accelY;
+        to.accelZ = from.accelZ;
+        to.accelMagnitude = from.accelMagnitude;
+        to.gyroX = from.gyroX;
+        to.gyroY = from.gyroY;
+        to.gyroZ = from.gyroZ;
+        to.lightLux = from.lightLux;
+        to.lightCategory = from.lightCategory;
+        to.proximityDistance = from.proximityDistance;
+        to.proximityIsNear = from.proximityIsNear;
+        to.magnetometerAzimuth = from.magnetometerAzimuth;
+        to.magnetometerDirection = from.magnetometerDirection;
+    }
+}
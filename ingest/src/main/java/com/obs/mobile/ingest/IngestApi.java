@@ -0,0 +1,278 @@
+package com.obs.mobile.ingest;
+
+import com.obs.mobile.streaming.SampleBatch;
+import com.obs.mobile.streaming.SensorPacket;
+import com.obs.mobile.streaming.SensorPacketWriter;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+
+/**
+ * IngestApi - Local HTTP/JSON view of the IngestServer's devices
+ *
+ * Bound to the loopback interface only; dashboards and scripts on the same
+ * box poll it. Endpoints:
+ *      GET /devices                      id, source, received, lost, backfilled, idle_ms per device
+ *      GET /devices/{id}                 latest packet, same JSON as the phone sent (minus the IMU batch)
+ *      GET /devices/{id}/imu?ms=1000     IMU samples of the last ms before the newest one:
+ *                                        {"channels": [...], "samples": [[ts_ns, gx, gy, gz, ax, ay, az], ...]}
+ *      GET /devices/{id}/scalars?ms=1000 per-packet values, same layout
+ *      GET /devices/{id}/derived         current DerivedChannels values: {"accel_rms": 0.12, ...}
+ *      GET /devices/{id}/series?channel=az&seconds=3600&points=600
+ *                                        one channel's TimeSeries (IMU, scalar or derived name)
+ *                                        over the last seconds, at most
+ *                                        about points buckets of min/max/mean, from the coarsest
+ *                                        rollup that fits: {"resolution_ns", "source_ns",
+ *                                        "buckets": [[start_ns, min, max, mean, samples], ...]}
+ *
+ * Served from a small thread pool of its own, so reads never hold up the
+ * receive threads beyond one DeviceStream lock.
+ */
+public class IngestApi {
+
+    public static final int DEFAULT_PORT = 8091;
+
+    private static final long DEFAULT_WINDOW_MS = 1000L;
+    private static final long MAX_WINDOW_MS = 60_000L;
+    private static final String IMU_CHANNELS = "[\"gx\",\"gy\",\"gz\",\"ax\",\"ay\",\"az\"]";
+    private static final String SCALAR_CHANNELS =
+            "[\"accel_magnitude\",\"light_lux\",\"proximity_distance\",\"magnetometer_azimuth\"]";
+    private static final String[] IMU_CHANNEL_NAMES = {"gx", "gy", "gz", "ax", "ay", "az"};
+    private static final String[] SCALAR_CHANNEL_NAMES =
+            {"accel_magnitude", "light_lux", "proximity_distance", "magnetometer_azimuth"};
+    private static final int DEFAULT_SERIES_SECONDS = 3600;
+    private static final int DEFAULT_SERIES_POINTS = 600;
+    private static final int MAX_SERIES_POINTS = 10_000;
+
+    private final IngestServer server;
+    private final int port;
+    private HttpServer http;
+
+    public IngestApi(IngestServer server, int port) {
+        this.server = server;
+        this.port = port;
+    }
+
+    public synchronized void start() throws IOException {
+        if (http != null) return;
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/devices", this::handle);
+        http.setExecutor(Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "IngestApi");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        http.start();
+    }
+
+    public synchronized void stop() {
+        if (http == null) return;
+        http.stop(0);
+        http = null;
+    }
+
+    /**
+     * Bound port, useful when constructed with port 0
+     */
+    public synchronized int getPort() {
+        return http != null ? http.getAddress().getPort() : port;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "{\"error\":\"GET only\"}");
+                return;
+            }
+            // /devices, /devices/{id} or /devices/{id}/{imu|scalars|derived|series}
+            String[] parts = exchange.getRequestURI().getPath().split("/");
+            if (parts.length == 2) {
+                respond(exchange, 200, listDevices());
+                return;
+            }
+            DeviceStream device = parts.length <= 4 ? server.getDevice(parseInt(parts[2], -1)) : null;
+            if (device == null) {
+                respond(exchange, 404, "{\"error\":\"no such device\"}");
+                return;
+            }
+            if (parts.length == 3) {
+                respond(exchange, 200, latest(device));
+            } else if ("imu".equals(parts[3]) || "scalars".equals(parts[3])) {
+                long windowMs = Math.min(MAX_WINDOW_MS, queryLong(exchange.getRequestURI().getQuery(), "ms",
+                        DEFAULT_WINDOW_MS));
+                respond(exchange, 200, window(device, "imu".equals(parts[3]), windowMs * 1_000_000L));
+            } else if ("derived".equals(parts[3])) {
+                respond(exchange, 200, derived(device));
+            } else if ("series".equals(parts[3])) {
+                String query = exchange.getRequestURI().getQuery();
+                String body = series(device, queryString(query, "channel", "az"),
+                        queryLong(query, "seconds", DEFAULT_SERIES_SECONDS),
+                        (int) Math.min(MAX_SERIES_POINTS, queryLong(query, "points", DEFAULT_SERIES_POINTS)));
+                respond(exchange, body != null ? 200 : 404, body != null ? body : "{\"error\":\"unknown channel\"}");
+            } else {
+                respond(exchange, 404, "{\"error\":\"unknown endpoint\"}");
+            }
+        } catch (RuntimeException e) {
+            respond(exchange, 500, "{\"error\":\"" + e.getClass().getSimpleName() + "\"}");
+        }
+    }
+
+    private String listDevices() {
+        long nowNs = System.nanoTime();
+        StringBuilder json = new StringBuilder("[");
+        for (DeviceStream device : server.getDevices()) {
+            if (json.length() > 1) json.append(',');
+            json.append(String.format(Locale.US,
+                    "{\"id\":%d,\"source\":\"%s\",\"received\":%d,\"lost\":%d,\"backfilled\":%d,\"idle_ms\":%d}",
+                    device.id, device.source, device.getReceived(), device.getLost(), device.getBackfilled(),
+                    (nowNs - device.getLastReceiveNs()) / 1_000_000L));
+        }
+        return json.append(']').toString();
+    }
+
+    private static String latest(DeviceStream device) {
+        SensorPacket packet = new SensorPacket();
+        if (!device.getLatest(packet)) return "{}";
+        ByteBuffer encoded = new SensorPacketWriter().write(packet);
+        return new String(encoded.array(), 0, encoded.limit(), StandardCharsets.UTF_8);
+    }
+
+    private static String window(DeviceStream device, boolean imu, long windowNs) {
+        SampleBatch batch = new SampleBatch();
+        if (imu) {
+            device.getImuWindow(windowNs, batch);
+        } else {
+            device.getScalarWindow(windowNs, batch);
+        }
+        StringBuilder json = new StringBuilder(64 + batch.count * 80);
+        json.append("{\"channels\":").append(imu ? IMU_CHANNELS : SCALAR_CHANNELS).append(",\"samples\":[");
+        for (int i = 0; i < batch.count; i++) {
+            if (i > 0) json.append(',');
+            json.append('[').append(batch.timestampsNs[i]);
+            for (int c = 0; c < batch.channels; c++) {
+                appendFloat(json, batch.get(i, c));
+            }
+            json.append(']');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String derived(DeviceStream device) {
+        String[] names = device.getDerivedNames();
+        float[] values = new float[names.length];
+        boolean received = device.getDerived(values);
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; received && i < names.length; i++) {
+            if (i > 0) json.append(',');
+            json.append('"').append(names[i]).append("\":");
+            appendValue(json, values[i]);
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * @return null if the channel name is unknown
+     */
+    private static String series(DeviceStream device, String channel, long seconds, int points) {
+        TimeSeries series = device.getImuSeries();
+        int index = indexOf(IMU_CHANNEL_NAMES, channel);
+        if (index < 0) {
+            series = device.getScalarSeries();
+            index = indexOf(SCALAR_CHANNEL_NAMES, channel);
+        }
+        if (index < 0) {
+            series = device.getDerivedSeries();
+            index = indexOf(device.getDerivedNames(), channel);
+        }
+        if (index < 0) return null;
+
+        SeriesResult result = new SeriesResult();
+        long toNs = series.getNewestNs();
+        if (toNs != Long.MIN_VALUE) {
+            long fromNs = toNs - Math.max(1L, seconds) * 1_000_000_000L;
+            series.queryPoints(index, fromNs, toNs, Math.max(1, points), result);
+        }
+
+        StringBuilder json = new StringBuilder(64 + result.count * 80);
+        json.append("{\"channel\":\"").append(channel).append('"')
+                .append(",\"resolution_ns\":").append(result.resolutionNs)
+                .append(",\"source_ns\":").append(result.sourceWidthNs)
+                .append(",\"buckets\":[");
+        for (int i = 0; i < result.count; i++) {
+            if (i > 0) json.append(',');
+            json.append('[').append(result.startsNs[i]);
+            appendFloat(json, result.min[i]);
+            appendFloat(json, result.max[i]);
+            appendFloat(json, result.mean[i]);
+            json.append(',').append(result.samples[i]).append(']');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static void appendFloat(StringBuilder json, float value) {
+        appendValue(json.append(','), value);
+    }
+
+    private static void appendValue(StringBuilder json, float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            json.append("null");
+        } else {
+            json.append(value);
+        }
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String queryString(String query, String name, String fallback) {
+        if (query == null) return fallback;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0 && pair.substring(0, equals).equals(name)) {
+                return pair.substring(equals + 1);
+            }
+        }
+        return fallback;
+    }
+
+    private static long queryLong(String query, String name, long fallback) {
+        if (query == null) return fallback;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0 && pair.substring(0, equals).equals(name)) {
+                return parseInt(pair.substring(equals + 1), (int) fallback);
+            }
+        }
+        return fallback;
+    }
+
+    private static int parseInt(String value, int fallback) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,605 @@
+package com.obs.mobile.ingest;
+
+import com.obs.mobile.stats.DerivedChannels;
+import com.obs.mobile.streaming.ClockSyncMessage;
+import com.obs.mobile.streaming.DiscoveryProtocol;
+import com.obs.mobile.streaming.PacketSpool;
+import com.obs.mobile.streaming.ReceiverAnnouncer;
+import com.obs.mobile.streaming.SampleBatch;
+import com.obs.mobile.streaming.SensorPacket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * IngestServer - Multi-threaded receiver that keeps every phone's stream in memory
+ *
+ * Speaks the same wire formats as ReferenceReceiver and sensor_receiver.py
+ * (JSON packets with "imu" or "imu_packed", OBS-SYNC clock sync, OBS-CLOCK
+ * estimates, OBS-BACKFILL spooled packets, FeedbackMessage replies), but is
+ * built for many phones at once:
+ *  - UDP: one DatagramChannel per receive thread, all bound to the port with
+ *    SO_REUSEPORT so the kernel spreads senders over the threads (each phone
+ *    sticks to one). Without SO_REUSEPORT the threads share one channel.
+ *  - TCP (optional): one selector thread reading length-prefixed frames.
+ *  - Each thread decodes with its own PacketDecoder into a reused
+ *    SensorPacket and SampleBatch and stores the result in the phone's
+ *    DeviceStream ring buffers: no allocation per packet. Only the rare
+ *    replies (feedback twice a second per phone, clock sync) allocate, and
+ *    DatagramChannel.receive() the sender address when the sender changes.
+ *
+ * Phones are told apart by source address and port (packets carry no
+ * device id); a phone that reconnects from a new port shows up as a new
+ * device. A device that sent nothing for the idle timeout is dropped with
+ * its history, so reconnecting phones do not pile up: an hour by default,
+ * longer than most outages, so packets backfilled afterwards still find it.
+ * Backfilled packets are decoded and merged into the device's TimeSeries.
+ *
+ * Read the data in-process (getDevices(), DeviceStream.getLatest(),
+ * getImuWindow(), getImuSeries() for hours of history with rollups,
+ * getDerived() for the DerivedChannels statistics) or over
+ * IngestApi's local HTTP endpoints.
+ *
+ * Usage (from the compiled classes):
+ *      java com.obs.mobile.ingest.IngestServer [port] [--threads N] [--tcp]
+ *              [--api-port P] [--imu-capacity N] [--raw-retention-s S] [--device-idle-s S] [--no-announce]
+ */
+public class IngestServer {
+
+    public static final int DEFAULT_IMU_CAPACITY = 4096;      // ~20 s at 200 Hz
+    public static final int DEFAULT_SCALAR_CAPACITY = 1024;   // ~20 s at 50 packets/s
+    public static final long DEFAULT_DEVICE_IDLE_NS = 3600L * 1_000_000_000L;
+
+    private static final int MAX_DATAGRAM = 65535;
+    private static final int MAX_TCP_PACKET = 1 << 20;
+    private static final int RECEIVE_BUFFER_BYTES = 8 << 20;
+    private static final long REPORT_INTERVAL_MS = 5000L;
+    private static final long EVICTION_INTERVAL_NS = 10_000_000_000L;
+
+    private final int port;
+    private final int threads;
+    private final boolean acceptTcp;
+    private final int imuCapacity;
+    private long rawRetentionNs = TimeSeries.DEFAULT_RAW_RETENTION_NS;
+    private Supplier<DerivedChannels> derivedChannels = DerivedChannels::forImu;
+    private volatile long deviceIdleNs = DEFAULT_DEVICE_IDLE_NS;
+
+    private final Map<SocketAddress, DeviceStream> devicesBySource = new ConcurrentHashMap<>();
+    private final Map<Integer, DeviceStream> devicesById = new ConcurrentHashMap<>();
+    private final AtomicInteger nextDeviceId = new AtomicInteger(1);
+    private final AtomicLong nextEvictionNs = new AtomicLong(System.nanoTime() + EVICTION_INTERVAL_NS);
+
+    private final LongAdder packets = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder decodeErrors = new LongAdder();
+    private final LongAdder replyErrors = new LongAdder();
+
+    private final List<DatagramChannel> udpChannels = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private ServerSocketChannel tcpChannel;
+    private Selector tcpSelector;
+    private boolean reusePort = false;
+    private volatile boolean running = false;
+
+    public IngestServer(int port, int threads, boolean acceptTcp, int imuCapacity) {
+        this.port = port;
+        this.threads = Math.max(1, threads);
+        this.acceptTcp = acceptTcp;
+        this.imuCapacity = imuCapacity;
+    }
+
+    /**
+     * How long each device's TimeSeries keep raw samples; set before start()
+     */
+    public void setRawRetentionNs(long rawRetentionNs) {
+        this.rawRetentionNs = rawRetentionNs;
+    }
+
+    /**
+     * Derived channels for each new device, e.g. a DerivedChannels::forImu
+     * variant with other windows; DerivedChannels::new for none. Set before
+     * start().
+     */
+    public void setDerivedChannels(Supplier<DerivedChannels> derivedChannels) {
+        this.derivedChannels = derivedChannels;
+    }
+
+    /**
+     * Drop devices that sent nothing for this long; Long.MAX_VALUE keeps them until stop()
+     */
+    public void setDeviceIdleNs(long deviceIdleNs) {
+        this.deviceIdleNs = deviceIdleNs;
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) return;
+        running = true;
+        try {
+            openUdp();
+            for (int i = 0; i < threads; i++) {
+                DatagramChannel channel = udpChannels.get(reusePort ? i : 0);
+                startWorker("IngestServer-udp-" + i, () -> udpLoop(channel));
+            }
+            if (acceptTcp) {
+                tcpSelector = Selector.open();
+                tcpChannel = ServerSocketChannel.open();
+                tcpChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                tcpChannel.bind(new InetSocketAddress(getPort()));   // The UDP one, matters for port 0
+                tcpChannel.configureBlocking(false);
+                tcpChannel.register(tcpSelector, SelectionKey.OP_ACCEPT);
+                startWorker("IngestServer-tcp", this::tcpLoop);
+            }
+        } catch (IOException e) {
+            stop();
+            throw e;
+        }
+    }
+
+    public synchronized void stop() {
+        running = false;
+        for (DatagramChannel channel : udpChannels) {
+            closeQuietly(channel);
+        }
+        udpChannels.clear();
+        if (tcpSelector != null) {
+            tcpSelector.wakeup();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        workers.clear();
+        closeQuietly(tcpChannel);
+        closeQuietly(tcpSelector);
+        tcpChannel = null;
+        tcpSelector = null;
+    }
+
+    /**
+     * Local UDP port, useful when constructed with port 0
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) udpChannels.get(0).getLocalAddress()).getPort();
+    }
+
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    public Collection<DeviceStream> getDevices() {
+        return devicesById.values();
+    }
+
+    public DeviceStream getDevice(int id) {
+        return devicesById.get(id);
+    }
+
+    public DeviceStream getDevice(SocketAddress source) {
+        return devicesBySource.get(source);
+    }
+
+    public long getPacketsReceived() {
+        return packets.sum();
+    }
+
+    public long getBytesReceived() {
+        return bytes.sum();
+    }
+
+    public long getDecodeErrors() {
+        return decodeErrors.sum();
+    }
+
+    /**
+     * Drop the devices idle for longer than the idle timeout; the receive
+     * threads call this every EVICTION_INTERVAL_NS
+     *
+     * @return devices dropped
+     */
+    public int evictIdleDevices(long nowNs) {
+        long idleNs = deviceIdleNs;
+        int evicted = 0;
+        synchronized (devicesBySource) {
+            Iterator<DeviceStream> devices = devicesBySource.values().iterator();
+            while (devices.hasNext()) {
+                DeviceStream device = devices.next();
+                if (nowNs - device.getLastReceiveNs() > idleNs) {
+                    devices.remove();
+                    devicesById.remove(device.id);
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    // ============================================================
+    // Message handling, shared by UDP and TCP
+    // ============================================================
+
+    /**
+     * Per-thread decode state
+     */
+    private static final class Scratch {
+        final PacketDecoder decoder = new PacketDecoder();
+        final SensorPacket packet = new SensorPacket();
+        final SampleBatch imu = new SampleBatch(64, DeviceStream.IMU_CHANNELS);
+    }
+
+    /**
+     * Handle one datagram or TCP frame
+     *
+     * @return the reply to send back to the source, or null
+     */
+    private byte[] onMessage(Scratch scratch, SocketAddress source, byte[] data, int offset, int length,
+                             long receiveNs) {
+        packets.increment();
+        bytes.add(length);
+        long evictionNs = nextEvictionNs.get();
+        if (receiveNs - evictionNs >= 0L && nextEvictionNs.compareAndSet(evictionNs, receiveNs + EVICTION_INTERVAL_NS)) {
+            evictIdleDevices(receiveNs);
+        }
+        if (length > 0 && data[offset] == '{') {
+            return onPacket(scratch, source, data, offset, length, receiveNs);
+        }
+        if (startsWith(data, offset, length, PacketSpool.BACKFILL_PREFIX)) {
+            int skip = PacketSpool.BACKFILL_PREFIX.length;
+            if (!scratch.decoder.decode(data, offset + skip, length - skip, scratch.packet, scratch.imu)) {
+                decodeErrors.increment();
+                return null;
+            }
+            device(source).onBackfill(scratch.packet, scratch.imu, receiveNs);
+            return null;
+        }
+
+        ClockSyncMessage sync = ClockSyncMessage.parse(data, offset, length);
+        if (sync == null) {
+            decodeErrors.increment();
+            return null;
+        }
+        switch (sync.type) {
+            case REQUEST:
+                return ClockSyncMessage.reply(sync.originNs, receiveNs, System.nanoTime()).encode();
+            case ESTIMATE:
+                device(source).onClockEstimate(sync);
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private byte[] onPacket(Scratch scratch, SocketAddress source, byte[] data, int offset, int length,
+                            long receiveNs) {
+        if (!scratch.decoder.decode(data, offset, length, scratch.packet, scratch.imu)) {
+            decodeErrors.increment();
+            return null;
+        }
+        DeviceStream device = device(source);
+        if (!device.onPacket(scratch.packet, scratch.imu, receiveNs)) return null;
+        return device.feedback(System.nanoTime() - receiveNs).encode();
+    }
+
+    private DeviceStream device(SocketAddress source) {
+        DeviceStream device = devicesBySource.get(source);
+        if (device != null) return device;
+        synchronized (devicesBySource) {
+            device = devicesBySource.get(source);
+            if (device == null) {
+                device = new DeviceStream(nextDeviceId.getAndIncrement(), source, imuCapacity,
+                        DEFAULT_SCALAR_CAPACITY, rawRetentionNs, derivedChannels.get());
+                devicesById.put(device.id, device);
+                devicesBySource.put(source, device);
+            }
+        }
+        return device;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int length, byte[] prefix) {
+        if (length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    // ============================================================
+    // UDP
+    // ============================================================
+
+    private void openUdp() throws IOException {
+        DatagramChannel first = DatagramChannel.open();
+        udpChannels.add(first);
+        reusePort = threads > 1 && first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        configure(first);
+        first.bind(new InetSocketAddress(port));
+        if (!reusePort) return;
+
+        // Bind the others to the same port the first one got (matters for port 0)
+        InetSocketAddress bound = (InetSocketAddress) first.getLocalAddress();
+        for (int i = 1; i < threads; i++) {
+            DatagramChannel channel = DatagramChannel.open();
+            udpChannels.add(channel);
+            configure(channel);
+            channel.bind(new InetSocketAddress(bound.getPort()));
+        }
+    }
+
+    private void configure(DatagramChannel channel) throws IOException {
+        if (reusePort) {
+            channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        // Bursts from many phones land between two receive() calls
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_BYTES);
+    }
+
+    private void udpLoop(DatagramChannel channel) {
+        Scratch scratch = new Scratch();
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM);
+        byte[] data = buffer.array();
+        while (running) {
+            try {
+                buffer.clear();
+                SocketAddress source = channel.receive(buffer);
+                if (source == null) continue;
+                long receiveNs = System.nanoTime();
+                byte[] reply = onMessage(scratch, source, data, 0, buffer.position(), receiveNs);
+                if (reply != null) {
+                    sendReply(channel, reply, source);
+                }
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (!running) return;
+                System.err.println("UDP receive failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void sendReply(DatagramChannel channel, byte[] reply, SocketAddress source) {
+        try {
+            channel.send(ByteBuffer.wrap(reply), source);
+        } catch (ClosedChannelException e) {
+            // Shutting down
+        } catch (IOException e) {
+            replyErrors.increment();
+        }
+    }
+
+    // ============================================================
+    // TCP: one selector thread, frames are [int length][payload]
+    // ============================================================
+
+    /**
+     * Read and write state of one TCP connection
+     */
+    private static final class TcpConnection {
+        final SocketAddress source;
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM);
+        ByteBuffer unwritten;   // Rest of a reply frame the socket did not take, null if none
+
+        TcpConnection(SocketAddress source) {
+            this.source = source;
+        }
+    }
+
+    private void tcpLoop() {
+        Scratch scratch = new Scratch();
+        try {
+            while (running) {
+                tcpSelector.select(500);
+                Iterator<SelectionKey> keys = tcpSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    if (key.isWritable()) {
+                        finishReply(key);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        readFrames(key, scratch);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (running) System.err.println("TCP loop failed: " + e.getMessage());
+        } finally {
+            if (tcpSelector != null) {
+                for (SelectionKey key : tcpSelector.keys()) {
+                    closeQuietly(key.channel());
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel client = tcpChannel.accept();
+        if (client == null) return;
+        client.configureBlocking(false);
+        client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        client.register(tcpSelector, SelectionKey.OP_READ, new TcpConnection(client.getRemoteAddress()));
+    }
+
+    private void readFrames(SelectionKey key, Scratch scratch) {
+        SocketChannel client = (SocketChannel) key.channel();
+        TcpConnection connection = (TcpConnection) key.attachment();
+        try {
+            if (client.read(connection.buffer) < 0) {
+                throw new IOException("closed");
+            }
+            ByteBuffer buffer = connection.buffer;
+            buffer.flip();
+            while (buffer.remaining() >= 4) {
+                int length = buffer.getInt(buffer.position());
+                if (length < 0 || length > MAX_TCP_PACKET) {
+                    throw new IOException("Bad packet length " + length);
+                }
+                if (buffer.remaining() < 4 + length) {
+                    if (buffer.capacity() < 4 + length) {
+                        ByteBuffer grown = ByteBuffer.allocate(4 + length);
+                        grown.put(buffer);
+                        grown.flip();
+                        connection.buffer = buffer = grown;
+                    }
+                    break;
+                }
+                int start = buffer.position() + 4;
+                byte[] reply = onMessage(scratch, connection.source, buffer.array(), start, length,
+                        System.nanoTime());
+                buffer.position(start + length);
+                if (reply != null) {
+                    writeReply(key, connection, reply);
+                }
+            }
+            buffer.compact();
+        } catch (IOException e) {
+            // Connection closed, the phone reconnects on its own
+            key.cancel();
+            closeQuietly(client);
+        }
+    }
+
+    /**
+     * Send one [length][reply] frame; whatever the socket does not take now
+     * is kept and finished on OP_WRITE, so the phone never sees half a frame
+     */
+    private void writeReply(SelectionKey key, TcpConnection connection, byte[] reply) throws IOException {
+        // Replies are advisory (feedback, clock sync): while one is still going out, skip the next
+        if (connection.unwritten != null) return;
+        ByteBuffer frame = ByteBuffer.allocate(4 + reply.length);
+        frame.putInt(reply.length).put(reply).flip();
+        ((SocketChannel) key.channel()).write(frame);
+        if (frame.hasRemaining()) {
+            connection.unwritten = frame;
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void finishReply(SelectionKey key) {
+        SocketChannel client = (SocketChannel) key.channel();
+        TcpConnection connection = (TcpConnection) key.attachment();
+        try {
+            if (connection.unwritten != null) {
+                client.write(connection.unwritten);
+                if (connection.unwritten.hasRemaining()) return;
+                connection.unwritten = null;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            key.cancel();
+            closeQuietly(client);
+        }
+    }
+
+    // ============================================================
+    // Helpers
+    // ============================================================
+
+    private void startWorker(String name, Runnable body) {
+        Thread thread = new Thread(body, name);
+        thread.setDaemon(true);
+        workers.add(thread);
+        thread.start();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Rates since the last report and a line per device
+     */
+    private static String report(IngestServer server, long intervalMs, long packetsBefore, long bytesBefore) {
+        StringBuilder report = new StringBuilder();
+        double seconds = intervalMs / 1000.0;
+        report.append(String.format(Locale.US, "%.0f packets/s  %.2f MB/s  devices=%d  decode errors=%d  reply errors=%d%n",
+                (server.getPacketsReceived() - packetsBefore) / seconds,
+                (server.getBytesReceived() - bytesBefore) / seconds / 1e6,
+                server.devicesById.size(), server.getDecodeErrors(), server.replyErrors.sum()));
+        if (server.devicesById.size() <= 20) {
+            for (DeviceStream device : server.getDevices()) {
+                report.append("#").append(device.id).append(' ').append(device.source).append(": ")
+                        .append(device.describe()).append('\n');
+            }
+        }
+        return report.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = DiscoveryProtocol.STREAM_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int apiPort = IngestApi.DEFAULT_PORT;
+        int imuCapacity = DEFAULT_IMU_CAPACITY;
+        long rawRetentionNs = TimeSeries.DEFAULT_RAW_RETENTION_NS;
+        long deviceIdleNs = DEFAULT_DEVICE_IDLE_NS;
+        boolean tcp = false;
+        boolean announce = true;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--api-port": apiPort = Integer.parseInt(args[++i]); break;
+                case "--imu-capacity": imuCapacity = Integer.parseInt(args[++i]); break;
+                case "--raw-retention-s": rawRetentionNs = Long.parseLong(args[++i]) * 1_000_000_000L; break;
+                case "--device-idle-s": deviceIdleNs = Long.parseLong(args[++i]) * 1_000_000_000L; break;
+                case "--tcp": tcp = true; break;
+                case "--no-announce": announce = false; break;
+                default: port = Integer.parseInt(args[i]);
+            }
+        }
+
+        IngestServer server = new IngestServer(port, threads, tcp, imuCapacity);
+        server.setRawRetentionNs(rawRetentionNs);
+        server.setDeviceIdleNs(deviceIdleNs);
+        server.start();
+        IngestApi api = new IngestApi(server, apiPort);
+        api.start();
+        ReceiverAnnouncer announcer = null;
+        if (announce) {
+            announcer = new ReceiverAnnouncer(null, "ingest-server", port);
+            announcer.start();
+        }
+        System.out.println("Listening on port " + port + (tcp ? " (udp + tcp)" : " (udp)") + ", "
+                + threads + " threads" + (server.isReusePort() ? " (SO_REUSEPORT)" : "")
+                + ", API on http://127.0.0.1:" + apiPort + "/devices");
+
+        long lastPackets = 0L;
+        long lastBytes = 0L;
+        while (true) {
+            Thread.sleep(REPORT_INTERVAL_MS);
+            System.out.print(report(server, REPORT_INTERVAL_MS, lastPackets, lastBytes));
+            lastPackets = server.getPacketsReceived();
+            lastBytes = server.getBytesReceived();
+        }
+    }
+}
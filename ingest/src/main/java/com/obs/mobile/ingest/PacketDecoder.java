@@ -0,0 +1,551 @@
+package com.obs.mobile.ingest;
+
+import com.obs.mobile.sensors.CompassDirection;
+import com.obs.mobile.sensors.LightCategory;
+import com.obs.mobile.streaming.BatchCodec;
+import com.obs.mobile.streaming.SampleBatch;
+import com.obs.mobile.streaming.SensorPacket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * PacketDecoder - Reads a JSON stream packet into a SensorPacket, without allocating
+ *
+ * The counterpart of SensorPacketWriter: a single pass over the bytes that
+ * knows the packet's keys and fills the fields in place, with no JSON tree,
+ * no Strings and no boxed numbers. The IMU batch ("imu" array, or base64
+ * "imu_packed" for any BatchCodec) goes into a reused SampleBatch. Light
+ * category and compass direction are matched against the LightCategory and
+ * CompassDirection names, so the packet gets the shared constant Strings.
+ *
+ * Accepts anything JSON-shaped the phones send: SensorPacketWriter output
+ * and org.json's (double expansions of floats, any key order). Unknown keys
+ * and the "faces" section are skipped; a missing field keeps its default.
+ *
+ * Usage:
+ *      PacketDecoder decoder = new PacketDecoder();
+ *      if (decoder.decode(data, 0, length, packet, imu)) {
+ *          // packet and imu hold this packet's values
+ *      }
+ *
+ * Not thread-safe; one decoder per receive thread.
+ */
+public class PacketDecoder {
+
+    private static final byte[] K_SEQ = key("seq");
+    private static final byte[] K_TIMESTAMP = key("timestamp_ns");
+    private static final byte[] K_CAPTURE = key("capture_ts_ns");
+    private static final byte[] K_ACCELEROMETER = key("accelerometer");
+    private static final byte[] K_GYROSCOPE = key("gyroscope");
+    private static final byte[] K_LIGHT = key("light");
+    private static final byte[] K_PROXIMITY = key("proximity");
+    private static final byte[] K_MAGNETOMETER = key("magnetometer");
+    private static final byte[] K_IMU = key("imu");
+    private static final byte[] K_IMU_PACKED = key("imu_packed");
+    private static final byte[] K_X = key("x");
+    private static final byte[] K_Y = key("y");
+    private static final byte[] K_Z = key("z");
+    private static final byte[] K_MAGNITUDE = key("magnitude");
+    private static final byte[] K_LUX = key("lux");
+    private static final byte[] K_CATEGORY = key("category");
+    private static final byte[] K_DISTANCE = key("distance");
+    private static final byte[] K_IS_NEAR = key("is_near");
+    private static final byte[] K_AZIMUTH = key("azimuth");
+    private static final byte[] K_DIRECTION = key("direction");
+
+    private static final LightCategory[] LIGHT_CATEGORIES = LightCategory.values();
+    private static final byte[][] LIGHT_NAMES = names(LIGHT_CATEGORIES.length, i -> LIGHT_CATEGORIES[i].getName());
+    private static final CompassDirection[] DIRECTIONS = CompassDirection.values();
+    private static final byte[][] DIRECTION_NAMES = names(DIRECTIONS.length, i -> DIRECTIONS[i].getName());
+
+    private static final SensorPacket DEFAULTS = new SensorPacket();
+    private static final int MAX_DEPTH = 32;
+    private static final int MAX_IMU_CHANNELS = 16;
+
+    // 10^0 .. 10^22 are exact doubles, so one multiply or divide rounds correctly
+    private static final double[] POW10 = new double[23];
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        POW10[0] = 1.0;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10.0;
+        }
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        byte[] alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+                .getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < alphabet.length; i++) {
+            BASE64_VALUES[alphabet[i]] = (byte) i;
+        }
+    }
+
+    private byte[] data;
+    private int pos;
+    private int end;
+
+    // Key of the last readKey(), as a range of data
+    private int keyStart;
+    private int keyLength;
+
+    private final float[] row = new float[MAX_IMU_CHANNELS];
+    private ByteBuffer packed = ByteBuffer.allocate(1024);
+
+    /**
+     * Decode one packet
+     *
+     * @param packet receives the values; fields absent from the packet are reset to defaults
+     * @param imu    receives the IMU batch, count 0 if the packet has none
+     * @return false if the bytes are not a well-formed packet (packet and imu are then undefined)
+     */
+    public boolean decode(byte[] data, int offset, int length, SensorPacket packet, SampleBatch imu) {
+        this.data = data;
+        this.pos = offset;
+        this.end = offset + length;
+        reset(packet);
+        imu.count = 0;
+        try {
+            return readPacket(packet, imu);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // Truncated or not JSON; also bad codec payloads from BatchCodec.decode()
+            return false;
+        } finally {
+            this.data = null;
+        }
+    }
+
+    private static void reset(SensorPacket packet) {
+        packet.sequence = -1L;
+        packet.timestampNs = 0L;
+        packet.captureTimestampNs = 0L;
+        packet.accelX = 0f;
+        packet.accelY = 0f;
+        packet.accelZ = 0f;
+        packet.accelMagnitude = 0f;
+        packet.gyroX = 0f;
+        packet.gyroY = 0f;
+        packet.gyroZ = 0f;
+        packet.lightLux = 0f;
+        packet.lightCategory = DEFAULTS.lightCategory;
+        packet.proximityDistance = 0f;
+        packet.proximityIsNear = false;
+        packet.magnetometerAzimuth = 0f;
+        packet.magnetometerDirection = DEFAULTS.magnetometerDirection;
+        packet.faceFrameTimestampNs = 0L;
+    }
+
+    // ============================================================
+    // Sections
+    // ============================================================
+
+    private boolean readPacket(SensorPacket packet, SampleBatch imu) {
+        if (!next('{')) return false;
+        if (next('}')) return true;
+        do {
+            readKey();
+            expect(':');
+            if (keyIs(K_SEQ)) {
+                packet.sequence = readLong();
+            } else if (keyIs(K_TIMESTAMP)) {
+                packet.timestampNs = readLong();
+            } else if (keyIs(K_CAPTURE)) {
+                packet.captureTimestampNs = readLong();
+            } else if (keyIs(K_ACCELEROMETER)) {
+                readAccelerometer(packet);
+            } else if (keyIs(K_GYROSCOPE)) {
+                readGyroscope(packet);
+            } else if (keyIs(K_LIGHT)) {
+                readLight(packet);
+            } else if (keyIs(K_PROXIMITY)) {
+                readProximity(packet);
+            } else if (keyIs(K_MAGNETOMETER)) {
+                readMagnetometer(packet);
+            } else if (keyIs(K_IMU)) {
+                readImu(imu);
+            } else if (keyIs(K_IMU_PACKED)) {
+                readImuPacked(imu);
+            } else {
+                skipValue(0);
+            }
+        } while (next(','));
+        expect('}');
+        return true;
+    }
+
+    private void readAccelerometer(SensorPacket packet) {
+        if (sectionIsEmpty()) return;
+        do {
+            readKey();
+            expect(':');
+            if (keyIs(K_X)) packet.accelX = readFloat();
+            else if (keyIs(K_Y)) packet.accelY = readFloat();
+            else if (keyIs(K_Z)) packet.accelZ = readFloat();
+            else if (keyIs(K_MAGNITUDE)) packet.accelMagnitude = readFloat();
+            else skipValue(1);
+        } while (next(','));
+        expect('}');
+    }
+
+    private void readGyroscope(SensorPacket packet) {
+        if (sectionIsEmpty()) return;
+        do {
+            readKey();
+            expect(':');
+            if (keyIs(K_X)) packet.gyroX = readFloat();
+            else if (keyIs(K_Y)) packet.gyroY = readFloat();
+            else if (keyIs(K_Z)) packet.gyroZ = readFloat();
+            else skipValue(1);
+        } while (next(','));
+        expect('}');
+    }
+
+    private void readLight(SensorPacket packet) {
+        if (sectionIsEmpty()) return;
+        do {
+            readKey();
+            expect(':');
+            if (keyIs(K_LUX)) {
+                packet.lightLux = readFloat();
+            } else if (keyIs(K_CATEGORY)) {
+                int index = readName(LIGHT_NAMES);
+                packet.lightCategory = index >= 0 ? LIGHT_CATEGORIES[index].getName() : lastString();
+            } else {
+                skipValue(1);
+            }
+        } while (next(','));
+        expect('}');
+    }
+
+    private void readProximity(SensorPacket packet) {
+        if (sectionIsEmpty()) return;
+        do {
+            readKey();
+            expect(':');
+            if (keyIs(K_DISTANCE)) packet.proximityDistance = readFloat();
+            else if (keyIs(K_IS_NEAR)) packet.proximityIsNear = readBoolean();
+            else skipValue(1);
+        } while (next(','));
+        expect('}');
+    }
+
+    private void readMagnetometer(SensorPacket packet) {
+        if (sectionIsEmpty()) return;
+        do {
+            readKey();
+            expect(':');
+            if (keyIs(K_AZIMUTH)) {
+                packet.magnetometerAzimuth = readFloat();
+            } else if (keyIs(K_DIRECTION)) {
+                int index = readName(DIRECTION_NAMES);
+                packet.magnetometerDirection = index >= 0 ? DIRECTIONS[index].getName() : lastString();
+            } else {
+                skipValue(1);
+            }
+        } while (next(','));
+        expect('}');
+    }
+
+    /**
+     * "imu": [[capture_ts_ns, c0, c1, ...], ...], the channel count taken from the first row
+     */
+    private void readImu(SampleBatch imu) {
+        expect('[');
+        if (next(']')) return;
+        int channels = -1;
+        do {
+            expect('[');
+            long timestampNs = readLong();
+            int c = 0;
+            while (next(',')) {
+                if (c == MAX_IMU_CHANNELS) {
+                    throw new IllegalArgumentException("Too many IMU channels");
+                }
+                row[c++] = readFloat();
+            }
+            expect(']');
+            if (channels < 0) {
+                channels = c;
+                imu.reset(channels);
+            } else if (c != channels) {
+                throw new IllegalArgumentException("IMU rows differ in length");
+            }
+            imu.ensureCapacity(imu.count + 1);
+            imu.timestampsNs[imu.count] = timestampNs;
+            System.arraycopy(row, 0, imu.values, imu.count * channels, channels);
+            imu.count++;
+        } while (next(','));
+        expect(']');
+    }
+
+    /**
+     * "imu_packed": base64 of a BatchCodec payload
+     */
+    private void readImuPacked(SampleBatch imu) {
+        skipWhitespace();
+        if (data[pos] != '"') throw new IllegalArgumentException("Expected string");
+        int start = ++pos;
+        while (data[pos] != '"') pos++;
+        int length = pos - start;
+        pos++;
+
+        int maxBytes = length / 4 * 3 + 3;
+        if (packed.capacity() < maxBytes) {
+            packed = ByteBuffer.allocate(Math.max(maxBytes, packed.capacity() * 2));
+        }
+        byte[] out = packed.array();
+        int written = 0;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = start; i < start + length; i++) {
+            int b = data[i];
+            if (b == '=') break;
+            int value = b >= 0 && b < 128 ? BASE64_VALUES[b] : -1;
+            if (value < 0) throw new IllegalArgumentException("Bad base64");
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                out[written++] = (byte) (bits >> bitCount);
+            }
+        }
+        packed.clear();
+        packed.limit(written);
+        BatchCodec.decode(packed, imu);
+    }
+
+    // ============================================================
+    // Tokens
+    // ============================================================
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte b = data[pos];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') return;
+            pos++;
+        }
+    }
+
+    /**
+     * Consume c if it is the next token
+     */
+    private boolean next(char c) {
+        skipWhitespace();
+        if (pos < end && data[pos] == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (!next(c)) throw new IllegalArgumentException("Expected " + c + " at " + pos);
+    }
+
+    /**
+     * Open a section object
+     *
+     * @return true if there is nothing to read: the value was null or {}
+     */
+    private boolean sectionIsEmpty() {
+        skipWhitespace();
+        if (data[pos] == 'n') {
+            literal("null");
+            return true;
+        }
+        expect('{');
+        return next('}');
+    }
+
+    private void readKey() {
+        skipWhitespace();
+        if (data[pos] != '"') throw new IllegalArgumentException("Expected key at " + pos);
+        keyStart = ++pos;
+        while (data[pos] != '"') {
+            if (data[pos] == '\\') pos++;   // Keys we know have no escapes; just step over them
+            pos++;
+        }
+        keyLength = pos - keyStart;
+        pos++;
+    }
+
+    private boolean keyIs(byte[] key) {
+        if (keyLength != key.length) return false;
+        for (int i = 0; i < keyLength; i++) {
+            if (data[keyStart + i] != key[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * A string value matched against names
+     *
+     * @return index of the match, -1 otherwise (lastString() then has the value)
+     */
+    private int readName(byte[][] names) {
+        readKey();
+        for (int i = 0; i < names.length; i++) {
+            if (keyIs(names[i])) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * The last string read, for values outside the known names (allocates)
+     */
+    private String lastString() {
+        return new String(data, keyStart, keyLength, StandardCharsets.UTF_8);
+    }
+
+    private boolean readBoolean() {
+        skipWhitespace();
+        if (data[pos] == 't') {
+            literal("true");
+            return true;
+        }
+        literal("false");
+        return false;
+    }
+
+    private void literal(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (data[pos++] != word.charAt(i)) throw new IllegalArgumentException("Expected " + word);
+        }
+    }
+
+    private long readLong() {
+        skipWhitespace();
+        boolean negative = data[pos] == '-';
+        if (negative) pos++;
+        int start = pos;
+        long value = 0L;
+        while (pos < end && data[pos] >= '0' && data[pos] <= '9') {
+            value = value * 10 + (data[pos++] - '0');
+        }
+        if (pos == start) throw new IllegalArgumentException("Expected number at " + pos);
+        if (pos < end && (data[pos] == '.' || data[pos] == 'e' || data[pos] == 'E')) {
+            // An integer field written as a double: keep the integer part
+            pos = start;
+            long integer = (long) readDouble();
+            return negative ? -integer : integer;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * A JSON number, or null as NaN
+     */
+    private float readFloat() {
+        skipWhitespace();
+        if (data[pos] == 'n') {
+            literal("null");
+            return Float.NaN;
+        }
+        boolean negative = data[pos] == '-';
+        if (negative) pos++;
+        float value = (float) readDouble();
+        return negative ? -value : value;
+    }
+
+    /**
+     * Unsigned decimal: up to 18 significant digits are kept, which is plenty for a float
+     */
+    private double readDouble() {
+        long mantissa = 0L;
+        int digits = 0;
+        int exponent = 0;
+        int start = pos;
+        while (pos < end && data[pos] >= '0' && data[pos] <= '9') {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (data[pos] - '0');
+                if (mantissa != 0L) digits++;
+            } else {
+                exponent++;
+            }
+            pos++;
+        }
+        if (pos < end && data[pos] == '.') {
+            pos++;
+            while (pos < end && data[pos] >= '0' && data[pos] <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (data[pos] - '0');
+                    if (mantissa != 0L) digits++;
+                    exponent--;
+                }
+                pos++;
+            }
+        }
+        if (pos == start) throw new IllegalArgumentException("Expected number at " + pos);
+        if (pos < end && (data[pos] == 'e' || data[pos] == 'E')) {
+            pos++;
+            boolean negativeExponent = data[pos] == '-';
+            if (negativeExponent || data[pos] == '+') pos++;
+            int e = 0;
+            int exponentStart = pos;
+            while (pos < end && data[pos] >= '0' && data[pos] <= '9') {
+                e = Math.min(1000, e * 10 + (data[pos++] - '0'));
+            }
+            if (pos == exponentStart) throw new IllegalArgumentException("Bad exponent at " + pos);
+            exponent += negativeExponent ? -e : e;
+        }
+
+        if (exponent == 0 || mantissa == 0L) return mantissa;
+        if (exponent > 0) {
+            return exponent < POW10.length ? mantissa * POW10[exponent] : mantissa * Math.pow(10, exponent);
+        }
+        return -exponent < POW10.length ? mantissa / POW10[-exponent] : mantissa / Math.pow(10, -exponent);
+    }
+
+    /**
+     * Step over any value: object, array, string, number or literal
+     */
+    private void skipValue(int depth) {
+        if (depth > MAX_DEPTH) throw new IllegalArgumentException("Nested too deep");
+        skipWhitespace();
+        byte b = data[pos];
+        if (b == '{') {
+            pos++;
+            if (next('}')) return;
+            do {
+                readKey();
+                expect(':');
+                skipValue(depth + 1);
+            } while (next(','));
+            expect('}');
+        } else if (b == '[') {
+            pos++;
+            if (next(']')) return;
+            do {
+                skipValue(depth + 1);
+            } while (next(','));
+            expect(']');
+        } else if (b == '"') {
+            readKey();
+        } else {
+            // Number or literal: up to the next delimiter
+            int start = pos;
+            while (pos < end && data[pos] != ',' && data[pos] != '}' && data[pos] != ']'
+                    && data[pos] != ' ' && data[pos] != '\n' && data[pos] != '\r' && data[pos] != '\t') {
+                pos++;
+            }
+            if (pos == start) throw new IllegalArgumentException("Expected value at " + pos);
+        }
+    }
+
+    // ============================================================
+    // Tables
+    // ============================================================
+
+    private static byte[] key(String key) {
+        return key.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[][] names(int count, IntFunction<String> name) {
+        byte[][] names = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            names[i] = name.apply(i).getBytes(StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,137 @@
+package com.obs.mobile.ingest;
+
+import com.obs.mobile.streaming.SampleBatch;
+
+/**
+ * SampleRing - Fixed-size history of timestamped multi-channel samples
+ *
+ * Like ImuRingBuffer, but for any channel count and with time-window reads:
+ * parallel primitive arrays, the oldest sample overwritten when full, and
+ * adding never allocates. Timestamps must increase; older or equal ones are
+ * rejected, so late or duplicated packets cannot scramble the history.
+ *
+ * Not thread-safe; DeviceStream guards it.
+ */
+public class SampleRing {
+
+    private final long[] timestamps;
+    private final float[] values;
+    private final int capacity;
+    private final int channels;
+
+    private int head = 0;   // Next write position
+    private int size = 0;
+
+    public SampleRing(int capacity, int channels) {
+        if (capacity < 2 || channels < 1) {
+            throw new IllegalArgumentException("capacity must be at least 2 and channels at least 1");
+        }
+        this.capacity = capacity;
+        this.channels = channels;
+        this.timestamps = new long[capacity];
+        this.values = new float[capacity * channels];
+    }
+
+    /**
+     * Add one sample from values[offset, offset + channels)
+     *
+     * @return false if it is not newer than the newest sample and was dropped
+     */
+    public boolean add(long timestampNs, float[] values, int offset) {
+        if (size > 0 && timestampNs <= newestTimestamp()) {
+            return false;
+        }
+        timestamps[head] = timestampNs;
+        System.arraycopy(values, offset, this.values, head * channels, channels);
+        head = (head + 1) % capacity;
+        if (size < capacity) size++;
+        return true;
+    }
+
+    /**
+     * Add every sample of a batch with the same channel count; stale ones are skipped
+     *
+     * @return samples added
+     */
+    public int addAll(SampleBatch batch) {
+        if (batch.channels != channels) return 0;
+        int added = 0;
+        for (int i = 0; i < batch.count; i++) {
+            if (add(batch.timestampsNs[i], batch.values, i * channels)) added++;
+        }
+        return added;
+    }
+
+    /**
+     * Samples with fromNs <= timestamp <= toNs, oldest first
+     *
+     * @param out replaced with the window (its arrays are reused)
+     * @return samples copied
+     */
+    public int window(long fromNs, long toNs, SampleBatch out) {
+        out.reset(channels);
+        if (size == 0 || toNs < fromNs) return 0;
+        int first = firstAtOrAfter(fromNs);
+        int count = 0;
+        for (int i = first; i < size && timestamps[index(i)] <= toNs; i++) {
+            count++;
+        }
+        out.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            int slot = index(first + i);
+            out.timestampsNs[i] = timestamps[slot];
+            System.arraycopy(values, slot * channels, out.values, i * channels, channels);
+        }
+        out.count = count;
+        return count;
+    }
+
+    /**
+     * Copy the newest sample's values into out
+     *
+     * @return its timestamp, or -1 if the ring is empty
+     */
+    public long latest(float[] out) {
+        if (size == 0) return -1L;
+        System.arraycopy(values, index(size - 1) * channels, out, 0, channels);
+        return newestTimestamp();
+    }
+
+    public long newestTimestamp() {
+        return size == 0 ? -1L : timestamps[index(size - 1)];
+    }
+
+    public long oldestTimestamp() {
+        return size == 0 ? -1L : timestamps[index(0)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Logical position (0 = oldest) of the first sample at or after timestampNs,
+     * size if there is none
+     */
+    private int firstAtOrAfter(long timestampNs) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[index(mid)] < timestampNs) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int index(int logical) {
+        return (head - size + logical + capacity) % capacity;
+    }
+}
@@ -0,0 +1,65 @@
+package com.obs.mobile.ingest;
+
+import java.util.Arrays;
+
+/**
+ * SeriesResult - Buckets returned by TimeSeries.query(), reused between queries
+ *
+ * Parallel arrays, oldest bucket first: bucket start (aligned to
+ * resolutionNs), min, max, mean and the number of raw samples behind it.
+ * With resolution 0 every raw sample is its own bucket.
+ */
+public class SeriesResult {
+
+    public long[] startsNs = new long[64];
+    public float[] min = new float[64];
+    public float[] max = new float[64];
+    public float[] mean = new float[64];
+    public long[] samples = new long[64];
+    public int count = 0;
+
+    /** Requested bucket width, 0 for raw samples */
+    public long resolutionNs = 0L;
+
+    /** Width of the tier that answered: a rollup width, or 0 for raw chunks */
+    public long sourceWidthNs = 0L;
+
+    public void reset(long resolutionNs) {
+        this.resolutionNs = Math.max(0L, resolutionNs);
+        this.sourceWidthNs = 0L;
+        this.count = 0;
+    }
+
+    /**
+     * Merge one raw sample or rollup bucket; calls come in time order
+     */
+    void add(long timestampNs, float min, float max, float mean, long samples) {
+        long start = resolutionNs > 0L ? Math.floorDiv(timestampNs, resolutionNs) * resolutionNs : timestampNs;
+        if (count > 0 && startsNs[count - 1] == start) {
+            int i = count - 1;
+            long total = this.samples[i] + samples;
+            this.mean[i] = (float) (((double) this.mean[i] * this.samples[i] + (double) mean * samples) / total);
+            this.samples[i] = total;
+            if (min < this.min[i]) this.min[i] = min;
+            if (max > this.max[i]) this.max[i] = max;
+            return;
+        }
+        if (count == startsNs.length) {
+            grow(count * 2);
+        }
+        startsNs[count] = start;
+        this.min[count] = min;
+        this.max[count] = max;
+        this.mean[count] = mean;
+        this.samples[count] = samples;
+        count++;
+    }
+
+    private void grow(int capacity) {
+        startsNs = Arrays.copyOf(startsNs, capacity);
+        min = Arrays.copyOf(min, capacity);
+        max = Arrays.copyOf(max, capacity);
+        mean = Arrays.copyOf(mean, capacity);
+        samples = Arrays.copyOf(samples, capacity);
+    }
+}
@@ -0,0 +1,611 @@
+package com.obs.mobile.ingest;
+
+import com.obs.mobile.streaming.BatchCodec;
+import com.obs.mobile.streaming.GorillaXorCodec;
+import com.obs.mobile.streaming.SampleBatch;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * TimeSeries - Hours of one device's multi-channel samples, raw and rolled up
+ *
+ * Three tiers, all in primitive arrays:
+ *  - open chunk: the newest CHUNK_SAMPLES samples, one timestamp column and
+ *    one float column per channel
+ *  - sealed chunks: full chunks compressed channel by channel with a
+ *    BatchCodec, kept for rawRetentionNs. GorillaXorCodec by default, which
+ *    is lossless but gains little on noisy floats; IMU series use
+ *    DeltaVarintCodec.forImu() (within half a step, far below sensor noise),
+ *    about half the size
+ *  - rollups: min, max and mean per channel in 1 s, 10 s and 1 min buckets
+ *    (ROLLUP_WIDTHS_NS), updated on every append and kept far longer than
+ *    the raw data (ROLLUP_BUCKETS per level)
+ *
+ * query() answers "this range at this resolution" from the coarsest tier
+ * whose buckets are no wider than the resolution, and merges what it reads
+ * into output buckets of the resolution: an hour at one point per 10 s reads
+ * 360 ten-second buckets, not 720,000 samples. Only resolutions under a
+ * second touch raw chunks, and then only the chunks overlapping the range.
+ *
+ * Timestamps are the phone's clock in ns. append() takes increasing ones
+ * and drops older or equal ones, like SampleRing. insert() also merges
+ * older samples, e.g. packets backfilled after an outage: the rollups take
+ * them into their buckets in place, the raw tier into the open chunk when
+ * they fall inside it, else into a side chunk. The side chunk is merged
+ * into the sealed chunks when it fills or before a raw query, re-encoding
+ * the chunks it overlaps, so sealed chunks stay sorted and disjoint.
+ * Appending allocates only when a chunk is sealed (its compressed bytes)
+ * and while rollup arrays grow to their retention; queries reuse the
+ * caller's SeriesResult.
+ *
+ * Thread safety: appended to by a receive thread, queried by API threads,
+ * every public method is synchronized.
+ */
+public class TimeSeries {
+
+    public static final int CHUNK_SAMPLES = 1024;
+    public static final long[] ROLLUP_WIDTHS_NS = {1_000_000_000L, 10_000_000_000L, 60_000_000_000L};
+    // 6 hours of 1 s, 2 days of 10 s, 30 days of 1 min buckets
+    public static final int[] ROLLUP_BUCKETS = {6 * 3600, 2 * 24 * 360, 30 * 24 * 60};
+    public static final long DEFAULT_RAW_RETENTION_NS = 10L * 60 * 1_000_000_000L;
+
+    private final int channels;
+    private final long rawRetentionNs;
+    private final BatchCodec codec;
+
+    // Open chunk, columnar
+    private final long[] openTimestamps = new long[CHUNK_SAMPLES];
+    private final float[][] openColumns;
+    private int openCount = 0;
+
+    // Samples older than the open chunk, sorted, not yet merged into sealed
+    private final SampleBatch late;
+
+    private ArrayDeque<SealedChunk> sealed = new ArrayDeque<>();
+    private final Rollup[] rollups = new Rollup[ROLLUP_WIDTHS_NS.length];
+
+    private long newestNs = Long.MIN_VALUE;
+    private long sealedBytes = 0L;
+
+    // Seal and query scratch
+    private final SampleBatch batch = new SampleBatch(CHUNK_SAMPLES, 1);
+    private final SampleBatch merged = new SampleBatch(16, 1);
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(0);
+
+    public TimeSeries(int channels, long rawRetentionNs) {
+        this(channels, rawRetentionNs, new GorillaXorCodec());
+    }
+
+    /**
+     * @param codec compresses sealed chunks; a DeltaVarintCodec needs one step per channel
+     */
+    public TimeSeries(int channels, long rawRetentionNs, BatchCodec codec) {
+        if (channels < 1) throw new IllegalArgumentException("channels must be at least 1");
+        this.channels = channels;
+        this.rawRetentionNs = rawRetentionNs;
+        this.codec = codec;
+        this.openColumns = new float[channels][CHUNK_SAMPLES];
+        this.late = new SampleBatch(16, channels);
+        for (int level = 0; level < rollups.length; level++) {
+            rollups[level] = new Rollup(ROLLUP_WIDTHS_NS[level], ROLLUP_BUCKETS[level], channels);
+        }
+    }
+
+    // ============================================================
+    // Append
+    // ============================================================
+
+    /**
+     * Append one sample from values[offset, offset + channels)
+     *
+     * @return false if it is not newer than the newest sample and was dropped
+     */
+    public synchronized boolean append(long timestampNs, float[] values, int offset) {
+        if (timestampNs <= newestNs) return false;
+        newestNs = timestampNs;
+
+        openTimestamps[openCount] = timestampNs;
+        for (int c = 0; c < channels; c++) {
+            openColumns[c][openCount] = values[offset + c];
+        }
+        openCount++;
+        for (Rollup rollup : rollups) {
+            rollup.add(timestampNs, values, offset);
+        }
+        if (openCount == CHUNK_SAMPLES) {
+            seal();
+        }
+        return true;
+    }
+
+    /**
+     * Append every sample of a batch with the same channel count
+     *
+     * @return samples appended
+     */
+    public synchronized int appendAll(SampleBatch samples) {
+        if (samples.channels != channels) return 0;
+        int appended = 0;
+        for (int i = 0; i < samples.count; i++) {
+            if (append(samples.timestampsNs[i], samples.values, i * channels)) appended++;
+        }
+        return appended;
+    }
+
+    /**
+     * Merge one sample that may be older than the newest, e.g. from a packet
+     * backfilled after an outage
+     *
+     * Newer samples are appended. Older ones go into their rollup buckets
+     * (unless older than a level keeps) and, within the raw retention, into
+     * the open chunk or the side chunk. Duplicates are only recognised there:
+     * a sample that is already sealed is kept once raw but counted twice by
+     * the rollups, so drop replayed packets before (DeviceStream does, by
+     * sequence number).
+     *
+     * @return false if this timestamp is the newest or already unsealed, and the sample was dropped
+     */
+    public synchronized boolean insert(long timestampNs, float[] values, int offset) {
+        if (timestampNs > newestNs) return append(timestampNs, values, offset);
+        if (timestampNs == newestNs) return false;
+
+        if (openCount > 0 && timestampNs > openTimestamps[0]) {
+            int at = Arrays.binarySearch(openTimestamps, 0, openCount, timestampNs);
+            if (at >= 0) return false;
+            at = -at - 1;
+            int moved = openCount - at;
+            System.arraycopy(openTimestamps, at, openTimestamps, at + 1, moved);
+            openTimestamps[at] = timestampNs;
+            for (int c = 0; c < channels; c++) {
+                System.arraycopy(openColumns[c], at, openColumns[c], at + 1, moved);
+                openColumns[c][at] = values[offset + c];
+            }
+            openCount++;
+            for (Rollup rollup : rollups) {
+                rollup.add(timestampNs, values, offset);
+            }
+            if (openCount == CHUNK_SAMPLES) {
+                seal();
+            }
+            return true;
+        }
+        if (openCount > 0 && timestampNs == openTimestamps[0]) return false;
+
+        // Before the open chunk: the side chunk, unless already past the raw retention
+        if (timestampNs >= newestNs - rawRetentionNs) {
+            int at = Arrays.binarySearch(late.timestampsNs, 0, late.count, timestampNs);
+            if (at >= 0) return false;
+            at = -at - 1;
+            int moved = late.count - at;
+            late.ensureCapacity(late.count + 1);
+            System.arraycopy(late.timestampsNs, at, late.timestampsNs, at + 1, moved);
+            System.arraycopy(late.values, at * channels, late.values, (at + 1) * channels, moved * channels);
+            late.timestampsNs[at] = timestampNs;
+            System.arraycopy(values, offset, late.values, at * channels, channels);
+            late.count++;
+        }
+        for (Rollup rollup : rollups) {
+            rollup.add(timestampNs, values, offset);
+        }
+        if (late.count == CHUNK_SAMPLES) {
+            mergeLate();
+        }
+        return true;
+    }
+
+    /**
+     * insert() every sample of a batch with the same channel count
+     *
+     * @return samples kept
+     */
+    public synchronized int insertAll(SampleBatch samples) {
+        if (samples.channels != channels) return 0;
+        int inserted = 0;
+        for (int i = 0; i < samples.count; i++) {
+            if (insert(samples.timestampsNs[i], samples.values, i * channels)) inserted++;
+        }
+        return inserted;
+    }
+
+    private void seal() {
+        batch.reset(channels);
+        batch.ensureCapacity(openCount);
+        for (int i = 0; i < openCount; i++) {
+            batch.timestampsNs[i] = openTimestamps[i];
+            for (int c = 0; c < channels; c++) {
+                batch.values[i * channels + c] = openColumns[c][i];
+            }
+        }
+        batch.count = openCount;
+        sealed.addLast(encode(batch));
+        openCount = 0;
+
+        // Drop raw chunks that ended before the retention window
+        while (!sealed.isEmpty() && sealed.peekFirst().lastNs < newestNs - rawRetentionNs) {
+            sealedBytes -= sealed.removeFirst().data.length;
+        }
+    }
+
+    /**
+     * Move the side chunk into the sealed chunks: the chunks its time range
+     * overlaps are decoded, merged with it and re-encoded in order
+     */
+    private void mergeLate() {
+        if (late.count == 0) return;
+        long firstNs = late.timestampsNs[0];
+        long lastNs = late.timestampsNs[late.count - 1];
+        ArrayDeque<SealedChunk> rebuilt = new ArrayDeque<>(sealed.size() + 2);
+        while (!sealed.isEmpty() && sealed.peekFirst().lastNs < firstNs) {
+            rebuilt.addLast(sealed.removeFirst());
+        }
+
+        merged.reset(channels);
+        int next = 0;
+        while (!sealed.isEmpty() && sealed.peekFirst().firstNs <= lastNs) {
+            SealedChunk chunk = sealed.removeFirst();
+            sealedBytes -= chunk.data.length;
+            BatchCodec.decode(ByteBuffer.wrap(chunk.data), batch);
+            for (int i = 0; i < batch.count; i++) {
+                long t = batch.timestampsNs[i];
+                while (next < late.count && late.timestampsNs[next] < t) {
+                    copySample(late, next++, merged);
+                }
+                if (next < late.count && late.timestampsNs[next] == t) next++;   // Already sealed
+                copySample(batch, i, merged);
+            }
+        }
+        while (next < late.count) {
+            copySample(late, next++, merged);
+        }
+        late.count = 0;
+
+        // Evenly sized chunks of at most CHUNK_SAMPLES
+        int chunks = (merged.count + CHUNK_SAMPLES - 1) / CHUNK_SAMPLES;
+        for (int c = 0, start = 0; c < chunks; c++) {
+            int end = (int) ((long) merged.count * (c + 1) / chunks);
+            batch.reset(channels);
+            batch.ensureCapacity(end - start);
+            System.arraycopy(merged.timestampsNs, start, batch.timestampsNs, 0, end - start);
+            System.arraycopy(merged.values, start * channels, batch.values, 0, (end - start) * channels);
+            batch.count = end - start;
+            rebuilt.addLast(encode(batch));
+            start = end;
+        }
+        rebuilt.addAll(sealed);
+        sealed = rebuilt;
+    }
+
+    /**
+     * Compress a sorted batch into a chunk and count its bytes
+     */
+    private SealedChunk encode(SampleBatch samples) {
+        int maxSize = codec.maxEncodedSize(samples.count, channels);
+        if (encodeBuffer.capacity() < maxSize) {
+            encodeBuffer = ByteBuffer.allocate(maxSize);
+        }
+        encodeBuffer.clear();
+        codec.encode(samples, encodeBuffer);
+        byte[] data = Arrays.copyOf(encodeBuffer.array(), encodeBuffer.position());
+        sealedBytes += data.length;
+        return new SealedChunk(samples.timestampsNs[0], samples.timestampsNs[samples.count - 1], samples.count, data);
+    }
+
+    private static void copySample(SampleBatch from, int index, SampleBatch to) {
+        to.ensureCapacity(to.count + 1);
+        to.timestampsNs[to.count] = from.timestampsNs[index];
+        System.arraycopy(from.values, index * to.channels, to.values, to.count * to.channels, to.channels);
+        to.count++;
+    }
+
+    // ============================================================
+    // Query
+    // ============================================================
+
+    /**
+     * Aggregate one channel over [fromNs, toNs] into buckets of resolutionNs
+     *
+     * Buckets are aligned to multiples of resolutionNs and only non-empty
+     * ones are returned. resolutionNs <= 0 returns every raw sample.
+     *
+     * @param out replaced with the result; out.sourceWidthNs tells which tier answered (0 = raw)
+     * @return buckets in out
+     */
+    public synchronized int query(int channel, long fromNs, long toNs, long resolutionNs, SeriesResult out) {
+        if (channel < 0 || channel >= channels) {
+            throw new IllegalArgumentException("channel " + channel + " of " + channels);
+        }
+        out.reset(resolutionNs);
+        if (toNs < fromNs) return 0;
+
+        // Coarsest rollup no wider than the resolution, raw if none is
+        for (int level = rollups.length - 1; level >= 0; level--) {
+            if (ROLLUP_WIDTHS_NS[level] <= resolutionNs) {
+                out.sourceWidthNs = ROLLUP_WIDTHS_NS[level];
+                rollups[level].query(channel, fromNs, toNs, out);
+                return out.count;
+            }
+        }
+        out.sourceWidthNs = 0L;
+        mergeLate();
+        querySealed(channel, fromNs, toNs, out);
+        for (int i = 0; i < openCount; i++) {
+            long t = openTimestamps[i];
+            if (t >= fromNs && t <= toNs) {
+                float value = openColumns[channel][i];
+                out.add(t, value, value, value, 1L);
+            }
+        }
+        return out.count;
+    }
+
+    /**
+     * Convenience: at most about maxPoints buckets over the range
+     */
+    public int queryPoints(int channel, long fromNs, long toNs, int maxPoints, SeriesResult out) {
+        long resolutionNs = maxPoints > 0 ? (toNs - fromNs + maxPoints - 1) / maxPoints : 0L;
+        return query(channel, fromNs, toNs, resolutionNs, out);
+    }
+
+    private void querySealed(int channel, long fromNs, long toNs, SeriesResult out) {
+        Iterator<SealedChunk> chunks = sealed.iterator();
+        while (chunks.hasNext()) {
+            SealedChunk chunk = chunks.next();
+            if (chunk.lastNs < fromNs) continue;
+            if (chunk.firstNs > toNs) break;
+            BatchCodec.decode(ByteBuffer.wrap(chunk.data), batch);
+            for (int i = 0; i < batch.count; i++) {
+                long t = batch.timestampsNs[i];
+                if (t < fromNs || t > toNs) continue;
+                float value = batch.values[i * channels + channel];
+                out.add(t, value, value, value, 1L);
+            }
+        }
+    }
+
+    // ============================================================
+    // Stats
+    // ============================================================
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Newest timestamp appended, Long.MIN_VALUE while empty
+     */
+    public synchronized long getNewestNs() {
+        return newestNs;
+    }
+
+    /**
+     * Oldest timestamp still available as raw samples, -1 if none
+     */
+    public synchronized long getOldestRawNs() {
+        long oldest = Long.MAX_VALUE;
+        if (!sealed.isEmpty()) oldest = sealed.peekFirst().firstNs;
+        if (late.count > 0) oldest = Math.min(oldest, late.timestampsNs[0]);
+        if (openCount > 0) oldest = Math.min(oldest, openTimestamps[0]);
+        return oldest == Long.MAX_VALUE ? -1L : oldest;
+    }
+
+    /**
+     * Raw samples held, sealed, open and not yet merged
+     */
+    public synchronized long getRawSamples() {
+        long samples = openCount + late.count;
+        for (SealedChunk chunk : sealed) {
+            samples += chunk.count;
+        }
+        return samples;
+    }
+
+    /**
+     * Compressed bytes of the sealed chunks
+     */
+    public synchronized long getSealedBytes() {
+        return sealedBytes;
+    }
+
+    // ============================================================
+    // Tiers
+    // ============================================================
+
+    private static final class SealedChunk {
+        final long firstNs;
+        final long lastNs;
+        final int count;
+        final byte[] data;
+
+        SealedChunk(long firstNs, long lastNs, int count, byte[] data) {
+            this.firstNs = firstNs;
+            this.lastNs = lastNs;
+            this.count = count;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Fixed-width buckets in a ring that grows up to maxBuckets, then
+     * overwrites the oldest; columns per channel. Late samples go into their
+     * bucket, inserted in order if missing.
+     */
+    private static final class Rollup {
+        final long widthNs;
+        final int maxBuckets;
+        final int channels;
+
+        long[] starts = new long[16];
+        long[] counts = new long[16];
+        float[][] min;
+        float[][] max;
+        double[][] sum;
+        int head = 0;   // Slot of the oldest bucket
+        int size = 0;
+
+        Rollup(long widthNs, int maxBuckets, int channels) {
+            this.widthNs = widthNs;
+            this.maxBuckets = maxBuckets;
+            this.channels = channels;
+            min = new float[channels][16];
+            max = new float[channels][16];
+            sum = new double[channels][16];
+        }
+
+        void add(long timestampNs, float[] values, int offset) {
+            long start = Math.floorDiv(timestampNs, widthNs) * widthNs;
+            int slot;
+            if (size > 0 && starts[slot(size - 1)] == start) {
+                slot = slot(size - 1);
+            } else if (size == 0 || starts[slot(size - 1)] < start) {
+                slot = append(start);
+                clear(slot);
+            } else {
+                slot = insert(start);
+                if (slot < 0) return;
+            }
+            counts[slot]++;
+            for (int c = 0; c < channels; c++) {
+                float value = values[offset + c];
+                if (value < min[c][slot]) min[c][slot] = value;
+                if (value > max[c][slot]) max[c][slot] = value;
+                sum[c][slot] += value;
+            }
+        }
+
+        void query(int channel, long fromNs, long toNs, SeriesResult out) {
+            // Buckets overlapping the range, oldest first
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (starts[slot(mid)] + widthNs <= fromNs) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int i = low; i < size; i++) {
+                int slot = slot(i);
+                if (starts[slot] > toNs) break;
+                out.add(starts[slot], min[channel][slot], max[channel][slot],
+                        (float) (sum[channel][slot] / counts[slot]), counts[slot]);
+            }
+        }
+
+        /**
+         * Slot of the bucket starting at start, inserted in order if missing
+         *
+         * @return -1 if it is older than every bucket of a full ring
+         */
+        private int insert(long start) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (starts[slot(mid)] < start) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            if (low < size && starts[slot(low)] == start) return slot(low);
+
+            int at;
+            if (size >= maxBuckets) {
+                // Full: drop the oldest, shift the older ones down
+                if (low == 0) return -1;
+                for (int i = 0; i < low - 1; i++) move(i + 1, i);
+                at = low - 1;
+            } else {
+                if (size == starts.length) {
+                    grow(Math.min(maxBuckets, size * 2));
+                }
+                size++;
+                for (int i = size - 1; i > low; i--) move(i - 1, i);
+                at = low;
+            }
+            int slot = slot(at);
+            starts[slot] = start;
+            clear(slot);
+            return slot;
+        }
+
+        private void move(int fromLogical, int toLogical) {
+            int from = slot(fromLogical);
+            int to = slot(toLogical);
+            starts[to] = starts[from];
+            counts[to] = counts[from];
+            for (int c = 0; c < channels; c++) {
+                min[c][to] = min[c][from];
+                max[c][to] = max[c][from];
+                sum[c][to] = sum[c][from];
+            }
+        }
+
+        private void clear(int slot) {
+            counts[slot] = 0L;
+            for (int c = 0; c < channels; c++) {
+                min[c][slot] = Float.POSITIVE_INFINITY;
+                max[c][slot] = Float.NEGATIVE_INFINITY;
+                sum[c][slot] = 0.0;
+            }
+        }
+
+        /**
+         * New newest bucket, evicting the oldest when full
+         */
+        private int append(long start) {
+            if (size == starts.length && size < maxBuckets) {
+                grow(Math.min(maxBuckets, size * 2));
+            }
+            int slot;
+            if (size == starts.length) {
+                slot = head;
+                head = (head + 1) % starts.length;
+            } else {
+                slot = slot(size);
+                size++;
+            }
+            starts[slot] = start;
+            return slot;
+        }
+
+        private void grow(int capacity) {
+            int length = starts.length;
+            starts = unwrap(starts, length, capacity);
+            counts = unwrap(counts, length, capacity);
+            for (int c = 0; c < channels; c++) {
+                min[c] = unwrap(min[c], length, capacity);
+                max[c] = unwrap(max[c], length, capacity);
+                sum[c] = unwrap(sum[c], length, capacity);
+            }
+            head = 0;
+        }
+
+        // Copy oldest first into a new array; head still refers to the old layout
+        private long[] unwrap(long[] from, int length, int capacity) {
+            long[] to = new long[capacity];
+            for (int i = 0; i < size; i++) to[i] = from[(head + i) % length];
+            return to;
+        }
+
+        private float[] unwrap(float[] from, int length, int capacity) {
+            float[] to = new float[capacity];
+            for (int i = 0; i < size; i++) to[i] = from[(head + i) % length];
+            return to;
+        }
+
+        private double[] unwrap(double[] from, int length, int capacity) {
+            double[] to = new double[capacity];
+            for (int i = 0; i < size; i++) to[i] = from[(head + i) % length];
+            return to;
+        }
+
+        private int slot(int logical) {
+            return (head + logical) % starts.length;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.obs.mobile.ingest;
+
+import com.obs.mobile.streaming.ClockSyncMessage;
+import com.obs.mobile.streaming.FeedbackMessage;
+import com.obs.mobile.streaming.PacketSpool;
+import com.obs.mobile.streaming.SampleBatch;
+import com.obs.mobile.streaming.SensorPacket;
+import com.obs.mobile.streaming.SensorPacketWriter;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Packets over UDP into per-device rings, backfill, eviction, replies over
+ * UDP and TCP, and the HTTP API
+ */
+public class IngestServerTest {
+
+    private IngestServer server;
+    private IngestApi api;
+    private InetSocketAddress address;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new IngestServer(0, 2, false, 64);
+        server.start();
+        api = new IngestApi(server, 0);
+        api.start();
+        address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+    }
+
+    @After
+    public void tearDown() {
+        api.stop();
+        server.stop();
+    }
+
+    @Test
+    public void keepsLatestStateAndWindowsPerDevice() throws Exception {
+        try (DatagramSocket phoneA = new DatagramSocket(); DatagramSocket phoneB = new DatagramSocket()) {
+            phoneA.setSoTimeout(2000);
+            SensorPacketWriter writer = new SensorPacketWriter();
+            SensorPacket packet = new SensorPacket();
+            SampleBatch batch = new SampleBatch(4, 6);
+            for (int seq = 1; seq <= 50; seq++) {
+                packet.sequence = seq;
+                packet.timestampNs = seq * 20_000_000L;
+                packet.lightLux = seq;
+                batch.reset(6);
+                for (int i = 3; i >= 0; i--) {
+                    batch.add(packet.timestampNs - i * 5_000_000L, seq, 0f, 0f, 0f, 0f, 9.81f);
+                }
+                send(phoneA, writer.write(packet, batch, null));
+                if (seq % 10 == 0) {
+                    send(phoneB, writer.write(packet));
+                }
+            }
+
+            // The first packet of a device is due for feedback
+            FeedbackMessage feedback = FeedbackMessage.parse(receive(phoneA), 0, lastLength);
+            assertNotNull(feedback);
+            assertEquals(1L, feedback.echoSequence);
+
+            DeviceStream a = await(phoneA, 50);
+            DeviceStream b = await(phoneB, 5);
+            assertNotEquals(a.id, b.id);
+
+            SensorPacket latest = new SensorPacket();
+            assertTrue(a.getLatest(latest));
+            assertEquals(50L, latest.sequence);
+            assertEquals(50f, latest.lightLux, 0f);
+
+            // 64-sample ring: the newest 64 of 200 IMU samples, 100 ms = 21 of them
+            SampleBatch window = new SampleBatch();
+            assertEquals(21, a.getImuWindow(100_000_000L, window));
+            assertEquals(50f, window.get(20, 0), 0f);
+            assertEquals(45f, window.get(0, 0), 0f);
+            assertEquals(64, a.getImuWindow(0L, Long.MAX_VALUE, window));
+
+            // Packets without a batch still give one IMU sample each
+            assertEquals(5, b.getImuWindow(1_000_000_000L, window));
+            assertEquals(5, b.getScalarWindow(1_000_000_000L, window));
+            assertEquals(50f, window.get(4, DeviceStream.SCALAR_LIGHT_LUX), 0f);
+            assertEquals(0L, server.getDecodeErrors());
+
+            JSONArray devices = new JSONArray(get("/devices"));
+            assertEquals(2, devices.length());
+            JSONObject json = new JSONObject(get("/devices/" + a.id));
+            assertEquals(50L, json.getLong("seq"));
+            JSONObject imu = new JSONObject(get("/devices/" + a.id + "/imu?ms=100"));
+            assertEquals(21, imu.getJSONArray("samples").length());
+            assertEquals(6, imu.getJSONArray("channels").length());
+
+            // Derived channels over every IMU sample: gx = seq, |a| constant
+            JSONObject derived = new JSONObject(get("/devices/" + a.id + "/derived"));
+            assertEquals(50.0, derived.getDouble("gyro_max"), 1e-4);
+            assertEquals(0.0, derived.getDouble("accel_rms"), 1e-4);
+            JSONArray buckets = new JSONObject(get("/devices/" + a.id + "/series?channel=gyro_max&seconds=10"))
+                    .getJSONArray("buckets");
+            assertEquals(50.0, buckets.getJSONArray(buckets.length() - 1).getDouble(2), 1e-4);
+        }
+    }
+
+    @Test
+    public void answersClockSyncAndCountsBadPackets() throws Exception {
+        try (DatagramSocket phone = new DatagramSocket()) {
+            phone.setSoTimeout(2000);
+            send(phone, ByteBuffer.wrap(ClockSyncMessage.request(777L).encode()));
+            ClockSyncMessage reply = ClockSyncMessage.parse(receive(phone), 0, lastLength);
+            assertNotNull(reply);
+            assertEquals(ClockSyncMessage.Type.REPLY, reply.type);
+            assertEquals(777L, reply.originNs);
+
+            send(phone, ByteBuffer.wrap("{\"seq\": oops".getBytes(StandardCharsets.US_ASCII)));
+            long deadline = System.currentTimeMillis() + 2000;
+            while (server.getDecodeErrors() == 0L && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1L, server.getDecodeErrors());
+        }
+    }
+
+    @Test
+    public void backfilledPacketsAreMergedIntoTheHistory() throws Exception {
+        try (DatagramSocket phone = new DatagramSocket()) {
+            SensorPacketWriter writer = new SensorPacketWriter();
+            SensorPacket packet = new SensorPacket();
+            SampleBatch batch = new SampleBatch(4, 6);
+            // 11..30 are lost live, then come back from the spool; 5 is resent although it arrived
+            for (int seq = 1; seq <= 40; seq++) {
+                if (seq <= 10 || seq > 30) send(phone, imuPacket(writer, packet, batch, seq));
+            }
+            send(phone, backfill(imuPacket(writer, packet, batch, 5)));
+            for (int seq = 11; seq <= 30; seq++) {
+                send(phone, backfill(imuPacket(writer, packet, batch, seq)));
+            }
+
+            InetSocketAddress source = new InetSocketAddress(InetAddress.getLoopbackAddress(), phone.getLocalPort());
+            DeviceStream device = await(phone, 40);
+            long deadline = System.currentTimeMillis() + 2000;
+            while (device.getBackfilled() < 20 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(20L, device.getBackfilled());
+            assertEquals(40L, device.getReceived());
+            assertEquals(0L, device.getLost());
+
+            // Every IMU sample once, in order; the 1 s rollups count them too
+            SeriesResult result = new SeriesResult();
+            assertEquals(160, device.getImuSeries().query(0, 0L, Long.MAX_VALUE, 0L, result));
+            for (int i = 0; i < result.count; i++) {
+                assertEquals((i + 1) * 5_000_000L, result.startsNs[i]);
+                assertEquals(i / 4 + 1, result.mean[i], 0f);
+            }
+            device.getImuSeries().query(0, 0L, Long.MAX_VALUE, 1_000_000_000L, result);
+            assertEquals(160L, result.samples[0]);
+            assertEquals(40, device.getScalarSeries().query(DeviceStream.SCALAR_LIGHT_LUX, 0L, Long.MAX_VALUE, 0L, result));
+            assertEquals(0L, server.getDecodeErrors());
+
+            // Idle devices are dropped
+            assertEquals(0, server.evictIdleDevices(System.nanoTime()));
+            assertEquals(1, server.evictIdleDevices(System.nanoTime() + IngestServer.DEFAULT_DEVICE_IDLE_NS + 1_000_000_000L));
+            assertNull(server.getDevice(source));
+            assertNull(server.getDevice(device.id));
+            assertTrue(server.getDevices().isEmpty());
+        }
+    }
+
+    @Test
+    public void tcpRepliesStayWholeFramesWhenTheClientDoesNotRead() throws Exception {
+        IngestServer tcp = new IngestServer(0, 1, true, 64);
+        tcp.start();
+        try (Socket client = new Socket()) {
+            // A tiny receive window makes the server's writes come up short
+            client.setReceiveBufferSize(4096);
+            client.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), tcp.getPort()), 2000);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+            int requests = 100_000;
+            for (int i = 0; i < requests; i++) {
+                byte[] request = ClockSyncMessage.request(i).encode();
+                out.writeInt(request.length);
+                out.write(request);
+            }
+            out.flush();
+            Thread.sleep(500);
+
+            // Some replies are skipped, but every one that arrives is whole, up to the last byte
+            client.setSoTimeout(1000);
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            InputStream in = client.getInputStream();
+            byte[] chunk = new byte[65536];
+            try {
+                for (int n; (n = in.read(chunk)) > 0; ) {
+                    received.write(chunk, 0, n);
+                }
+            } catch (SocketTimeoutException e) {
+                // Drained
+            }
+            ByteBuffer frames = ByteBuffer.wrap(received.toByteArray());
+            int replies = 0;
+            long lastOrigin = -1L;
+            while (frames.hasRemaining()) {
+                assertTrue(frames.remaining() >= 4);
+                int length = frames.getInt();
+                assertTrue("frame length " + length, length > 0 && length <= frames.remaining());
+                ClockSyncMessage reply = ClockSyncMessage.parse(frames.array(), frames.position(), length);
+                assertNotNull(reply);
+                assertEquals(ClockSyncMessage.Type.REPLY, reply.type);
+                assertTrue(reply.originNs > lastOrigin && reply.originNs < requests);
+                lastOrigin = reply.originNs;
+                frames.position(frames.position() + length);
+                replies++;
+            }
+            assertTrue(replies > 0);
+            assertEquals(requests, tcp.getPacketsReceived());
+        } finally {
+            tcp.stop();
+        }
+    }
+
+    // ============================================================
+
+    private int lastLength;
+
+    private static ByteBuffer imuPacket(SensorPacketWriter writer, SensorPacket packet, SampleBatch batch, int seq) {
+        packet.sequence = seq;
+        packet.timestampNs = seq * 20_000_000L;
+        packet.lightLux = seq;
+        batch.reset(6);
+        for (int i = 3; i >= 0; i--) {
+            batch.add(packet.timestampNs - i * 5_000_000L, seq, 0f, 0f, 0f, 0f, 9.81f);
+        }
+        return writer.write(packet, batch, null);
+    }
+
+    private static ByteBuffer backfill(ByteBuffer payload) {
+        ByteBuffer prefixed = ByteBuffer.allocate(PacketSpool.BACKFILL_PREFIX.length + payload.remaining());
+        prefixed.put(PacketSpool.BACKFILL_PREFIX).put(payload).flip();
+        return prefixed;
+    }
+
+    private void send(DatagramSocket socket, ByteBuffer payload) throws Exception {
+        byte[] bytes = Arrays.copyOfRange(payload.array(), payload.position(), payload.limit());
+        socket.send(new DatagramPacket(bytes, bytes.length, address));
+    }
+
+    private byte[] receive(DatagramSocket socket) throws Exception {
+        byte[] buffer = new byte[2048];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        socket.receive(packet);
+        lastLength = packet.getLength();
+        return buffer;
+    }
+
+    private DeviceStream await(DatagramSocket phone, long packets) throws Exception {
+        InetSocketAddress source = new InetSocketAddress(InetAddress.getLoopbackAddress(), phone.getLocalPort());
+        long deadline = System.currentTimeMillis() + 2000;
+        while (System.currentTimeMillis() < deadline) {
+            DeviceStream device = server.getDevice(source);
+            if (device != null && device.getReceived() >= packets) return device;
+            Thread.sleep(10);
+        }
+        fail("device on port " + phone.getLocalPort() + " did not get " + packets + " packets");
+        return null;
+    }
+
+    private String get(String path) throws Exception {
+        URL url = new URL("http://127.0.0.1:" + api.getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            assertEquals(200, connection.getResponseCode());
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.obs.mobile.ingest;
+
+import com.obs.mobile.streaming.DeltaVarintCodec;
+import com.obs.mobile.streaming.GorillaXorCodec;
+import com.obs.mobile.streaming.SampleBatch;
+import com.obs.mobile.streaming.SensorPacket;
+import com.obs.mobile.streaming.SensorPacketWriter;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writer output and org.json output decode back to the same values
+ */
+public class PacketDecoderTest {
+
+    private final PacketDecoder decoder = new PacketDecoder();
+    private final SensorPacket decoded = new SensorPacket();
+    private final SampleBatch imu = new SampleBatch();
+
+    @Test
+    public void writerPacketDecodesToItsValues() {
+        SensorPacket packet = packet();
+        ByteBuffer bytes = new SensorPacketWriter().write(packet);
+        assertTrue(decoder.decode(bytes.array(), 0, bytes.limit(), decoded, imu));
+
+        assertEquals(packet.sequence, decoded.sequence);
+        assertEquals(packet.timestampNs, decoded.timestampNs);
+        assertEquals(packet.captureTimestampNs, decoded.captureTimestampNs);
+        assertEquals(packet.accelX, decoded.accelX, 0f);
+        assertEquals(packet.accelZ, decoded.accelZ, 0f);
+        assertEquals(packet.accelMagnitude, decoded.accelMagnitude, 0f);
+        assertEquals(packet.gyroY, decoded.gyroY, 0f);
+        assertEquals(packet.lightLux, decoded.lightLux, 0f);
+        assertSame("Bright", decoded.lightCategory);
+        assertEquals(packet.proximityDistance, decoded.proximityDistance, 0f);
+        assertTrue(decoded.proximityIsNear);
+        assertEquals(packet.magnetometerAzimuth, decoded.magnetometerAzimuth, 0f);
+        assertEquals("North-East", decoded.magnetometerDirection);
+        assertEquals(0, imu.count);
+    }
+
+    @Test
+    public void imuBatchAsArrayOrPacked() {
+        SensorPacket packet = packet();
+        SampleBatch batch = new SampleBatch(8, 6);
+        for (int i = 0; i < 8; i++) {
+            batch.add(packet.timestampNs - (8 - i) * 5_000_000L,
+                    0.5f * i, -0.25f, 0.01f * i, 0.1f, -0.2f * i, 9.81f + 0.01f * i);
+        }
+        SensorPacketWriter writer = new SensorPacketWriter();
+
+        ByteBuffer bytes = writer.write(packet, batch, null);
+        assertTrue(decoder.decode(bytes.array(), 0, bytes.limit(), decoded, imu));
+        assertBatch(batch, imu, 1e-6f);
+
+        bytes = writer.write(packet, batch, new GorillaXorCodec());
+        assertTrue(decoder.decode(bytes.array(), 0, bytes.limit(), decoded, imu));
+        assertBatch(batch, imu, 0f);
+
+        bytes = writer.write(packet, batch, DeltaVarintCodec.forImu());
+        assertTrue(decoder.decode(bytes.array(), 0, bytes.limit(), decoded, imu));
+        assertBatch(batch, imu, 0.01f);
+        assertEquals(packet.sequence, decoded.sequence);
+    }
+
+    @Test
+    public void orgJsonPacketWithOtherOrderAndDoubles() {
+        JSONObject json = new JSONObject();
+        json.put("magnetometer", new JSONObject().put("direction", "Somewhere").put("azimuth", 45.099998474121094));
+        json.put("accelerometer", new JSONObject().put("x", -1.5E-3).put("y", 2).put("z", 9.8100004196167)
+                .put("magnitude", JSONObject.NULL));
+        json.put("unknown", new JSONObject().put("nested", new JSONArray().put(1).put("two").put(true)));
+        json.put("seq", 42);
+        json.put("timestamp_ns", 123456789012345L);
+        json.put("imu", new JSONArray().put(new JSONArray().put(1000L).put(1.25).put(-2.5e2)));
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+
+        assertTrue(decoder.decode(bytes, 0, bytes.length, decoded, imu));
+        assertEquals(42L, decoded.sequence);
+        assertEquals(123456789012345L, decoded.timestampNs);
+        assertEquals(-0.0015f, decoded.accelX, 0f);
+        assertEquals(2f, decoded.accelY, 0f);
+        assertEquals(9.81f, decoded.accelZ, 0f);
+        assertTrue(Float.isNaN(decoded.accelMagnitude));
+        assertEquals(45.1f, decoded.magnetometerAzimuth, 0f);
+        assertEquals("Somewhere", decoded.magnetometerDirection);
+        assertEquals("Normal", decoded.lightCategory);
+        assertEquals(1, imu.count);
+        assertEquals(2, imu.channels);
+        assertEquals(-250f, imu.get(0, 1), 0f);
+    }
+
+    @Test
+    public void rejectsMalformedPackets() {
+        ByteBuffer bytes = new SensorPacketWriter().write(packet());
+        for (int length = 0; length < bytes.limit(); length += 7) {
+            assertFalse("truncated at " + length, decoder.decode(bytes.array(), 0, length, decoded, imu));
+        }
+        byte[] garbage = "{\"seq\": x}".getBytes(StandardCharsets.US_ASCII);
+        assertFalse(decoder.decode(garbage, 0, garbage.length, decoded, imu));
+        byte[] badBase64 = "{\"imu_packed\":\"!!!!\"}".getBytes(StandardCharsets.US_ASCII);
+        assertFalse(decoder.decode(badBase64, 0, badBase64.length, decoded, imu));
+    }
+
+    private static SensorPacket packet() {
+        SensorPacket packet = new SensorPacket();
+        packet.sequence = 1234L;
+        packet.timestampNs = 98_765_432_100_000L;
+        packet.captureTimestampNs = 98_765_430_000_000L;
+        packet.accelX = 0.125f;
+        packet.accelY = -3.5f;
+        packet.accelZ = 9.81f;
+        packet.accelMagnitude = 10.44f;
+        packet.gyroX = 1.5f;
+        packet.gyroY = -0.001234f;
+        packet.gyroZ = 120f;
+        packet.lightLux = 1234.5f;
+        packet.lightCategory = "Bright";
+        packet.proximityDistance = 0f;
+        packet.proximityIsNear = true;
+        packet.magnetometerAzimuth = 47.5f;
+        packet.magnetometerDirection = "North-East";
+        return packet;
+    }
+
+    private static void assertBatch(SampleBatch expected, SampleBatch actual, float delta) {
+        assertEquals(expected.count, actual.count);
+        assertEquals(expected.channels, actual.channels);
+        for (int i = 0; i < expected.count; i++) {
+            assertEquals(expected.timestampsNs[i], actual.timestampsNs[i]);
+            for (int c = 0; c < expected.channels; c++) {
+                assertEquals(expected.get(i, c), actual.get(i, c), delta);
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.obs.mobile.ingest;
+
+import com.obs.mobile.streaming.DeltaVarintCodec;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Raw chunks, rollups, tier choice and retention
+ */
+public class TimeSeriesTest {
+
+    private static final long MS = 1_000_000L;
+    private static final long SECOND = 1_000_000_000L;
+    private static final long START_NS = 5_000L * SECOND + 3 * MS;   // Not aligned to any bucket
+
+    @Test
+    public void rawQueriesReturnEverySampleAcrossSealedChunks() {
+        TimeSeries series = new TimeSeries(2, TimeSeries.DEFAULT_RAW_RETENTION_NS);
+        float[][] values = fill(series, 5000, 5 * MS, new Random(1));
+        assertFalse(series.append(START_NS, new float[] {0f, 0f}, 0));
+        assertEquals(5000L, series.getRawSamples());
+        assertTrue(series.getSealedBytes() > 0L);
+
+        // Across chunk boundaries (1024 samples each) and into the open chunk, lossless
+        SeriesResult result = new SeriesResult();
+        long fromNs = START_NS + 1000 * 5 * MS;
+        long toNs = START_NS + 4999 * 5 * MS;
+        assertEquals(4000, series.query(1, fromNs, toNs, 0L, result));
+        assertEquals(0L, result.sourceWidthNs);
+        for (int i = 0; i < result.count; i++) {
+            assertEquals(fromNs + i * 5 * MS, result.startsNs[i]);
+            assertEquals(values[1000 + i][1], result.mean[i], 0f);
+        }
+    }
+
+    @Test
+    public void lossyCodecKeepsValuesWithinHalfAStep() {
+        TimeSeries series = new TimeSeries(2, TimeSeries.DEFAULT_RAW_RETENTION_NS,
+                new DeltaVarintCodec(1000L, 0.01f, 0.001f));
+        float[][] values = fill(series, 3000, 5 * MS, new Random(5));
+
+        SeriesResult result = new SeriesResult();
+        assertEquals(3000, series.query(1, START_NS, START_NS + 3000 * 5 * MS, 0L, result));
+        for (int i = 0; i < result.count; i++) {
+            assertEquals(values[i][1], result.mean[i], 0.0005f + 1e-6f);
+        }
+    }
+
+    @Test
+    public void rollupsMatchBruteForceAndQueriesPickTheCoarsestFit() {
+        TimeSeries series = new TimeSeries(2, TimeSeries.DEFAULT_RAW_RETENTION_NS);
+        int samples = 200 * 180;   // 3 minutes at 200 Hz
+        float[][] values = fill(series, samples, 5 * MS, new Random(2));
+        long endNs = START_NS + (samples - 1) * 5 * MS;
+        SeriesResult result = new SeriesResult();
+
+        long[] resolutions = {500 * MS, SECOND, 30 * SECOND, 60 * SECOND, 3600 * SECOND};
+        long[] expectedSource = {0L, SECOND, 10 * SECOND, 60 * SECOND, 60 * SECOND};
+        for (int r = 0; r < resolutions.length; r++) {
+            long resolution = resolutions[r];
+            series.query(0, START_NS, endNs, resolution, result);
+            assertEquals("resolution " + resolution, expectedSource[r], result.sourceWidthNs);
+
+            // Same buckets computed from the raw values
+            int bucket = -1;
+            long bucketStart = Long.MIN_VALUE;
+            float min = 0f;
+            float max = 0f;
+            double sum = 0.0;
+            int count = 0;
+            for (int i = 0; i <= samples; i++) {
+                long start = i < samples ? Math.floorDiv(START_NS + i * 5 * MS, resolution) * resolution : Long.MAX_VALUE;
+                if (start != bucketStart) {
+                    if (bucket >= 0) {
+                        assertEquals(bucketStart, result.startsNs[bucket]);
+                        assertEquals(count, result.samples[bucket]);
+                        assertEquals(min, result.min[bucket], 0f);
+                        assertEquals(max, result.max[bucket], 0f);
+                        assertEquals(sum / count, result.mean[bucket], 1e-4);
+                    }
+                    if (i == samples) break;
+                    bucket++;
+                    bucketStart = start;
+                    min = Float.POSITIVE_INFINITY;
+                    max = Float.NEGATIVE_INFINITY;
+                    sum = 0.0;
+                    count = 0;
+                }
+                float value = values[i][0];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                sum += value;
+                count++;
+            }
+            assertEquals(bucket + 1, result.count);
+        }
+
+        // About maxPoints buckets for a range
+        assertTrue(series.queryPoints(1, START_NS, endNs, 10, result) <= 11);
+        assertEquals(10 * SECOND, result.sourceWidthNs);
+    }
+
+    @Test
+    public void rawChunksExpireButRollupsRemain() {
+        TimeSeries series = new TimeSeries(1, 60 * SECOND);
+        int samples = 10 * 60 * 50;   // 10 minutes at 50 Hz
+        fill(series, samples, 20 * MS, new Random(3));
+        long endNs = START_NS + (samples - 1) * 20 * MS;
+
+        // Only about a minute of raw data (plus one chunk) is left
+        assertTrue(series.getOldestRawNs() > endNs - 90 * SECOND);
+        assertTrue(series.getRawSamples() < 60 * 50 + 2 * TimeSeries.CHUNK_SAMPLES);
+
+        SeriesResult result = new SeriesResult();
+        series.query(0, START_NS, endNs, 60 * SECOND, result);
+        long total = 0L;
+        for (int i = 0; i < result.count; i++) {
+            total += result.samples[i];
+        }
+        assertEquals(samples, total);
+    }
+
+    @Test
+    public void rollupsKeepTheNewestBucketsOfTheirRetention() {
+        TimeSeries series = new TimeSeries(1, 60 * SECOND);
+        int buckets = TimeSeries.ROLLUP_BUCKETS[0];
+        int samples = buckets + 3600;   // One hour more than the 1 s rollup keeps, at 1 Hz
+        fill(series, samples, SECOND, new Random(4));
+        long endNs = START_NS + (samples - 1) * SECOND;
+
+        SeriesResult result = new SeriesResult();
+        assertEquals(buckets, series.query(0, START_NS, endNs, SECOND, result));
+        assertEquals(Math.floorDiv(endNs, SECOND) * SECOND, result.startsNs[buckets - 1]);
+        for (int i = 1; i < result.count; i++) {
+            assertEquals(SECOND, result.startsNs[i] - result.startsNs[i - 1]);
+        }
+        // The 10 s rollup still reaches back to the start
+        series.query(0, START_NS, endNs, 10 * SECOND, result);
+        assertEquals(Math.floorDiv(START_NS, 10 * SECOND) * 10 * SECOND, result.startsNs[0]);
+    }
+
+    @Test
+    public void lateSamplesAreMergedIntoChunksAndRollups() {
+        int samples = 5000;
+        float[][] values = walk(samples, 2, new Random(6));
+        TimeSeries inOrder = new TimeSeries(2, TimeSeries.DEFAULT_RAW_RETENTION_NS);
+        for (int i = 0; i < samples; i++) {
+            inOrder.append(START_NS + i * 5 * MS, values[i], 0);
+        }
+
+        // An outage loses 1500..2999 (spanning sealed chunks), then 4990..4994
+        // inside the open chunk; both come back late, oldest packet first
+        TimeSeries late = new TimeSeries(2, TimeSeries.DEFAULT_RAW_RETENTION_NS);
+        for (int i = 0; i < samples; i++) {
+            if ((i < 1500 || i >= 3000) && (i < 4990 || i >= 4995)) {
+                assertTrue(late.append(START_NS + i * 5 * MS, values[i], 0));
+            }
+        }
+        for (int i = 4990; i < 4995; i++) {
+            assertTrue(late.insert(START_NS + i * 5 * MS, values[i], 0));
+        }
+        for (int i = 1500; i < 3000; i++) {
+            assertTrue(late.insert(START_NS + i * 5 * MS, values[i], 0));
+        }
+        // Unsealed duplicates are recognised
+        assertFalse(late.insert(START_NS + 4992 * 5 * MS, values[4992], 0));
+        assertFalse(late.insert(START_NS + 2999 * 5 * MS, values[2999], 0));
+        assertEquals(samples, late.getRawSamples());
+        assertEquals(START_NS, late.getOldestRawNs());
+
+        long endNs = START_NS + (samples - 1) * 5 * MS;
+        SeriesResult expected = new SeriesResult();
+        SeriesResult result = new SeriesResult();
+        for (long resolution : new long[] {0L, SECOND, 10 * SECOND, 60 * SECOND}) {
+            inOrder.query(1, START_NS, endNs, resolution, expected);
+            late.query(1, START_NS, endNs, resolution, result);
+            assertEquals("resolution " + resolution, expected.count, result.count);
+            for (int i = 0; i < result.count; i++) {
+                assertEquals(expected.startsNs[i], result.startsNs[i]);
+                assertEquals(expected.samples[i], result.samples[i]);
+                assertEquals(expected.min[i], result.min[i], 0f);
+                assertEquals(expected.max[i], result.max[i], 0f);
+                assertEquals(expected.mean[i], result.mean[i], 1e-4f);
+            }
+        }
+        assertEquals(samples, late.getRawSamples());
+
+        // Appending carries on after the merge
+        assertTrue(late.append(endNs + 5 * MS, values[0], 0));
+    }
+
+    @Test
+    public void lateSamplesBeforeTheFirstRollupBucketOpenNewOnes() {
+        TimeSeries series = new TimeSeries(1, TimeSeries.DEFAULT_RAW_RETENTION_NS);
+        series.append(START_NS + 10 * SECOND, new float[] {5f}, 0);
+        series.append(START_NS + 12 * SECOND, new float[] {7f}, 0);
+        assertTrue(series.insert(START_NS + 11 * SECOND, new float[] {6f}, 0));
+        assertTrue(series.insert(START_NS, new float[] {1f}, 0));
+
+        SeriesResult result = new SeriesResult();
+        assertEquals(4, series.query(0, START_NS, START_NS + 20 * SECOND, SECOND, result));
+        assertArrayEquals(new float[] {1f, 5f, 6f, 7f}, Arrays.copyOf(result.mean, 4), 0f);
+        assertEquals(4, series.query(0, START_NS, START_NS + 20 * SECOND, 0L, result));
+        assertEquals(START_NS, result.startsNs[0]);
+        assertEquals(1f, result.mean[0], 0f);
+    }
+
+    /**
+     * Random walk per channel from START_NS at a fixed interval
+     */
+    private static float[][] fill(TimeSeries series, int samples, long intervalNs, Random random) {
+        float[][] values = walk(samples, series.getChannels(), random);
+        for (int i = 0; i < samples; i++) {
+            assertTrue(series.append(START_NS + i * intervalNs, values[i], 0));
+        }
+        return values;
+    }
+
+    private static float[][] walk(int samples, int channels, Random random) {
+        float[][] values = new float[samples][channels];
+        float[] level = new float[channels];
+        for (int i = 0; i < samples; i++) {
+            for (int c = 0; c < channels; c++) {
+                level[c] += (float) random.nextGaussian() * 0.1f;
+                values[i][c] = level[c];
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,21 @@
+// Synthetic load: hundreds of virtual phones streaming to one receiver,
+// built from the same packet writer and transports as the app:
+//      ./gradlew :loadgen:run --args="192.168.1.20 5000 --devices 500 --codec delta"
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+application {
+    mainClass.set("com.obs.mobile.loadgen.LoadGenerator")
+}
+
+dependencies {
+    implementation(project(":sensor-core"))
+    testImplementation(libs.junit)
+    testImplementation(libs.json)
+}
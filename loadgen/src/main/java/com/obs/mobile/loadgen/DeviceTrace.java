@@ -0,0 +1,180 @@
+package com.obs.mobile.loadgen;
+
+import com.obs.mobile.sensors.CompassDirection;
+import com.obs.mobile.sensors.LightCategory;
+import com.obs.mobile.sensors.ShakeDetector;
+import com.obs.mobile.streaming.SampleBatch;
+import com.obs.mobile.streaming.SensorPacket;
+
+import java.util.Random;
+
+/**
+ * DeviceTrace - Synthetic but plausible sensor signals for one virtual phone
+ *
+ * Every device gets its own seed, so a fleet does not move in lockstep:
+ *  - orientation: slow pitch/roll sway (a few seconds period) around a
+ *    resting tilt; the accelerometer sees gravity in the device frame plus
+ *    walking bounce and noise, the gyroscope the sway rate plus a bias
+ *  - shakes: about one per minute, a second of +-20 m/s^2 at 3 Hz
+ *  - compass: heading random walk, direction from CompassDirection
+ *  - light: log-lux random walk around an indoor level, with occasional
+ *    steps (lights switched, going outside); category from LightCategory
+ *  - proximity: far, with a few seconds "in the pocket" now and then
+ *
+ * Units follow SensorDataStreamer: m/s^2, degrees per second for the
+ * gyroscope (packet and IMU batch), lux, cm and degrees. Timestamps are on
+ * the device clock: the caller's time plus a per-device boot offset, like
+ * elapsedRealtimeNanos on a phone.
+ *
+ * Not thread-safe; one trace per device, advanced by its sender thread.
+ */
+public class DeviceTrace {
+
+    private static final double G = 9.81;
+    private static final float NEAR_DISTANCE = 0f;
+    private static final float FAR_DISTANCE = 5f;
+
+    private final Random random;
+    private final long clockOffsetNs;
+
+    // Orientation sway, radians and rad/s
+    private final double restPitch;
+    private final double restRoll;
+    private final double swayAmplitude;
+    private final double swayPitchHz;
+    private final double swayRollHz;
+    private final double phase;
+    private final float[] gyroBias = new float[3];
+
+    // Slow state, advanced per packet
+    private double heading;
+    private double logLux;
+    private double logLuxTarget;
+    private boolean walking;
+    private long shakeUntilNs = 0L;
+    private long pocketUntilNs = 0L;
+    private long lastAdvanceNs = Long.MIN_VALUE;
+
+    private final float[] sample = new float[6];
+
+    public DeviceTrace(long seed) {
+        random = new Random(seed);
+        clockOffsetNs = (long) ((1 + random.nextDouble() * 239) * 3600e9);   // up from 1 h to 10 days
+        restPitch = Math.toRadians(-60 + random.nextDouble() * 50);
+        restRoll = Math.toRadians(-10 + random.nextDouble() * 20);
+        swayAmplitude = Math.toRadians(2 + random.nextDouble() * 8);
+        swayPitchHz = 0.1 + random.nextDouble() * 0.3;
+        swayRollHz = 0.1 + random.nextDouble() * 0.3;
+        phase = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < 3; i++) {
+            gyroBias[i] = (float) (random.nextGaussian() * 0.2);
+        }
+        heading = random.nextDouble() * 360;
+        logLux = 1.7 + random.nextDouble() * 1.2;
+        logLuxTarget = logLux;
+        walking = random.nextBoolean();
+    }
+
+    /**
+     * Device clock for a local System.nanoTime() value
+     */
+    public long deviceTimeNs(long nowNs) {
+        return nowNs + clockOffsetNs;
+    }
+
+    /**
+     * Move the slow signals on to nowNs and fill the packet's current values;
+     * the IMU batch gets batchSize samples spread evenly over the interval
+     * since the previous call (none if batchSize is 0)
+     */
+    public void advance(long nowNs, SensorPacket packet, SampleBatch imu, int batchSize) {
+        long deviceNs = deviceTimeNs(nowNs);
+        long elapsedNs = lastAdvanceNs == Long.MIN_VALUE ? 20_000_000L : Math.max(1L, deviceNs - lastAdvanceNs);
+        lastAdvanceNs = deviceNs;
+        double dt = elapsedNs / 1e9;
+        updateSlowState(deviceNs, dt);
+
+        imu.reset(6);
+        for (int i = batchSize - 1; i >= 0; i--) {
+            long sampleNs = deviceNs - i * elapsedNs / Math.max(1, batchSize);
+            imu(sampleNs, sample);
+            imu.add(sampleNs, sample);
+        }
+        imu(deviceNs, sample);
+
+        packet.timestampNs = deviceNs;
+        packet.captureTimestampNs = deviceNs - 1_000_000L - (long) (random.nextDouble() * 4_000_000L);
+        packet.gyroX = sample[0];
+        packet.gyroY = sample[1];
+        packet.gyroZ = sample[2];
+        packet.accelX = sample[3];
+        packet.accelY = sample[4];
+        packet.accelZ = sample[5];
+        packet.accelMagnitude = ShakeDetector.magnitude(sample[3], sample[4], sample[5]);
+
+        float lux = (float) Math.pow(10, logLux);
+        packet.lightLux = lux;
+        packet.lightCategory = LightCategory.of(lux).getName();
+
+        boolean inPocket = deviceNs < pocketUntilNs;
+        packet.proximityIsNear = inPocket;
+        packet.proximityDistance = inPocket ? NEAR_DISTANCE : FAR_DISTANCE;
+
+        float azimuth = (float) heading;
+        packet.magnetometerAzimuth = azimuth;
+        packet.magnetometerDirection = CompassDirection.fromAzimuth(azimuth).getName();
+    }
+
+    private void updateSlowState(long deviceNs, double dt) {
+        heading = (heading + random.nextGaussian() * 20 * Math.sqrt(dt) + 360) % 360;
+
+        // Light: drift towards a target that occasionally jumps
+        if (random.nextDouble() < dt / 45) {
+            logLuxTarget = random.nextDouble() < 0.2 ? 3.5 + random.nextDouble() : 1.3 + random.nextDouble() * 1.6;
+        }
+        logLux += (logLuxTarget - logLux) * Math.min(1.0, dt * 2) + random.nextGaussian() * 0.01;
+
+        if (random.nextDouble() < dt / 60 && deviceNs >= shakeUntilNs) {
+            shakeUntilNs = deviceNs + 1_000_000_000L;
+        }
+        if (random.nextDouble() < dt / 120 && deviceNs >= pocketUntilNs) {
+            pocketUntilNs = deviceNs + (long) ((2 + random.nextDouble() * 8) * 1e9);
+        }
+        if (random.nextDouble() < dt / 30) {
+            walking = !walking;
+        }
+    }
+
+    /**
+     * IMU sample at device time t: [gx, gy, gz] deg/s, [ax, ay, az] m/s^2
+     */
+    private void imu(long deviceNs, float[] out) {
+        double t = deviceNs / 1e9;
+        double wp = 2 * Math.PI * swayPitchHz;
+        double wr = 2 * Math.PI * swayRollHz;
+        double pitch = restPitch + swayAmplitude * Math.sin(wp * t + phase);
+        double roll = restRoll + swayAmplitude * Math.sin(wr * t);
+        double pitchRate = swayAmplitude * wp * Math.cos(wp * t + phase);
+        double rollRate = swayAmplitude * wr * Math.cos(wr * t);
+
+        out[0] = (float) Math.toDegrees(pitchRate) + gyroBias[0] + (float) (random.nextGaussian() * 0.5);
+        out[1] = (float) Math.toDegrees(rollRate) + gyroBias[1] + (float) (random.nextGaussian() * 0.5);
+        out[2] = gyroBias[2] + (float) (random.nextGaussian() * 0.5);
+
+        // Gravity in the device frame
+        double ax = -G * Math.cos(pitch) * Math.sin(roll);
+        double ay = -G * Math.sin(pitch);
+        double az = G * Math.cos(pitch) * Math.cos(roll);
+        if (walking) {
+            az += 1.2 * Math.sin(2 * Math.PI * 1.8 * t);
+        }
+        if (deviceNs < shakeUntilNs) {
+            double shake = 20 * Math.sin(2 * Math.PI * 3 * t);
+            ax += shake;
+            out[2] += (float) (shake * 15);
+        }
+        out[3] = (float) (ax + random.nextGaussian() * 0.05);
+        out[4] = (float) (ay + random.nextGaussian() * 0.05);
+        out[5] = (float) (az + random.nextGaussian() * 0.05);
+    }
+}
@@ -0,0 +1,307 @@
+package com.obs.mobile.loadgen;
+
+import com.obs.mobile.streaming.BatchCodec;
+import com.obs.mobile.streaming.DeltaVarintCodec;
+import com.obs.mobile.streaming.DiscoveryProtocol;
+import com.obs.mobile.streaming.GorillaXorCodec;
+import com.obs.mobile.streaming.SensorPacketWriter;
+import com.obs.mobile.streaming.TcpTransport;
+import com.obs.mobile.streaming.Transport;
+import com.obs.mobile.streaming.UdpTransport;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LoadGenerator - Simulates a fleet of phones streaming to one receiver
+ *
+ * Each virtual device has its own DeviceTrace and its own socket, and sends
+ * the same packets SensorDataStreamer does (SensorPacketWriter, optionally
+ * with a batched IMU array or a packed codec) at a fixed per-device rate.
+ * Devices are split over a few sender threads; each thread keeps its devices
+ * in a queue ordered by next send time and parks until the earliest is due,
+ * so thousands of devices need no thread each. Transports are the app's
+ * non-blocking UdpTransport/TcpTransport: a full socket drops the packet and
+ * is counted, never waited for.
+ *
+ * Every second it prints the target and achieved packet rate, throughput,
+ * drops, send errors and the worst schedule lag. A lag that keeps growing
+ * means the generator itself is the bottleneck: add --threads or machines.
+ *
+ * Every device holds one socket: raise the open file limit (ulimit -n) for
+ * more than about a thousand devices. Devices differ by source port only,
+ * so a receiver must key senders by address and port (sensor_receiver.py
+ * does; ReferenceReceiver counts UDP senders per host).
+ *
+ * Usage:
+ *   java -jar loadgen.jar 192.168.1.20 5000 --devices 500 --rate 50 --imu-rate 200 --codec delta
+ *
+ * Options: --devices N, --rate packets/s per device, --imu-rate Hz (0 = no
+ * IMU batch), --batch samples per packet (default imu-rate / rate),
+ * --codec none|delta|gorilla, --transport udp|tcp, --threads N,
+ * --duration seconds (0 = until stopped), --seed N.
+ */
+public class LoadGenerator {
+
+    private static final long REPORT_INTERVAL_MS = 1000L;
+    private static final long IDLE_POLL_INTERVAL_NS = 1_000_000L;
+    private static final long MAX_CATCH_UP_NS = 1_000_000_000L;
+
+    /**
+     * Fleet and traffic settings
+     */
+    public static class Config {
+        public String host = "127.0.0.1";
+        public int port = DiscoveryProtocol.STREAM_PORT;
+        public int devices = 100;
+        public double rate = 50;
+        public int imuRate = 200;
+        public int batch = -1;
+        public String codec = "none";
+        public String transport = "udp";
+        public int threads = Runtime.getRuntime().availableProcessors();
+        public int durationSeconds = 0;
+        public long seed = 1L;
+
+        /**
+         * IMU samples per packet: --batch, or what imuRate and rate give
+         */
+        public int batchSize() {
+            if (batch >= 0) return batch;
+            if (imuRate <= 0) return 0;
+            return Math.max(1, (int) Math.round(imuRate / rate));
+        }
+
+        public double targetPacketsPerSecond() {
+            return devices * rate;
+        }
+    }
+
+    private final Config config;
+    private final LoadStats stats = new LoadStats();
+    private final List<Sender> senders = new ArrayList<>();
+    private volatile boolean running = false;
+
+    public LoadGenerator(Config config) {
+        this.config = config;
+    }
+
+    public LoadStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Create the devices and start the sender threads
+     */
+    public void start() {
+        if (running) return;
+        running = true;
+
+        InetSocketAddress address = new InetSocketAddress(config.host, config.port);
+        long intervalNs = (long) (1e9 / config.rate);
+        int batchSize = config.batchSize();
+        int threads = Math.max(1, Math.min(config.threads, config.devices));
+        Random random = new Random(config.seed);
+        long startNs = System.nanoTime();
+
+        for (int t = 0; t < threads; t++) {
+            senders.add(new Sender(t));
+        }
+        for (int id = 0; id < config.devices; id++) {
+            VirtualDevice device = new VirtualDevice(id, random.nextLong(), createTransport(), address,
+                    intervalNs, batchSize, stats);
+            // Spread the fleet over one period instead of sending in bursts
+            device.nextSendNs = startNs + (long) (random.nextDouble() * intervalNs);
+            senders.get(id % threads).devices.add(device);
+        }
+        for (Sender sender : senders) {
+            sender.start();
+        }
+    }
+
+    /**
+     * Stop the sender threads and close every socket
+     */
+    public void stop() {
+        running = false;
+        for (Sender sender : senders) {
+            sender.interrupt();
+        }
+        for (Sender sender : senders) {
+            try {
+                sender.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        senders.clear();
+    }
+
+    /**
+     * One report line for the last intervalMs; resets the interval counters
+     */
+    public String report(long intervalMs) {
+        double seconds = intervalMs / 1000.0;
+        long packets = stats.packets.sumThenReset();
+        long bytes = stats.bytes.sumThenReset();
+        long dropped = stats.dropped.sumThenReset();
+        long errors = stats.errors.sumThenReset();
+        long feedback = stats.feedback.sumThenReset();
+        long maxLagNs = stats.maxLagNs.getThenReset();
+        return String.format(Locale.US,
+                "target %.0f pkt/s  sent %.0f pkt/s  %.2f MB/s  avg %d B  dropped %d  errors %d  feedback %d  max lag %.1f ms",
+                config.targetPacketsPerSecond(), packets / seconds, bytes / seconds / 1e6,
+                packets > 0 ? bytes / packets : 0, dropped, errors, feedback, maxLagNs / 1e6);
+    }
+
+    private Transport createTransport() {
+        if ("tcp".equals(config.transport)) {
+            return new TcpTransport(TcpTransport.DEFAULT_QUEUE_CAPACITY, TcpTransport.OverflowPolicy.DROP_OLDEST);
+        }
+        return new UdpTransport();
+    }
+
+    private BatchCodec createCodec() {
+        switch (config.codec) {
+            case "delta":
+                return DeltaVarintCodec.forImu();
+            case "gorilla":
+                return new GorillaXorCodec();
+            default:
+                return null;
+        }
+    }
+
+    // ==================== Sender thread ====================
+
+    /**
+     * Sends for its share of the fleet; owns their transports, trace state and
+     * one SensorPacketWriter (the transports copy or write the packet before
+     * send() returns, so the writer's buffer can be reused right away)
+     */
+    private class Sender extends Thread {
+
+        final PriorityQueue<VirtualDevice> devices =
+                new PriorityQueue<>((a, b) -> Long.compare(a.nextSendNs, b.nextSendNs));
+
+        private final SensorPacketWriter writer = new SensorPacketWriter();
+        private final BatchCodec codec = createCodec();
+        private final VirtualDevice.PacketEncoder encoder = (packet, imu) -> writer.write(packet, imu, codec);
+
+        Sender(int index) {
+            super("loadgen-sender-" + index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long lastPollNs = System.nanoTime();
+            try {
+                while (running && !isInterrupted()) {
+                    long nowNs = System.nanoTime();
+                    VirtualDevice device = devices.peek();
+                    if (device != null && device.nextSendNs <= nowNs) {
+                        devices.poll();
+                        stats.maxLagNs.accumulate(nowNs - device.nextSendNs);
+                        device.send(nowNs, encoder);
+                        device.nextSendNs += device.intervalNs;
+                        if (nowNs - device.nextSendNs > MAX_CATCH_UP_NS) {
+                            // Too far behind to catch up; the lag report already shows it
+                            device.nextSendNs = nowNs + device.intervalNs;
+                        }
+                        devices.add(device);
+                        continue;
+                    }
+
+                    if (nowNs - lastPollNs >= IDLE_POLL_INTERVAL_NS) {
+                        for (VirtualDevice d : devices) {
+                            d.poll(nowNs);
+                        }
+                        lastPollNs = nowNs;
+                    }
+                    long waitNs = device != null ? device.nextSendNs - nowNs : IDLE_POLL_INTERVAL_NS;
+                    LockSupport.parkNanos(Math.min(waitNs, IDLE_POLL_INTERVAL_NS));
+                }
+            } finally {
+                for (VirtualDevice d : devices) {
+                    d.close();
+                }
+            }
+        }
+    }
+
+    // ==================== Command line ====================
+
+    public static Config parseArgs(String[] args) {
+        Config config = new Config();
+        int positional = 0;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                if (positional++ == 0) {
+                    config.host = arg;
+                } else {
+                    config.port = Integer.parseInt(arg);
+                }
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--devices": config.devices = Integer.parseInt(value); break;
+                case "--rate": config.rate = Double.parseDouble(value); break;
+                case "--imu-rate": config.imuRate = Integer.parseInt(value); break;
+                case "--batch": config.batch = Integer.parseInt(value); break;
+                case "--codec": config.codec = value; break;
+                case "--transport": config.transport = value; break;
+                case "--threads": config.threads = Integer.parseInt(value); break;
+                case "--duration": config.durationSeconds = Integer.parseInt(value); break;
+                case "--seed": config.seed = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (config.devices <= 0 || config.rate <= 0) {
+            throw new IllegalArgumentException("--devices and --rate must be positive");
+        }
+        return config;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config;
+        try {
+            config = parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: LoadGenerator [host] [port] [--devices N] [--rate pps] [--imu-rate Hz]"
+                    + " [--batch N] [--codec none|delta|gorilla] [--transport udp|tcp] [--threads N]"
+                    + " [--duration s] [--seed N]");
+            System.exit(2);
+            return;
+        }
+
+        LoadGenerator generator = new LoadGenerator(config);
+        Runtime.getRuntime().addShutdownHook(new Thread(generator::stop));
+        System.out.println(String.format(Locale.US,
+                "%d devices -> %s:%d over %s, %.1f pkt/s each, %d IMU samples per packet, codec %s, %d threads",
+                config.devices, config.host, config.port, config.transport, config.rate, config.batchSize(),
+                config.codec, Math.max(1, Math.min(config.threads, config.devices))));
+        generator.start();
+
+        long endMs = config.durationSeconds > 0 ? System.currentTimeMillis() + config.durationSeconds * 1000L : Long.MAX_VALUE;
+        long lastMs = System.currentTimeMillis();
+        while (System.currentTimeMillis() < endMs) {
+            Thread.sleep(REPORT_INTERVAL_MS);
+            long nowMs = System.currentTimeMillis();
+            System.out.println(generator.report(nowMs - lastMs));
+            lastMs = nowMs;
+        }
+        generator.stop();
+    }
+}
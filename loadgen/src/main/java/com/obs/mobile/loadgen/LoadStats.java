@@ -0,0 +1,26 @@
+package com.obs.mobile.loadgen;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LoadStats - Counters shared by all sender threads, read by the reporter
+ */
+public class LoadStats {
+
+    /** Packets and bytes written to sockets */
+    public final LongAdder packets = new LongAdder();
+    public final LongAdder bytes = new LongAdder();
+
+    /** Packets not sent: full socket buffer or TCP queue, or device reconnecting */
+    public final LongAdder dropped = new LongAdder();
+
+    /** Send or connect failures; the device reconnects after a pause */
+    public final LongAdder errors = new LongAdder();
+
+    /** FeedbackMessages received back from the receiver */
+    public final LongAdder feedback = new LongAdder();
+
+    /** Largest delay of a send behind its schedule since the last report, ns */
+    public final LongAccumulator maxLagNs = new LongAccumulator(Math::max, 0L);
+}
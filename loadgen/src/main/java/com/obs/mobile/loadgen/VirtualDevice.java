@@ -0,0 +1,133 @@
+package com.obs.mobile.loadgen;
+
+import com.obs.mobile.streaming.ClockSyncMessage;
+import com.obs.mobile.streaming.FeedbackMessage;
+import com.obs.mobile.streaming.SampleBatch;
+import com.obs.mobile.streaming.SensorPacket;
+import com.obs.mobile.streaming.Transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * VirtualDevice - One simulated phone: its trace, its socket and its schedule
+ *
+ * Owns a Transport (so every device has its own source port, like a real
+ * phone) and sends a packet every intervalNs, stamped with consecutive
+ * sequence numbers. A broken transport is counted, closed and opened again
+ * after RETRY_INTERVAL_NS; packets due meanwhile are dropped. Driven by one
+ * LoadGenerator sender thread.
+ */
+class VirtualDevice {
+
+    static final long RETRY_INTERVAL_NS = 1_000_000_000L;
+
+    final int id;
+    final long intervalNs;
+    long nextSendNs;
+
+    private final DeviceTrace trace;
+    private final Transport transport;
+    private final InetSocketAddress address;
+    private final LoadStats stats;
+    private final SensorPacket packet = new SensorPacket();
+    private final SampleBatch imu = new SampleBatch(16, 6);
+    private final int batchSize;
+
+    private boolean open = false;
+    private long retryAtNs = 0L;
+
+    VirtualDevice(int id, long seed, Transport transport, InetSocketAddress address,
+                  long intervalNs, int batchSize, LoadStats stats) {
+        this.id = id;
+        this.trace = new DeviceTrace(seed);
+        this.transport = transport;
+        this.address = address;
+        this.intervalNs = intervalNs;
+        this.batchSize = batchSize;
+        this.stats = stats;
+        transport.setListener(listener);
+    }
+
+    /**
+     * Build and send this device's next packet
+     */
+    void send(long nowNs, PacketEncoder encoder) {
+        packet.sequence++;
+        trace.advance(nowNs, packet, imu, batchSize);
+        if (!open && !reopen(nowNs)) {
+            stats.dropped.increment();
+            return;
+        }
+        try {
+            transport.send(encoder.encode(packet, imu));
+        } catch (IOException | RuntimeException e) {
+            fail(nowNs);
+        }
+    }
+
+    /**
+     * Write queued data and read replies (TCP) between sends
+     */
+    void poll(long nowNs) {
+        if (!open) return;
+        try {
+            transport.flush();
+        } catch (IOException | RuntimeException e) {
+            fail(nowNs);
+        }
+    }
+
+    void close() {
+        transport.close();
+        open = false;
+    }
+
+    private boolean reopen(long nowNs) {
+        if (nowNs < retryAtNs) return false;
+        try {
+            transport.open(address);
+            open = true;
+        } catch (IOException | RuntimeException e) {
+            fail(nowNs);
+        }
+        return open;
+    }
+
+    private void fail(long nowNs) {
+        stats.errors.increment();
+        transport.close();
+        open = false;
+        retryAtNs = nowNs + RETRY_INTERVAL_NS;
+    }
+
+    /**
+     * Encodes the packet; the buffer is sent before the next call
+     */
+    interface PacketEncoder {
+        ByteBuffer encode(SensorPacket packet, SampleBatch imu);
+    }
+
+    private final Transport.Listener listener = new Transport.Listener() {
+        @Override
+        public void onPacketsWritten(int packets, long bytes) {
+            stats.packets.add(packets);
+            stats.bytes.add(bytes);
+        }
+
+        @Override
+        public void onPacketsDropped(int packets) {
+            stats.dropped.add(packets);
+        }
+
+        @Override
+        public void onFeedback(FeedbackMessage feedback) {
+            stats.feedback.increment();
+        }
+
+        @Override
+        public void onClockSync(ClockSyncMessage message) {
+        }
+    };
+}
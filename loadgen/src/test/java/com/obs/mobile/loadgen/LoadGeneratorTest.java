@@ -0,0 +1,93 @@
+package com.obs.mobile.loadgen;
+
+import com.obs.mobile.streaming.SampleBatch;
+import com.obs.mobile.streaming.SensorPacket;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fleet traffic to a local UDP socket, and the trace values
+ */
+public class LoadGeneratorTest {
+
+    @Test
+    public void devicesSendOrderedPacketsFromTheirOwnSockets() throws Exception {
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            socket.setSoTimeout(200);
+            LoadGenerator.Config config = LoadGenerator.parseArgs(new String[] {
+                    "127.0.0.1", String.valueOf(socket.getLocalPort()),
+                    "--devices", "4", "--rate", "40", "--imu-rate", "200", "--threads", "2"});
+            assertEquals(5, config.batchSize());
+
+            LoadGenerator generator = new LoadGenerator(config);
+            Map<Integer, Long> lastSeqByPort = new HashMap<>();
+            int received = 0;
+            byte[] buffer = new byte[65535];
+            generator.start();
+            try {
+                long endMs = System.currentTimeMillis() + 500;
+                while (System.currentTimeMillis() < endMs) {
+                    DatagramPacket datagram = new DatagramPacket(buffer, buffer.length);
+                    try {
+                        socket.receive(datagram);
+                    } catch (SocketTimeoutException e) {
+                        continue;
+                    }
+                    JSONObject json = new JSONObject(new String(datagram.getData(), 0, datagram.getLength(),
+                            StandardCharsets.UTF_8));
+                    long seq = json.getLong("seq");
+                    Long last = lastSeqByPort.put(datagram.getPort(), seq);
+                    if (last != null) {
+                        assertTrue("seq " + seq + " after " + last, seq > last);
+                    }
+                    JSONArray imu = json.getJSONArray("imu");
+                    assertEquals(5, imu.length());
+                    received++;
+                }
+            } finally {
+                generator.stop();
+            }
+
+            assertEquals(4, lastSeqByPort.size());
+            assertTrue("received " + received, received >= 20);
+            assertEquals(0L, generator.getStats().errors.sum());
+        }
+    }
+
+    @Test
+    public void traceStaysPlausible() {
+        DeviceTrace trace = new DeviceTrace(7L);
+        SensorPacket packet = new SensorPacket();
+        SampleBatch imu = new SampleBatch(16, 6);
+        long nowNs = 0L;
+        long lastDeviceNs = Long.MIN_VALUE;
+        for (int i = 0; i < 3000; i++) {
+            nowNs += 20_000_000L;
+            trace.advance(nowNs, packet, imu, 4);
+
+            assertEquals(4, imu.count);
+            assertTrue(imu.timestampsNs[0] > lastDeviceNs);
+            assertEquals(packet.timestampNs, imu.timestampsNs[3]);
+            lastDeviceNs = packet.timestampNs;
+
+            assertTrue(packet.accelMagnitude > 5f && packet.accelMagnitude < 40f);
+            assertTrue(packet.lightLux > 1f && packet.lightLux < 100_000f);
+            assertTrue(packet.magnetometerAzimuth >= 0f && packet.magnetometerAzimuth < 360f);
+            assertNotNull(packet.lightCategory);
+            assertNotNull(packet.magnetometerDirection);
+        }
+        assertEquals(trace.deviceTimeNs(nowNs), packet.timestampNs);
+    }
+}
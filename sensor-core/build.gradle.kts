@@ -0,0 +1,18 @@
+// Sensor processing, recording and streaming in plain Java: no Android
+// classes, so it builds, tests and benchmarks on any JVM. :app adapts the
+// Android sensors and UI to it.
+plugins {
+    `java-library`
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    // SensorPacketJson: Android ships org.json, JVM users add this one
+    compileOnly(libs.json)
+    testImplementation(libs.junit)
+    testImplementation(libs.json)
+}
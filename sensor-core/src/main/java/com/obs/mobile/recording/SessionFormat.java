@@ -0,0 +1,168 @@
+package com.obs.mobile.recording;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * SessionFormat - File layout shared by SessionRecorder and SessionReader
+ *
+ * A session is a directory of numbered segments, each with a sparse index:
+ *
+ *      segment-000000.obs      16-byte header, then records back to back
+ *      segment-000000.idx      (timestamp ns, offset) every ~INDEX_INTERVAL_NS
+ *
+ * Segment header: magic, version, reserved, creation time (wall-clock ms).
+ * Record (big-endian):
+ *
+ *      length (int) | crc32 (int) | type (short) | timestamp ns (long) | payload
+ *
+ * length is the size of the whole record and is written last, so a zero
+ * length marks the end of the data (segments are zero-filled when mapped) and
+ * a torn record is never mistaken for a complete one; the CRC covers type,
+ * timestamp and payload. Index file: magic, entry count, then (long
+ * timestamp, int offset) per entry.
+ */
+final class SessionFormat {
+
+    static final int SEGMENT_MAGIC = 0x4F425353;   // "OBSS"
+    static final int INDEX_MAGIC = 0x4F425349;     // "OBSI"
+    static final short VERSION = 1;
+
+    static final int SEGMENT_HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 18;
+    static final int CRC_OFFSET = 4;
+    static final int CRC_START = 8;
+    static final int MAX_PAYLOAD = 65535;
+    static final int MAX_RECORD_SIZE = RECORD_HEADER_SIZE + MAX_PAYLOAD;
+
+    static final long INDEX_INTERVAL_NS = 250_000_000L;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".obs";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private SessionFormat() {
+    }
+
+    static File segmentFile(File directory, int number) {
+        return new File(directory, String.format(Locale.US, "%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    static File indexFile(File segmentFile) {
+        String name = segmentFile.getName();
+        return new File(segmentFile.getParentFile(),
+                name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    /**
+     * Segment number from its file name, -1 if it is not a segment
+     */
+    static int segmentNumber(File file) {
+        String name = file.getName();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) return -1;
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Segment files of a session, oldest first
+     */
+    static File[] listSegments(File directory) {
+        File[] files = directory.listFiles(file -> segmentNumber(file) >= 0);
+        if (files == null) return new File[0];
+        Arrays.sort(files, (a, b) -> Integer.compare(segmentNumber(a), segmentNumber(b)));
+        return files;
+    }
+
+    // ==================== Index ====================
+
+    /**
+     * Sparse time -> offset index of one segment
+     */
+    static final class Index {
+        long[] timestampsNs = new long[64];
+        int[] offsets = new int[64];
+        int count;
+
+        void add(long timestampNs, int offset) {
+            if (count == offsets.length) {
+                timestampsNs = Arrays.copyOf(timestampsNs, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            timestampsNs[count] = timestampNs;
+            offsets[count] = offset;
+            count++;
+        }
+
+        void copyFrom(Index other) {
+            if (offsets.length < other.count) {
+                timestampsNs = new long[other.offsets.length];
+                offsets = new int[other.offsets.length];
+            }
+            System.arraycopy(other.timestampsNs, 0, timestampsNs, 0, other.count);
+            System.arraycopy(other.offsets, 0, offsets, 0, other.count);
+            count = other.count;
+        }
+
+        /**
+         * Offset of the last entry at or before timestampNs, the first entry if none
+         */
+        int floorOffset(long timestampNs) {
+            int offset = count > 0 ? offsets[0] : SEGMENT_HEADER_SIZE;
+            for (int i = 0; i < count && timestampsNs[i] <= timestampNs; i++) {
+                offset = offsets[i];
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * Replace the index file of a segment; written to a temporary file and
+     * renamed so a reader never sees a partial index
+     */
+    static void writeIndex(File segmentFile, Index index) throws IOException {
+        File target = indexFile(segmentFile);
+        File temp = new File(target.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(index.count);
+            for (int i = 0; i < index.count; i++) {
+                out.writeLong(index.timestampsNs[i]);
+                out.writeInt(index.offsets[i]);
+            }
+        }
+        if (!temp.renameTo(target)) {
+            throw new IOException("Cannot rename " + temp + " to " + target);
+        }
+    }
+
+    /**
+     * Index of a segment, null if it has none or it is unreadable
+     */
+    static Index readIndex(File segmentFile) {
+        File file = indexFile(segmentFile);
+        if (!file.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != INDEX_MAGIC) return null;
+            int count = in.readInt();
+            Index index = new Index();
+            for (int i = 0; i < count; i++) {
+                index.add(in.readLong(), in.readInt());
+            }
+            return index;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
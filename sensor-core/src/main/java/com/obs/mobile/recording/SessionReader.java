@@ -0,0 +1,169 @@
+package com.obs.mobile.recording;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * SessionReader - Reads the records of a SessionRecorder session in order
+ *
+ * Segments are mapped read-only one at a time. A segment ends at the first
+ * zero length (the unwritten tail), or at a record whose length or CRC is
+ * invalid, which is counted as corrupt; reading then continues with the next
+ * segment. A session that is still being recorded can be read up to the
+ * records committed when each segment was mapped.
+ *
+ * Usage:
+ *      try (SessionReader reader = new SessionReader(directory)) {
+ *          SessionRecord record = new SessionRecord();
+ *          reader.seek(startNs);          // optional
+ *          while (reader.next(record)) { ... }
+ *      }
+ */
+public class SessionReader implements Closeable {
+
+    private final File[] segmentFiles;
+    private final CRC32 crc = new CRC32();
+
+    private int segmentIndex = -1;
+    private MappedByteBuffer buffer;
+    private int position;
+    private long corruptRecords = 0L;
+
+    public SessionReader(File directory) throws IOException {
+        if (!directory.isDirectory()) {
+            throw new IOException("Not a session directory: " + directory);
+        }
+        segmentFiles = SessionFormat.listSegments(directory);
+    }
+
+    public int getSegmentCount() {
+        return segmentFiles.length;
+    }
+
+    /**
+     * Records skipped because their length or checksum was invalid, and
+     * segments with a bad header
+     */
+    public long getCorruptRecords() {
+        return corruptRecords;
+    }
+
+    /**
+     * Read the next record into record
+     *
+     * @return false at the end of the session
+     */
+    public boolean next(SessionRecord record) throws IOException {
+        while (true) {
+            if (buffer == null && !openSegment(segmentIndex + 1)) {
+                return false;
+            }
+            int length = recordLength(position);
+            if (length < 0) {
+                buffer = null;
+                continue;
+            }
+            record.type = buffer.getShort(position + SessionFormat.CRC_START) & 0xFFFF;
+            record.timestampNs = buffer.getLong(position + SessionFormat.CRC_START + 2);
+            record.length = length - SessionFormat.RECORD_HEADER_SIZE;
+            buffer.position(position + SessionFormat.RECORD_HEADER_SIZE);
+            buffer.get(record.payload, 0, record.length);
+            position += length;
+            return true;
+        }
+    }
+
+    /**
+     * Position the reader so next() returns the first record at or after
+     * timestampNs. Uses the segment indexes to skip ahead, then scans; with
+     * sensors whose timestamps interleave slightly out of order the result is
+     * exact to within one index interval.
+     */
+    public void seek(long timestampNs) throws IOException {
+        int target = 0;
+        int offset = SessionFormat.SEGMENT_HEADER_SIZE;
+        for (int i = 0; i < segmentFiles.length; i++) {
+            SessionFormat.Index index = SessionFormat.readIndex(segmentFiles[i]);
+            if (index == null || index.count == 0) continue;
+            if (index.timestampsNs[0] > timestampNs) break;
+            target = i;
+            offset = index.floorOffset(timestampNs);
+        }
+
+        buffer = null;
+        if (!openSegment(target)) return;
+        position = offset;
+        while (true) {
+            int length = recordLength(position);
+            if (length < 0) {
+                if (!openSegment(segmentIndex + 1)) return;
+                continue;
+            }
+            if (buffer.getLong(position + SessionFormat.CRC_START + 2) >= timestampNs) return;
+            position += length;
+        }
+    }
+
+    @Override
+    public void close() {
+        buffer = null;
+        segmentIndex = segmentFiles.length;
+    }
+
+    /**
+     * Map a segment and position at its first record; false past the last one
+     */
+    private boolean openSegment(int index) throws IOException {
+        buffer = null;
+        while (index < segmentFiles.length) {
+            segmentIndex = index;
+            try (FileChannel channel = FileChannel.open(segmentFiles[index].toPath(), StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size >= SessionFormat.SEGMENT_HEADER_SIZE) {
+                    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                            Math.min(size, Integer.MAX_VALUE));
+                    if (mapped.getInt(0) == SessionFormat.SEGMENT_MAGIC) {
+                        buffer = mapped;
+                        position = SessionFormat.SEGMENT_HEADER_SIZE;
+                        return true;
+                    }
+                }
+            }
+            corruptRecords++;
+            index++;
+        }
+        segmentIndex = segmentFiles.length;
+        return false;
+    }
+
+    /**
+     * Length of the valid record at offset, -1 at the end of the segment's data
+     */
+    private int recordLength(int offset) {
+        int limit = buffer.limit();
+        if (offset + 4 > limit) return -1;
+        int length = buffer.getInt(offset);
+        if (length == 0) return -1;
+        if (length < SessionFormat.RECORD_HEADER_SIZE || length > SessionFormat.MAX_RECORD_SIZE
+                || length > limit - offset) {
+            corruptRecords++;
+            return -1;
+        }
+
+        buffer.limit(offset + length);
+        buffer.position(offset + SessionFormat.CRC_START);
+        crc.reset();
+        crc.update(buffer);
+        buffer.limit(limit);
+        if ((int) crc.getValue() != buffer.getInt(offset + SessionFormat.CRC_OFFSET)) {
+            corruptRecords++;
+            return -1;
+        }
+        return length;
+    }
+}
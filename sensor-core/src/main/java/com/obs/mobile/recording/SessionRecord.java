@@ -0,0 +1,61 @@
+package com.obs.mobile.recording;
+
+/**
+ * SessionRecord - One record read back from a session, reused between reads
+ *
+ * Sensor records hold the raw event values as floats, in the units of the
+ * Android sensor; the timestamp is the event time in elapsedRealtimeNanos.
+ */
+public class SessionRecord {
+
+    // Record types: payload layout
+    public static final int ACCELEROMETER = 1;   // x, y, z in m/s^2
+    public static final int GYROSCOPE = 2;       // x, y, z in rad/s
+    public static final int LIGHT = 3;           // lux
+    public static final int PROXIMITY = 4;       // distance in cm
+    public static final int MAGNETIC_FIELD = 5;  // x, y, z in uT
+
+    public int type;
+    public long timestampNs;
+    public int length;
+    public final byte[] payload = new byte[SessionFormat.MAX_PAYLOAD];
+
+    /**
+     * Number of float values in the payload
+     */
+    public int getFloatCount() {
+        return length / 4;
+    }
+
+    /**
+     * The index-th big-endian float of the payload
+     */
+    public float getFloat(int index) {
+        int i = index * 4;
+        int bits = (payload[i] & 0xFF) << 24
+                | (payload[i + 1] & 0xFF) << 16
+                | (payload[i + 2] & 0xFF) << 8
+                | (payload[i + 3] & 0xFF);
+        return Float.intBitsToFloat(bits);
+    }
+
+    public static String typeName(int type) {
+        switch (type) {
+            case ACCELEROMETER: return "accelerometer";
+            case GYROSCOPE: return "gyroscope";
+            case LIGHT: return "light";
+            case PROXIMITY: return "proximity";
+            case MAGNETIC_FIELD: return "magnetic_field";
+            default: return "type" + type;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(typeName(type)).append(" @").append(timestampNs);
+        for (int i = 0; i < getFloatCount(); i++) {
+            text.append(i == 0 ? " " : ", ").append(getFloat(i));
+        }
+        return text.toString();
+    }
+}
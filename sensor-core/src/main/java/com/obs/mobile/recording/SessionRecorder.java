@@ -0,0 +1,398 @@
+package com.obs.mobile.recording;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * SessionRecorder - Append-only, memory-mapped log of timestamped sensor records
+ *
+ * Records are copied straight into a MappedByteBuffer over the current
+ * segment file, so an append is a CRC and a memcpy under a short lock: no
+ * system call, no allocation and no blocking I/O on the sensor thread. When a
+ * segment is full the recorder switches to the next one, which the
+ * background thread has already created and mapped. The background thread
+ * also msyncs the current segment every sync interval, rewrites its time
+ * index and finishes segments that have been rolled over. Pages that have
+ * been written are owned by the kernel, so records survive a crash of the
+ * app even before the next sync; the sync bounds what a power loss can take.
+ *
+ * Segments keep their full mapped size (sparse, so unused space costs no
+ * disk) until close(), which truncates the last one to its data. See
+ * SessionFormat for the file layout and SessionReader to read a session back.
+ *
+ * Usage:
+ *      SessionRecorder recorder = new SessionRecorder(directory);
+ *      recorder.append(SessionRecord.GYROSCOPE, timestampNs, x, y, z);   // any thread
+ *      recorder.close();
+ */
+public class SessionRecorder implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+    public static final long DEFAULT_SYNC_INTERVAL_MS = 1000L;
+
+    private final File directory;
+    private final int segmentSize;
+    private final ScheduledExecutorService syncExecutor;
+    private final Runnable prepareTask = this::prepareNextSegment;
+
+    // Writer state, guarded by this
+    private final ByteBuffer scratch = ByteBuffer.allocate(SessionFormat.MAX_RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final ArrayDeque<Segment> rolledSegments = new ArrayDeque<>();
+    private Segment current;
+    private Segment prepared;
+    private int nextNumber;
+    private boolean closed = false;
+    private boolean writeFailed = false;
+
+    // Background thread state
+    private final SessionFormat.Index indexSnapshot = new SessionFormat.Index();
+
+    // Counters, guarded by this
+    private long records = 0L;
+    private long bytesWritten = 0L;
+    private long dropped = 0L;
+    private long synchronousRolls = 0L;
+    private int segments = 0;
+    private volatile long syncs = 0L;
+    private volatile String lastError;
+
+    /**
+     * One mapped segment file
+     */
+    private static final class Segment {
+        final int number;
+        final File file;
+        final RandomAccessFile raf;
+        final MappedByteBuffer buffer;
+        final SessionFormat.Index index = new SessionFormat.Index();
+        int end = SessionFormat.SEGMENT_HEADER_SIZE;
+        long lastIndexNs;
+        int indexedCount = -1;
+
+        Segment(int number, File file, RandomAccessFile raf, MappedByteBuffer buffer) {
+            this.number = number;
+            this.file = file;
+            this.raf = raf;
+            this.buffer = buffer;
+        }
+    }
+
+    public SessionRecorder(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_SYNC_INTERVAL_MS);
+    }
+
+    /**
+     * Opens the first segment; numbering continues after any segments
+     * already in the directory
+     */
+    public SessionRecorder(File directory, int segmentSize, long syncIntervalMs) throws IOException {
+        if (segmentSize < SessionFormat.SEGMENT_HEADER_SIZE + SessionFormat.MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("segmentSize must hold at least one full record");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        File[] existing = SessionFormat.listSegments(directory);
+        nextNumber = existing.length == 0 ? 0 : SessionFormat.segmentNumber(existing[existing.length - 1]) + 1;
+        current = openSegment(nextNumber++);
+        segments = 1;
+
+        syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SessionRecorder-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncExecutor.execute(prepareTask);
+        syncExecutor.scheduleWithFixedDelay(this::sync, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // ==================== Append ====================
+
+    /**
+     * Append a record with one float value
+     *
+     * @return false if the record was dropped (recorder closed or I/O failure)
+     */
+    public synchronized boolean append(int type, long timestampNs, float value) {
+        beginRecord(type, timestampNs).putFloat(value);
+        return commitRecord(timestampNs);
+    }
+
+    public synchronized boolean append(int type, long timestampNs, float x, float y) {
+        beginRecord(type, timestampNs).putFloat(x).putFloat(y);
+        return commitRecord(timestampNs);
+    }
+
+    public synchronized boolean append(int type, long timestampNs, float x, float y, float z) {
+        beginRecord(type, timestampNs).putFloat(x).putFloat(y).putFloat(z);
+        return commitRecord(timestampNs);
+    }
+
+    /**
+     * Append a record with an opaque payload of up to 65535 bytes
+     */
+    public synchronized boolean append(int type, long timestampNs, byte[] payload, int offset, int length) {
+        if (length > SessionFormat.MAX_PAYLOAD) {
+            throw new IllegalArgumentException("payload larger than " + SessionFormat.MAX_PAYLOAD + " bytes");
+        }
+        beginRecord(type, timestampNs).put(payload, offset, length);
+        return commitRecord(timestampNs);
+    }
+
+    private ByteBuffer beginRecord(int type, long timestampNs) {
+        scratch.clear();
+        scratch.position(SessionFormat.CRC_START);
+        scratch.putShort((short) type);
+        scratch.putLong(timestampNs);
+        return scratch;
+    }
+
+    private boolean commitRecord(long timestampNs) {
+        int size = scratch.position();
+        crc.reset();
+        crc.update(scratch.array(), SessionFormat.CRC_START, size - SessionFormat.CRC_START);
+        scratch.putInt(SessionFormat.CRC_OFFSET, (int) crc.getValue());
+
+        if (closed || (current.end + size > segmentSize && !roll())) {
+            dropped++;
+            return false;
+        }
+
+        Segment segment = current;
+        int position = segment.end;
+        if (segment.index.count == 0 || timestampNs - segment.lastIndexNs >= SessionFormat.INDEX_INTERVAL_NS) {
+            segment.index.add(timestampNs, position);
+            segment.lastIndexNs = timestampNs;
+        }
+
+        // Body first, then the length that makes the record visible
+        segment.buffer.position(position + SessionFormat.CRC_OFFSET);
+        segment.buffer.put(scratch.array(), SessionFormat.CRC_OFFSET, size - SessionFormat.CRC_OFFSET);
+        segment.buffer.putInt(position, size);
+        segment.end = position + size;
+
+        records++;
+        bytesWritten += size;
+        return true;
+    }
+
+    /**
+     * Switch to the next segment, normally the one prepared in the background
+     */
+    private boolean roll() {
+        Segment next = prepared;
+        prepared = null;
+        if (next == null) {
+            if (writeFailed) return false;
+            try {
+                next = openSegment(nextNumber++);
+                synchronousRolls++;
+            } catch (IOException e) {
+                writeFailed = true;
+                lastError = e.getClass().getSimpleName() + ": " + e.getMessage();
+                return false;
+            }
+        }
+        rolledSegments.add(current);
+        current = next;
+        segments++;
+        syncExecutor.execute(prepareTask);
+        return true;
+    }
+
+    // ==================== Background ====================
+
+    private void prepareNextSegment() {
+        int number;
+        synchronized (this) {
+            if (closed || prepared != null) return;
+            number = nextNumber++;
+        }
+        Segment segment;
+        try {
+            segment = openSegment(number);
+        } catch (IOException e) {
+            lastError = e.getClass().getSimpleName() + ": " + e.getMessage();
+            return;
+        }
+        synchronized (this) {
+            // The writer may have rolled synchronously past this number meanwhile
+            if (!closed && prepared == null && segment.number > current.number) {
+                prepared = segment;
+                writeFailed = false;
+                return;
+            }
+        }
+        discardSegment(segment);
+    }
+
+    private void sync() {
+        Segment segment;
+        boolean indexChanged;
+        while (true) {
+            Segment rolled;
+            synchronized (this) {
+                rolled = rolledSegments.poll();
+            }
+            if (rolled == null) break;
+            finishSegment(rolled, false);
+        }
+        synchronized (this) {
+            if (closed) return;
+            segment = current;
+            indexChanged = segment.indexedCount != segment.index.count;
+            if (indexChanged) {
+                indexSnapshot.copyFrom(segment.index);
+                segment.indexedCount = segment.index.count;
+            }
+        }
+        try {
+            segment.buffer.force();
+            if (indexChanged) {
+                SessionFormat.writeIndex(segment.file, indexSnapshot);
+            }
+            syncs++;
+        } catch (IOException | RuntimeException e) {
+            lastError = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+        prepareNextSegment();
+    }
+
+    /**
+     * Flush a segment the writer no longer touches, write its final index and
+     * close its file
+     */
+    private void finishSegment(Segment segment, boolean truncate) {
+        try {
+            segment.buffer.force();
+            SessionFormat.writeIndex(segment.file, segment.index);
+            if (truncate) {
+                segment.raf.setLength(segment.end);
+            }
+            segment.raf.close();
+            syncs++;
+        } catch (IOException | RuntimeException e) {
+            lastError = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    // ==================== Lifecycle ====================
+
+    /**
+     * Stop recording, flush everything and truncate the last segment. Records
+     * appended afterwards are dropped. Blocks for the final msync, so call it
+     * off the main thread.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        syncExecutor.shutdown();
+        try {
+            syncExecutor.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            Segment rolled;
+            while ((rolled = rolledSegments.poll()) != null) {
+                finishSegment(rolled, false);
+            }
+            finishSegment(current, true);
+            if (prepared != null) {
+                discardSegment(prepared);
+                prepared = null;
+            }
+        }
+    }
+
+    private Segment openSegment(int number) throws IOException {
+        File file = SessionFormat.segmentFile(directory, number);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            buffer.putInt(SessionFormat.SEGMENT_MAGIC);
+            buffer.putShort(SessionFormat.VERSION);
+            buffer.putShort((short) 0);
+            buffer.putLong(System.currentTimeMillis());
+            return new Segment(number, file, raf, buffer);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            file.delete();
+            throw e;
+        }
+    }
+
+    private static void discardSegment(Segment segment) {
+        try {
+            segment.raf.close();
+        } catch (IOException ignored) {
+        }
+        segment.file.delete();
+    }
+
+    // ==================== Status ====================
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Records refused because the recorder was closed or no segment could be opened
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Rolls that had to create the next segment on the appending thread
+     */
+    public synchronized long getSynchronousRolls() {
+        return synchronousRolls;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments;
+    }
+
+    public long getSyncCount() {
+        return syncs;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%s: %d records, %.1f MB in %d segments, %d dropped%s",
+                directory.getName(), records, bytesWritten / 1e6, segments, dropped,
+                lastError != null ? ", last error " + lastError : "");
+    }
+}
@@ -0,0 +1,178 @@
+package com.obs.mobile.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SessionReplayer - Plays a recorded session back into a listener
+ *
+ * Records are delivered on the calling thread, in the order they were
+ * recorded and with their original timestamps, so a replay feeds the same
+ * input to the processing code every time. The speed only decides how
+ * records are spaced in wall-clock time: REAL_TIME keeps the recorded
+ * spacing, 10.0 plays ten times faster and AS_FAST_AS_POSSIBLE does not wait
+ * at all. Anything timed by the record timestamps therefore behaves the same
+ * at any speed.
+ *
+ * Usage:
+ *      SessionReplayer replayer = new SessionReplayer(directory);
+ *      replayer.setSpeed(SessionReplayer.AS_FAST_AS_POSSIBLE);
+ *      replayer.replay(record -> ...);      // blocks until the end or stop()
+ *
+ * From the command line, replays a session as fast as possible (or at the
+ * given speed) and prints the record counts and throughput:
+ *      java com.obs.mobile.recording.SessionReplayer <session dir> [speed]
+ */
+public class SessionReplayer {
+
+    public static final double REAL_TIME = 1.0;
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    public interface Listener {
+        void onRecord(SessionRecord record);
+    }
+
+    private final File directory;
+    private double speed = REAL_TIME;
+    private long startNs = Long.MIN_VALUE;
+    private long endNs = Long.MAX_VALUE;
+    private volatile boolean stopped = false;
+
+    // Results of the last replay
+    private long records = 0L;
+    private long elapsedNs = 0L;
+    private long maxLagNs = 0L;
+
+    public SessionReplayer(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Playback speed relative to the recording: REAL_TIME, N for N times
+     * faster, or AS_FAST_AS_POSSIBLE
+     */
+    public void setSpeed(double speed) {
+        if (!(speed > 0.0)) {
+            throw new IllegalArgumentException("speed must be > 0");
+        }
+        this.speed = speed;
+    }
+
+    /**
+     * Only replay records with startNs <= timestamp < endNs
+     */
+    public void setRange(long startNs, long endNs) {
+        this.startNs = startNs;
+        this.endNs = endNs;
+    }
+
+    /**
+     * Replay the session into listener; blocks until the end of the session,
+     * the end of the range, stop() or an interrupt
+     *
+     * @return number of records delivered
+     */
+    public long replay(Listener listener) throws IOException {
+        stopped = false;
+        records = 0L;
+        maxLagNs = 0L;
+        boolean paced = speed != AS_FAST_AS_POSSIBLE;
+
+        SessionRecord record = new SessionRecord();
+        long startWallNs = System.nanoTime();
+        long firstTimestampNs = 0L;
+        try (SessionReader reader = new SessionReader(directory)) {
+            if (startNs != Long.MIN_VALUE) {
+                reader.seek(startNs);
+            }
+            while (!stopped && reader.next(record)) {
+                if (record.timestampNs < startNs) continue;
+                if (record.timestampNs >= endNs) break;
+
+                if (paced) {
+                    if (records == 0L) {
+                        firstTimestampNs = record.timestampNs;
+                        startWallNs = System.nanoTime();
+                    }
+                    long dueNs = startWallNs + (long) ((record.timestampNs - firstTimestampNs) / speed);
+                    if (!waitUntil(dueNs)) break;
+                    maxLagNs = Math.max(maxLagNs, System.nanoTime() - dueNs);
+                }
+
+                listener.onRecord(record);
+                records++;
+            }
+        } finally {
+            elapsedNs = System.nanoTime() - startWallNs;
+        }
+        return records;
+    }
+
+    /**
+     * End a running replay after the record being delivered; safe to call
+     * from any thread, including from the listener
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    private boolean waitUntil(long dueNs) {
+        long remainingNs;
+        while ((remainingNs = dueNs - System.nanoTime()) > 0L) {
+            LockSupport.parkNanos(remainingNs);
+            if (Thread.currentThread().isInterrupted() || stopped) return false;
+        }
+        return true;
+    }
+
+    // ==================== Results ====================
+
+    public long getRecordCount() {
+        return records;
+    }
+
+    public long getElapsedNs() {
+        return elapsedNs;
+    }
+
+    /**
+     * Largest delay of a record behind its paced delivery time, 0 when not paced
+     */
+    public long getMaxLagNs() {
+        return maxLagNs;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: SessionReplayer <session dir> [speed]");
+            System.exit(2);
+        }
+        SessionReplayer replayer = new SessionReplayer(new File(args[0]));
+        if (args.length > 1) {
+            replayer.setSpeed(Double.parseDouble(args[1]));
+        } else {
+            replayer.setSpeed(AS_FAST_AS_POSSIBLE);
+        }
+
+        long[] counts = new long[16];
+        long[] span = {Long.MAX_VALUE, Long.MIN_VALUE};
+        replayer.replay(record -> {
+            counts[Math.min(record.type, counts.length - 1)]++;
+            span[0] = Math.min(span[0], record.timestampNs);
+            span[1] = Math.max(span[1], record.timestampNs);
+        });
+
+        long total = replayer.getRecordCount();
+        for (int type = 0; type < counts.length; type++) {
+            if (counts[type] > 0) {
+                System.out.println(String.format(Locale.US, "%-16s %10d", SessionRecord.typeName(type), counts[type]));
+            }
+        }
+        double seconds = replayer.getElapsedNs() / 1e9;
+        System.out.println(String.format(Locale.US, "%d records, %.1f s recorded, replayed in %.3f s (%.0f records/s, max lag %.2f ms)",
+                total, total > 0 ? (span[1] - span[0]) / 1e9 : 0.0, seconds,
+                seconds > 0 ? total / seconds : 0.0, replayer.getMaxLagNs() / 1e6));
+    }
+}
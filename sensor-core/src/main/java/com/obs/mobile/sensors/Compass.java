@@ -0,0 +1,114 @@
+package com.obs.mobile.sensors;
+
+/**
+ * Compass - Heading from the latest gravity and magnetic field samples
+ *
+ * Keeps the last accelerometer (gravity) and magnetometer sample; once both
+ * have arrived, every new sample gives a fresh azimuth and compass direction.
+ *
+ * Usage:
+ *      Compass compass = new Compass();
+ *      compass.onGravity(ax, ay, az);
+ *      if (compass.onMagneticField(mx, my, mz)) {
+ *          ... compass.getAzimuth(), compass.getDirection() ...
+ *      }
+ */
+public class Compass {
+
+    private final float[] gravity = new float[3];
+    private final float[] geomagnetic = new float[3];
+    private boolean hasGravity = false;
+    private boolean hasGeomagnetic = false;
+
+    private float azimuth = Float.NaN;
+    private CompassDirection direction = null;
+
+    /**
+     * Accelerometer sample in m/s^2
+     *
+     * @return true if a new heading was computed
+     */
+    public boolean onGravity(float x, float y, float z) {
+        gravity[0] = x;
+        gravity[1] = y;
+        gravity[2] = z;
+        hasGravity = true;
+        return update();
+    }
+
+    /**
+     * Magnetic field sample in uT
+     *
+     * @return true if a new heading was computed
+     */
+    public boolean onMagneticField(float x, float y, float z) {
+        geomagnetic[0] = x;
+        geomagnetic[1] = y;
+        geomagnetic[2] = z;
+        hasGeomagnetic = true;
+        return update();
+    }
+
+    /**
+     * Forget both samples, e.g. when the sensors stop
+     */
+    public void reset() {
+        hasGravity = false;
+        hasGeomagnetic = false;
+    }
+
+    /**
+     * Last heading in degrees, 0-360 clockwise from magnetic north; NaN until known
+     */
+    public float getAzimuth() {
+        return azimuth;
+    }
+
+    /**
+     * Compass point of the last heading, null until known
+     */
+    public CompassDirection getDirection() {
+        return direction;
+    }
+
+    private boolean update() {
+        if (!hasGravity || !hasGeomagnetic) return false;
+
+        float azimuthRad = azimuth(gravity, geomagnetic);
+        if (Float.isNaN(azimuthRad)) return false;
+
+        azimuth = ((float) Math.toDegrees(azimuthRad) + 360) % 360;
+        direction = CompassDirection.fromAzimuth(azimuth);
+        return true;
+    }
+
+    /**
+     * Azimuth in radians as SensorManager.getRotationMatrix() followed by
+     * getOrientation() computes it: east = magnetic field x gravity, north =
+     * gravity x east, azimuth = atan2(east.y, north.y). NaN in free fall or
+     * when the field is parallel to gravity.
+     */
+    public static float azimuth(float[] gravity, float[] geomagnetic) {
+        float ax = gravity[0], ay = gravity[1], az = gravity[2];
+        float normSqA = ax * ax + ay * ay + az * az;
+        float g = 9.81f;
+        if (normSqA < 0.01f * g * g) return Float.NaN;
+
+        float ex = geomagnetic[0], ey = geomagnetic[1], ez = geomagnetic[2];
+        float hx = ey * az - ez * ay;
+        float hy = ez * ax - ex * az;
+        float hz = ex * ay - ey * ax;
+        float normH = (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+        if (normH < 0.1f) return Float.NaN;
+
+        float invH = 1.0f / normH;
+        hx *= invH;
+        hy *= invH;
+        hz *= invH;
+        float invA = 1.0f / (float) Math.sqrt(normSqA);
+        ax *= invA;
+        az *= invA;
+        float my = az * hx - ax * hz;
+        return (float) Math.atan2(hy, my);
+    }
+}
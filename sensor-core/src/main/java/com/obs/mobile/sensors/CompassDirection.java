@@ -0,0 +1,54 @@
+package com.obs.mobile.sensors;
+
+/**
+ * CompassDirection - The eight compass points
+ */
+public enum CompassDirection {
+    NORTH("North", 0, "N"),
+    NORTH_EAST("North-East", 45, "NE"),
+    EAST("East", 90, "E"),
+    SOUTH_EAST("South-East", 135, "SE"),
+    SOUTH("South", 180, "S"),
+    SOUTH_WEST("South-West", 225, "SW"),
+    WEST("West", 270, "W"),
+    NORTH_WEST("North-West", 315, "NW");
+
+    private final String name;
+    private final int degrees;
+    private final String abbreviation;
+
+    CompassDirection(String name, int degrees, String abbreviation) {
+        this.name = name;
+        this.degrees = degrees;
+        this.abbreviation = abbreviation;
+    }
+
+    public String getName() { return name; }
+    public int getDegrees() { return degrees; }
+    public String getAbbreviation() { return abbreviation; }
+
+    /**
+     * Nearest compass point of an azimuth in degrees, 0-360
+     */
+    public static CompassDirection fromAzimuth(float azimuth) {
+        int rounded = Math.round(azimuth);
+
+        if ((rounded >= 0 && rounded < 22) || (rounded >= 338 && rounded <= 360)) {
+            return NORTH;
+        } else if (rounded >= 22 && rounded < 67) {
+            return NORTH_EAST;
+        } else if (rounded >= 67 && rounded < 112) {
+            return EAST;
+        } else if (rounded >= 112 && rounded < 157) {
+            return SOUTH_EAST;
+        } else if (rounded >= 157 && rounded < 202) {
+            return SOUTH;
+        } else if (rounded >= 202 && rounded < 247) {
+            return SOUTH_WEST;
+        } else if (rounded >= 247 && rounded < 292) {
+            return WEST;
+        } else {
+            return NORTH_WEST;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.obs.mobile.sensors;
+
+/**
+ * FrameImuState - Gyroscope and accelerometer state at one camera frame
+ *
+ * All timestamps are elapsedRealtimeNanos, the clock SensorTimeAligner maps
+ * both camera and sensor timestamps onto. Gyro values are rad/s, accel values
+ * m/s^2, both in device coordinates.
+ */
+public class FrameImuState {
+
+    public long frameNumber;
+
+    // SENSOR_TIMESTAMP in the camera's own time base, matches SurfaceTexture.getTimestamp()
+    public long sensorTimestampNs;
+
+    // Start of exposure of the first row, as reported by the camera, and the
+    // middle of the exposure window the IMU state was interpolated at
+    public long frameTimestampNs;
+    public long exposureMidTimestampNs;
+    public long exposureTimeNs;
+    public long rollingShutterSkewNs;
+
+    public final float[] gyro = new float[3];
+    public final float[] accel = new float[3];
+    public boolean hasGyro;
+    public boolean hasAccel;
+
+    public void copyFrom(FrameImuState other) {
+        frameNumber = other.frameNumber;
+        sensorTimestampNs = other.sensorTimestampNs;
+        frameTimestampNs = other.frameTimestampNs;
+        exposureMidTimestampNs = other.exposureMidTimestampNs;
+        exposureTimeNs = other.exposureTimeNs;
+        rollingShutterSkewNs = other.rollingShutterSkewNs;
+        System.arraycopy(other.gyro, 0, gyro, 0, 3);
+        System.arraycopy(other.accel, 0, accel, 0, 3);
+        hasGyro = other.hasGyro;
+        hasAccel = other.hasAccel;
+    }
+}
@@ -0,0 +1,293 @@
+package com.obs.mobile.sensors;
+
+/**
+ * GyroStabilizer - Per-frame stabilisation crop from gyroscope history
+ *
+ * For every frame the gyroscope rate is integrated from the previous frame's
+ * exposure midpoint to this one's, giving the camera path as three small
+ * angles (pitch, yaw, roll around the device axes). The path is smoothed with
+ * a first-order low-pass filter; the difference between the smoothed and the
+ * real path is the correction. It is applied as a zoomed-in crop that is
+ * shifted (pitch/yaw) and rotated (roll), never leaving the crop margin.
+ *
+ * The result is a 4x4 column-major texture matrix, applied before the
+ * SurfaceTexture transform in the encoder pass, so no pixels are touched on
+ * the CPU.
+ *
+ * Not thread safe, use from the render thread only.
+ *
+ * Usage:
+ *      stabilizer.setCameraGeometry(sensorOrientation, mirrored, focalX, focalY);
+ *      stabilizer.update(exposureMidTimestampNs, texMatrix);
+ */
+public class GyroStabilizer {
+
+    // Gyro history copied per frame, enough for ~100 ms at 500 Hz
+    private static final int MAX_SAMPLES = 64;
+
+    // Longer gaps (camera switch, app paused) restart the path
+    private static final long MAX_FRAME_GAP_NS = 500_000_000L;
+
+    private final ImuRingBuffer gyroHistory;
+    private final float cropMargin;
+    private final float smoothing;
+
+    private final long[] sampleTimestamps = new long[MAX_SAMPLES];
+    private final float[] sampleValues = new float[MAX_SAMPLES * 3];
+
+    // Camera path and smoothed path, radians around device X, Y, Z
+    private final float[] path = new float[3];
+    private final float[] smoothedPath = new float[3];
+    private final float[] correction = new float[3];
+    private long lastTimestampNs = Long.MIN_VALUE;
+
+    // Geometry of the frame buffer
+    private int sensorOrientation = 90;
+    private boolean mirrored = false;
+    private float focalX = 0.8f;   // Focal length / buffer width
+    private float focalY = 1.4f;   // Focal length / buffer height
+    private float aspect = 16f / 9f;
+
+    // Largest pitch/yaw correction the crop margin can absorb
+    private float maxPitch;
+    private float maxYaw;
+
+    /**
+     * @param cropMargin fraction of the frame kept as margin on each side (0.1 = 10%)
+     * @param smoothing  low-pass factor per frame, 0 = no smoothing, 0.95 = very smooth
+     */
+    public GyroStabilizer(ImuRingBuffer gyroHistory, float cropMargin, float smoothing) {
+        this.gyroHistory = gyroHistory;
+        this.cropMargin = Math.max(0f, Math.min(0.25f, cropMargin));
+        this.smoothing = Math.max(0f, Math.min(0.99f, smoothing));
+        updateLimits();
+    }
+
+    /**
+     * @param sensorOrientation camera SENSOR_ORIENTATION in degrees
+     * @param mirrored          front camera
+     * @param focalX            focal length divided by sensor width (buffer x)
+     * @param focalY            focal length divided by sensor height (buffer y)
+     */
+    public void setCameraGeometry(int sensorOrientation, boolean mirrored, float focalX, float focalY) {
+        this.sensorOrientation = sensorOrientation;
+        this.mirrored = mirrored;
+        if (focalX > 0f && focalY > 0f) {
+            this.focalX = focalX;
+            this.focalY = focalY;
+            this.aspect = focalY / focalX;
+        }
+        updateLimits();
+        reset();
+    }
+
+    /**
+     * Pitch and yaw end up on whichever buffer axes the sensor orientation
+     * maps them to (at 90 degrees yaw shifts along buffer y), so each is
+     * limited by the focal length of those axes
+     */
+    private void updateLimits() {
+        double theta = Math.toRadians(sensorOrientation);
+        float cos = Math.abs((float) Math.cos(theta));
+        float sin = Math.abs((float) Math.sin(theta));
+        maxPitch = cropMargin / Math.max(focalX * sin, focalY * cos);
+        maxYaw = cropMargin / Math.max(focalX * cos, focalY * sin);
+    }
+
+    public void reset() {
+        lastTimestampNs = Long.MIN_VALUE;
+        for (int i = 0; i < 3; i++) {
+            path[i] = 0f;
+            smoothedPath[i] = 0f;
+            correction[i] = 0f;
+        }
+    }
+
+    /**
+     * Current correction angles (pitch, yaw, roll) in radians, for debugging/metadata
+     */
+    public float[] getCorrection() {
+        return correction;
+    }
+
+    /**
+     * Advance to a frame and compute its stabilising texture transform
+     *
+     * @param exposureMidTimestampNs middle of the frame's exposure, elapsedRealtimeNanos
+     * @param outMatrix              receives a 4x4 column-major texture matrix
+     */
+    public void update(long exposureMidTimestampNs, float[] outMatrix) {
+        if (lastTimestampNs == Long.MIN_VALUE
+                || exposureMidTimestampNs <= lastTimestampNs
+                || exposureMidTimestampNs - lastTimestampNs > MAX_FRAME_GAP_NS) {
+            reset();
+            lastTimestampNs = exposureMidTimestampNs;
+            buildMatrix(outMatrix);
+            return;
+        }
+
+        integrate(lastTimestampNs, exposureMidTimestampNs);
+        lastTimestampNs = exposureMidTimestampNs;
+
+        float maxRoll = cropMargin;
+
+        for (int i = 0; i < 3; i++) {
+            smoothedPath[i] = smoothing * smoothedPath[i] + (1f - smoothing) * path[i];
+        }
+        correction[0] = clampAndFollow(0, maxPitch);
+        correction[1] = clampAndFollow(1, maxYaw);
+        correction[2] = clampAndFollow(2, maxRoll);
+
+        buildMatrix(outMatrix);
+    }
+
+    /**
+     * Trapezoidal integration of the gyro rate over [fromNs, toNs]
+     */
+    private void integrate(long fromNs, long toNs) {
+        int count = gyroHistory.copyRange(fromNs, toNs, sampleTimestamps, sampleValues);
+        if (count == 0) return;
+        if (count == 1) {
+            float dt = (toNs - fromNs) * 1e-9f;
+            for (int axis = 0; axis < 3; axis++) {
+                path[axis] += sampleValues[axis] * dt;
+            }
+            return;
+        }
+
+        for (int i = 0; i + 1 < count; i++) {
+            long t0 = sampleTimestamps[i];
+            long t1 = sampleTimestamps[i + 1];
+            long start = Math.max(t0, fromNs);
+            long end = Math.min(t1, toNs);
+            if (end <= start) continue;
+
+            // Rates at the clipped segment ends
+            float span = (float) (t1 - t0);
+            float a = (start - t0) / span;
+            float b = (end - t0) / span;
+            float dt = (end - start) * 1e-9f;
+            for (int axis = 0; axis < 3; axis++) {
+                float v0 = sampleValues[i * 3 + axis];
+                float v1 = sampleValues[(i + 1) * 3 + axis];
+                float rateStart = v0 + (v1 - v0) * a;
+                float rateEnd = v0 + (v1 - v0) * b;
+                path[axis] += 0.5f * (rateStart + rateEnd) * dt;
+            }
+        }
+
+        // Past the newest sample: hold the last rate
+        long newest = sampleTimestamps[count - 1];
+        if (newest < toNs) {
+            float dt = (toNs - Math.max(newest, fromNs)) * 1e-9f;
+            for (int axis = 0; axis < 3; axis++) {
+                path[axis] += sampleValues[(count - 1) * 3 + axis] * dt;
+            }
+        }
+    }
+
+    /**
+     * Correction for one axis; when it would exceed the margin the smoothed
+     * path is pulled towards the real one
+     */
+    private float clampAndFollow(int axis, float max) {
+        float value = smoothedPath[axis] - path[axis];
+        if (value > max) {
+            value = max;
+            smoothedPath[axis] = path[axis] + max;
+        } else if (value < -max) {
+            value = -max;
+            smoothedPath[axis] = path[axis] - max;
+        }
+        return value;
+    }
+
+    /**
+     * Texture matrix: zoom into the margin, rotate by the roll correction
+     * and shift by the pitch/yaw correction, all around the frame centre
+     */
+    private void buildMatrix(float[] out) {
+        // Device-axis corrections to a shift in upright (natural portrait) image space:
+        // rotating around device Y moves the image horizontally, around X vertically
+        float shiftUpX = correction[1];
+        float shiftUpY = -correction[0];
+        float roll = correction[2];
+        if (mirrored) {
+            shiftUpX = -shiftUpX;
+            roll = -roll;
+        }
+
+        // Upright image space to buffer space, which is rotated by the sensor orientation
+        double theta = Math.toRadians(sensorOrientation);
+        float cos = (float) Math.cos(theta);
+        float sin = (float) Math.sin(theta);
+        float angleX = shiftUpX * cos + shiftUpY * sin;
+        float angleY = -shiftUpX * sin + shiftUpY * cos;
+
+        // Angles to normalised texture offsets
+        float dx = angleX * focalX;
+        float dy = angleY * focalY;
+        float zoom = 1f - 2f * cropMargin;
+
+        // out = T(c + d) * S(1/aspect, 1) * R(roll) * S(aspect, 1) * S(zoom) * T(-c)
+        setIdentity(out);
+        translate(out, -0.5f, -0.5f);
+        scale(out, zoom * aspect, zoom);
+        rotate(out, roll);
+        scale(out, 1f / aspect, 1f);
+        translate(out, 0.5f + dx, 0.5f + dy);
+    }
+
+    // ============================================================
+    // 4x4 column-major helpers, each left-multiplies m
+    // ============================================================
+
+    private static void setIdentity(float[] m) {
+        for (int i = 0; i < 16; i++) m[i] = 0f;
+        m[0] = 1f;
+        m[5] = 1f;
+        m[10] = 1f;
+        m[15] = 1f;
+    }
+
+    private static void translate(float[] m, float x, float y) {
+        for (int col = 0; col < 4; col++) {
+            float w = m[col * 4 + 3];
+            m[col * 4] += x * w;
+            m[col * 4 + 1] += y * w;
+        }
+    }
+
+    private static void scale(float[] m, float sx, float sy) {
+        for (int col = 0; col < 4; col++) {
+            m[col * 4] *= sx;
+            m[col * 4 + 1] *= sy;
+        }
+    }
+
+    private static void rotate(float[] m, float angle) {
+        float c = (float) Math.cos(angle);
+        float s = (float) Math.sin(angle);
+        for (int col = 0; col < 4; col++) {
+            float x = m[col * 4];
+            float y = m[col * 4 + 1];
+            m[col * 4] = c * x - s * y;
+            m[col * 4 + 1] = s * x + c * y;
+        }
+    }
+
+    /**
+     * out = a * b, 4x4 column-major; out may not alias a or b
+     */
+    public static void multiply(float[] out, float[] a, float[] b) {
+        for (int col = 0; col < 4; col++) {
+            for (int row = 0; row < 4; row++) {
+                float sum = 0f;
+                for (int k = 0; k < 4; k++) {
+                    sum += a[k * 4 + row] * b[col * 4 + k];
+                }
+                out[col * 4 + row] = sum;
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.obs.mobile.sensors;
+
+/**
+ * ImuRingBuffer - Fixed-size history of timestamped 3-axis sensor samples
+ *
+ * Keeps the last N gyroscope or accelerometer samples so camera frames, which
+ * arrive later than the sensor events they overlap with, can look up the
+ * sensor state at their own timestamp. Samples are stored in parallel
+ * primitive arrays, adding a sample never allocates.
+ *
+ * Timestamps must be on one monotonic clock and added in increasing order;
+ * out-of-order samples are dropped.
+ *
+ * Thread safety: written from the sensor thread and read from the camera
+ * thread, every method is synchronized.
+ */
+public class ImuRingBuffer {
+
+    private final long[] timestamps;
+    private final float[] values;
+    private final int capacity;
+
+    private int head = 0;   // Next write position
+    private int size = 0;
+
+    public ImuRingBuffer(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2");
+        }
+        this.capacity = capacity;
+        this.timestamps = new long[capacity];
+        this.values = new float[capacity * 3];
+    }
+
+    /**
+     * Add a sample, overwriting the oldest one when full
+     *
+     * @return false if the sample is older than the newest one and was dropped
+     */
+    public synchronized boolean add(long timestampNs, float x, float y, float z) {
+        if (size > 0 && timestampNs <= timestamps[index(size - 1)]) {
+            return false;
+        }
+        timestamps[head] = timestampNs;
+        values[head * 3] = x;
+        values[head * 3 + 1] = y;
+        values[head * 3 + 2] = z;
+
+        head = (head + 1) % capacity;
+        if (size < capacity) size++;
+        return true;
+    }
+
+    /**
+     * Linearly interpolated value at a timestamp
+     *
+     * Outside the stored range the nearest sample is used if it is no more than
+     * maxExtrapolationNs away.
+     *
+     * @param out receives x, y, z
+     * @return distance in ns to the nearest real sample (0 when bracketed), or
+     *         -1 if there is no usable sample
+     */
+    public synchronized long interpolate(long timestampNs, long maxExtrapolationNs, float[] out) {
+        if (size == 0) return -1;
+
+        long oldest = timestamps[index(0)];
+        long newest = timestamps[index(size - 1)];
+
+        if (timestampNs <= oldest) {
+            long distance = oldest - timestampNs;
+            if (distance > maxExtrapolationNs) return -1;
+            copy(index(0), out);
+            return distance;
+        }
+        if (timestampNs >= newest) {
+            long distance = timestampNs - newest;
+            if (distance > maxExtrapolationNs) return -1;
+            copy(index(size - 1), out);
+            return distance;
+        }
+
+        // First sample after the timestamp, size >= 2 here
+        int after = upperBound(timestampNs);
+        int a = index(after - 1);
+        int b = index(after);
+        float t = (float) (timestampNs - timestamps[a]) / (timestamps[b] - timestamps[a]);
+        out[0] = values[a * 3] + (values[b * 3] - values[a * 3]) * t;
+        out[1] = values[a * 3 + 1] + (values[b * 3 + 1] - values[a * 3 + 1]) * t;
+        out[2] = values[a * 3 + 2] + (values[b * 3 + 2] - values[a * 3 + 2]) * t;
+        return 0;
+    }
+
+    /**
+     * Copy all samples in [fromNs, toNs] plus one on either side, oldest first
+     *
+     * @param outTimestamps receives timestamps
+     * @param outValues     receives x, y, z per sample
+     * @return number of samples copied, limited by the output arrays
+     */
+    public synchronized int copyRange(long fromNs, long toNs, long[] outTimestamps, float[] outValues) {
+        if (size == 0) return 0;
+
+        int start = Math.max(0, upperBound(fromNs) - 1);
+        int count = 0;
+        int max = Math.min(outTimestamps.length, outValues.length / 3);
+        for (int i = start; i < size && count < max; i++) {
+            int idx = index(i);
+            outTimestamps[count] = timestamps[idx];
+            outValues[count * 3] = values[idx * 3];
+            outValues[count * 3 + 1] = values[idx * 3 + 1];
+            outValues[count * 3 + 2] = values[idx * 3 + 2];
+            count++;
+            if (timestamps[idx] > toNs) break;
+        }
+        return count;
+    }
+
+    /**
+     * Copy the newest count samples (fewer if not held), oldest first
+     *
+     * @param outTimestamps receives timestamps
+     * @param outValues     receives x, y, z per sample
+     * @return number of samples copied, limited by the output arrays
+     */
+    public synchronized int copyNewest(int count, long[] outTimestamps, float[] outValues) {
+        int n = Math.min(Math.min(count, size), Math.min(outTimestamps.length, outValues.length / 3));
+        for (int i = 0; i < n; i++) {
+            int idx = index(size - n + i);
+            outTimestamps[i] = timestamps[idx];
+            outValues[i * 3] = values[idx * 3];
+            outValues[i * 3 + 1] = values[idx * 3 + 1];
+            outValues[i * 3 + 2] = values[idx * 3 + 2];
+        }
+        return n;
+    }
+
+    /**
+     * Timestamp of the newest sample, or Long.MIN_VALUE when empty
+     */
+    public synchronized long newestTimestamp() {
+        return size > 0 ? timestamps[index(size - 1)] : Long.MIN_VALUE;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Logical position (0 = oldest) of the first sample newer than the timestamp
+     */
+    private int upperBound(long timestampNs) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[index(mid)] <= timestampNs) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int index(int logical) {
+        int start = size < capacity ? 0 : head;
+        return (start + logical) % capacity;
+    }
+
+    private void copy(int idx, float[] out) {
+        out[0] = values[idx * 3];
+        out[1] = values[idx * 3 + 1];
+        out[2] = values[idx * 3 + 2];
+    }
+}
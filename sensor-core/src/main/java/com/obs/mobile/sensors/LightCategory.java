@@ -0,0 +1,52 @@
+package com.obs.mobile.sensors;
+
+/**
+ * LightCategory - Ambient light bands and the camera advice for each
+ *
+ * Usage:
+ *      LightCategory category = LightCategory.of(lux);
+ *      label.setText(category.getName() + ": " + category.getCameraRecommendation());
+ */
+public enum LightCategory {
+    VERY_DARK("Very Dark", "0-10 lux", "Enable night mode"),
+    DARK("Dark", "10-50 lux", "Increase ISO"),
+    NORMAL("Normal", "50-500 lux", "Good indoor lighting"),
+    BRIGHT("Bright", "500-10000 lux", "Optimal conditions"),
+    VERY_BRIGHT("Very Bright", "10000+ lux", "Reduce exposure");
+
+    private static final float VERY_DARK_THRESHOLD = 10f;
+    private static final float DARK_THRESHOLD = 50f;
+    private static final float NORMAL_THRESHOLD = 500f;
+    private static final float BRIGHT_THRESHOLD = 10000f;
+
+    private final String name;
+    private final String range;
+    private final String cameraRecommendation;
+
+    LightCategory(String name, String range, String cameraRecommendation) {
+        this.name = name;
+        this.range = range;
+        this.cameraRecommendation = cameraRecommendation;
+    }
+
+    public String getName() { return name; }
+    public String getRange() { return range; }
+    public String getCameraRecommendation() { return cameraRecommendation; }
+
+    /**
+     * Band of an illuminance in lux
+     */
+    public static LightCategory of(float lux) {
+        if (lux < VERY_DARK_THRESHOLD) {
+            return VERY_DARK;
+        } else if (lux < DARK_THRESHOLD) {
+            return DARK;
+        } else if (lux < NORMAL_THRESHOLD) {
+            return NORMAL;
+        } else if (lux < BRIGHT_THRESHOLD) {
+            return BRIGHT;
+        } else {
+            return VERY_BRIGHT;
+        }
+    }
+}
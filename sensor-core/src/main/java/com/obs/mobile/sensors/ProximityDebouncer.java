@@ -0,0 +1,56 @@
+package com.obs.mobile.sensors;
+
+/**
+ * ProximityDebouncer - Turns noisy distance readings into NEAR/FAR changes
+ *
+ * A reading below nearThresholdCm is "near". The state only changes when a
+ * reading disagrees with it at least debounceMs after the last change;
+ * readings inside that window are ignored. Timing follows the reading
+ * timestamps.
+ *
+ * Usage:
+ *      ProximityDebouncer debouncer = new ProximityDebouncer();
+ *      if (debouncer.onReading(timestampNs, distanceCm)) {
+ *          ... debouncer.isNear() ...
+ *      }
+ */
+public class ProximityDebouncer {
+
+    public static final float DEFAULT_NEAR_THRESHOLD_CM = 3f;
+    public static final long DEFAULT_DEBOUNCE_MS = 300L;
+
+    private final float nearThresholdCm;
+    private final long debounceMs;
+
+    private boolean near = false;
+    private long lastChangeMs = 0L;
+
+    public ProximityDebouncer() {
+        this(DEFAULT_NEAR_THRESHOLD_CM, DEFAULT_DEBOUNCE_MS);
+    }
+
+    public ProximityDebouncer(float nearThresholdCm, long debounceMs) {
+        this.nearThresholdCm = nearThresholdCm;
+        this.debounceMs = debounceMs;
+    }
+
+    /**
+     * Process one distance reading in cm
+     *
+     * @return true if the NEAR/FAR state changed
+     */
+    public boolean onReading(long timestampNs, float distanceCm) {
+        long nowMs = timestampNs / 1_000_000L;
+        if (nowMs - lastChangeMs < debounceMs) return false;
+
+        boolean currentlyNear = distanceCm < nearThresholdCm;
+        if (currentlyNear == near) return false;
+        near = currentlyNear;
+        lastChangeMs = nowMs;
+        return true;
+    }
+
+    public boolean isNear() {
+        return near;
+    }
+}
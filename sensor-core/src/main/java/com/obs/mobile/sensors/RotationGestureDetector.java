@@ -0,0 +1,61 @@
+package com.obs.mobile.sensors;
+
+/**
+ * RotationGestureDetector - Spots fast turns around the screen axis
+ *
+ * A gesture is a gyroscope sample whose z rate is above the threshold (in
+ * degrees per second), at least minIntervalMs after the previous gesture.
+ * Timing follows the sample timestamps.
+ *
+ * Usage:
+ *      RotationGestureDetector detector = new RotationGestureDetector();
+ *      if (detector.onSample(timestampNs, rotationZ)) {
+ *          ... detector.getDegreesPerSecond(), detector.isClockwise() ...
+ *      }
+ */
+public class RotationGestureDetector {
+
+    public static final float DEFAULT_THRESHOLD_DEG = 100f;
+    public static final long DEFAULT_MIN_INTERVAL_MS = 300L;
+
+    private final float thresholdDeg;
+    private final long minIntervalMs;
+
+    private long lastGestureMs = 0L;
+    private float degreesPerSecond = 0f;
+
+    public RotationGestureDetector() {
+        this(DEFAULT_THRESHOLD_DEG, DEFAULT_MIN_INTERVAL_MS);
+    }
+
+    public RotationGestureDetector(float thresholdDeg, long minIntervalMs) {
+        this.thresholdDeg = thresholdDeg;
+        this.minIntervalMs = minIntervalMs;
+    }
+
+    /**
+     * Process one z rate in rad/s
+     *
+     * @return true if the sample starts a new gesture
+     */
+    public boolean onSample(long timestampNs, float rotationZ) {
+        degreesPerSecond = (float) Math.toDegrees(rotationZ);
+        if (Math.abs(degreesPerSecond) <= thresholdDeg) return false;
+
+        long eventTimeMs = timestampNs / 1_000_000L;
+        if (eventTimeMs - lastGestureMs <= minIntervalMs) return false;
+        lastGestureMs = eventTimeMs;
+        return true;
+    }
+
+    /**
+     * Z rate of the last sample in degrees per second
+     */
+    public float getDegreesPerSecond() {
+        return degreesPerSecond;
+    }
+
+    public boolean isClockwise() {
+        return degreesPerSecond > 0f;
+    }
+}
@@ -0,0 +1,131 @@
+package com.obs.mobile.sensors;
+
+import com.obs.mobile.recording.SessionRecord;
+import com.obs.mobile.recording.SessionReplayer;
+
+/**
+ * SensorReplay - Feeds a recorded session into the sensor detectors
+ *
+ * Accelerometer records go to a ShakeDetector, gyroscope records to a
+ * RotationGestureDetector, proximity records to a ProximityDebouncer, and
+ * accelerometer and magnetic field records to a Compass, the same detectors
+ * the app's sensor wrappers run on the device. Every detection is reported
+ * to the Listener with the timestamp of the record that caused it. Shake,
+ * gesture and debounce timing follows the record timestamps, so a replay is
+ * deterministic at any speed and needs no device.
+ *
+ * Usage:
+ *      SensorReplay target = new SensorReplay(new SensorReplay.Listener() {
+ *          @Override
+ *          public void onShake(long timestampNs, float magnitude) { ... }
+ *      });
+ *      SessionReplayer replayer = new SessionReplayer(sessionDirectory);
+ *      replayer.setSpeed(SessionReplayer.AS_FAST_AS_POSSIBLE);
+ *      replayer.replay(target);
+ */
+public class SensorReplay implements SessionReplayer.Listener {
+
+    /**
+     * Detections during the replay, on the replaying thread
+     */
+    public interface Listener {
+        default void onShake(long timestampNs, float magnitude) {
+        }
+
+        default void onRotationGesture(long timestampNs, float degreesPerSecond, boolean clockwise) {
+        }
+
+        default void onProximityChanged(long timestampNs, boolean near) {
+        }
+
+        default void onHeading(long timestampNs, float azimuth, CompassDirection direction) {
+        }
+    }
+
+    private final ShakeDetector shakeDetector;
+    private final RotationGestureDetector gestureDetector;
+    private final ProximityDebouncer proximityDebouncer;
+    private final Compass compass;
+    private final Listener listener;
+
+    private long shakes = 0L;
+    private long rotationGestures = 0L;
+    private long proximityChanges = 0L;
+    private long headings = 0L;
+
+    /**
+     * Detectors with their default thresholds, like the app's
+     */
+    public SensorReplay(Listener listener) {
+        this(new ShakeDetector(), new RotationGestureDetector(), new ProximityDebouncer(), new Compass(), listener);
+    }
+
+    public SensorReplay(ShakeDetector shakeDetector, RotationGestureDetector gestureDetector,
+                        ProximityDebouncer proximityDebouncer, Compass compass, Listener listener) {
+        this.shakeDetector = shakeDetector;
+        this.gestureDetector = gestureDetector;
+        this.proximityDebouncer = proximityDebouncer;
+        this.compass = compass;
+        this.listener = listener;
+    }
+
+    @Override
+    public void onRecord(SessionRecord record) {
+        switch (record.type) {
+            case SessionRecord.ACCELEROMETER:
+                float x = record.getFloat(0);
+                float y = record.getFloat(1);
+                float z = record.getFloat(2);
+                if (shakeDetector.onSample(record.timestampNs, x, y, z)) {
+                    shakes++;
+                    listener.onShake(record.timestampNs, shakeDetector.getMagnitude());
+                }
+                // Gravity input of the compass, as on the device
+                if (compass.onGravity(x, y, z)) {
+                    reportHeading(record.timestampNs);
+                }
+                break;
+            case SessionRecord.GYROSCOPE:
+                if (gestureDetector.onSample(record.timestampNs, record.getFloat(2))) {
+                    rotationGestures++;
+                    listener.onRotationGesture(record.timestampNs, gestureDetector.getDegreesPerSecond(),
+                            gestureDetector.isClockwise());
+                }
+                break;
+            case SessionRecord.PROXIMITY:
+                if (proximityDebouncer.onReading(record.timestampNs, record.getFloat(0))) {
+                    proximityChanges++;
+                    listener.onProximityChanged(record.timestampNs, proximityDebouncer.isNear());
+                }
+                break;
+            case SessionRecord.MAGNETIC_FIELD:
+                if (compass.onMagneticField(record.getFloat(0), record.getFloat(1), record.getFloat(2))) {
+                    reportHeading(record.timestampNs);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void reportHeading(long timestampNs) {
+        headings++;
+        listener.onHeading(timestampNs, compass.getAzimuth(), compass.getDirection());
+    }
+
+    public long getShakes() {
+        return shakes;
+    }
+
+    public long getRotationGestures() {
+        return rotationGestures;
+    }
+
+    public long getProximityChanges() {
+        return proximityChanges;
+    }
+
+    public long getHeadings() {
+        return headings;
+    }
+}
@@ -0,0 +1,109 @@
+package com.obs.mobile.sensors;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * SensorTimeAligner - Looks up the IMU state for each camera frame
+ *
+ * Gyroscope and accelerometer samples are kept in ring buffers. For every
+ * camera frame the state in the middle of the exposure window is linearly
+ * interpolated from that history and handed to the registered listeners
+ * (stream, recorder, stabiliser) as per-frame metadata.
+ *
+ * Every timestamp passed in must already be on the elapsedRealtimeNanos
+ * clock: SensorClock converts SensorEvent timestamps and
+ * FrameAlignmentCallback converts camera SENSOR_TIMESTAMPs.
+ *
+ * Usage:
+ *      aligner.addGyroSample(timestampNs, x, y, z);           // sensor thread
+ *      aligner.alignFrame(frameNumber, sensorTs, frameTs, exposureNs, skewNs);  // camera thread
+ *      aligner.addOnFrameAlignedListener(state -> ...);
+ */
+public class SensorTimeAligner {
+
+    // About 2 s of history at the fastest gyro rates
+    private static final int HISTORY_CAPACITY = 1024;
+
+    // Sensor events are delivered in batches; a frame can be slightly newer
+    // than the last delivered sample
+    private static final long MAX_EXTRAPOLATION_NS = 20_000_000L;
+
+    /**
+     * Called on the camera thread for every frame. The state object is reused,
+     * copy it if it is kept.
+     */
+    public interface OnFrameAlignedListener {
+        void onFrameAligned(FrameImuState state);
+    }
+
+    private final ImuRingBuffer gyroHistory = new ImuRingBuffer(HISTORY_CAPACITY);
+    private final ImuRingBuffer accelHistory = new ImuRingBuffer(HISTORY_CAPACITY);
+    private final CopyOnWriteArrayList<OnFrameAlignedListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Only used on the camera thread
+    private final FrameImuState frameState = new FrameImuState();
+
+    public void addGyroSample(long timestampNs, float x, float y, float z) {
+        gyroHistory.add(timestampNs, x, y, z);
+    }
+
+    public void addAccelSample(long timestampNs, float x, float y, float z) {
+        accelHistory.add(timestampNs, x, y, z);
+    }
+
+    /**
+     * Gyroscope history in rad/s, e.g. for integrating rotation over an exposure
+     */
+    public ImuRingBuffer getGyroHistory() {
+        return gyroHistory;
+    }
+
+    public ImuRingBuffer getAccelHistory() {
+        return accelHistory;
+    }
+
+    public void addOnFrameAlignedListener(OnFrameAlignedListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeOnFrameAlignedListener(OnFrameAlignedListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Interpolate the IMU state for one frame and notify listeners
+     *
+     * @param sensorTimestampNs SENSOR_TIMESTAMP as reported, camera time base
+     * @param frameTimestampNs start of exposure of the first row, elapsedRealtimeNanos
+     * @param exposureTimeNs   exposure time, 0 if unknown
+     * @param rollingShutterSkewNs first-to-last row readout time, 0 if unknown
+     * @return the aligned state, reused on the next call
+     */
+    public FrameImuState alignFrame(long frameNumber, long sensorTimestampNs, long frameTimestampNs,
+                                    long exposureTimeNs, long rollingShutterSkewNs) {
+        FrameImuState state = frameState;
+        state.frameNumber = frameNumber;
+        state.sensorTimestampNs = sensorTimestampNs;
+        state.frameTimestampNs = frameTimestampNs;
+        state.exposureTimeNs = exposureTimeNs;
+        state.rollingShutterSkewNs = rollingShutterSkewNs;
+
+        // Middle row, middle of its exposure
+        state.exposureMidTimestampNs = frameTimestampNs + exposureTimeNs / 2 + rollingShutterSkewNs / 2;
+
+        state.hasGyro = gyroHistory.interpolate(state.exposureMidTimestampNs,
+                MAX_EXTRAPOLATION_NS, state.gyro) >= 0;
+        state.hasAccel = accelHistory.interpolate(state.exposureMidTimestampNs,
+                MAX_EXTRAPOLATION_NS, state.accel) >= 0;
+
+        for (OnFrameAlignedListener listener : listeners) {
+            listener.onFrameAligned(state);
+        }
+        return state;
+    }
+
+    public void clear() {
+        gyroHistory.clear();
+        accelHistory.clear();
+    }
+}
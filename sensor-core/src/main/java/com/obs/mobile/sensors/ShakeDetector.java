@@ -0,0 +1,62 @@
+package com.obs.mobile.sensors;
+
+/**
+ * ShakeDetector - Spots shakes in accelerometer samples
+ *
+ * A shake is a sample whose total acceleration is above the threshold, at
+ * least minIntervalMs after the previous shake. Timing follows the sample
+ * timestamps, so recorded or synthetic samples give the same shakes as the
+ * live sensor.
+ *
+ * Usage:
+ *      ShakeDetector detector = new ShakeDetector();
+ *      if (detector.onSample(timestampNs, x, y, z)) {
+ *          ... detector.getMagnitude() ...
+ *      }
+ */
+public class ShakeDetector {
+
+    public static final float DEFAULT_THRESHOLD = 15.0f;   // m/s^2
+    public static final long DEFAULT_MIN_INTERVAL_MS = 500L;
+
+    private final float threshold;
+    private final long minIntervalMs;
+
+    private long lastShakeMs = 0L;
+    private float magnitude = 0f;
+
+    public ShakeDetector() {
+        this(DEFAULT_THRESHOLD, DEFAULT_MIN_INTERVAL_MS);
+    }
+
+    public ShakeDetector(float threshold, long minIntervalMs) {
+        this.threshold = threshold;
+        this.minIntervalMs = minIntervalMs;
+    }
+
+    /**
+     * Process one sample in m/s^2
+     *
+     * @return true if the sample is a new shake
+     */
+    public boolean onSample(long timestampNs, float x, float y, float z) {
+        magnitude = magnitude(x, y, z);
+        if (magnitude <= threshold) return false;
+
+        long eventTimeMs = timestampNs / 1_000_000L;
+        if (eventTimeMs - lastShakeMs <= minIntervalMs) return false;
+        lastShakeMs = eventTimeMs;
+        return true;
+    }
+
+    /**
+     * Total acceleration of the last sample in m/s^2
+     */
+    public float getMagnitude() {
+        return magnitude;
+    }
+
+    public static float magnitude(float x, float y, float z) {
+        return (float) Math.sqrt(x * x + y * y + z * z);
+    }
+}
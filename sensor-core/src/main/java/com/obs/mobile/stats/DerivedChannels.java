@@ -0,0 +1,181 @@
+package com.obs.mobile.stats;
+
+import com.obs.mobile.streaming.SampleBatch;
+
+import java.util.Arrays;
+
+/**
+ * DerivedChannels - Named StreamingStats over the channels of a sample stream
+ *
+ * Each derived channel is a StreamingStat fed with one input channel of
+ * every sample, or with the magnitude of three consecutive channels (e.g.
+ * the accelerometer's |a| from ax, ay, az). Sample in, derived values out:
+ * the phone computes them over every IMU sample and sends them with each
+ * packet ("derived": {"accel_rms": 0.12, ...}), the ingest server computes
+ * them over the samples it receives, and both expose them next to the raw
+ * channels, so consumers stop recomputing the same statistics ad hoc.
+ *
+ * forImu() is the default set over [gx, gy, gz, ax, ay, az] samples:
+ *      accel_rms    vibration energy, RMS of |a| around its mean over 1 s (m/s^2)
+ *      accel_p95    95th percentile of |a| over the last 10-20 s (m/s^2)
+ *      accel_ewma   |a| smoothed with a 1 s time constant (m/s^2)
+ *      gyro_max     peak |w| over 1 s (deg/s)
+ *
+ * Channels are added once, up front; update() then allocates nothing and
+ * costs one StreamingStat.add() per derived channel.
+ *
+ * Usage:
+ *      DerivedChannels derived = DerivedChannels.forImu();
+ *      derived.update(timestampNs, sample, 0);
+ *      derived.getValues(packet.derivedValues);   // names: derived.getNames()
+ *
+ * Not thread-safe.
+ */
+public class DerivedChannels {
+
+    private static final long SECOND_NS = 1_000_000_000L;
+    // Samples of one second at the fastest IMU rate
+    private static final int SECOND_CAPACITY = 512;
+
+    private String[] names = new String[0];
+    private int[] inputs = new int[0];
+    private boolean[] magnitudes = new boolean[0];
+    private StreamingStat[] stats = new StreamingStat[0];
+    private int inputChannels = 0;
+
+    /**
+     * The default set over IMU samples [gx, gy, gz, ax, ay, az], see the class comment
+     */
+    public static DerivedChannels forImu() {
+        return new DerivedChannels()
+                .addMagnitude("accel_rms", 3, new SlidingRms(SECOND_NS, SECOND_CAPACITY, true))
+                .addMagnitude("accel_p95", 3, new QuantileSketch(0.95, 0.01, 10 * SECOND_NS))
+                .addMagnitude("accel_ewma", 3, new Ewma(SECOND_NS))
+                .addMagnitude("gyro_max", 0, new SlidingMinMax(SECOND_NS, SECOND_CAPACITY));
+    }
+
+    /**
+     * Derived channel over one input channel
+     */
+    public DerivedChannels add(String name, int channel, StreamingStat stat) {
+        return add(name, channel, false, stat);
+    }
+
+    /**
+     * Derived channel over the magnitude of channels firstChannel..firstChannel + 2
+     */
+    public DerivedChannels addMagnitude(String name, int firstChannel, StreamingStat stat) {
+        return add(name, firstChannel, true, stat);
+    }
+
+    private DerivedChannels add(String name, int channel, boolean magnitude, StreamingStat stat) {
+        if (channel < 0) throw new IllegalArgumentException("channel must not be negative");
+        if (indexOf(name) >= 0) throw new IllegalArgumentException("duplicate derived channel " + name);
+        int size = names.length + 1;
+        names = Arrays.copyOf(names, size);
+        inputs = Arrays.copyOf(inputs, size);
+        magnitudes = Arrays.copyOf(magnitudes, size);
+        stats = Arrays.copyOf(stats, size);
+        names[size - 1] = name;
+        inputs[size - 1] = channel;
+        magnitudes[size - 1] = magnitude;
+        stats[size - 1] = stat;
+        inputChannels = Math.max(inputChannels, channel + (magnitude ? 3 : 1));
+        return this;
+    }
+
+    // ============================================================
+    // Samples in
+    // ============================================================
+
+    /**
+     * One sample, channels sample[offset..]
+     */
+    public void update(long timestampNs, float[] sample, int offset) {
+        for (int i = 0; i < stats.length; i++) {
+            int at = offset + inputs[i];
+            float value;
+            if (magnitudes[i]) {
+                float x = sample[at];
+                float y = sample[at + 1];
+                float z = sample[at + 2];
+                value = (float) Math.sqrt(x * x + y * y + z * z);
+            } else {
+                value = sample[at];
+            }
+            stats[i].add(timestampNs, value);
+        }
+    }
+
+    /**
+     * Every sample of a batch, oldest first
+     */
+    public void updateAll(SampleBatch batch) {
+        if (batch.channels < inputChannels) {
+            throw new IllegalArgumentException("expected at least " + inputChannels + " channels, got "
+                    + batch.channels);
+        }
+        for (int i = 0; i < batch.count; i++) {
+            update(batch.timestampsNs[i], batch.values, i * batch.channels);
+        }
+    }
+
+    public void reset() {
+        for (StreamingStat stat : stats) {
+            stat.reset();
+        }
+    }
+
+    // ============================================================
+    // Values out
+    // ============================================================
+
+    public int size() {
+        return stats.length;
+    }
+
+    /**
+     * Channel names, in value order; the same array until the next add()
+     */
+    public String[] getNames() {
+        return names;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return the channel's index, or -1
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    public StreamingStat getStat(int index) {
+        return stats[index];
+    }
+
+    public double getValue(int index) {
+        return stats[index].getValue();
+    }
+
+    /**
+     * Every channel's current value into out[0..size()), NaN before its first sample
+     */
+    public void getValues(float[] out) {
+        for (int i = 0; i < stats.length; i++) {
+            out[i] = (float) stats[i].getValue();
+        }
+    }
+
+    /**
+     * The most input channels a sample must have
+     */
+    public int getInputChannels() {
+        return inputChannels;
+    }
+}
@@ -0,0 +1,55 @@
+package com.obs.mobile.stats;
+
+/**
+ * Ewma - Exponentially weighted moving average with a time constant
+ *
+ * The weight of each sample follows the time since the previous one,
+ * alpha = 1 - exp(-dt / tau), so the average behaves the same at 50 Hz and
+ * 200 Hz and across gaps in the stream: after tau the old average still
+ * counts for 1/e. The first sample starts the average.
+ *
+ * Usage:
+ *      Ewma level = new Ewma(1_000_000_000L);   // ~1 s memory
+ *      level.add(timestampNs, accelMagnitude);
+ */
+public class Ewma implements StreamingStat {
+
+    private final double tauNs;
+
+    private boolean started = false;
+    private long lastNs = 0L;
+    private double average = Double.NaN;
+
+    /**
+     * @param timeConstantNs tau, the time for a step to reach 63% of its size
+     */
+    public Ewma(long timeConstantNs) {
+        if (timeConstantNs <= 0L) throw new IllegalArgumentException("time constant must be positive");
+        this.tauNs = timeConstantNs;
+    }
+
+    @Override
+    public void add(long timestampNs, float value) {
+        if (!started) {
+            started = true;
+            average = value;
+        } else {
+            long dtNs = Math.max(0L, timestampNs - lastNs);
+            double alpha = -Math.expm1(-dtNs / tauNs);
+            average += alpha * (value - average);
+        }
+        lastNs = timestampNs;
+    }
+
+    @Override
+    public double getValue() {
+        return average;
+    }
+
+    @Override
+    public void reset() {
+        started = false;
+        lastNs = 0L;
+        average = Double.NaN;
+    }
+}
@@ -0,0 +1,251 @@
+package com.obs.mobile.stats;
+
+/**
+ * QuantileSketch - Percentiles of a stream with bounded relative error (DDSketch)
+ *
+ * Values are counted in logarithmic buckets: bucket k holds the values in
+ * (gamma^(k-1), gamma^k] with gamma = (1 + a) / (1 - a), and a quantile is
+ * answered with the middle of its bucket, within a relative error a of the
+ * exact sample quantile (a = 0.01: p95 of 9.81 m/s^2 is 9.71..9.91).
+ * Positive and negative values have their own buckets; values within
+ * MIN_MAGNITUDE of 0 are counted as 0.
+ *
+ * Each sign has a fixed array of BUCKETS buckets, 2048 at a = 0.01 spanning
+ * a 1e17 range of magnitudes; if a stream ever needs more, the lowest
+ * buckets are collapsed into one, as in the DDSketch paper, which only
+ * degrades the lowest quantiles. Adding a value is one log and one array
+ * increment.
+ *
+ * With a window, two sketches take turns: samples go into the current one,
+ * which becomes the previous one after windowNs, and quantiles are read
+ * over both. A quantile therefore covers the last windowNs to 2 * windowNs.
+ * Without a window (0) it covers everything since reset(). Reading walks the
+ * buckets, which is meant for once per packet, not once per sample.
+ *
+ * getValue() is the quantile given to the constructor.
+ *
+ * Usage:
+ *      QuantileSketch p95 = new QuantileSketch(0.95, 0.01, 10_000_000_000L);
+ *      p95.add(timestampNs, accelMagnitude);
+ *      double median = p95.getQuantile(0.5);
+ */
+public class QuantileSketch implements StreamingStat {
+
+    public static final int BUCKETS = 2048;
+    public static final double MIN_MAGNITUDE = 1e-9;
+
+    private final double quantile;
+    private final double gamma;
+    private final double logGamma;
+    private final long windowNs;
+
+    private Sketch current = new Sketch();
+    private Sketch previous = new Sketch();
+    private long windowStartNs = Long.MIN_VALUE;
+
+    /**
+     * @param quantile         getValue()'s quantile, 0..1
+     * @param relativeAccuracy a, e.g. 0.01 for 1%
+     * @param windowNs         rotation period, or 0 to keep every sample
+     */
+    public QuantileSketch(double quantile, double relativeAccuracy, long windowNs) {
+        if (quantile < 0.0 || quantile > 1.0) throw new IllegalArgumentException("quantile must be within 0..1");
+        if (relativeAccuracy <= 0.0 || relativeAccuracy >= 1.0) {
+            throw new IllegalArgumentException("relative accuracy must be within (0, 1)");
+        }
+        if (windowNs < 0L) throw new IllegalArgumentException("window must not be negative");
+        this.quantile = quantile;
+        this.gamma = (1.0 + relativeAccuracy) / (1.0 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.windowNs = windowNs;
+    }
+
+    @Override
+    public void add(long timestampNs, float value) {
+        if (Float.isNaN(value)) return;
+        if (windowNs > 0L) {
+            if (windowStartNs == Long.MIN_VALUE) {
+                windowStartNs = timestampNs;
+            } else if (timestampNs - windowStartNs >= windowNs) {
+                // A gap of two windows or more leaves nothing worth keeping
+                Sketch recycled = previous;
+                previous = timestampNs - windowStartNs >= 2 * windowNs ? clear(current) : current;
+                current = clear(recycled);
+                windowStartNs = timestampNs;
+            }
+        }
+
+        double magnitude = Math.abs((double) value);
+        if (magnitude < MIN_MAGNITUDE) {
+            current.zeros++;
+        } else {
+            int key = (int) Math.ceil(Math.log(magnitude) / logGamma);
+            (value > 0f ? current.positive : current.negative).add(key);
+        }
+        current.count++;
+    }
+
+    @Override
+    public double getValue() {
+        return getQuantile(quantile);
+    }
+
+    /**
+     * Any quantile of the samples kept, NaN if there are none
+     */
+    public double getQuantile(double q) {
+        long count = current.count + previous.count;
+        if (count == 0L) return Double.NaN;
+        // Rank of the wanted sample, 0-based, over negatives (most negative
+        // first), zeros, then positives
+        long rank = (long) Math.floor(Math.max(0.0, Math.min(1.0, q)) * (count - 1));
+
+        long negatives = current.negative.total + previous.negative.total;
+        if (rank < negatives) {
+            int key = Bins.keyAtRank(current.negative, previous.negative, negatives - 1 - rank);
+            return -value(key);
+        }
+        rank -= negatives;
+        long zeros = current.zeros + previous.zeros;
+        if (rank < zeros) return 0.0;
+        rank -= zeros;
+        return value(Bins.keyAtRank(current.positive, previous.positive, rank));
+    }
+
+    /**
+     * Samples the quantiles are taken over
+     */
+    public long getCount() {
+        return current.count + previous.count;
+    }
+
+    @Override
+    public void reset() {
+        clear(current);
+        clear(previous);
+        windowStartNs = Long.MIN_VALUE;
+    }
+
+    private double value(int key) {
+        // Middle of (gamma^(k-1), gamma^k] in relative terms
+        return 2.0 * Math.pow(gamma, key) / (gamma + 1.0);
+    }
+
+    private static Sketch clear(Sketch sketch) {
+        sketch.positive.clear();
+        sketch.negative.clear();
+        sketch.zeros = 0L;
+        sketch.count = 0L;
+        return sketch;
+    }
+
+    private static class Sketch {
+        final Bins positive = new Bins();
+        final Bins negative = new Bins();
+        long zeros = 0L;
+        long count = 0L;
+    }
+
+    /**
+     * Counts of BUCKETS consecutive keys starting at offset
+     */
+    private static class Bins {
+        final long[] counts = new long[BUCKETS];
+        int offset = 0;
+        long total = 0L;
+        // Lowest and highest key with a count, valid while total > 0
+        int minKey = 0;
+        int maxKey = 0;
+
+        void add(int key) {
+            if (total == 0L) {
+                // Centre the first key, so the range can move either way
+                offset = key - BUCKETS / 2;
+                minKey = key;
+                maxKey = key;
+            } else if (key < offset) {
+                if (maxKey - key < BUCKETS) {
+                    shift(key);
+                } else {
+                    key = offset;   // Collapsed into the lowest bucket
+                }
+            } else if (key >= offset + BUCKETS) {
+                shift(key - BUCKETS + 1);
+            }
+            counts[key - offset]++;
+            total++;
+            minKey = Math.min(minKey, key);
+            maxKey = Math.max(maxKey, key);
+        }
+
+        /**
+         * Move the window to start at newOffset; counts below it are collapsed
+         * into the new lowest bucket
+         */
+        private void shift(int newOffset) {
+            long collapsed = 0L;
+            for (int key = minKey; key < newOffset && key <= maxKey; key++) {
+                collapsed += counts[key - offset];
+            }
+            int from = Math.max(minKey, newOffset);
+            int to = Math.min(maxKey, newOffset + BUCKETS - 1);
+            if (newOffset > offset) {
+                for (int key = from; key <= to; key++) {
+                    counts[key - newOffset] = counts[key - offset];
+                }
+            } else {
+                for (int key = to; key >= from; key--) {
+                    counts[key - newOffset] = counts[key - offset];
+                }
+            }
+            // Zero what is outside the moved range
+            for (int i = 0; i < BUCKETS; i++) {
+                int key = newOffset + i;
+                if (key < from || key > to) counts[i] = 0L;
+            }
+            offset = newOffset;
+            if (collapsed > 0L) {
+                counts[0] += collapsed;
+                minKey = newOffset;
+                maxKey = Math.max(maxKey, newOffset);
+            }
+            if (maxKey >= newOffset + BUCKETS) maxKey = newOffset + BUCKETS - 1;
+        }
+
+        long count(int key) {
+            if (total == 0L || key < offset || key >= offset + BUCKETS) return 0L;
+            return counts[key - offset];
+        }
+
+        void clear() {
+            if (total > 0L) {
+                for (int key = minKey; key <= maxKey; key++) {
+                    counts[key - offset] = 0L;
+                }
+            }
+            total = 0L;
+        }
+
+        /**
+         * Key of the rank-th smallest value counted in a and b together
+         */
+        static int keyAtRank(Bins a, Bins b, long rank) {
+            int low = Integer.MAX_VALUE;
+            int high = Integer.MIN_VALUE;
+            if (a.total > 0L) {
+                low = a.minKey;
+                high = a.maxKey;
+            }
+            if (b.total > 0L) {
+                low = Math.min(low, b.minKey);
+                high = Math.max(high, b.maxKey);
+            }
+            long seen = 0L;
+            for (int key = low; key <= high; key++) {
+                seen += a.count(key) + b.count(key);
+                if (seen > rank) return key;
+            }
+            return high;
+        }
+    }
+}
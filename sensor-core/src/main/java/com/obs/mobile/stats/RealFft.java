@@ -0,0 +1,137 @@
+package com.obs.mobile.stats;
+
+/**
+ * RealFft - Forward FFT of real samples, with every table and buffer preallocated
+ *
+ * n real samples are packed into n/2 complex ones (even samples real, odd
+ * imaginary), transformed by an iterative radix-2 FFT of size n/2 and split
+ * into the n/2 + 1 bins of the real spectrum: half the work of a complex FFT
+ * of size n. The twiddle factors and the bit-reversal permutation are
+ * computed once in the constructor, so transform() does no trigonometry and
+ * allocates nothing.
+ *
+ * Bin k is frequency k * sampleRate / n; X[k] = sum x[t] e^(-2 pi i k t / n),
+ * unscaled.
+ *
+ * Usage:
+ *      RealFft fft = new RealFft(256);
+ *      fft.powerSpectrum(samples, power);   // power.length >= 129
+ *
+ * Not thread-safe: the work buffers are shared between calls.
+ */
+public class RealFft {
+
+    private final int n;
+    private final int half;
+    // cos and sin of 2 pi k / n, k = 0..n/2
+    private final float[] cos;
+    private final float[] sin;
+    private final int[] bitReverse;
+    private final float[] re;
+    private final float[] im;
+    // Bin computed by split()
+    private float splitRe;
+    private float splitIm;
+
+    /**
+     * @param n samples per transform, a power of two from 4
+     */
+    public RealFft(int n) {
+        if (n < 4 || Integer.bitCount(n) != 1) throw new IllegalArgumentException("size must be a power of two >= 4");
+        this.n = n;
+        this.half = n / 2;
+        this.cos = new float[half + 1];
+        this.sin = new float[half + 1];
+        for (int k = 0; k <= half; k++) {
+            double angle = 2.0 * Math.PI * k / n;
+            cos[k] = (float) Math.cos(angle);
+            sin[k] = (float) Math.sin(angle);
+        }
+        this.bitReverse = new int[half];
+        int bits = Integer.numberOfTrailingZeros(half);
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        this.re = new float[half];
+        this.im = new float[half];
+    }
+
+    public int getSize() {
+        return n;
+    }
+
+    /**
+     * Bins 0..n/2 of input[0..n) into outRe and outIm (at least n/2 + 1 long)
+     */
+    public void transform(float[] input, float[] outRe, float[] outIm) {
+        complexTransform(input);
+        for (int k = 0; k <= half; k++) {
+            split(k);
+            outRe[k] = splitRe;
+            outIm[k] = splitIm;
+        }
+    }
+
+    /**
+     * |X[k]|^2 for k = 0..n/2 of input[0..n) into power (at least n/2 + 1 long)
+     */
+    public void powerSpectrum(float[] input, float[] power) {
+        complexTransform(input);
+        for (int k = 0; k <= half; k++) {
+            split(k);
+            power[k] = splitRe * splitRe + splitIm * splitIm;
+        }
+    }
+
+    /**
+     * Z = FFT of z[j] = input[2j] + i input[2j + 1], size n/2, into re/im
+     */
+    private void complexTransform(float[] input) {
+        for (int j = 0; j < half; j++) {
+            int target = bitReverse[j];
+            re[target] = input[2 * j];
+            im[target] = input[2 * j + 1];
+        }
+        for (int size = 2; size <= half; size <<= 1) {
+            int halfSize = size >> 1;
+            // e^(-2 pi i j / size) = table entry j * (n / size)
+            int step = n / size;
+            for (int start = 0; start < half; start += size) {
+                for (int j = 0; j < halfSize; j++) {
+                    float wr = cos[j * step];
+                    float wi = -sin[j * step];
+                    int a = start + j;
+                    int b = a + halfSize;
+                    float tr = wr * re[b] - wi * im[b];
+                    float ti = wr * im[b] + wi * re[b];
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+
+    /**
+     * X[k] = E[k] + e^(-2 pi i k / n) O[k], the even and odd sample spectra
+     * recovered from Z[k] and conj(Z[n/2 - k])
+     */
+    private void split(int k) {
+        int a = k % half;
+        int b = (half - k) % half;
+        float zr = re[a];
+        float zi = im[a];
+        float cr = re[b];
+        float ci = -im[b];
+        float er = 0.5f * (zr + cr);
+        float ei = 0.5f * (zi + ci);
+        // (Z - conj) / 2i
+        float or = 0.5f * (zi - ci);
+        float oi = -0.5f * (zr - cr);
+        float wr = cos[k];
+        float wi = -sin[k];
+        splitRe = er + wr * or - wi * oi;
+        splitIm = ei + wr * oi + wi * or;
+    }
+}
@@ -0,0 +1,108 @@
+package com.obs.mobile.stats;
+
+import java.util.Locale;
+
+/**
+ * RunningStats - Count, mean, variance, min and max of every sample since reset()
+ *
+ * Welford's update: the mean and the sum of squared deviations are updated
+ * per sample, so the variance stays accurate even for a small spread on a
+ * large offset (gravity on an accelerometer axis), where sum(x^2) - n*mean^2
+ * cancels catastrophically. merge() combines two independent runs (Chan's
+ * formula), e.g. per-thread partials.
+ *
+ * getValue() is the mean.
+ *
+ * Usage:
+ *      RunningStats bias = new RunningStats();
+ *      bias.add(timestampNs, gyroX);   // while the phone lies still
+ *      float offset = (float) bias.getMean();
+ */
+public class RunningStats implements StreamingStat {
+
+    private long count = 0L;
+    private double mean = 0.0;
+    private double m2 = 0.0;
+    private float min = Float.NaN;
+    private float max = Float.NaN;
+
+    @Override
+    public void add(long timestampNs, float value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        if (count == 1L || value < min) min = value;
+        if (count == 1L || value > max) max = value;
+    }
+
+    /**
+     * Add another run's samples to this one
+     */
+    public void merge(RunningStats other) {
+        if (other.count == 0L) return;
+        if (count == 0L) {
+            count = other.count;
+            mean = other.mean;
+            m2 = other.m2;
+            min = other.min;
+            max = other.max;
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+        count = total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    @Override
+    public double getValue() {
+        return getMean();
+    }
+
+    @Override
+    public void reset() {
+        count = 0L;
+        mean = 0.0;
+        m2 = 0.0;
+        min = Float.NaN;
+        max = Float.NaN;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return count > 0L ? mean : Double.NaN;
+    }
+
+    /**
+     * Sample variance (n - 1), 0 for a single sample
+     */
+    public double getVariance() {
+        if (count == 0L) return Double.NaN;
+        return count > 1L ? m2 / (count - 1) : 0.0;
+    }
+
+    public double getStdDev() {
+        return Math.sqrt(getVariance());
+    }
+
+    public float getMin() {
+        return min;
+    }
+
+    public float getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "n=%d mean=%.4f sd=%.4f min=%.4f max=%.4f",
+                count, getMean(), getStdDev(), min, max);
+    }
+}
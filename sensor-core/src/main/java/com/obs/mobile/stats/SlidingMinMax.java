@@ -0,0 +1,123 @@
+package com.obs.mobile.stats;
+
+/**
+ * SlidingMinMax - Minimum and maximum of the last windowNs of samples
+ *
+ * Two monotonic deques: the max deque holds samples in decreasing value
+ * order, the min deque in increasing order. A new sample pops every entry it
+ * dominates from the tail, samples older than the window leave from the
+ * head, and the extreme is always at the head. Each sample is pushed and
+ * popped at most once per deque, so a sample costs O(1) amortized.
+ *
+ * The deques are preallocated rings of capacity entries. If a deque is full
+ * (a monotonic run longer than capacity inside the window) its oldest entry
+ * is dropped early; size capacity to the samples in one window, e.g. 256
+ * for one second at 200 Hz, and this never happens.
+ *
+ * getValue() is the maximum.
+ *
+ * Usage:
+ *      SlidingMinMax peak = new SlidingMinMax(1_000_000_000L, 256);
+ *      peak.add(timestampNs, gyroMagnitude);
+ *      float range = peak.getRange();
+ */
+public class SlidingMinMax implements StreamingStat {
+
+    private final long windowNs;
+    private final Deque minDeque;
+    private final Deque maxDeque;
+
+    /**
+     * @param capacity the most samples one window holds
+     */
+    public SlidingMinMax(long windowNs, int capacity) {
+        if (windowNs <= 0L) throw new IllegalArgumentException("window must be positive");
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        this.windowNs = windowNs;
+        this.minDeque = new Deque(capacity);
+        this.maxDeque = new Deque(capacity);
+    }
+
+    @Override
+    public void add(long timestampNs, float value) {
+        long oldestNs = timestampNs - windowNs;
+        minDeque.expire(oldestNs);
+        maxDeque.expire(oldestNs);
+
+        while (minDeque.size > 0 && minDeque.tailValue() >= value) minDeque.popTail();
+        while (maxDeque.size > 0 && maxDeque.tailValue() <= value) maxDeque.popTail();
+        minDeque.push(timestampNs, value);
+        maxDeque.push(timestampNs, value);
+    }
+
+    @Override
+    public double getValue() {
+        return getMax();
+    }
+
+    public float getMin() {
+        return minDeque.size > 0 ? minDeque.headValue() : Float.NaN;
+    }
+
+    public float getMax() {
+        return maxDeque.size > 0 ? maxDeque.headValue() : Float.NaN;
+    }
+
+    /**
+     * Peak to peak, max - min
+     */
+    public float getRange() {
+        return getMax() - getMin();
+    }
+
+    @Override
+    public void reset() {
+        minDeque.size = 0;
+        maxDeque.size = 0;
+    }
+
+    /**
+     * Ring of (timestamp, value) used as a deque
+     */
+    private static class Deque {
+        final long[] timestampsNs;
+        final float[] values;
+        int head = 0;
+        int size = 0;
+
+        Deque(int capacity) {
+            timestampsNs = new long[capacity];
+            values = new float[capacity];
+        }
+
+        void push(long timestampNs, float value) {
+            if (size == values.length) {
+                head = (head + 1) % values.length;
+                size--;
+            }
+            int slot = (head + size) % values.length;
+            timestampsNs[slot] = timestampNs;
+            values[slot] = value;
+            size++;
+        }
+
+        void expire(long oldestNs) {
+            while (size > 0 && timestampsNs[head] <= oldestNs) {
+                head = (head + 1) % values.length;
+                size--;
+            }
+        }
+
+        void popTail() {
+            size--;
+        }
+
+        float tailValue() {
+            return values[(head + size - 1) % values.length];
+        }
+
+        float headValue() {
+            return values[head];
+        }
+    }
+}
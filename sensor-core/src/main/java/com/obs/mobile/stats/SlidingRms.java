@@ -0,0 +1,108 @@
+package com.obs.mobile.stats;
+
+/**
+ * SlidingRms - Root mean square of the last windowNs of samples
+ *
+ * The vibration energy of a channel: with removeMean the RMS is taken
+ * around the window's own mean, sqrt(E[x^2] - E[x]^2), so gravity or a
+ * sensor offset does not count as vibration (an accelerometer lying still
+ * reads ~9.81 m/s^2 of magnitude and 0 of vibration).
+ *
+ * Samples sit in a preallocated ring of capacity entries with running sums
+ * of x and x^2; a sample costs one add and its expiry one subtract. The
+ * running sums are recomputed from the ring once every capacity samples,
+ * so rounding cannot build up over hours of streaming (O(1) amortized).
+ * When the ring is full before the window is, the oldest sample leaves
+ * early; size capacity to the samples in one window.
+ *
+ * Usage:
+ *      SlidingRms vibration = new SlidingRms(1_000_000_000L, 256, true);
+ *      vibration.add(timestampNs, accelMagnitude);
+ */
+public class SlidingRms implements StreamingStat {
+
+    private final long windowNs;
+    private final boolean removeMean;
+    private final long[] timestampsNs;
+    private final float[] values;
+
+    private int head = 0;
+    private int size = 0;
+    private int sinceRecompute = 0;
+    private double sum = 0.0;
+    private double sumSquares = 0.0;
+
+    /**
+     * @param capacity   the most samples one window holds
+     * @param removeMean RMS around the window mean (AC part only) instead of around 0
+     */
+    public SlidingRms(long windowNs, int capacity, boolean removeMean) {
+        if (windowNs <= 0L) throw new IllegalArgumentException("window must be positive");
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        this.windowNs = windowNs;
+        this.removeMean = removeMean;
+        this.timestampsNs = new long[capacity];
+        this.values = new float[capacity];
+    }
+
+    @Override
+    public void add(long timestampNs, float value) {
+        long oldestNs = timestampNs - windowNs;
+        while (size > 0 && (size == values.length || timestampsNs[head] <= oldestNs)) {
+            float expired = values[head];
+            sum -= expired;
+            sumSquares -= (double) expired * expired;
+            head = (head + 1) % values.length;
+            size--;
+        }
+
+        int slot = (head + size) % values.length;
+        timestampsNs[slot] = timestampNs;
+        values[slot] = value;
+        size++;
+        sum += value;
+        sumSquares += (double) value * value;
+
+        if (++sinceRecompute >= values.length) {
+            recompute();
+        }
+    }
+
+    private void recompute() {
+        sinceRecompute = 0;
+        sum = 0.0;
+        sumSquares = 0.0;
+        for (int i = 0; i < size; i++) {
+            float value = values[(head + i) % values.length];
+            sum += value;
+            sumSquares += (double) value * value;
+        }
+    }
+
+    @Override
+    public double getValue() {
+        if (size == 0) return Double.NaN;
+        double meanSquare = sumSquares / size;
+        if (removeMean) {
+            double mean = sum / size;
+            meanSquare -= mean * mean;
+        }
+        return Math.sqrt(Math.max(0.0, meanSquare));
+    }
+
+    /**
+     * Samples in the window
+     */
+    public int getCount() {
+        return size;
+    }
+
+    @Override
+    public void reset() {
+        head = 0;
+        size = 0;
+        sinceRecompute = 0;
+        sum = 0.0;
+        sumSquares = 0.0;
+    }
+}
@@ -0,0 +1,341 @@
+package com.obs.mobile.stats;
+
+import com.obs.mobile.sensors.ImuRingBuffer;
+
+import java.util.Arrays;
+
+/**
+ * SpectrumAnalyzer - Vibration spectrum of a 3-axis accelerometer stream
+ *
+ * Keeps the last fftSize samples of each axis in a ring and, every
+ * hopSize samples, computes a Hann-windowed RealFft of each axis (mean
+ * removed, so gravity drops out) and sums the three power spectra. Summing
+ * the axes makes the spectrum independent of how the phone is mounted,
+ * which |a| is not: a vibration across gravity only reaches |a| at twice
+ * its frequency and squared. From the summed spectrum it extracts:
+ *  - the peakCount strongest local maxima, frequency refined by a parabola
+ *    through the log power of the peak bin and its neighbours, amplitude
+ *    in m/s^2 (the amplitude of the sine that would give the peak)
+ *  - the RMS acceleration in each band between consecutive bandEdgesHz,
+ *    in m/s^2 (Parseval, corrected for the window)
+ *
+ * The sample rate is estimated per window from the timestamps, so the
+ * analyzer follows whatever rate the sensor delivers; the FFT assumes the
+ * samples are evenly spaced, which Android sensors are to within jitter.
+ * With fftSize 256 at 200 Hz a window is 1.28 s and a bin 0.78 Hz.
+ *
+ * Every buffer and the FFT tables are preallocated: add() copies three
+ * floats, and every hopSize samples runs three FFTs, O(log n) per sample
+ * amortized, without allocating. When the samples already go into an
+ * ImuRingBuffer (the app keeps one for the IMU batch), addFrom() counts
+ * them instead and reads the window from that buffer when a spectrum is
+ * due, rather than keeping a second copy of every sample.
+ *
+ * Usage:
+ *      SpectrumAnalyzer analyzer = new SpectrumAnalyzer(256, 64, 5, SpectrumAnalyzer.DEFAULT_BAND_EDGES_HZ);
+ *      if (analyzer.add(timestampNs, ax, ay, az)) {
+ *          ... analyzer.getPeakFrequencyHz(0), analyzer.getBandRms(2) ...
+ *      }
+ *
+ * Not thread-safe.
+ */
+public class SpectrumAnalyzer {
+
+    public static final int DEFAULT_FFT_SIZE = 256;
+    public static final int DEFAULT_HOP_SIZE = 64;
+    public static final int DEFAULT_PEAK_COUNT = 5;
+    public static final float[] DEFAULT_BAND_EDGES_HZ = {0f, 5f, 10f, 20f, 40f, 100f};
+
+    private static final int AXES = 3;
+
+    private final int fftSize;
+    private final int hopSize;
+    private final float[] bandEdgesHz;
+    private final RealFft fft;
+    private final float[] window;
+    private final float windowSum;
+    private final float windowSquareSum;
+
+    // Rings of the last fftSize samples
+    private final float[][] rings = new float[AXES][];
+    private final long[] timestampsNs;
+    private int next = 0;
+    private long added = 0L;
+    private int sinceSpectrum = 0;
+
+    // Work buffers
+    private final float[] frame;
+    private final float[] copied;
+    private final float[] axisPower;
+    private final float[] power;
+
+    // Newest spectrum
+    private long spectrumCount = 0L;
+    private long spectrumTimestampNs = 0L;
+    private float sampleRateHz = 0f;
+    private int peakCount = 0;
+    private final float[] peakFrequenciesHz;
+    private final float[] peakAmplitudes;
+    private final float[] bandRms;
+
+    public SpectrumAnalyzer() {
+        this(DEFAULT_FFT_SIZE, DEFAULT_HOP_SIZE, DEFAULT_PEAK_COUNT, DEFAULT_BAND_EDGES_HZ);
+    }
+
+    /**
+     * @param fftSize     samples per spectrum, a power of two
+     * @param hopSize     samples between spectra, 1..fftSize
+     * @param peakCount   peaks reported per spectrum
+     * @param bandEdgesHz increasing band edges, e.g. {0, 5, 10}: two bands
+     */
+    public SpectrumAnalyzer(int fftSize, int hopSize, int peakCount, float[] bandEdgesHz) {
+        if (hopSize < 1 || hopSize > fftSize) throw new IllegalArgumentException("hop must be within 1..fftSize");
+        if (peakCount < 0) throw new IllegalArgumentException("peak count must not be negative");
+        if (bandEdgesHz.length == 1) throw new IllegalArgumentException("bands need at least two edges");
+        for (int i = 1; i < bandEdgesHz.length; i++) {
+            if (bandEdgesHz[i] <= bandEdgesHz[i - 1]) throw new IllegalArgumentException("band edges must increase");
+        }
+        this.fft = new RealFft(fftSize);
+        this.fftSize = fftSize;
+        this.hopSize = hopSize;
+        this.bandEdgesHz = bandEdgesHz.clone();
+
+        this.window = new float[fftSize];
+        float sum = 0f;
+        float squareSum = 0f;
+        for (int i = 0; i < fftSize; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / fftSize));
+            sum += window[i];
+            squareSum += window[i] * window[i];
+        }
+        this.windowSum = sum;
+        this.windowSquareSum = squareSum;
+
+        for (int axis = 0; axis < AXES; axis++) {
+            rings[axis] = new float[fftSize];
+        }
+        this.timestampsNs = new long[fftSize];
+        this.frame = new float[fftSize];
+        this.copied = new float[fftSize * AXES];
+        this.axisPower = new float[fftSize / 2 + 1];
+        this.power = new float[fftSize / 2 + 1];
+        this.peakFrequenciesHz = new float[peakCount];
+        this.peakAmplitudes = new float[peakCount];
+        this.bandRms = new float[Math.max(0, bandEdgesHz.length - 1)];
+    }
+
+    /**
+     * One accelerometer sample in m/s^2
+     *
+     * @return true if a new spectrum was computed
+     */
+    public boolean add(long timestampNs, float x, float y, float z) {
+        rings[0][next] = x;
+        rings[1][next] = y;
+        rings[2][next] = z;
+        timestampsNs[next] = timestampNs;
+        next = (next + 1) % fftSize;
+        added++;
+        if (added < fftSize) return false;
+        // The first spectrum as soon as the ring is full, then every hopSize samples
+        if (added > fftSize && ++sinceSpectrum < hopSize) return false;
+        sinceSpectrum = 0;
+        return compute();
+    }
+
+    /**
+     * Count one sample just added to history and, when a spectrum is due,
+     * analyze the newest fftSize samples read from it
+     *
+     * history must hold at least fftSize samples; do not mix with add().
+     *
+     * @return true if a new spectrum was computed
+     */
+    public boolean addFrom(ImuRingBuffer history) {
+        added++;
+        if (added < fftSize) return false;
+        if (added > fftSize && ++sinceSpectrum < hopSize) return false;
+        sinceSpectrum = 0;
+        if (history.copyNewest(fftSize, timestampsNs, copied) < fftSize) return false;
+        for (int i = 0; i < fftSize; i++) {
+            for (int axis = 0; axis < AXES; axis++) {
+                rings[axis][i] = copied[i * AXES + axis];
+            }
+        }
+        next = 0;
+        return compute();
+    }
+
+    public void reset() {
+        next = 0;
+        added = 0L;
+        sinceSpectrum = 0;
+        spectrumTimestampNs = 0L;
+        sampleRateHz = 0f;
+        peakCount = 0;
+        Arrays.fill(bandRms, 0f);
+    }
+
+    // ============================================================
+    // Analysis
+    // ============================================================
+
+    private boolean compute() {
+        // next is the oldest sample once the ring is full
+        long oldestNs = timestampsNs[next];
+        long newestNs = timestampsNs[(next + fftSize - 1) % fftSize];
+        if (newestNs <= oldestNs) return false;
+        float rateHz = (float) ((fftSize - 1) * 1e9 / (newestNs - oldestNs));
+
+        Arrays.fill(power, 0f);
+        for (int axis = 0; axis < AXES; axis++) {
+            float[] ring = rings[axis];
+            double mean = 0.0;
+            for (float value : ring) {
+                mean += value;
+            }
+            float offset = (float) (mean / fftSize);
+            for (int i = 0; i < fftSize; i++) {
+                frame[i] = (ring[(next + i) % fftSize] - offset) * window[i];
+            }
+            fft.powerSpectrum(frame, axisPower);
+            for (int k = 0; k < power.length; k++) {
+                power[k] += axisPower[k];
+            }
+        }
+
+        sampleRateHz = rateHz;
+        spectrumTimestampNs = newestNs;
+        findPeaks(rateHz / fftSize);
+        measureBands(rateHz / fftSize);
+        spectrumCount++;
+        return true;
+    }
+
+    /**
+     * The strongest local maxima above DC, strongest first
+     */
+    private void findPeaks(float binHz) {
+        peakCount = 0;
+        if (peakFrequenciesHz.length == 0) return;
+        for (int k = 1; k < power.length - 1; k++) {
+            float p = power[k];
+            if (p <= power[k - 1] || p < power[k + 1] || p <= 0f) continue;
+
+            // Parabola through the log power of k - 1, k, k + 1; for a Hann
+            // window this is within a few % of a bin
+            double a = Math.log(Math.max(power[k - 1], Float.MIN_NORMAL));
+            double b = Math.log(p);
+            double c = Math.log(Math.max(power[k + 1], Float.MIN_NORMAL));
+            double denominator = a - 2.0 * b + c;
+            double delta = denominator < 0.0 ? 0.5 * (a - c) / denominator : 0.0;
+            double peakPower = Math.exp(b - 0.25 * (a - c) * delta);
+            // |X| of a sine of amplitude A is A * windowSum / 2
+            float amplitude = (float) (2.0 * Math.sqrt(peakPower) / windowSum);
+            insertPeak((float) ((k + delta) * binHz), amplitude);
+        }
+    }
+
+    private void insertPeak(float frequencyHz, float amplitude) {
+        int slot = peakCount;
+        if (slot == peakFrequenciesHz.length) {
+            if (amplitude <= peakAmplitudes[slot - 1]) return;
+            slot--;
+        } else {
+            peakCount++;
+        }
+        while (slot > 0 && peakAmplitudes[slot - 1] < amplitude) {
+            peakAmplitudes[slot] = peakAmplitudes[slot - 1];
+            peakFrequenciesHz[slot] = peakFrequenciesHz[slot - 1];
+            slot--;
+        }
+        peakAmplitudes[slot] = amplitude;
+        peakFrequenciesHz[slot] = frequencyHz;
+    }
+
+    /**
+     * Mean square per band: one-sided bins count twice (not DC and Nyquist),
+     * divided by n * sum(w^2) to undo the window
+     */
+    private void measureBands(float binHz) {
+        double scale = 1.0 / ((double) fftSize * windowSquareSum);
+        int last = power.length - 1;
+        for (int band = 0; band < bandRms.length; band++) {
+            double sum = 0.0;
+            int from = Math.max(1, (int) Math.ceil(bandEdgesHz[band] / binHz));
+            int to = Math.min(last, (int) Math.ceil(bandEdgesHz[band + 1] / binHz) - 1);
+            for (int k = from; k <= to; k++) {
+                sum += (k == last ? 1.0 : 2.0) * power[k];
+            }
+            bandRms[band] = (float) Math.sqrt(sum * scale);
+        }
+    }
+
+    // ============================================================
+    // Results
+    // ============================================================
+
+    /**
+     * Spectra computed since construction, +1 per spectrum
+     */
+    public long getSpectrumCount() {
+        return spectrumCount;
+    }
+
+    /**
+     * Timestamp of the newest sample in the last spectrum, 0 before the first
+     */
+    public long getSpectrumTimestampNs() {
+        return spectrumTimestampNs;
+    }
+
+    public float getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    public float getBinWidthHz() {
+        return sampleRateHz / fftSize;
+    }
+
+    public int getPeakCount() {
+        return peakCount;
+    }
+
+    public float getPeakFrequencyHz(int index) {
+        return peakFrequenciesHz[index];
+    }
+
+    public float getPeakAmplitude(int index) {
+        return peakAmplitudes[index];
+    }
+
+    public int getBandCount() {
+        return bandRms.length;
+    }
+
+    /**
+     * Band edges, band i from edge i to edge i + 1; do not modify
+     */
+    public float[] getBandEdgesHz() {
+        return bandEdgesHz;
+    }
+
+    public float getBandRms(int band) {
+        return bandRms[band];
+    }
+
+    /**
+     * Summed power of bins 0..fftSize/2 of the last spectrum; do not modify
+     */
+    public float[] getPower() {
+        return power;
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    public int getHopSize() {
+        return hopSize;
+    }
+}
@@ -0,0 +1,34 @@
+package com.obs.mobile.stats;
+
+/**
+ * StreamingStat - An incremental statistic over one stream of samples
+ *
+ * Fed one timestamped value at a time, in timestamp order, and readable at
+ * any point. Implementations do O(1) amortized work per sample and allocate
+ * nothing after construction, so they can sit in a sensor callback or a
+ * receive thread at 200 Hz per channel.
+ *
+ * Usage:
+ *      StreamingStat rms = new SlidingRms(1_000_000_000L, 512, true);
+ *      rms.add(timestampNs, accelMagnitude);
+ *      float vibration = (float) rms.getValue();
+ *
+ * Not thread-safe; DerivedChannels groups them per stream.
+ */
+public interface StreamingStat {
+
+    /**
+     * One sample; timestamps must not go backwards
+     */
+    void add(long timestampNs, float value);
+
+    /**
+     * The statistic's main value, NaN before the first sample
+     */
+    double getValue();
+
+    /**
+     * Forget every sample, keeping the configuration
+     */
+    void reset();
+}
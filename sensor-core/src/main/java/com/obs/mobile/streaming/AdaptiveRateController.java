@@ -0,0 +1,218 @@
+package com.obs.mobile.streaming;
+
+import java.util.Locale;
+
+/**
+ * AdaptiveRateController - AIMD packet rate and batch size for the sensor stream
+ *
+ * The packet rate climbs additively (INCREASE_HZ_PER_SECOND) while the link
+ * is healthy and is cut multiplicatively (DECREASE_FACTOR) on congestion, at
+ * most once per hold-off period so one burst of loss is not punished
+ * repeatedly. Congestion is any of:
+ *  - receiver feedback with a loss rate above LOSS_THRESHOLD,
+ *  - a round-trip time above RTT_FACTOR x the smallest one of the last
+ *    RTT_WINDOW_NS to 2 x RTT_WINDOW_NS (+ slack), so a route change that
+ *    raises the base RTT for good is re-learned instead of read as congestion,
+ *  - a local send error, a full socket buffer or a full send queue.
+ *
+ * To keep fidelity when the packet rate drops, IMU samples are batched:
+ * getBatchSize() samples per packet keep the IMU sample rate at
+ * targetSampleRateHz until the batch hits maxBatchSize; only below that does
+ * the sample rate fall.
+ *
+ * Each channel has its own bounds. The scalar channels (light, proximity,
+ * magnetometer, derived values, spectrum) ride once per packet, so the
+ * packet rate is clamped to [minRateHz, maxRateHz]. The IMU channel is
+ * clamped to [minSampleRateHz, targetSampleRateHz]: the batch never carries
+ * more than the target, and the packet rate is not cut below
+ * minSampleRateHz / maxBatchSize, so a congested link still gets the IMU
+ * floor (losing more packets) rather than starving the IMU channel.
+ *
+ * Not thread-safe; used from the sender thread.
+ */
+public class AdaptiveRateController {
+
+    public static final float DEFAULT_MIN_RATE_HZ = 2f;
+    public static final float DEFAULT_MAX_RATE_HZ = 20f;
+    public static final float DEFAULT_TARGET_SAMPLE_RATE_HZ = 50f;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 10;
+
+    private static final float INCREASE_HZ_PER_SECOND = 1f;
+    private static final float DECREASE_FACTOR = 0.5f;
+    private static final double LOSS_THRESHOLD = 0.02;
+    private static final float RTT_FACTOR = 2f;
+    private static final long RTT_SLACK_NS = 20_000_000L;
+    private static final long MIN_HOLD_OFF_NS = 500_000_000L;
+    private static final long RTT_WINDOW_NS = 10_000_000_000L;
+
+    private final int maxBatchSize;
+
+    private float minRateHz;
+    private float maxRateHz;
+    private float minSampleRateHz = 0f;
+    private float targetSampleRateHz;
+    private float rateHz;
+
+    private long lastUpdateNs = 0L;
+    private long lastDecreaseNs = Long.MIN_VALUE / 2;
+    // Windowed minimum RTT: the current bucket and the one before it
+    private long rttBucketStartNs = Long.MIN_VALUE / 2;
+    private long rttBucketMinNs = Long.MAX_VALUE;
+    private long previousRttBucketMinNs = Long.MAX_VALUE;
+    private long lastRttNs = 0L;
+    private long decreases = 0L;
+
+    public AdaptiveRateController() {
+        this(DEFAULT_MIN_RATE_HZ, DEFAULT_MAX_RATE_HZ, DEFAULT_TARGET_SAMPLE_RATE_HZ, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public AdaptiveRateController(float minRateHz, float maxRateHz, float targetSampleRateHz, int maxBatchSize) {
+        this.targetSampleRateHz = targetSampleRateHz;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        setRateLimits(minRateHz, maxRateHz);
+        this.rateHz = clamp((minRateHz + maxRateHz) / 2f);
+    }
+
+    /**
+     * Bounds for the packet rate; the current rate is clamped into them
+     */
+    public void setRateLimits(float minRateHz, float maxRateHz) {
+        if (minRateHz <= 0f || maxRateHz < minRateHz) {
+            throw new IllegalArgumentException("need 0 < minRateHz <= maxRateHz");
+        }
+        this.minRateHz = minRateHz;
+        this.maxRateHz = maxRateHz;
+        rateHz = clamp(rateHz);
+    }
+
+    /**
+     * Bounds for the IMU sample rate: the floor holds the packet rate up to
+     * minSampleRateHz / maxBatchSize, the target caps the batch size
+     */
+    public void setImuRateLimits(float minSampleRateHz, float targetSampleRateHz) {
+        if (minSampleRateHz < 0f || targetSampleRateHz <= 0f || targetSampleRateHz < minSampleRateHz) {
+            throw new IllegalArgumentException("need 0 <= minSampleRateHz <= targetSampleRateHz, target > 0");
+        }
+        this.minSampleRateHz = minSampleRateHz;
+        this.targetSampleRateHz = targetSampleRateHz;
+        rateHz = clamp(rateHz);
+    }
+
+    /**
+     * Receiver report for the interval since its previous one
+     *
+     * @param intervalLossRate lost / expected packets in the interval, 0..1
+     * @param rttNs            round-trip time, 0 if unknown
+     */
+    public void onFeedback(double intervalLossRate, long rttNs, long nowNs) {
+        boolean congested = intervalLossRate > LOSS_THRESHOLD;
+        if (rttNs > 0L) {
+            lastRttNs = rttNs;
+            long baseRttNs = updateMinRtt(rttNs, nowNs);
+            if (rttNs > baseRttNs * RTT_FACTOR + RTT_SLACK_NS) {
+                congested = true;
+            }
+        }
+        if (congested) {
+            decrease(nowNs);
+        }
+    }
+
+    /**
+     * Local congestion signal: send error, full socket buffer or send queue
+     */
+    public void onLocalCongestion(long nowNs) {
+        decrease(nowNs);
+    }
+
+    /**
+     * Additive increase for the time since the previous call; call once per packet
+     */
+    public void update(long nowNs) {
+        if (lastUpdateNs != 0L && nowNs - lastDecreaseNs >= holdOffNs()) {
+            float seconds = (nowNs - lastUpdateNs) / 1e9f;
+            rateHz = clamp(rateHz + INCREASE_HZ_PER_SECOND * seconds);
+        }
+        lastUpdateNs = nowNs;
+    }
+
+    public float getRateHz() {
+        return rateHz;
+    }
+
+    public long getSendIntervalMs() {
+        return Math.max(1L, Math.round(1000.0 / rateHz));
+    }
+
+    /**
+     * IMU samples per packet to stay at the target sample rate, up to the maximum
+     */
+    public int getBatchSize() {
+        int batch = (int) Math.ceil(targetSampleRateHz / rateHz);
+        return Math.max(1, Math.min(maxBatchSize, batch));
+    }
+
+    /**
+     * IMU samples per second actually delivered at the current rate and batch
+     */
+    public float getEffectiveSampleRateHz() {
+        return Math.min(targetSampleRateHz, rateHz * getBatchSize());
+    }
+
+    public long getLastRttNs() {
+        return lastRttNs;
+    }
+
+    /**
+     * Smallest RTT of the last one to two windows, 0 if none
+     */
+    public long getMinRttNs() {
+        long min = Math.min(rttBucketMinNs, previousRttBucketMinNs);
+        return min == Long.MAX_VALUE ? 0L : min;
+    }
+
+    public long getDecreases() {
+        return decreases;
+    }
+
+    private void decrease(long nowNs) {
+        if (nowNs - lastDecreaseNs < holdOffNs()) return;
+        rateHz = clamp(rateHz * DECREASE_FACTOR);
+        lastDecreaseNs = nowNs;
+        decreases++;
+    }
+
+    /**
+     * Adds the sample to the current bucket, rotating buckets every
+     * RTT_WINDOW_NS, and returns the windowed minimum including it
+     */
+    private long updateMinRtt(long rttNs, long nowNs) {
+        long elapsed = nowNs - rttBucketStartNs;
+        if (elapsed >= RTT_WINDOW_NS) {
+            // A silent stretch longer than two windows leaves nothing recent
+            previousRttBucketMinNs = elapsed < 2 * RTT_WINDOW_NS ? rttBucketMinNs : Long.MAX_VALUE;
+            rttBucketMinNs = Long.MAX_VALUE;
+            rttBucketStartNs = nowNs;
+        }
+        rttBucketMinNs = Math.min(rttBucketMinNs, rttNs);
+        return Math.min(rttBucketMinNs, previousRttBucketMinNs);
+    }
+
+    /**
+     * Wait at least one RTT (and MIN_HOLD_OFF_NS) for a change to take effect
+     */
+    private long holdOffNs() {
+        return Math.max(MIN_HOLD_OFF_NS, lastRttNs);
+    }
+
+    private float clamp(float rate) {
+        float floor = Math.max(minRateHz, Math.min(maxRateHz, minSampleRateHz / maxBatchSize));
+        return Math.max(floor, Math.min(maxRateHz, rate));
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "rate=%.1fHz batch=%d imu=%.0fHz rtt=%s decreases=%d",
+                rateHz, getBatchSize(), getEffectiveSampleRateHz(), LatencyHistogram.format(lastRttNs), decreases);
+    }
+}
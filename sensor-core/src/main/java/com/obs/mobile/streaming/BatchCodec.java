@@ -0,0 +1,152 @@
+package com.obs.mobile.streaming;
+
+import java.nio.ByteBuffer;
+
+/**
+ * BatchCodec - Compact binary encoding of a SampleBatch
+ *
+ * Every payload starts with a small header, so any payload can be decoded
+ * with BatchCodec.decode() without knowing which codec wrote it:
+ *
+ *      codec id (1 byte) | count (varint) | channels (varint) | codec body
+ *
+ * Consecutive IMU samples are strongly correlated, so both codecs store
+ * differences: timestamps as delta-of-delta, values either as quantised
+ * deltas (DeltaVarintCodec, lossy by at most half a step) or as XOR against
+ * the previous float (GorillaXorCodec, lossless). Numbers are LEB128 varints,
+ * signed ones zigzag-mapped first so small negative deltas stay short.
+ */
+public abstract class BatchCodec {
+
+    public static final byte DELTA_VARINT = 1;
+    public static final byte GORILLA_XOR = 2;
+
+    private final byte id;
+
+    protected BatchCodec(byte id) {
+        this.id = id;
+    }
+
+    public byte getId() {
+        return id;
+    }
+
+    public abstract String getName();
+
+    /**
+     * Upper bound of the encoded size, for sizing the output buffer
+     */
+    public abstract int maxEncodedSize(int count, int channels);
+
+    /**
+     * Append the encoded batch at the buffer's position
+     *
+     * @throws java.nio.BufferOverflowException if out is smaller than maxEncodedSize()
+     */
+    public void encode(SampleBatch batch, ByteBuffer out) {
+        out.put(id);
+        putVarLong(out, batch.count);
+        putVarLong(out, batch.channels);
+        encodeBody(batch, out);
+    }
+
+    protected abstract void encodeBody(SampleBatch batch, ByteBuffer out);
+
+    /**
+     * Decode one payload written by any codec into batch (its arrays are reused)
+     *
+     * @throws IllegalArgumentException if the payload is not a known codec's
+     */
+    public static void decode(ByteBuffer in, SampleBatch batch) {
+        byte id = in.get();
+        int count = (int) getVarLong(in);
+        int channels = (int) getVarLong(in);
+        if (count < 0 || channels <= 0) {
+            throw new IllegalArgumentException("Bad batch header " + count + "x" + channels);
+        }
+        batch.reset(channels);
+        batch.ensureCapacity(count);
+        switch (id) {
+            case DELTA_VARINT:
+                DeltaVarintCodec.decodeBody(in, batch, count);
+                break;
+            case GORILLA_XOR:
+                GorillaXorCodec.decodeBody(in, batch, count);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown batch codec " + id);
+        }
+        batch.count = count;
+    }
+
+    // ============================================================
+    // Timestamps: first value, first delta, then delta-of-delta
+    // ============================================================
+
+    static void putTimestamps(ByteBuffer out, long[] timestamps, int count, long stepNs) {
+        long previous = 0L;
+        long previousDelta = 0L;
+        for (int i = 0; i < count; i++) {
+            long t = Math.floorDiv(timestamps[i] + stepNs / 2, stepNs);   // Nearest step
+            if (i == 0) {
+                putVarLong(out, zigzag(t));
+            } else {
+                long delta = t - previous;
+                putVarLong(out, zigzag(i == 1 ? delta : delta - previousDelta));
+                previousDelta = delta;
+            }
+            previous = t;
+        }
+    }
+
+    static void getTimestamps(ByteBuffer in, long[] timestamps, int count, long stepNs) {
+        long previous = 0L;
+        long previousDelta = 0L;
+        for (int i = 0; i < count; i++) {
+            long value = unzigzag(getVarLong(in));
+            long t;
+            if (i == 0) {
+                t = value;
+            } else {
+                long delta = i == 1 ? value : previousDelta + value;
+                t = previous + delta;
+                previousDelta = delta;
+            }
+            timestamps[i] = t * stepNs;
+            previous = t;
+        }
+    }
+
+    // ============================================================
+    // Varints
+    // ============================================================
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Unsigned LEB128, 1-10 bytes
+     */
+    static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0L) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer in) {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("Varint longer than 10 bytes");
+    }
+}
@@ -0,0 +1,156 @@
+package com.obs.mobile.streaming;
+
+import java.util.Locale;
+
+/**
+ * ClockSyncEstimator - Offset and drift of a receiver clock from NTP-style samples
+ *
+ * Each exchange gives (t1, t2, t3, t4) and from it
+ *      rtt    = (t4 - t1) - (t3 - t2)
+ *      offset = ((t2 - t1) + (t3 - t4)) / 2      (receiver - phone)
+ * The offset is exact when both directions take equally long, so its error
+ * is at most rtt / 2. Only the samples whose rtt is close to the smallest one
+ * in the window are trusted (queueing delays are what make paths
+ * asymmetric); once those span MIN_DRIFT_SPAN_NS a least-squares line through
+ * them also gives the drift, otherwise the lowest-rtt sample is used as is.
+ *
+ * Not thread-safe; used from the sender thread.
+ */
+public class ClockSyncEstimator {
+
+    private static final int MAX_SAMPLES = 32;
+    private static final long MIN_RTT_TOLERANCE_NS = 1_000_000L;
+    private static final long MIN_DRIFT_SPAN_NS = 5_000_000_000L;
+    private static final long MAX_DRIFT_PPB = 500_000L;   // 500 ppm, far beyond any crystal
+
+    private final long[] sampleDeviceNs = new long[MAX_SAMPLES];
+    private final long[] sampleOffsetNs = new long[MAX_SAMPLES];
+    private final long[] sampleRttNs = new long[MAX_SAMPLES];
+    private int next = 0;
+    private int count = 0;
+
+    private boolean valid = false;
+    private long offsetNs = 0L;
+    private long driftPpb = 0L;
+    private long referenceNs = 0L;
+    private long rttNs = 0L;
+
+    /**
+     * Add one exchange; t1 / t4 on the phone clock, t2 / t3 on the receiver's
+     *
+     * @return false if the sample is inconsistent and was ignored
+     */
+    public boolean addSample(long t1, long t2, long t3, long t4) {
+        long rtt = (t4 - t1) - (t3 - t2);
+        if (rtt < 0L || t4 < t1) return false;
+
+        sampleDeviceNs[next] = t1 + (t4 - t1) / 2;
+        sampleOffsetNs[next] = ((t2 - t1) + (t3 - t4)) / 2;
+        sampleRttNs[next] = rtt;
+        next = (next + 1) % MAX_SAMPLES;
+        count = Math.min(count + 1, MAX_SAMPLES);
+        refit();
+        return true;
+    }
+
+    private void refit() {
+        int best = -1;
+        for (int i = 0; i < count; i++) {
+            if (best < 0 || sampleRttNs[i] < sampleRttNs[best]) best = i;
+        }
+        long minRtt = sampleRttNs[best];
+        long maxRtt = minRtt + Math.max(minRtt / 2, MIN_RTT_TOLERANCE_NS);
+
+        // Offsets are fitted relative to the best sample to keep doubles precise
+        long baseOffset = sampleOffsetNs[best];
+        long baseDevice = sampleDeviceNs[best];
+        long firstDevice = Long.MAX_VALUE;
+        long lastDevice = Long.MIN_VALUE;
+        int n = 0;
+        double sumX = 0.0, sumY = 0.0;
+        for (int i = 0; i < count; i++) {
+            if (sampleRttNs[i] > maxRtt) continue;
+            n++;
+            sumX += sampleDeviceNs[i] - baseDevice;
+            sumY += sampleOffsetNs[i] - baseOffset;
+            firstDevice = Math.min(firstDevice, sampleDeviceNs[i]);
+            lastDevice = Math.max(lastDevice, sampleDeviceNs[i]);
+        }
+
+        valid = true;
+        rttNs = minRtt;
+        if (n < 3 || lastDevice - firstDevice < MIN_DRIFT_SPAN_NS) {
+            offsetNs = baseOffset;
+            driftPpb = 0L;
+            referenceNs = baseDevice;
+            return;
+        }
+
+        double meanX = sumX / n;
+        double meanY = sumY / n;
+        double sxx = 0.0, sxy = 0.0;
+        for (int i = 0; i < count; i++) {
+            if (sampleRttNs[i] > maxRtt) continue;
+            double dx = sampleDeviceNs[i] - baseDevice - meanX;
+            sxx += dx * dx;
+            sxy += dx * (sampleOffsetNs[i] - baseOffset - meanY);
+        }
+        double slope = sxy / sxx;
+        driftPpb = Math.max(-MAX_DRIFT_PPB, Math.min(MAX_DRIFT_PPB, Math.round(slope * 1e9)));
+
+        // Anchor the line at the newest trusted sample, where it is used next
+        referenceNs = lastDevice;
+        offsetNs = baseOffset + Math.round(meanY + (lastDevice - baseDevice - meanX) * (driftPpb / 1e9));
+    }
+
+    public boolean hasEstimate() {
+        return valid;
+    }
+
+    public long getOffsetNs() {
+        return offsetNs;
+    }
+
+    public long getDriftPpb() {
+        return driftPpb;
+    }
+
+    public long getReferenceNs() {
+        return referenceNs;
+    }
+
+    /**
+     * Smallest round-trip time in the window; rtt / 2 bounds the offset error
+     */
+    public long getRttNs() {
+        return rttNs;
+    }
+
+    public int getSampleCount() {
+        return count;
+    }
+
+    public long toReceiverNs(long deviceNs) {
+        return deviceNs + offsetNs + Math.round((deviceNs - referenceNs) * (driftPpb / 1e9));
+    }
+
+    /**
+     * The current estimate as sent to the receiver
+     */
+    public ClockSyncMessage toMessage() {
+        return ClockSyncMessage.estimate(offsetNs, driftPpb, referenceNs, rttNs);
+    }
+
+    public void reset() {
+        next = 0;
+        count = 0;
+        valid = false;
+    }
+
+    @Override
+    public String toString() {
+        if (!valid) return "clock unsynced";
+        return String.format(Locale.US, "clock offset=%dns drift=%.1fppm +/-%s",
+                offsetNs, driftPpb / 1000.0, LatencyHistogram.format(rttNs / 2));
+    }
+}
@@ -0,0 +1,128 @@
+package com.obs.mobile.streaming;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * ClockSyncMessage - NTP-style clock exchange between phone and receiver
+ *
+ * Three text messages travel on the stream's own socket (datagrams for UDP,
+ * length-prefixed frames for TCP), next to the JSON packets:
+ *
+ *      OBS-SYNC 1 <t1>                          phone -> receiver
+ *      OBS-SYNC-REPLY 1 <t1> <t2> <t3>          receiver -> phone
+ *      OBS-CLOCK 1 <offset ns> <drift ppb> <reference ns> <rtt ns>
+ *                                               phone -> receiver
+ *
+ * t1 is the phone's send time, t2 / t3 the receiver's receive and reply
+ * time, and the phone notes t4 when the reply arrives. The phone runs the
+ * ClockSyncEstimator and tells each receiver the result, so receivers only
+ * answer requests and apply OBS-CLOCK:
+ *
+ *      receiverNs = deviceNs + offset + (deviceNs - reference) * drift / 1e9
+ *
+ * Phone times are elapsedRealtimeNanos, the clock of every timestamp in the
+ * sensor packets; receiver times are the receiver's monotonic clock.
+ */
+public class ClockSyncMessage {
+
+    public enum Type { REQUEST, REPLY, ESTIMATE }
+
+    private static final String REQUEST_PREFIX = "OBS-SYNC";
+    private static final String REPLY_PREFIX = "OBS-SYNC-REPLY";
+    private static final String ESTIMATE_PREFIX = "OBS-CLOCK";
+    private static final int VERSION = 1;
+
+    public final Type type;
+
+    // REQUEST / REPLY
+    public final long originNs;
+    public final long receiveNs;
+    public final long transmitNs;
+
+    // ESTIMATE
+    public final long offsetNs;
+    public final long driftPpb;
+    public final long referenceNs;
+    public final long rttNs;
+
+    private ClockSyncMessage(Type type, long originNs, long receiveNs, long transmitNs,
+                             long offsetNs, long driftPpb, long referenceNs, long rttNs) {
+        this.type = type;
+        this.originNs = originNs;
+        this.receiveNs = receiveNs;
+        this.transmitNs = transmitNs;
+        this.offsetNs = offsetNs;
+        this.driftPpb = driftPpb;
+        this.referenceNs = referenceNs;
+        this.rttNs = rttNs;
+    }
+
+    public static ClockSyncMessage request(long originNs) {
+        return new ClockSyncMessage(Type.REQUEST, originNs, 0L, 0L, 0L, 0L, 0L, 0L);
+    }
+
+    public static ClockSyncMessage reply(long originNs, long receiveNs, long transmitNs) {
+        return new ClockSyncMessage(Type.REPLY, originNs, receiveNs, transmitNs, 0L, 0L, 0L, 0L);
+    }
+
+    public static ClockSyncMessage estimate(long offsetNs, long driftPpb, long referenceNs, long rttNs) {
+        return new ClockSyncMessage(Type.ESTIMATE, 0L, 0L, 0L, offsetNs, driftPpb, referenceNs, rttNs);
+    }
+
+    /**
+     * Receiver time of a phone timestamp (ESTIMATE only)
+     */
+    public long toReceiverNs(long deviceNs) {
+        return deviceNs + offsetNs + Math.round((deviceNs - referenceNs) * (driftPpb / 1e9));
+    }
+
+    public byte[] encode() {
+        String text;
+        switch (type) {
+            case REQUEST:
+                text = REQUEST_PREFIX + " " + VERSION + " " + originNs;
+                break;
+            case REPLY:
+                text = REPLY_PREFIX + " " + VERSION + " " + originNs + " " + receiveNs + " " + transmitNs;
+                break;
+            default:
+                text = ESTIMATE_PREFIX + " " + VERSION + " " + offsetNs + " " + driftPpb
+                        + " " + referenceNs + " " + rttNs;
+                break;
+        }
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parsed message, or null if the bytes are not a clock sync message
+     */
+    public static ClockSyncMessage parse(byte[] data, int offset, int length) {
+        if (length < 4 || data[offset] != 'O') return null;   // JSON packets start with '{'
+        String[] parts = new String(data, offset, length, StandardCharsets.UTF_8).trim().split(" ");
+        try {
+            if (parts.length < 2 || Integer.parseInt(parts[1]) != VERSION) return null;
+            if (REQUEST_PREFIX.equals(parts[0]) && parts.length == 3) {
+                return request(Long.parseLong(parts[2]));
+            }
+            if (REPLY_PREFIX.equals(parts[0]) && parts.length == 5) {
+                return reply(Long.parseLong(parts[2]), Long.parseLong(parts[3]), Long.parseLong(parts[4]));
+            }
+            if (ESTIMATE_PREFIX.equals(parts[0]) && parts.length == 6) {
+                return estimate(Long.parseLong(parts[2]), Long.parseLong(parts[3]),
+                        Long.parseLong(parts[4]), Long.parseLong(parts[5]));
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        if (type == Type.ESTIMATE) {
+            return "clock offset=" + offsetNs + "ns drift=" + driftPpb + "ppb rtt=" + LatencyHistogram.format(rttNs);
+        }
+        return "clock " + type.name().toLowerCase(Locale.US) + " t1=" + originNs;
+    }
+}
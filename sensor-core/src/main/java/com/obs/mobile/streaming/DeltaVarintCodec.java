@@ -0,0 +1,111 @@
+package com.obs.mobile.streaming;
+
+import java.nio.ByteBuffer;
+
+/**
+ * DeltaVarintCodec - Quantised delta + zigzag + varint encoding
+ *
+ * Each value is rounded to a multiple of its channel's quantisation step and
+ * stored as the zigzag varint of the difference to the previous sample of
+ * the same channel; channels are written one after another so each run of
+ * deltas has similar magnitudes. Timestamps are rounded to timestampStepNs.
+ * A slowly changing gyro or accelerometer channel costs one byte per sample.
+ *
+ * The steps travel in the payload, so a receiver needs no configuration:
+ *
+ *      body = timestamp step (varint) | step per channel (float32 each)
+ *             | timestamps | channel 0 deltas | channel 1 deltas | ...
+ *
+ * Decoded values are within half a step of the originals. Values beyond
+ * +/- step * 2^61 saturate there and NaN decodes as 0.
+ */
+public class DeltaVarintCodec extends BatchCodec {
+
+    // Defaults for [gx, gy, gz] in deg/s and [ax, ay, az] in m/s^2
+    public static final float DEFAULT_GYRO_STEP = 0.01f;
+    public static final float DEFAULT_ACCEL_STEP = 0.001f;
+    public static final long DEFAULT_TIMESTAMP_STEP_NS = 1000L;
+
+    // Keeps every delta of two quantised values inside a long
+    private static final long MAX_QUANTUM = 1L << 61;
+
+    private final long timestampStepNs;
+    private final float[] steps;
+
+    /**
+     * @param steps quantisation step of each channel, in the channel's unit
+     */
+    public DeltaVarintCodec(long timestampStepNs, float... steps) {
+        super(DELTA_VARINT);
+        if (timestampStepNs <= 0L) {
+            throw new IllegalArgumentException("timestampStepNs must be > 0");
+        }
+        for (float step : steps) {
+            if (!(step > 0f)) throw new IllegalArgumentException("steps must be > 0");
+        }
+        this.timestampStepNs = timestampStepNs;
+        this.steps = steps.clone();
+    }
+
+    /**
+     * Codec for the streamer's IMU samples: gyro x/y/z then accel x/y/z
+     */
+    public static DeltaVarintCodec forImu() {
+        return new DeltaVarintCodec(DEFAULT_TIMESTAMP_STEP_NS,
+                DEFAULT_GYRO_STEP, DEFAULT_GYRO_STEP, DEFAULT_GYRO_STEP,
+                DEFAULT_ACCEL_STEP, DEFAULT_ACCEL_STEP, DEFAULT_ACCEL_STEP);
+    }
+
+    @Override
+    public String getName() {
+        return "delta-varint";
+    }
+
+    @Override
+    public int maxEncodedSize(int count, int channels) {
+        return 1 + 5 + 5 + 10 + 4 * channels + 10 * count + 10 * count * channels;
+    }
+
+    @Override
+    protected void encodeBody(SampleBatch batch, ByteBuffer out) {
+        if (batch.channels != steps.length) {
+            throw new IllegalArgumentException("codec has " + steps.length + " steps, batch "
+                    + batch.channels + " channels");
+        }
+        putVarLong(out, timestampStepNs);
+        for (float step : steps) {
+            out.putFloat(step);
+        }
+        putTimestamps(out, batch.timestampsNs, batch.count, timestampStepNs);
+
+        int channels = batch.channels;
+        for (int c = 0; c < channels; c++) {
+            double step = steps[c];
+            long previous = 0L;
+            for (int i = 0; i < batch.count; i++) {
+                long q = Math.round(batch.values[i * channels + c] / step);
+                q = Math.max(-MAX_QUANTUM, Math.min(MAX_QUANTUM, q));
+                putVarLong(out, zigzag(q - previous));
+                previous = q;
+            }
+        }
+    }
+
+    static void decodeBody(ByteBuffer in, SampleBatch batch, int count) {
+        long timestampStepNs = getVarLong(in);
+        int channels = batch.channels;
+        // Steps are read in place, so decoding allocates nothing
+        int stepsAt = in.position();
+        in.position(stepsAt + channels * 4);
+        getTimestamps(in, batch.timestampsNs, count, timestampStepNs);
+
+        for (int c = 0; c < channels; c++) {
+            double step = in.getFloat(stepsAt + c * 4);
+            long q = 0L;
+            for (int i = 0; i < count; i++) {
+                q += unzigzag(getVarLong(in));
+                batch.values[i * channels + c] = (float) (q * step);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.obs.mobile.streaming;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * DiscoveryProtocol - Wire format of receiver discovery on the LAN
+ *
+ * Receivers announce themselves on a multicast group every few seconds and
+ * whenever a phone probes the group:
+ *
+ *      OBS-RECEIVER 1 <stream port> <name>     receiver -> group
+ *      OBS-PROBE 1                             phone -> group
+ *
+ * The receiver's address is the source address of the announcement. Sensor
+ * packets can also be streamed to STREAM_GROUP so one transmission reaches
+ * every listener that joined it.
+ */
+public final class DiscoveryProtocol {
+
+    public static final String DISCOVERY_GROUP = "239.255.77.77";
+    public static final int DISCOVERY_PORT = 5099;
+
+    public static final String STREAM_GROUP = "239.255.77.78";
+    public static final int STREAM_PORT = 5000;
+
+    // Stay on the local network
+    public static final int MULTICAST_TTL = 1;
+
+    public static final long ANNOUNCE_INTERVAL_MS = 2000L;
+    // A receiver is forgotten after missing this many announcements
+    public static final int MISSED_ANNOUNCEMENTS = 3;
+
+    private static final String ANNOUNCE = "OBS-RECEIVER";
+    private static final String PROBE = "OBS-PROBE";
+    private static final int VERSION = 1;
+
+    private DiscoveryProtocol() {}
+
+    public static byte[] encodeAnnouncement(int streamPort, String name) {
+        return (ANNOUNCE + " " + VERSION + " " + streamPort + " " + name).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static byte[] encodeProbe() {
+        return (PROBE + " " + VERSION).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static boolean isProbe(byte[] data, int length) {
+        return new String(data, 0, length, StandardCharsets.UTF_8).startsWith(PROBE + " ");
+    }
+
+    /**
+     * Parsed announcement, or null if the datagram is not one
+     */
+    public static Announcement parseAnnouncement(byte[] data, int length) {
+        String[] parts = new String(data, 0, length, StandardCharsets.UTF_8).trim().split(" ", 4);
+        if (parts.length < 3 || !ANNOUNCE.equals(parts[0])) return null;
+        try {
+            if (Integer.parseInt(parts[1]) != VERSION) return null;
+            int port = Integer.parseInt(parts[2]);
+            if (port <= 0 || port > 65535) return null;
+            return new Announcement(port, parts.length == 4 ? parts[3] : "");
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static class Announcement {
+        public final int streamPort;
+        public final String name;
+
+        Announcement(int streamPort, String name) {
+            this.streamPort = streamPort;
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.obs.mobile.streaming;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * FeedbackMessage - Receiver report sent back to the phone
+ *
+ * Receivers reply on the same socket the stream arrives on (the datagram's
+ * source address for UDP, the connection itself for TCP) about twice a
+ * second:
+ *
+ *      OBS-FEEDBACK 1 <echo seq> <echo send ns> <hold ns> <received> <lost>
+ *
+ * echo seq / echo send ns repeat "seq" and "timestamp_ns" of the newest
+ * packet, hold ns is how long the receiver held it before replying, so the
+ * phone gets the round-trip time on its own clock:
+ *      rtt = now - echoSendNs - holdNs
+ * received / lost are the receiver's running totals for this sender.
+ */
+public class FeedbackMessage {
+
+    private static final String PREFIX = "OBS-FEEDBACK";
+    private static final int VERSION = 1;
+
+    public final long echoSequence;
+    public final long echoSendNs;
+    public final long holdNs;
+    public final long received;
+    public final long lost;
+
+    public FeedbackMessage(long echoSequence, long echoSendNs, long holdNs, long received, long lost) {
+        this.echoSequence = echoSequence;
+        this.echoSendNs = echoSendNs;
+        this.holdNs = holdNs;
+        this.received = received;
+        this.lost = lost;
+    }
+
+    public byte[] encode() {
+        return (PREFIX + " " + VERSION + " " + echoSequence + " " + echoSendNs + " " + holdNs
+                + " " + received + " " + lost).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parsed message, or null if the bytes are not a feedback message
+     */
+    public static FeedbackMessage parse(byte[] data, int offset, int length) {
+        String[] parts = new String(data, offset, length, StandardCharsets.UTF_8).trim().split(" ");
+        if (parts.length != 7 || !PREFIX.equals(parts[0])) return null;
+        try {
+            if (Integer.parseInt(parts[1]) != VERSION) return null;
+            return new FeedbackMessage(
+                    Long.parseLong(parts[2]),
+                    Long.parseLong(parts[3]),
+                    Long.parseLong(parts[4]),
+                    Long.parseLong(parts[5]),
+                    Long.parseLong(parts[6]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "feedback seq=" + echoSequence + " received=" + received + " lost=" + lost;
+    }
+}
@@ -0,0 +1,163 @@
+package com.obs.mobile.streaming;
+
+import java.nio.ByteBuffer;
+
+/**
+ * GorillaXorCodec - Lossless XOR float encoding in the style of Facebook's Gorilla
+ *
+ * Each float is XORed with the previous value of its channel. Similar values
+ * share sign, exponent and high mantissa bits, so the XOR has long runs of
+ * leading and trailing zeros and only the bits in between are stored:
+ *
+ *      '0'                         same value as before
+ *      '10' + bits                 meaningful bits fit the previous window
+ *      '11' + 5 bits leading zeros + 5 bits (length - 1) + bits
+ *
+ * The first value of a channel is stored as its 32 raw bits. Timestamps are
+ * byte-aligned delta-of-delta varints in ns ahead of the bit stream;
+ * channels follow each other in the bit stream, padded to a byte at the end.
+ * Noisy low bits limit the gain, so for sensor data that tolerates it
+ * DeltaVarintCodec is usually smaller.
+ */
+public class GorillaXorCodec extends BatchCodec {
+
+    public GorillaXorCodec() {
+        super(GORILLA_XOR);
+    }
+
+    @Override
+    public String getName() {
+        return "gorilla-xor";
+    }
+
+    @Override
+    public int maxEncodedSize(int count, int channels) {
+        long bits = (long) channels * (32 + (long) count * (2 + 5 + 5 + 32));
+        return (int) (1 + 5 + 5 + 10L * count + (bits + 7) / 8);
+    }
+
+    @Override
+    protected void encodeBody(SampleBatch batch, ByteBuffer out) {
+        putTimestamps(out, batch.timestampsNs, batch.count, 1L);
+
+        BitWriter writer = new BitWriter(out);
+        int channels = batch.channels;
+        for (int c = 0; c < channels; c++) {
+            int previous = 0;
+            int previousLeading = -1;
+            int previousTrailing = 0;
+            for (int i = 0; i < batch.count; i++) {
+                int bits = Float.floatToRawIntBits(batch.values[i * channels + c]);
+                if (i == 0) {
+                    writer.write(bits, 32);
+                    previous = bits;
+                    continue;
+                }
+
+                int xor = bits ^ previous;
+                previous = bits;
+                if (xor == 0) {
+                    writer.write(0, 1);
+                    continue;
+                }
+                int leading = Math.min(31, Integer.numberOfLeadingZeros(xor));
+                int trailing = Integer.numberOfTrailingZeros(xor);
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                    writer.write(0b10, 2);
+                    writer.write(xor >>> previousTrailing, 32 - previousLeading - previousTrailing);
+                } else {
+                    int length = 32 - leading - trailing;
+                    writer.write(0b11, 2);
+                    writer.write(leading, 5);
+                    writer.write(length - 1, 5);
+                    writer.write(xor >>> trailing, length);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+        }
+        writer.finish();
+    }
+
+    static void decodeBody(ByteBuffer in, SampleBatch batch, int count) {
+        getTimestamps(in, batch.timestampsNs, count, 1L);
+
+        BitReader reader = new BitReader(in);
+        int channels = batch.channels;
+        for (int c = 0; c < channels; c++) {
+            int previous = 0;
+            int previousLeading = 0;
+            int previousTrailing = 0;
+            for (int i = 0; i < count; i++) {
+                int bits;
+                if (i == 0) {
+                    bits = reader.read(32);
+                } else if (reader.read(1) == 0) {
+                    bits = previous;
+                } else if (reader.read(1) == 0) {
+                    int length = 32 - previousLeading - previousTrailing;
+                    bits = previous ^ (reader.read(length) << previousTrailing);
+                } else {
+                    previousLeading = reader.read(5);
+                    int length = reader.read(5) + 1;
+                    previousTrailing = 32 - previousLeading - length;
+                    bits = previous ^ (reader.read(length) << previousTrailing);
+                }
+                batch.values[i * channels + c] = Float.intBitsToFloat(bits);
+                previous = bits;
+            }
+        }
+    }
+
+    // ============================================================
+    // Bit streams, most significant bit first
+    // ============================================================
+
+    private static final class BitWriter {
+        private final ByteBuffer out;
+        private long pending = 0L;
+        private int pendingBits = 0;
+
+        BitWriter(ByteBuffer out) {
+            this.out = out;
+        }
+
+        /**
+         * Write the low count bits of value, 1 <= count <= 32
+         */
+        void write(int value, int count) {
+            pending = (pending << count) | (value & (0xFFFFFFFFL >>> (32 - count)));
+            pendingBits += count;
+            while (pendingBits >= 8) {
+                pendingBits -= 8;
+                out.put((byte) (pending >>> pendingBits));
+            }
+        }
+
+        void finish() {
+            if (pendingBits > 0) {
+                out.put((byte) (pending << (8 - pendingBits)));
+                pendingBits = 0;
+            }
+        }
+    }
+
+    private static final class BitReader {
+        private final ByteBuffer in;
+        private long pending = 0L;
+        private int pendingBits = 0;
+
+        BitReader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        int read(int count) {
+            while (pendingBits < count) {
+                pending = (pending << 8) | (in.get() & 0xFF);
+                pendingBits += 8;
+            }
+            pendingBits -= count;
+            return (int) ((pending >>> pendingBits) & (0xFFFFFFFFL >>> (32 - count)));
+        }
+    }
+}
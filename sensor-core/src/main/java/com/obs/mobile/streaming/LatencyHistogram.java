@@ -0,0 +1,102 @@
+package com.obs.mobile.streaming;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram - Fixed-size log-linear histogram of durations in ns
+ *
+ * Each power of two is split into SUB_BUCKETS linear buckets, so any
+ * recorded value is reported with at most 12.5% error. Recording is one
+ * atomic increment and never allocates, so it can sit on the send path and be
+ * read from another thread.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Record one duration; negative values count as 0
+     */
+    public void record(long valueNs) {
+        counts.incrementAndGet(bucketOf(Math.max(0L, valueNs)));
+    }
+
+    public long getCount() {
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Value at a percentile (0-100), the middle of its bucket; 0 if empty
+     */
+    public long getPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0L) return 0L;
+
+        long rank = Math.max(1L, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return (lowerBound(i) + upperBound(i)) / 2;
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0L);
+        }
+    }
+
+    /**
+     * "p50=1.2ms p90=... p99=... max~..." for logs
+     */
+    public String summary() {
+        if (getCount() == 0L) return "n=0";
+        return "n=" + getCount()
+                + " p50=" + format(getPercentile(50))
+                + " p90=" + format(getPercentile(90))
+                + " p99=" + format(getPercentile(99))
+                + " max~" + format(getPercentile(100));
+    }
+
+    public static String format(long ns) {
+        if (ns >= 1_000_000L) return String.format(Locale.US, "%.1fms", ns / 1e6);
+        if (ns >= 1_000L) return String.format(Locale.US, "%.1fus", ns / 1e3);
+        return ns + "ns";
+    }
+
+    // ============================================================
+    // Bucket math
+    // ============================================================
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);   // >= SUB_BUCKET_BITS
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (1L << exponent) + (sub << (exponent - SUB_BUCKET_BITS));
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return lowerBound(bucket) + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,428 @@
+package com.obs.mobile.streaming;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * PacketSpool - Bounded on-disk store of packets a receiver did not get
+ *
+ * Used by a StreamDestination while its receiver is unreachable. Packets are
+ * appended to numbered segment files and read back oldest first for
+ * backfill; a segment is deleted once it has been read. Two caps keep the
+ * spool bounded: when it grows beyond maxBytes, or its oldest segment is
+ * older than maxAgeMs, whole segments are evicted from the old end (counted
+ * in getPacketsEvicted()). Spooled packets survive a restart of the app; the
+ * read position does not, so at most one segment is sent twice.
+ *
+ * The spool also remembers, in memory, the packets sent since the receiver
+ * last confirmed one (remember() / confirm()). An outage is only noticed a
+ * little after it started, so when it is, spillUnconfirmed() moves those
+ * packets to disk as well and the gap is covered from its first packet.
+ *
+ * Segment record (big-endian):
+ *
+ *      length (int) | seq (long) | spooled at, wall-clock ms (long) | packet
+ *
+ * Files are opened on first use, so a spool can be created on any thread;
+ * every other method belongs to the sender thread.
+ */
+public class PacketSpool {
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_MAX_AGE_MS = 6L * 60 * 60 * 1000;
+    public static final int MAX_PACKET = 65535;
+
+    /**
+     * Prefix of a backfilled packet on the wire, followed by the original packet
+     */
+    public static final byte[] BACKFILL_PREFIX = "OBS-BACKFILL 1\n".getBytes(StandardCharsets.US_ASCII);
+
+    static final int RECORD_HEADER_SIZE = 20;
+    private static final int RECENT_CAPACITY = 256;
+    private static final long MAX_SEGMENT_BYTES = 1L << 20;
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+
+    private final File directory;
+    private final long maxBytes;
+    private final long maxAgeMs;
+    private final long segmentBytes;
+
+    /**
+     * One segment file; newestMs is the spool time of its last packet
+     */
+    private static final class Segment {
+        final int number;
+        final File file;
+        long bytes;
+        long packets;
+        long newestMs;
+
+        Segment(int number, File file) {
+            this.number = number;
+            this.file = file;
+        }
+    }
+
+    // Oldest first; the last one is written to, the first one read from
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private boolean opened = false;
+    private int nextNumber = 0;
+    private FileChannel writeChannel;
+    private FileChannel readChannel;
+    private long readPosition = 0L;
+    private final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+    private long bytes = 0L;
+    private long packets = 0L;
+    private long packetsSpooled = 0L;
+    private long packetsEvicted = 0L;
+
+    // Sent but not yet confirmed by the receiver, oldest at recentStart
+    private final ByteBuffer[] recent = new ByteBuffer[RECENT_CAPACITY];
+    private final long[] recentSeq = new long[RECENT_CAPACITY];
+    private int recentStart = 0;
+    private int recentCount = 0;
+
+    public PacketSpool(File directory) {
+        this(directory, DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE_MS);
+    }
+
+    /**
+     * @param maxBytes disk space the spool may use
+     * @param maxAgeMs how long a spooled packet is kept for backfill
+     */
+    public PacketSpool(File directory, long maxBytes, long maxAgeMs) {
+        if (maxBytes < 2 * (RECORD_HEADER_SIZE + MAX_PACKET)) {
+            throw new IllegalArgumentException("maxBytes too small for two packets");
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxAgeMs = maxAgeMs;
+        this.segmentBytes = Math.max(RECORD_HEADER_SIZE + MAX_PACKET, Math.min(MAX_SEGMENT_BYTES, maxBytes / 8));
+    }
+
+    // ============================================================
+    // Unconfirmed packets (memory)
+    // ============================================================
+
+    /**
+     * Keep a copy of a packet just sent until confirm() covers its seq; the
+     * oldest copy is forgotten when RECENT_CAPACITY packets are waiting
+     */
+    public void remember(ByteBuffer packet, long seq) {
+        int slot = (recentStart + recentCount) % RECENT_CAPACITY;
+        if (recentCount == RECENT_CAPACITY) {
+            recentStart = (recentStart + 1) % RECENT_CAPACITY;
+        } else {
+            recentCount++;
+        }
+        ByteBuffer copy = recent[slot];
+        if (copy == null || copy.capacity() < packet.remaining()) {
+            copy = ByteBuffer.allocate(Math.max(packet.remaining(), 1024));
+            recent[slot] = copy;
+        }
+        copy.clear();
+        copy.put(packet.duplicate());
+        copy.flip();
+        recentSeq[slot] = seq;
+    }
+
+    /**
+     * The receiver has seen packet seq, so everything sent up to it needs no spooling
+     */
+    public void confirm(long seq) {
+        while (recentCount > 0 && recentSeq[recentStart] <= seq) {
+            recentStart = (recentStart + 1) % RECENT_CAPACITY;
+            recentCount--;
+        }
+    }
+
+    /**
+     * Move every unconfirmed packet to disk; called when an outage is detected
+     */
+    public void spillUnconfirmed(long nowMs) throws IOException {
+        while (recentCount > 0) {
+            append(recent[recentStart], recentSeq[recentStart], nowMs);
+            recentStart = (recentStart + 1) % RECENT_CAPACITY;
+            recentCount--;
+        }
+    }
+
+    // ============================================================
+    // Spool (disk)
+    // ============================================================
+
+    /**
+     * Append one packet; its position is not moved
+     */
+    public void append(ByteBuffer packet, long seq, long nowMs) throws IOException {
+        int length = packet.remaining();
+        if (length > MAX_PACKET) {
+            throw new IOException("Packet of " + length + " bytes is too large to spool");
+        }
+        open();
+
+        Segment segment = segments.peekLast();
+        if (segment == null || writeChannel == null || segment.bytes + RECORD_HEADER_SIZE + length > segmentBytes) {
+            segment = startSegment();
+        }
+        header.clear();
+        header.putInt(length).putLong(seq).putLong(nowMs);
+        header.flip();
+        ByteBuffer payload = packet.duplicate();
+        long position = segment.bytes;
+        while (header.hasRemaining()) {
+            position += writeChannel.write(header, position);
+        }
+        while (payload.hasRemaining()) {
+            position += writeChannel.write(payload, position);
+        }
+
+        segment.bytes = position;
+        segment.packets++;
+        segment.newestMs = nowMs;
+        bytes += RECORD_HEADER_SIZE + length;
+        packets++;
+        packetsSpooled++;
+        enforceLimits(nowMs);
+    }
+
+    /**
+     * Read the oldest spooled packet into out, at its position; out needs
+     * room for MAX_PACKET bytes
+     *
+     * @return the packet's length, or -1 if the spool is empty (out is unchanged)
+     */
+    public int next(ByteBuffer out, long nowMs) throws IOException {
+        open();
+        enforceLimits(nowMs);
+        while (true) {
+            Segment segment = segments.peekFirst();
+            if (segment == null) return -1;
+            if (readPosition >= segment.bytes) {
+                if (segment == segments.peekLast()) return -1;   // Caught up with the writer
+                deleteOldest(false);
+                continue;
+            }
+            if (readChannel == null) {
+                readChannel = FileChannel.open(segment.file.toPath(), StandardOpenOption.READ);
+            }
+
+            header.clear();
+            readFully(header, readPosition);
+            header.flip();
+            int length = header.getInt();
+            if (length < 0 || length > MAX_PACKET || readPosition + RECORD_HEADER_SIZE + length > segment.bytes) {
+                // Unreadable from here on: give up the rest of the segment
+                deleteOldest(true);
+                continue;
+            }
+            if (length > out.remaining()) {
+                throw new IllegalArgumentException("out has room for " + out.remaining() + " bytes, packet is " + length);
+            }
+
+            ByteBuffer target = out.duplicate();
+            target.limit(target.position() + length);
+            readFully(target, readPosition + RECORD_HEADER_SIZE);
+            out.position(out.position() + length);
+
+            readPosition += RECORD_HEADER_SIZE + length;
+            segment.packets--;
+            packets--;
+            return length;
+        }
+    }
+
+    public boolean isEmpty() {
+        return packets <= 0L && opened;
+    }
+
+    /**
+     * Packets waiting for backfill
+     */
+    public long getPackets() {
+        return packets;
+    }
+
+    /**
+     * Disk space in use, including read records of the oldest segment
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getPacketsSpooled() {
+        return packetsSpooled;
+    }
+
+    /**
+     * Packets discarded unread by the size or age cap
+     */
+    public long getPacketsEvicted() {
+        return packetsEvicted;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Spool time of the last packet in the oldest segment, Long.MAX_VALUE if
+     * there is none; for picking which of several spools to evict from
+     */
+    long getOldestSegmentMs() {
+        Segment oldest = segments.peekFirst();
+        return oldest != null ? oldest.newestMs : Long.MAX_VALUE;
+    }
+
+    /**
+     * Evict the oldest segment unread, for a cap shared with other spools
+     *
+     * @return false if there was nothing to evict
+     */
+    boolean evictOldest() {
+        if (segments.isEmpty()) return false;
+        deleteOldest(true);
+        return true;
+    }
+
+    public void close() {
+        closeQuietly(writeChannel);
+        closeQuietly(readChannel);
+        writeChannel = null;
+        readChannel = null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "spool %d packets %.1f MB, %d evicted", packets, bytes / 1e6, packetsEvicted);
+    }
+
+    // ============================================================
+    // Segments
+    // ============================================================
+
+    /**
+     * Pick up segments left by a previous run and count their packets; a
+     * partly written last record is cut off
+     */
+    private void open() throws IOException {
+        if (opened) return;
+        opened = true;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File[] files = directory.listFiles((dir, name) -> segmentNumber(name) >= 0);
+        if (files == null) return;
+        Arrays.sort(files, (a, b) -> Integer.compare(segmentNumber(a.getName()), segmentNumber(b.getName())));
+
+        for (File file : files) {
+            Segment segment = new Segment(segmentNumber(file.getName()), file);
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                long position = 0L;
+                while (position + RECORD_HEADER_SIZE <= size) {
+                    header.clear();
+                    channel.read(header, position);
+                    header.flip();
+                    int length = header.getInt();
+                    if (length < 0 || length > MAX_PACKET || position + RECORD_HEADER_SIZE + length > size) break;
+                    header.getLong();
+                    segment.newestMs = header.getLong();
+                    position += RECORD_HEADER_SIZE + length;
+                    segment.packets++;
+                }
+                if (position < size) {
+                    channel.truncate(position);
+                }
+                segment.bytes = position;
+            }
+            if (segment.packets == 0) {
+                file.delete();
+                continue;
+            }
+            segments.addLast(segment);
+            bytes += segment.bytes;
+            packets += segment.packets;
+            nextNumber = segment.number + 1;
+        }
+    }
+
+    private Segment startSegment() throws IOException {
+        closeQuietly(writeChannel);
+        writeChannel = null;
+        Segment segment = new Segment(nextNumber, new File(directory,
+                String.format(Locale.US, "%s%06d%s", SEGMENT_PREFIX, nextNumber, SEGMENT_SUFFIX)));
+        writeChannel = FileChannel.open(segment.file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        nextNumber++;
+        segments.addLast(segment);
+        return segment;
+    }
+
+    /**
+     * Evict from the old end while the spool is too large or too old; the
+     * segment being written is only evicted for age
+     */
+    private void enforceLimits(long nowMs) {
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.peekFirst();
+            boolean tooLarge = bytes > maxBytes && segments.size() > 1;
+            boolean tooOld = nowMs - oldest.newestMs > maxAgeMs;
+            if (!tooLarge && !tooOld) return;
+            deleteOldest(true);
+        }
+    }
+
+    private void deleteOldest(boolean evicted) {
+        Segment oldest = segments.pollFirst();
+        closeQuietly(readChannel);
+        readChannel = null;
+        readPosition = 0L;
+        if (segments.isEmpty()) {
+            // It was also the segment being written
+            closeQuietly(writeChannel);
+            writeChannel = null;
+        }
+        bytes -= oldest.bytes;
+        packets -= oldest.packets;
+        if (evicted) {
+            packetsEvicted += oldest.packets;
+        }
+        oldest.file.delete();
+    }
+
+    private void readFully(ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            int read = readChannel.read(target, position);
+            if (read < 0) throw new IOException("Spool segment truncated");
+            position += read;
+        }
+    }
+
+    private static int segmentNumber(String name) {
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) return -1;
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.obs.mobile.streaming;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketTimeoutException;
+
+/**
+ * ReceiverAnnouncer - Receiver side of discovery
+ *
+ * Announces "this host receives sensor packets on <port>" on the discovery
+ * group every ANNOUNCE_INTERVAL_MS and answers probes right away. Used by
+ * Java receivers and tests; sensor_receiver.py implements the same protocol.
+ */
+public class ReceiverAnnouncer {
+
+    private static final int MAX_DATAGRAM = 512;
+
+    private final NetworkInterface networkInterface;
+    private final InetSocketAddress group;
+    private final byte[] announcement;
+
+    private volatile boolean running = false;
+    private MulticastSocket socket;
+    private Thread thread;
+
+    /**
+     * @param networkInterface interface to announce on, null for the system default
+     */
+    public ReceiverAnnouncer(NetworkInterface networkInterface, String name, int streamPort) {
+        this(networkInterface, new InetSocketAddress(DiscoveryProtocol.DISCOVERY_GROUP,
+                DiscoveryProtocol.DISCOVERY_PORT), name, streamPort);
+    }
+
+    public ReceiverAnnouncer(NetworkInterface networkInterface, InetSocketAddress group, String name, int streamPort) {
+        this.networkInterface = networkInterface;
+        this.group = group;
+        this.announcement = DiscoveryProtocol.encodeAnnouncement(streamPort, name);
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) return;
+
+        MulticastSocket opened = new MulticastSocket(group.getPort());
+        try {
+            opened.setSoTimeout((int) DiscoveryProtocol.ANNOUNCE_INTERVAL_MS);
+            opened.setTimeToLive(DiscoveryProtocol.MULTICAST_TTL);
+            if (networkInterface != null) {
+                opened.setNetworkInterface(networkInterface);
+            }
+            opened.joinGroup(group, networkInterface);
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+
+        socket = opened;
+        running = true;
+        thread = new Thread(this::announceLoop, "ReceiverAnnouncer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        socket.close();
+        try {
+            thread.join(DiscoveryProtocol.ANNOUNCE_INTERVAL_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        socket = null;
+        thread = null;
+    }
+
+    private void announceLoop() {
+        byte[] buffer = new byte[MAX_DATAGRAM];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        long nextAnnounceMs = 0L;
+
+        while (running) {
+            try {
+                long nowMs = System.currentTimeMillis();
+                if (nowMs >= nextAnnounceMs) {
+                    announce();
+                    nextAnnounceMs = nowMs + DiscoveryProtocol.ANNOUNCE_INTERVAL_MS;
+                }
+
+                socket.setSoTimeout((int) Math.max(1L, nextAnnounceMs - nowMs));
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                if (DiscoveryProtocol.isProbe(packet.getData(), packet.getLength())) {
+                    announce();
+                }
+            } catch (SocketTimeoutException e) {
+                // Time for the periodic announcement
+            } catch (IOException e) {
+                if (!running) break;
+            }
+        }
+    }
+
+    private void announce() throws IOException {
+        socket.send(new DatagramPacket(announcement, announcement.length, group));
+    }
+}
@@ -0,0 +1,211 @@
+package com.obs.mobile.streaming;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ReceiverDiscovery - Finds sensor receivers announcing on the LAN
+ *
+ * Joins DiscoveryProtocol.DISCOVERY_GROUP on a background thread and keeps
+ * the set of receivers heard from recently. A probe is sent on start so
+ * receivers answer at once instead of at their next announcement. Receivers
+ * that stop announcing are reported lost.
+ *
+ * On Android the caller must hold a WifiManager.MulticastLock while this is
+ * running, most Wi-Fi drivers filter multicast otherwise.
+ *
+ * Usage:
+ *      discovery = new ReceiverDiscovery(null, listener);
+ *      discovery.start();
+ *      ...
+ *      discovery.stop();
+ */
+public class ReceiverDiscovery {
+
+    private static final int RECEIVE_TIMEOUT_MS = 500;
+    private static final int MAX_DATAGRAM = 512;
+
+    /**
+     * Called on the discovery thread
+     */
+    public interface Listener {
+        void onReceiverFound(Receiver receiver);
+        void onReceiverLost(Receiver receiver);
+    }
+
+    /**
+     * A receiver heard on the discovery group
+     */
+    public static class Receiver {
+        public final String name;
+        public final String host;
+        public final int port;
+        volatile long lastSeenMs;
+
+        Receiver(String name, String host, int port, long lastSeenMs) {
+            this.name = name;
+            this.host = host;
+            this.port = port;
+            this.lastSeenMs = lastSeenMs;
+        }
+
+        public long getLastSeenMs() {
+            return lastSeenMs;
+        }
+
+        /**
+         * Stable key, also used as the fan-out destination name
+         */
+        public String getKey() {
+            return host + ":" + port;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + getKey() + ")";
+        }
+    }
+
+    private final NetworkInterface networkInterface;
+    private final InetSocketAddress group;
+    private final Listener listener;
+    private final Map<String, Receiver> receivers = new ConcurrentHashMap<>();
+
+    private volatile boolean running = false;
+    private MulticastSocket socket;
+    private Thread thread;
+
+    /**
+     * @param networkInterface interface to join the group on, null for the system default
+     */
+    public ReceiverDiscovery(NetworkInterface networkInterface, Listener listener) {
+        this(networkInterface, new InetSocketAddress(DiscoveryProtocol.DISCOVERY_GROUP,
+                DiscoveryProtocol.DISCOVERY_PORT), listener);
+    }
+
+    public ReceiverDiscovery(NetworkInterface networkInterface, InetSocketAddress group, Listener listener) {
+        this.networkInterface = networkInterface;
+        this.group = group;
+        this.listener = listener;
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) return;
+
+        MulticastSocket opened = new MulticastSocket(group.getPort());
+        try {
+            opened.setSoTimeout(RECEIVE_TIMEOUT_MS);
+            opened.setTimeToLive(DiscoveryProtocol.MULTICAST_TTL);
+            if (networkInterface != null) {
+                opened.setNetworkInterface(networkInterface);
+            }
+            opened.joinGroup(group, networkInterface);
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+
+        socket = opened;
+        running = true;
+        thread = new Thread(this::receiveLoop, "ReceiverDiscovery");
+        thread.setDaemon(true);
+        thread.start();
+        probe();
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        socket.close();
+        try {
+            thread.join(RECEIVE_TIMEOUT_MS * 2L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        socket = null;
+        thread = null;
+        receivers.clear();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Ask every receiver on the group to announce itself now
+     */
+    public void probe() {
+        MulticastSocket target = socket;
+        if (target == null) return;
+        byte[] probe = DiscoveryProtocol.encodeProbe();
+        try {
+            target.send(new DatagramPacket(probe, probe.length, group));
+        } catch (IOException e) {
+            // Next periodic announcement will still be heard
+        }
+    }
+
+    public List<Receiver> getReceivers() {
+        return new ArrayList<>(receivers.values());
+    }
+
+    // ============================================================
+    // Discovery thread
+    // ============================================================
+
+    private void receiveLoop() {
+        byte[] buffer = new byte[MAX_DATAGRAM];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        long expiryMs = DiscoveryProtocol.ANNOUNCE_INTERVAL_MS * DiscoveryProtocol.MISSED_ANNOUNCEMENTS;
+
+        while (running) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                handlePacket(packet);
+            } catch (SocketTimeoutException e) {
+                // Periodic wake-up for expiry
+            } catch (IOException e) {
+                if (!running) break;
+            }
+            expire(System.currentTimeMillis() - expiryMs);
+        }
+    }
+
+    private void handlePacket(DatagramPacket packet) {
+        DiscoveryProtocol.Announcement announcement =
+                DiscoveryProtocol.parseAnnouncement(packet.getData(), packet.getLength());
+        if (announcement == null) return;
+
+        InetAddress source = packet.getAddress();
+        long nowMs = System.currentTimeMillis();
+        String host = source.getHostAddress();
+        String key = host + ":" + announcement.streamPort;
+
+        Receiver known = receivers.get(key);
+        if (known != null) {
+            known.lastSeenMs = nowMs;
+            return;
+        }
+        Receiver receiver = new Receiver(announcement.name, host, announcement.streamPort, nowMs);
+        receivers.put(key, receiver);
+        if (listener != null) listener.onReceiverFound(receiver);
+    }
+
+    private void expire(long oldestAllowedMs) {
+        for (Receiver receiver : receivers.values()) {
+            if (receiver.lastSeenMs < oldestAllowedMs && receivers.remove(receiver.getKey(), receiver)) {
+                if (listener != null) listener.onReceiverLost(receiver);
+            }
+        }
+    }
+}
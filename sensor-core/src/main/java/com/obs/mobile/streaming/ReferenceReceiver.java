@@ -0,0 +1,308 @@
+package com.obs.mobile.streaming;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * ReferenceReceiver - Minimal Java receiver that measures the sensor stream
+ *
+ * Listens for UDP packets (and, optionally, length-prefixed TCP streams) on
+ * one port and keeps StreamStats per sending phone: loss, reordering,
+ * duplicates, capture -> send and transit latency percentiles. It announces
+ * itself for discovery like sensor_receiver.py, and sends a FeedbackMessage
+ * back to each phone every FEEDBACK_INTERVAL_NS so its rate controller sees
+ * loss and round-trip time. It answers clock sync requests and, once the
+ * phone sends its OBS-CLOCK estimate, measures absolute transit latency on
+ * its own System.nanoTime() clock. Backfilled packets (PacketSpool) are
+ * only counted, so late data does not distort the live loss and latency
+ * figures. Meant for measuring the stream under load, not for displaying
+ * sensor values.
+ *
+ * Usage (from the compiled classes):
+ *      java com.obs.mobile.streaming.ReferenceReceiver [port] [--tcp] [--no-announce]
+ */
+public class ReferenceReceiver {
+
+    private static final int MAX_DATAGRAM = 65535;
+    private static final int MAX_TCP_PACKET = 1 << 20;
+    private static final long REPORT_INTERVAL_MS = 5000L;
+    private static final long FEEDBACK_INTERVAL_NS = 500_000_000L;
+
+    private final int port;
+    private final boolean acceptTcp;
+    private final boolean announce;
+    private final Map<String, StreamStats> statsBySource = new TreeMap<>();
+    private final Map<String, Long> lastFeedbackNs = new TreeMap<>();
+    private final Map<String, ClockSyncMessage> clockBySource = new TreeMap<>();
+    private final Map<String, Long> backfilledBySource = new TreeMap<>();
+
+    private volatile boolean running = false;
+    private DatagramSocket udpSocket;
+    private ServerSocket tcpSocket;
+    private ReceiverAnnouncer announcer;
+
+    public ReferenceReceiver(int port, boolean acceptTcp, boolean announce) {
+        this.port = port;
+        this.acceptTcp = acceptTcp;
+        this.announce = announce;
+    }
+
+    public void start() throws IOException {
+        running = true;
+        udpSocket = new DatagramSocket(port);
+        startThread("ReferenceReceiver-udp", this::udpLoop);
+
+        if (acceptTcp) {
+            tcpSocket = new ServerSocket();
+            tcpSocket.setReuseAddress(true);
+            tcpSocket.bind(new InetSocketAddress(port));
+            startThread("ReferenceReceiver-tcp", this::acceptLoop);
+        }
+        if (announce) {
+            announcer = new ReceiverAnnouncer(null, "reference-receiver", port);
+            announcer.start();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        if (announcer != null) announcer.stop();
+        if (udpSocket != null) udpSocket.close();
+        if (tcpSocket != null) {
+            try {
+                tcpSocket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Stats of every sender so far, one block per source
+     */
+    public synchronized String report() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, StreamStats> entry : statsBySource.entrySet()) {
+            report.append(entry.getKey()).append(": ").append(entry.getValue());
+            Long backfilled = backfilledBySource.get(entry.getKey());
+            if (backfilled != null) {
+                report.append(" backfilled=").append(backfilled);
+            }
+            report.append('\n');
+        }
+        return report.length() == 0 ? "no packets yet\n" : report.toString();
+    }
+
+    /**
+     * Handle one datagram or TCP frame: a clock sync message, a backfilled
+     * packet or a JSON packet
+     *
+     * @return the reply to send back to the source, or null
+     */
+    public synchronized byte[] onMessage(String source, byte[] data, int length, long receiveNs) {
+        if (isBackfill(data, length)) {
+            backfilledBySource.merge(source, 1L, Long::sum);
+            return null;
+        }
+        ClockSyncMessage sync = ClockSyncMessage.parse(data, 0, length);
+        if (sync == null) {
+            FeedbackMessage feedback = onPacket(source, data, length, receiveNs);
+            return feedback != null ? feedback.encode() : null;
+        }
+
+        switch (sync.type) {
+            case REQUEST:
+                return ClockSyncMessage.reply(sync.originNs, receiveNs, System.nanoTime()).encode();
+            case ESTIMATE:
+                clockBySource.put(source, sync);
+                StreamStats stats = statsBySource.get(source);
+                if (stats != null) {
+                    stats.setClockOffset(sync.offsetNs);
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Spooled packets a source sent again after an outage
+     */
+    public synchronized long getBackfilled(String source) {
+        Long backfilled = backfilledBySource.get(source);
+        return backfilled != null ? backfilled : 0L;
+    }
+
+    private static boolean isBackfill(byte[] data, int length) {
+        byte[] prefix = PacketSpool.BACKFILL_PREFIX;
+        if (length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Phone -> receiver clock of a source, null until the phone sent one
+     */
+    public synchronized ClockSyncMessage getClock(String source) {
+        return clockBySource.get(source);
+    }
+
+    /**
+     * Account one packet; exposed so tests and tools can feed packets directly
+     *
+     * @return feedback to send back to the source now, or null if not due yet
+     */
+    public synchronized FeedbackMessage onPacket(String source, byte[] data, int length, long receiveNs) {
+        String json = new String(data, 0, length, StandardCharsets.UTF_8);
+        long seq = longField(json, "seq");
+        if (seq < 0L) return null;   // Sender predates sequence numbers
+
+        StreamStats stats = statsBySource.get(source);
+        if (stats == null) {
+            stats = new StreamStats();
+            ClockSyncMessage clock = clockBySource.get(source);
+            if (clock != null) {
+                stats.setClockOffset(clock.offsetNs);
+            }
+            statsBySource.put(source, stats);
+        }
+        long sendNs = Math.max(0L, longField(json, "timestamp_ns"));
+        stats.onPacket(seq, Math.max(0L, longField(json, "capture_ts_ns")), sendNs, receiveNs);
+
+        Long lastNs = lastFeedbackNs.get(source);
+        if (lastNs != null && receiveNs - lastNs < FEEDBACK_INTERVAL_NS) return null;
+        lastFeedbackNs.put(source, receiveNs);
+        return new FeedbackMessage(seq, sendNs, System.nanoTime() - receiveNs,
+                stats.getReceived(), stats.getLost());
+    }
+
+    public synchronized StreamStats getStats(String source) {
+        return statsBySource.get(source);
+    }
+
+    // ============================================================
+    // Receive threads
+    // ============================================================
+
+    private void udpLoop() {
+        byte[] buffer = new byte[MAX_DATAGRAM];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (running) {
+            try {
+                packet.setLength(buffer.length);
+                udpSocket.receive(packet);
+                long receiveNs = System.nanoTime();
+                byte[] reply = onMessage("udp " + packet.getAddress().getHostAddress(),
+                        buffer, packet.getLength(), receiveNs);
+                if (reply != null) {
+                    udpSocket.send(new DatagramPacket(reply, reply.length, packet.getSocketAddress()));
+                }
+            } catch (SocketException e) {
+                if (!running) return;
+            } catch (IOException e) {
+                System.err.println("UDP receive failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket client = tcpSocket.accept();
+                startThread("ReferenceReceiver-tcp-client", () -> tcpStreamLoop(client));
+            } catch (IOException e) {
+                if (!running) return;
+            }
+        }
+    }
+
+    private void tcpStreamLoop(Socket client) {
+        String source = "tcp " + client.getInetAddress().getHostAddress();
+        try (Socket socket = client) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            byte[] buffer = new byte[MAX_DATAGRAM];
+            while (running) {
+                int length = in.readInt();
+                if (length < 0 || length > MAX_TCP_PACKET) {
+                    throw new IOException("Bad packet length " + length);
+                }
+                if (length > buffer.length) buffer = new byte[length];
+                in.readFully(buffer, 0, length);
+                byte[] reply = onMessage(source, buffer, length, System.nanoTime());
+                if (reply != null) {
+                    out.writeInt(reply.length);
+                    out.write(reply);
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // Connection closed, the phone reconnects on its own
+        }
+    }
+
+    private static void startThread(String name, Runnable body) {
+        Thread thread = new Thread(body, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Value of a top-level integer field, -1 if absent. The sensor packets
+     * are flat enough that a scan for "key": avoids a JSON dependency.
+     */
+    static long longField(String json, String key) {
+        String quoted = "\"" + key + "\"";
+        int index = json.indexOf(quoted);
+        if (index < 0) return -1L;
+        int i = json.indexOf(':', index + quoted.length());
+        if (i < 0) return -1L;
+        i++;
+        while (i < json.length() && json.charAt(i) == ' ') i++;
+
+        long value = 0L;
+        boolean negative = i < json.length() && json.charAt(i) == '-';
+        if (negative) i++;
+        int start = i;
+        while (i < json.length() && Character.isDigit(json.charAt(i))) {
+            value = value * 10 + (json.charAt(i) - '0');
+            i++;
+        }
+        if (i == start) return -1L;
+        return negative ? -value : value;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = DiscoveryProtocol.STREAM_PORT;
+        boolean tcp = false;
+        boolean announce = true;
+        for (String arg : args) {
+            if ("--tcp".equals(arg)) {
+                tcp = true;
+            } else if ("--no-announce".equals(arg)) {
+                announce = false;
+            } else {
+                port = Integer.parseInt(arg);
+            }
+        }
+
+        ReferenceReceiver receiver = new ReferenceReceiver(port, tcp, announce);
+        receiver.start();
+        System.out.println("Listening on port " + port + (tcp ? " (udp + tcp)" : " (udp)"));
+        while (true) {
+            Thread.sleep(REPORT_INTERVAL_MS);
+            System.out.print(receiver.report());
+        }
+    }
+}
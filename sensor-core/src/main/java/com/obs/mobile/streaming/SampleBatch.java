@@ -0,0 +1,72 @@
+package com.obs.mobile.streaming;
+
+/**
+ * SampleBatch - Timestamped multi-channel samples, the unit BatchCodecs encode
+ *
+ * Values are stored row-major: sample i, channel c is values[i * channels + c].
+ * The arrays grow as needed and are reused between batches, so filling a
+ * batch does not allocate once warmed up.
+ *
+ * Usage:
+ *      batch.reset(6);
+ *      batch.add(timestampNs, gx, gy, gz, ax, ay, az);
+ *      codec.encode(batch, buffer);
+ */
+public class SampleBatch {
+
+    public long[] timestampsNs;
+    public float[] values;
+    public int count;
+    public int channels;
+
+    public SampleBatch() {
+        this(16, 6);
+    }
+
+    public SampleBatch(int initialCapacity, int channels) {
+        this.timestampsNs = new long[Math.max(1, initialCapacity)];
+        this.values = new float[Math.max(1, initialCapacity) * channels];
+        this.channels = channels;
+    }
+
+    /**
+     * Empty the batch, keeping its arrays
+     */
+    public void reset(int channels) {
+        this.channels = channels;
+        this.count = 0;
+    }
+
+    /**
+     * Append one sample; sample.length must equal channels
+     */
+    public void add(long timestampNs, float... sample) {
+        if (sample.length != channels) {
+            throw new IllegalArgumentException("expected " + channels + " channels, got " + sample.length);
+        }
+        ensureCapacity(count + 1);
+        timestampsNs[count] = timestampNs;
+        System.arraycopy(sample, 0, values, count * channels, channels);
+        count++;
+    }
+
+    public float get(int sample, int channel) {
+        return values[sample * channels + channel];
+    }
+
+    /**
+     * Make room for at least the given number of samples at the current channel count
+     */
+    public void ensureCapacity(int samples) {
+        if (timestampsNs.length < samples) {
+            long[] grown = new long[Math.max(samples, timestampsNs.length * 2)];
+            System.arraycopy(timestampsNs, 0, grown, 0, count);
+            timestampsNs = grown;
+        }
+        if (values.length < samples * channels) {
+            float[] grown = new float[Math.max(samples * channels, values.length * 2)];
+            System.arraycopy(values, 0, grown, 0, count * channels);
+            values = grown;
+        }
+    }
+}
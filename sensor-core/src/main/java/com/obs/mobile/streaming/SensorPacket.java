@@ -0,0 +1,63 @@
+package com.obs.mobile.streaming;
+
+/**
+ * SensorPacket - Latest value of every sensor, the content of one stream packet
+ *
+ * Plain fields, filled by the sensor callbacks and read when a packet is
+ * built. SensorPacketWriter turns it into the JSON packet the receivers
+ * read; the app's SensorDataStreamer.SensorValues adds an org.json view.
+ */
+public class SensorPacket {
+    // Packet number, +1 per packet
+    public long sequence = 0L;
+
+    // elapsedRealtimeNanos when the packet was sent, same clock as frame_imu
+    public long timestampNs = 0L;
+
+    // elapsedRealtimeNanos when the newest value in the packet reached the app
+    public long captureTimestampNs = 0L;
+
+    public float accelX = 0.0f;
+    public float accelY = 0.0f;
+    public float accelZ = 0.0f;
+    public float accelMagnitude = 0.0f;
+
+    public float gyroX = 0.0f;
+    public float gyroY = 0.0f;
+    public float gyroZ = 0.0f;
+
+    public float lightLux = 0.0f;
+    public String lightCategory = "Normal";
+
+    public float proximityDistance = 0.0f;
+    public boolean proximityIsNear = false;
+
+    public float magnetometerAzimuth = 0.0f;
+    public String magnetometerDirection = "N";
+
+    // DerivedChannels values, derivedValues[i] named derivedNames[i]; only
+    // the first derivedNames.length values are sent
+    public String[] derivedNames = new String[0];
+    public float[] derivedValues = new float[0];
+
+    // SpectrumAnalyzer result of the accelerometer, sent while
+    // spectrumTimestampNs is not 0: spectrumPeakCount peaks as
+    // (frequency, amplitude) and the RMS of each band between consecutive
+    // spectrumBandEdgesHz, all in Hz and m/s^2
+    public long spectrumTimestampNs = 0L;
+    public float spectrumSampleRateHz = 0.0f;
+    public int spectrumPeakCount = 0;
+    public float[] spectrumPeakHz = new float[0];
+    public float[] spectrumPeakAmplitudes = new float[0];
+    public float[] spectrumBandEdgesHz = new float[0];
+    public float[] spectrumBandRms = new float[0];
+
+    // Camera2 hardware face detection, rects in sensor active-array
+    // coordinates packed as [left, top, right, bottom, score] per face
+    public long faceFrameTimestampNs = 0L;
+    public int faceActiveArrayWidth = 0;
+    public int faceActiveArrayHeight = 0;
+    public int faceSensorOrientation = 0;
+    public boolean faceMirrored = false;
+    public int[] faceRects = new int[0];
+}
@@ -0,0 +1,202 @@
+package com.obs.mobile.streaming;
+
+import com.obs.mobile.sensors.FrameImuState;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * SensorPacketJson - The stream packet as an org.json tree
+ *
+ * The packet the app sends: toJSON() for the sensor values, the camera
+ * frames' IMU state ("frame_imu"), then the IMU batch as the "imu" array
+ * or, with a BatchCodec, base64 "imu_packed". SensorPacketWriter writes the
+ * same keys in the same order without the tree.
+ *
+ * org.json is compileOnly here: Android has its own copy, JVM users add the
+ * Maven one. Only the overloads both copies share are called, floats are
+ * widened to double like on the device, so the same bytecode runs on both.
+ * On Android, JSONException is checked and put() rejects NaN: callers
+ * catch Exception.
+ *
+ * Usage:
+ *      SensorPacketJson json = new SensorPacketJson();
+ *      byte[] bytes = json.assemble(values, frames, imuBatch, codec);   // frames, codec may be null
+ *
+ * Not thread-safe; assemble() reuses its codec buffer.
+ */
+public class SensorPacketJson {
+
+    private ByteBuffer codecBuffer = ByteBuffer.allocate(0);
+
+    /**
+     * Whole packet as sent: toJSON(), the frames, the IMU batch, UTF-8 bytes
+     *
+     * @param frames "frame_imu" entries from frameToJSON(), omitted if null or empty
+     */
+    public byte[] assemble(SensorPacket packet, JSONArray frames, SampleBatch imu, BatchCodec codec) {
+        JSONObject data = toJSON(packet);
+        if (frames != null && frames.length() > 0) {
+            data.put("frame_imu", frames);
+        }
+        if (imu.count > 0) {
+            if (codec != null) {
+                data.put("imu_packed", encodeImu(imu, codec));
+            } else {
+                data.put("imu", imuToJSON(imu));
+            }
+        }
+        return data.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static JSONObject toJSON(SensorPacket packet) {
+        JSONObject json = new JSONObject();
+        json.put("seq", packet.sequence);
+        json.put("timestamp_ns", packet.timestampNs);
+        if (packet.captureTimestampNs != 0L) {
+            json.put("capture_ts_ns", packet.captureTimestampNs);
+        }
+
+        JSONObject accel = new JSONObject();
+        accel.put("x", (double) packet.accelX);
+        accel.put("y", (double) packet.accelY);
+        accel.put("z", (double) packet.accelZ);
+        accel.put("magnitude", (double) packet.accelMagnitude);
+        json.put("accelerometer", accel);
+
+        JSONObject gyro = new JSONObject();
+        gyro.put("x", (double) packet.gyroX);
+        gyro.put("y", (double) packet.gyroY);
+        gyro.put("z", (double) packet.gyroZ);
+        json.put("gyroscope", gyro);
+
+        JSONObject light = new JSONObject();
+        light.put("lux", (double) packet.lightLux);
+        light.put("category", packet.lightCategory);
+        json.put("light", light);
+
+        JSONObject proximity = new JSONObject();
+        proximity.put("distance", (double) packet.proximityDistance);
+        proximity.put("is_near", packet.proximityIsNear);
+        json.put("proximity", proximity);
+
+        JSONObject magnetometer = new JSONObject();
+        magnetometer.put("azimuth", (double) packet.magnetometerAzimuth);
+        magnetometer.put("direction", packet.magnetometerDirection);
+        json.put("magnetometer", magnetometer);
+
+        if (packet.derivedNames.length > 0) {
+            JSONObject derived = new JSONObject();
+            for (int i = 0; i < packet.derivedNames.length; i++) {
+                float value = packet.derivedValues[i];
+                derived.put(packet.derivedNames[i], Float.isNaN(value) || Float.isInfinite(value)
+                        ? JSONObject.NULL : (Object) (double) value);
+            }
+            json.put("derived", derived);
+        }
+
+        if (packet.spectrumTimestampNs != 0L) {
+            JSONArray peaks = new JSONArray();
+            for (int i = 0; i < packet.spectrumPeakCount; i++) {
+                peaks.put(new JSONArray()
+                        .put((double) packet.spectrumPeakHz[i])
+                        .put((double) packet.spectrumPeakAmplitudes[i]));
+            }
+            JSONArray edges = new JSONArray();
+            for (float edge : packet.spectrumBandEdgesHz) {
+                edges.put((double) edge);
+            }
+            JSONArray bands = new JSONArray();
+            for (float rms : packet.spectrumBandRms) {
+                bands.put((double) rms);
+            }
+            JSONObject spectrum = new JSONObject();
+            spectrum.put("timestamp_ns", packet.spectrumTimestampNs);
+            spectrum.put("sample_rate_hz", (double) packet.spectrumSampleRateHz);
+            spectrum.put("peaks", peaks);
+            spectrum.put("band_edges_hz", edges);
+            spectrum.put("band_rms", bands);
+            json.put("spectrum", spectrum);
+        }
+
+        if (packet.faceFrameTimestampNs != 0L) {
+            int[] rects = packet.faceRects;
+            JSONObject faces = new JSONObject();
+            faces.put("frame_timestamp_ns", packet.faceFrameTimestampNs);
+            faces.put("active_array", new JSONArray()
+                    .put(packet.faceActiveArrayWidth)
+                    .put(packet.faceActiveArrayHeight));
+            faces.put("sensor_orientation", packet.faceSensorOrientation);
+            faces.put("mirrored", packet.faceMirrored);
+
+            JSONArray rectArray = new JSONArray();
+            for (int i = 0; i + 4 < rects.length; i += 5) {
+                rectArray.put(new JSONArray()
+                        .put(rects[i])
+                        .put(rects[i + 1])
+                        .put(rects[i + 2])
+                        .put(rects[i + 3])
+                        .put(rects[i + 4]));
+            }
+            faces.put("rects", rectArray);
+            json.put("faces", faces);
+        }
+
+        return json;
+    }
+
+    /**
+     * One "frame_imu" entry: the frame's timing and the IMU state at its exposure midpoint
+     */
+    public static JSONObject frameToJSON(FrameImuState state) {
+        JSONObject frame = new JSONObject();
+        frame.put("frame_number", state.frameNumber);
+        frame.put("frame_timestamp_ns", state.frameTimestampNs);
+        frame.put("exposure_mid_ns", state.exposureMidTimestampNs);
+        frame.put("exposure_ns", state.exposureTimeNs);
+        if (state.hasGyro) {
+            frame.put("gyro", vector(state.gyro));
+        }
+        if (state.hasAccel) {
+            frame.put("accel", vector(state.accel));
+        }
+        return frame;
+    }
+
+    /**
+     * The "imu" array: [[timestamp_ns, channel values...], ...]
+     */
+    public static JSONArray imuToJSON(SampleBatch imu) {
+        JSONArray batch = new JSONArray();
+        for (int i = 0; i < imu.count; i++) {
+            JSONArray sample = new JSONArray().put(imu.timestampsNs[i]);
+            for (int c = 0; c < imu.channels; c++) {
+                sample.put((double) imu.get(i, c));
+            }
+            batch.put(sample);
+        }
+        return batch;
+    }
+
+    /**
+     * The "imu_packed" string: the codec's payload in base64
+     */
+    public String encodeImu(SampleBatch imu, BatchCodec codec) {
+        int maxSize = codec.maxEncodedSize(imu.count, imu.channels);
+        if (codecBuffer.capacity() < maxSize) {
+            codecBuffer = ByteBuffer.allocate(maxSize);
+        }
+        codecBuffer.clear();
+        codec.encode(imu, codecBuffer);
+        return Base64.getEncoder().encodeToString(Arrays.copyOf(codecBuffer.array(), codecBuffer.position()));
+    }
+
+    private static JSONArray vector(float[] values) {
+        return new JSONArray().put((double) values[0]).put((double) values[1]).put((double) values[2]);
+    }
+}
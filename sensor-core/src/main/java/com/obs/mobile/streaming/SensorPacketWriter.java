@@ -0,0 +1,459 @@
+package com.obs.mobile.streaming;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SensorPacketWriter - Writes a SensorPacket as the JSON stream packet, without allocating
+ *
+ * Produces the same keys, in the same order, as SensorPacketJson.assemble()
+ * without frames: toJSON() plus the IMU batch ("imu", or "imu_packed" with a
+ * BatchCodec), straight into a reused byte array. No
+ * JSONObject tree, no intermediate String: once the array and the codec
+ * buffer have grown to the packet size, writing a packet allocates nothing.
+ *
+ * Floats are written with 7 significant digits (what a float holds) instead
+ * of org.json's double expansion of the float, so 9.81f is "9.81", not
+ * "9.8100004196167". Values below 1e-6 or from 1e12 up fall back to
+ * Float.toString(); NaN and infinities, which JSON cannot express, are
+ * written as null.
+ *
+ * Usage:
+ *      SensorPacketWriter writer = new SensorPacketWriter();
+ *      ByteBuffer packet = writer.write(values, imuBatch, codec);   // codec may be null
+ *      fanout.send(packet, values.sequence);
+ *
+ * Not thread-safe; the returned buffer is valid until the next write.
+ */
+public class SensorPacketWriter {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+                    .getBytes(StandardCharsets.US_ASCII);
+    private static final long[] POW10 = new long[13];
+    // DECADES[i] = 10^(i - 6): 1e-6 .. 1e12
+    private static final double[] DECADES = new double[19];
+
+    static {
+        POW10[0] = 1L;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10L;
+        }
+        for (int i = 0; i < DECADES.length; i++) {
+            DECADES[i] = Double.parseDouble("1e" + (i - 6));
+        }
+    }
+
+    private byte[] buffer = new byte[2048];
+    private int length = 0;
+    private ByteBuffer view = ByteBuffer.wrap(buffer);
+    private ByteBuffer codecBuffer = ByteBuffer.allocate(0);
+
+    /**
+     * Packet without IMU batch
+     */
+    public ByteBuffer write(SensorPacket packet) {
+        return write(packet, null, null);
+    }
+
+    /**
+     * Packet with the IMU batch as "imu": [[capture_ts_ns, gx, gy, gz, ax, ay, az], ...],
+     * or as base64 "imu_packed" when codec is not null; an empty or null
+     * batch is left out
+     *
+     * @return the packet, positioned at 0
+     */
+    public ByteBuffer write(SensorPacket packet, SampleBatch imu, BatchCodec codec) {
+        length = 0;
+        writeByte('{');
+        writeKey("seq");
+        writeLong(packet.sequence);
+        writeByte(',');
+        writeKey("timestamp_ns");
+        writeLong(packet.timestampNs);
+        if (packet.captureTimestampNs != 0L) {
+            writeByte(',');
+            writeKey("capture_ts_ns");
+            writeLong(packet.captureTimestampNs);
+        }
+
+        writeByte(',');
+        writeKey("accelerometer");
+        writeByte('{');
+        writeKey("x");
+        writeFloat(packet.accelX);
+        writeByte(',');
+        writeKey("y");
+        writeFloat(packet.accelY);
+        writeByte(',');
+        writeKey("z");
+        writeFloat(packet.accelZ);
+        writeByte(',');
+        writeKey("magnitude");
+        writeFloat(packet.accelMagnitude);
+        writeByte('}');
+
+        writeByte(',');
+        writeKey("gyroscope");
+        writeByte('{');
+        writeKey("x");
+        writeFloat(packet.gyroX);
+        writeByte(',');
+        writeKey("y");
+        writeFloat(packet.gyroY);
+        writeByte(',');
+        writeKey("z");
+        writeFloat(packet.gyroZ);
+        writeByte('}');
+
+        writeByte(',');
+        writeKey("light");
+        writeByte('{');
+        writeKey("lux");
+        writeFloat(packet.lightLux);
+        writeByte(',');
+        writeKey("category");
+        writeString(packet.lightCategory);
+        writeByte('}');
+
+        writeByte(',');
+        writeKey("proximity");
+        writeByte('{');
+        writeKey("distance");
+        writeFloat(packet.proximityDistance);
+        writeByte(',');
+        writeKey("is_near");
+        writeBoolean(packet.proximityIsNear);
+        writeByte('}');
+
+        writeByte(',');
+        writeKey("magnetometer");
+        writeByte('{');
+        writeKey("azimuth");
+        writeFloat(packet.magnetometerAzimuth);
+        writeByte(',');
+        writeKey("direction");
+        writeString(packet.magnetometerDirection);
+        writeByte('}');
+
+        if (packet.derivedNames.length > 0) {
+            writeDerived(packet);
+        }
+        if (packet.spectrumTimestampNs != 0L) {
+            writeSpectrum(packet);
+        }
+        if (packet.faceFrameTimestampNs != 0L) {
+            writeFaces(packet);
+        }
+        if (imu != null && imu.count > 0) {
+            writeByte(',');
+            if (codec != null) {
+                writeImuPacked(imu, codec);
+            } else {
+                writeImu(imu);
+            }
+        }
+        writeByte('}');
+
+        view.clear();
+        view.limit(length);
+        return view;
+    }
+
+    /**
+     * Bytes of the last packet
+     */
+    public int getLength() {
+        return length;
+    }
+
+    // ============================================================
+    // Sections
+    // ============================================================
+
+    private void writeDerived(SensorPacket packet) {
+        writeByte(',');
+        writeKey("derived");
+        writeByte('{');
+        for (int i = 0; i < packet.derivedNames.length; i++) {
+            if (i > 0) writeByte(',');
+            writeKey(packet.derivedNames[i]);
+            writeFloat(packet.derivedValues[i]);
+        }
+        writeByte('}');
+    }
+
+    /**
+     * "spectrum": {"timestamp_ns", "sample_rate_hz", "peaks": [[hz, amplitude], ...],
+     * "band_edges_hz": [...], "band_rms": [...]}
+     */
+    private void writeSpectrum(SensorPacket packet) {
+        writeByte(',');
+        writeKey("spectrum");
+        writeByte('{');
+        writeKey("timestamp_ns");
+        writeLong(packet.spectrumTimestampNs);
+        writeByte(',');
+        writeKey("sample_rate_hz");
+        writeFloat(packet.spectrumSampleRateHz);
+        writeByte(',');
+        writeKey("peaks");
+        writeByte('[');
+        for (int i = 0; i < packet.spectrumPeakCount; i++) {
+            if (i > 0) writeByte(',');
+            writeByte('[');
+            writeFloat(packet.spectrumPeakHz[i]);
+            writeByte(',');
+            writeFloat(packet.spectrumPeakAmplitudes[i]);
+            writeByte(']');
+        }
+        writeByte(']');
+        writeByte(',');
+        writeKey("band_edges_hz");
+        writeFloats(packet.spectrumBandEdgesHz);
+        writeByte(',');
+        writeKey("band_rms");
+        writeFloats(packet.spectrumBandRms);
+        writeByte('}');
+    }
+
+    private void writeFaces(SensorPacket packet) {
+        int[] rects = packet.faceRects;
+        writeByte(',');
+        writeKey("faces");
+        writeByte('{');
+        writeKey("frame_timestamp_ns");
+        writeLong(packet.faceFrameTimestampNs);
+        writeByte(',');
+        writeKey("active_array");
+        writeByte('[');
+        writeLong(packet.faceActiveArrayWidth);
+        writeByte(',');
+        writeLong(packet.faceActiveArrayHeight);
+        writeByte(']');
+        writeByte(',');
+        writeKey("sensor_orientation");
+        writeLong(packet.faceSensorOrientation);
+        writeByte(',');
+        writeKey("mirrored");
+        writeBoolean(packet.faceMirrored);
+        writeByte(',');
+        writeKey("rects");
+        writeByte('[');
+        for (int i = 0; i + 4 < rects.length; i += 5) {
+            if (i > 0) writeByte(',');
+            writeByte('[');
+            for (int j = 0; j < 5; j++) {
+                if (j > 0) writeByte(',');
+                writeLong(rects[i + j]);
+            }
+            writeByte(']');
+        }
+        writeByte(']');
+        writeByte('}');
+    }
+
+    private void writeImu(SampleBatch imu) {
+        writeKey("imu");
+        writeByte('[');
+        for (int i = 0; i < imu.count; i++) {
+            if (i > 0) writeByte(',');
+            writeByte('[');
+            writeLong(imu.timestampsNs[i]);
+            for (int c = 0; c < imu.channels; c++) {
+                writeByte(',');
+                writeFloat(imu.get(i, c));
+            }
+            writeByte(']');
+        }
+        writeByte(']');
+    }
+
+    private void writeImuPacked(SampleBatch imu, BatchCodec codec) {
+        int maxSize = codec.maxEncodedSize(imu.count, imu.channels);
+        if (codecBuffer.capacity() < maxSize) {
+            codecBuffer = ByteBuffer.allocate(maxSize);
+        }
+        codecBuffer.clear();
+        codec.encode(imu, codecBuffer);
+
+        writeKey("imu_packed");
+        writeByte('"');
+        writeBase64(codecBuffer.array(), codecBuffer.position());
+        writeByte('"');
+    }
+
+    // ============================================================
+    // Values
+    // ============================================================
+
+    private void writeFloats(float[] values) {
+        writeByte('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) writeByte(',');
+            writeFloat(values[i]);
+        }
+        writeByte(']');
+    }
+
+    private void writeKey(String key) {
+        writeString(key);
+        writeByte(':');
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            writeAscii("null");
+            return;
+        }
+        ensureCapacity(value.length() * 6 + 2);
+        buffer[length++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer[length++] = '\\';
+                buffer[length++] = (byte) c;
+            } else if (c < 0x20 || c > 0x7e) {
+                // Control and non-ASCII characters as unicode escapes
+                buffer[length++] = '\\';
+                buffer[length++] = 'u';
+                buffer[length++] = HEX[(c >> 12) & 0xf];
+                buffer[length++] = HEX[(c >> 8) & 0xf];
+                buffer[length++] = HEX[(c >> 4) & 0xf];
+                buffer[length++] = HEX[c & 0xf];
+            } else {
+                buffer[length++] = (byte) c;
+            }
+        }
+        buffer[length++] = '"';
+    }
+
+    private void writeBoolean(boolean value) {
+        writeAscii(value ? "true" : "false");
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        writeDigits(value, 0);
+    }
+
+    private void writeFloat(float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            writeAscii("null");
+            return;
+        }
+        double magnitude = Math.abs((double) value);
+        if (magnitude == 0.0) {
+            writeByte('0');
+            return;
+        }
+        if (magnitude < 1e-6 || magnitude >= 1e12) {
+            writeAscii(Float.toString(value));
+            return;
+        }
+
+        // 7 significant digits: decimals = 6 - floor(log10(magnitude)), at most 12
+        int exponent = -6;
+        while (magnitude >= DECADES[exponent + 7]) {
+            exponent++;
+        }
+        int decimals = Math.min(12, Math.max(0, 6 - exponent));
+        long scaled = Math.round(magnitude * POW10[decimals]);
+        long integer = scaled / POW10[decimals];
+        long fraction = scaled % POW10[decimals];
+
+        ensureCapacity(32);
+        if (value < 0) {
+            buffer[length++] = '-';
+        }
+        writeDigits(integer, 0);
+        if (fraction != 0L) {
+            int digits = decimals;
+            while (fraction % 10L == 0L) {
+                fraction /= 10L;
+                digits--;
+            }
+            buffer[length++] = '.';
+            writeDigits(fraction, digits);
+        }
+    }
+
+    /**
+     * Decimal digits of a non-negative value, left-padded with zeros to minDigits
+     */
+    private void writeDigits(long value, int minDigits) {
+        if (value > Integer.MAX_VALUE) {
+            // Nanosecond timestamps: int arithmetic on 8-digit chunks is much
+            // cheaper than dividing the long by 10 for every digit
+            long high = value / 100_000_000L;
+            writeDigits(high, minDigits - 8);
+            writeDigits((int) (value - high * 100_000_000L), 8);
+        } else {
+            writeDigits((int) value, minDigits);
+        }
+    }
+
+    private void writeDigits(int value, int minDigits) {
+        int digits = 1;
+        while (digits < 10 && value >= POW10[digits]) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+        ensureCapacity(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            int quotient = value / 10;
+            buffer[i] = (byte) ('0' + value - quotient * 10);
+            value = quotient;
+        }
+        length += digits;
+    }
+
+    private void writeBase64(byte[] data, int count) {
+        ensureCapacity((count + 2) / 3 * 4);
+        int i = 0;
+        for (; i + 2 < count; i += 3) {
+            int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+            buffer[length++] = BASE64[(bits >>> 18) & 0x3f];
+            buffer[length++] = BASE64[(bits >>> 12) & 0x3f];
+            buffer[length++] = BASE64[(bits >>> 6) & 0x3f];
+            buffer[length++] = BASE64[bits & 0x3f];
+        }
+        int remaining = count - i;
+        if (remaining > 0) {
+            int bits = (data[i] & 0xff) << 16 | (remaining == 2 ? (data[i + 1] & 0xff) << 8 : 0);
+            buffer[length++] = BASE64[(bits >>> 18) & 0x3f];
+            buffer[length++] = BASE64[(bits >>> 12) & 0x3f];
+            buffer[length++] = remaining == 2 ? BASE64[(bits >>> 6) & 0x3f] : (byte) '=';
+            buffer[length++] = '=';
+        }
+    }
+
+    private void writeAscii(String text) {
+        ensureCapacity(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer[length++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void writeByte(char c) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) c;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra <= buffer.length) return;
+        byte[] grown = new byte[Math.max(buffer.length * 2, length + extra)];
+        System.arraycopy(buffer, 0, grown, 0, length);
+        buffer = grown;
+        view = ByteBuffer.wrap(buffer);
+    }
+}
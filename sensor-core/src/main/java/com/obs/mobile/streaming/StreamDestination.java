@@ -0,0 +1,576 @@
+package com.obs.mobile.streaming;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * StreamDestination - One receiver of the sensor stream and its health
+ *
+ * Each destination owns its own Transport: UdpTransport (the low-latency
+ * default) or TcpTransport for consumers that need every packet. Transports
+ * never block, so a slow or failing target only shows up in this
+ * destination's counters and cannot hold up the others. After an error the
+ * transport is closed and opened again after a backoff that doubles from
+ * MIN_RETRY_INTERVAL_MS up to MAX_RETRY_INTERVAL_MS and resets once packets
+ * get through.
+ *
+ * A host name is looked up on a shared background executor, never on the
+ * sender or the caller's thread, so a slow or failing DNS lookup only keeps
+ * its own destination closed (address literals need no lookup). The address
+ * is kept until the transport fails and looked up again with the next retry.
+ *
+ * Receiver feedback arriving through the transport is passed on to the
+ * FeedbackListener of the owning StreamFanout.
+ *
+ * Clock sync: requestClockSync() sends an OBS-SYNC request, the reply feeds
+ * this destination's ClockSyncEstimator and the updated estimate is sent
+ * back to the receiver (OBS-CLOCK) with the next send or poll, so every
+ * receiver can map phone timestamps to its own clock. Multicast destinations
+ * are not synced: replies from several receivers cannot be told apart.
+ *
+ * Store-and-forward: with a PacketSpool (setSpool()), packets sent while the
+ * receiver is unreachable are written to disk. Unreachable means the
+ * transport is down, or a receiver that sends feedback has been silent for
+ * OUTAGE_TIMEOUT_MS; the packets sent since its last feedback are spooled
+ * too. While the transport is down a packet goes to the spool only, and
+ * whatever the transport still had queued is discarded, since it is among
+ * the spooled packets: a TCP reconnect would otherwise deliver it twice. A
+ * silent receiver keeps getting live packets, as they may still arrive.
+ * Once it is reachable again the spool is drained as backfill packets
+ * (PacketSpool.BACKFILL_PREFIX + original packet) in the gaps between live
+ * packets: at most backfillPacketsPerSecond, never while live packets are
+ * queued in the transport and never counted against the live rate limit.
+ * Multicast destinations are not spooled.
+ *
+ * Counters are updated by the sender thread and may be read from any thread.
+ */
+public class StreamDestination {
+
+    public static final int UNLIMITED = 0;
+    public static final int DEFAULT_BACKFILL_PACKETS_PER_SECOND = 25;
+    public static final long OUTAGE_TIMEOUT_MS = 2000L;
+
+    /**
+     * Called on the sender thread for every feedback message
+     */
+    public interface FeedbackListener {
+        void onFeedback(StreamDestination destination, FeedbackMessage feedback);
+    }
+
+    private static final long MIN_RETRY_INTERVAL_MS = 250L;
+    private static final long MAX_RETRY_INTERVAL_MS = 8000L;
+
+    // IPv4 dotted quad or anything with a colon (IPv6): no DNS lookup needed
+    private static final Pattern ADDRESS_LITERAL = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}|.*:.*");
+
+    // At most one lookup per destination in flight; idle threads exit after a minute
+    private static final ExecutorService RESOLVER = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "StreamDestination-resolve");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final String host;
+    private final int port;
+    private final Transport transport;
+
+    private volatile boolean enabled = true;
+
+    // Token bucket: up to one second's worth of packets can burst
+    private volatile int maxPacketsPerSecond;
+    private double tokens;
+    private long lastRefillNs;
+
+    // Counters
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong packetsSent = new AtomicLong();
+    private final AtomicLong packetsDropped = new AtomicLong();
+    private final AtomicLong packetsRateLimited = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile long lastErrorTimeMs = 0L;
+    private volatile String lastError;
+    private volatile FeedbackMessage lastFeedback;
+    private volatile FeedbackListener feedbackListener;
+    private volatile ClockSyncMessage clockEstimate;
+    private final AtomicLong packetsBackfilled = new AtomicLong();
+    private final AtomicLong spoolErrors = new AtomicLong();
+    private volatile boolean unreachable = false;
+
+    // Sender thread state
+    private boolean open = false;
+    private InetSocketAddress address;
+    private InetSocketAddress resolved;
+    private Future<InetSocketAddress> lookup;
+    private LongSupplier clock = System::nanoTime;
+    private final ClockSyncEstimator clockSync = new ClockSyncEstimator();
+    private long pendingSyncOriginNs = 0L;
+    private boolean clockEstimateDue = false;
+    private long retryAtMs = 0L;
+    private int consecutiveFailures = 0;
+
+    // Store-and-forward, sender thread
+    private volatile PacketSpool spool;
+    private volatile int backfillPacketsPerSecond = DEFAULT_BACKFILL_PACKETS_PER_SECOND;
+    private long lastFeedbackMs = 0L;
+    private double backfillTokens;
+    private long lastBackfillRefillNs;
+    private ByteBuffer backfillBuffer;
+
+    /**
+     * UDP destination
+     *
+     * @param maxPacketsPerSecond rate limit, or UNLIMITED
+     */
+    public StreamDestination(String name, String host, int port, int maxPacketsPerSecond) {
+        this(name, host, port, maxPacketsPerSecond, new UdpTransport());
+    }
+
+    public StreamDestination(String name, String host, int port, int maxPacketsPerSecond, Transport transport) {
+        this.name = name;
+        this.host = host;
+        this.port = port;
+        this.maxPacketsPerSecond = maxPacketsPerSecond;
+        this.tokens = maxPacketsPerSecond;
+        this.transport = transport;
+        transport.setListener(transportListener);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxPacketsPerSecond() {
+        return maxPacketsPerSecond;
+    }
+
+    public void setMaxPacketsPerSecond(int maxPacketsPerSecond) {
+        this.maxPacketsPerSecond = maxPacketsPerSecond;
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getPacketsSent() {
+        return packetsSent.get();
+    }
+
+    /**
+     * Packets skipped by the rate limit, lost to a full socket buffer or
+     * evicted from a full send queue
+     */
+    public long getPacketsDropped() {
+        return packetsDropped.get();
+    }
+
+    /**
+     * The part of getPacketsDropped() skipped by this destination's rate limit
+     */
+    public long getPacketsRateLimited() {
+        return packetsRateLimited.get();
+    }
+
+    /**
+     * Newest report from the receiver, null if it never sent one
+     */
+    public FeedbackMessage getLastFeedback() {
+        return lastFeedback;
+    }
+
+    /**
+     * Latest phone -> receiver clock estimate, null until the first sync reply
+     */
+    public ClockSyncMessage getClockEstimate() {
+        return clockEstimate;
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * Spool packets while the receiver is unreachable and backfill them
+     * later; null to stop spooling. Set before the sender starts.
+     */
+    public void setSpool(PacketSpool spool) {
+        this.spool = spool;
+    }
+
+    public PacketSpool getSpool() {
+        return spool;
+    }
+
+    public void setBackfillPacketsPerSecond(int backfillPacketsPerSecond) {
+        this.backfillPacketsPerSecond = backfillPacketsPerSecond;
+    }
+
+    /**
+     * Whether the last packet found the receiver unreachable (and was spooled)
+     */
+    public boolean isUnreachable() {
+        return unreachable;
+    }
+
+    /**
+     * Spooled packets sent again after the receiver came back
+     */
+    public long getPacketsBackfilled() {
+        return packetsBackfilled.get();
+    }
+
+    public long getSpoolErrors() {
+        return spoolErrors.get();
+    }
+
+    /**
+     * Wall-clock time of the last error in ms, 0 if there was none
+     */
+    public long getLastErrorTimeMs() {
+        return lastErrorTimeMs;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    // ============================================================
+    // Sender thread
+    // ============================================================
+
+    /**
+     * Hand one packet to the transport without blocking; the payload's
+     * position is not moved
+     *
+     * @param seq the packet's sequence number, echoed in receiver feedback
+     * @return true if the packet was not dropped by the rate limit
+     */
+    boolean send(ByteBuffer payload, long seq, long nowNs, long nowMs) {
+        if (!enabled) return false;
+
+        if (!open && nowMs >= retryAtMs) {
+            try {
+                openTransport();
+            } catch (IOException | RuntimeException e) {
+                recordError(e, nowMs);
+            }
+        }
+
+        try {
+            if (tryAcquire(nowNs)) {
+                // Without a spool a closed transport queues (TCP) or drops (UDP) the packet itself
+                if (!spool(payload, seq, nowMs)) {
+                    transport.send(payload);
+                    sendClockEstimateIfDue();
+                    remember(payload, seq);
+                }
+                return true;
+            }
+            packetsDropped.incrementAndGet();
+            packetsRateLimited.incrementAndGet();
+            if (open) {
+                transport.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            recordError(e, nowMs);
+            spool(payload, seq, nowMs);
+        }
+        return false;
+    }
+
+    /**
+     * Pick up receiver feedback (and, for TCP, write queued packets) between sends
+     */
+    void poll(long nowNs, long nowMs) {
+        if (!enabled || !open) return;
+        try {
+            transport.flush();
+            sendClockEstimateIfDue();
+            backfill(nowNs, nowMs);
+        } catch (IOException | RuntimeException e) {
+            recordError(e, nowMs);
+        }
+    }
+
+    // ============================================================
+    // Store-and-forward
+    // ============================================================
+
+    /**
+     * Spool a live packet while the receiver is unreachable
+     *
+     * @return true if the transport is down and the packet was for the spool only
+     */
+    private boolean spool(ByteBuffer payload, long seq, long nowMs) {
+        PacketSpool spool = this.spool;
+        if (spool == null || isMulticast()) return false;
+
+        boolean silent = lastFeedbackMs != 0L && nowMs - lastFeedbackMs > OUTAGE_TIMEOUT_MS;
+        boolean down = !open || silent;
+        if (down) {
+            if (!open) {
+                // Queued packets are unconfirmed, so they are (or were) spilled to the spool
+                transport.discardQueued();
+            }
+            try {
+                if (!unreachable) {
+                    spool.spillUnconfirmed(System.currentTimeMillis());
+                }
+                spool.append(payload, seq, System.currentTimeMillis());
+            } catch (IOException | RuntimeException e) {
+                spoolErrors.incrementAndGet();
+                lastError = "spool: " + e.getClass().getSimpleName() + ": " + e.getMessage();
+            }
+        }
+        unreachable = down;
+        return !open;
+    }
+
+    /**
+     * Keep a packet handed to the transport in memory until the receiver's
+     * feedback confirms it
+     */
+    private void remember(ByteBuffer payload, long seq) {
+        PacketSpool spool = this.spool;
+        if (spool == null || isMulticast() || unreachable) return;
+        spool.remember(payload, seq);
+    }
+
+    private boolean isMulticast() {
+        return address != null && address.getAddress().isMulticastAddress();
+    }
+
+    /**
+     * Send spooled packets while the receiver is reachable, within the
+     * backfill budget and only when no live packet is waiting
+     */
+    private void backfill(long nowNs, long nowMs) throws IOException {
+        PacketSpool spool = this.spool;
+        int rate = backfillPacketsPerSecond;
+        if (spool == null || unreachable || rate <= 0 || spool.isEmpty()) return;
+        if (lastFeedbackMs != 0L && nowMs - lastFeedbackMs > OUTAGE_TIMEOUT_MS) return;
+
+        // Token bucket with a burst of a tenth of a second
+        double burst = Math.max(1.0, rate / 10.0);
+        if (lastBackfillRefillNs == 0L) {
+            lastBackfillRefillNs = nowNs;
+            backfillTokens = 1.0;
+        }
+        backfillTokens = Math.min(burst, backfillTokens + (nowNs - lastBackfillRefillNs) * rate / 1e9);
+        lastBackfillRefillNs = nowNs;
+
+        if (backfillBuffer == null) {
+            backfillBuffer = ByteBuffer.allocate(PacketSpool.BACKFILL_PREFIX.length + PacketSpool.MAX_PACKET);
+        }
+        while (backfillTokens >= 1.0 && transport.getQueuedPackets() == 0) {
+            backfillBuffer.clear();
+            backfillBuffer.put(PacketSpool.BACKFILL_PREFIX);
+            if (spool.next(backfillBuffer, System.currentTimeMillis()) < 0) return;
+            backfillBuffer.flip();
+            transport.send(backfillBuffer);
+            backfillTokens -= 1.0;
+            packetsBackfilled.incrementAndGet();
+        }
+    }
+
+    /**
+     * Send an OBS-SYNC request stamped with the clock; the previous request
+     * is forgotten if its reply never came
+     *
+     * @return true if a request went out
+     */
+    boolean requestClockSync(long nowMs) {
+        if (!enabled || !open || address.getAddress().isMulticastAddress()) return false;
+        try {
+            pendingSyncOriginNs = clock.getAsLong();
+            transport.send(ByteBuffer.wrap(ClockSyncMessage.request(pendingSyncOriginNs).encode()));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            pendingSyncOriginNs = 0L;
+            recordError(e, nowMs);
+            return false;
+        }
+    }
+
+    boolean isClockSyncPending() {
+        return pendingSyncOriginNs != 0L;
+    }
+
+    /**
+     * Clock of the phone timestamps, e.g. SystemClock::elapsedRealtimeNanos
+     */
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Not sent from inside the transport's read callback: the transport is
+     * mid-read there
+     */
+    private void sendClockEstimateIfDue() throws IOException {
+        if (!clockEstimateDue) return;
+        clockEstimateDue = false;
+        transport.send(ByteBuffer.wrap(clockEstimate.encode()));
+    }
+
+    void setFeedbackListener(FeedbackListener feedbackListener) {
+        this.feedbackListener = feedbackListener;
+    }
+
+    void close() {
+        transport.close();
+        open = false;
+        pendingSyncOriginNs = 0L;
+    }
+
+    /**
+     * Open the transport once the host is resolved; stays closed while the
+     * lookup is running
+     */
+    private void openTransport() throws IOException {
+        InetSocketAddress address = resolve();
+        if (address == null) return;
+        transport.open(address);
+        this.address = address;
+        open = true;
+        if (lastFeedbackMs != 0L) {
+            // The receiver gets OUTAGE_TIMEOUT_MS to confirm the new connection
+            // before it counts as silent, or live packets would be spooled too
+            lastFeedbackMs = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * The receiver's address, or null while it is being looked up
+     */
+    private InetSocketAddress resolve() throws IOException {
+        if (resolved != null) return resolved;
+        if (lookup == null) {
+            if (!ADDRESS_LITERAL.matcher(host).matches()) {
+                lookup = RESOLVER.submit(() -> new InetSocketAddress(host, port));
+                return null;
+            }
+            resolved = new InetSocketAddress(host, port);
+        } else {
+            if (!lookup.isDone()) return null;
+            Future<InetSocketAddress> done = lookup;
+            lookup = null;
+            try {
+                resolved = done.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IOException("Cannot resolve " + host, e);
+            }
+        }
+        if (resolved.isUnresolved()) {
+            resolved = null;
+            throw new IOException("Cannot resolve " + host);
+        }
+        return resolved;
+    }
+
+    private final Transport.Listener transportListener = new Transport.Listener() {
+        @Override
+        public void onPacketsWritten(int packets, long bytes) {
+            packetsSent.addAndGet(packets);
+            bytesSent.addAndGet(bytes);
+            consecutiveFailures = 0;
+        }
+
+        @Override
+        public void onPacketsDropped(int packets) {
+            packetsDropped.addAndGet(packets);
+        }
+
+        @Override
+        public void onFeedback(FeedbackMessage feedback) {
+            lastFeedback = feedback;
+            lastFeedbackMs = System.currentTimeMillis();
+            PacketSpool spool = StreamDestination.this.spool;
+            if (spool != null) {
+                spool.confirm(feedback.echoSequence);
+            }
+            FeedbackListener listener = feedbackListener;
+            if (listener != null) {
+                listener.onFeedback(StreamDestination.this, feedback);
+            }
+        }
+
+        @Override
+        public void onClockSync(ClockSyncMessage message) {
+            long t4 = clock.getAsLong();
+            if (message.type != ClockSyncMessage.Type.REPLY || message.originNs != pendingSyncOriginNs) return;
+            pendingSyncOriginNs = 0L;
+            if (clockSync.addSample(message.originNs, message.receiveNs, message.transmitNs, t4)) {
+                clockEstimate = clockSync.toMessage();
+                clockEstimateDue = true;
+            }
+        }
+    };
+
+    private boolean tryAcquire(long nowNs) {
+        int limit = maxPacketsPerSecond;
+        if (limit <= UNLIMITED) return true;
+
+        if (lastRefillNs == 0L) {
+            lastRefillNs = nowNs;
+            tokens = limit;
+        }
+        tokens = Math.min(limit, tokens + (nowNs - lastRefillNs) * limit / 1e9);
+        lastRefillNs = nowNs;
+        if (tokens < 1.0) return false;
+        tokens -= 1.0;
+        return true;
+    }
+
+    private void recordError(Exception e, long nowMs) {
+        errors.incrementAndGet();
+        lastErrorTimeMs = nowMs;
+        lastError = e.getClass().getSimpleName() + ": " + e.getMessage();
+        close();
+        // The receiver may have moved: look the host up again on the next retry
+        resolved = null;
+
+        long backoffMs = MIN_RETRY_INTERVAL_MS << Math.min(consecutiveFailures, 5);
+        retryAtMs = nowMs + Math.min(backoffMs, MAX_RETRY_INTERVAL_MS);
+        consecutiveFailures++;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + transport + "://" + host + ":" + port
+                + (enabled ? "" : " (disabled)")
+                + " sent=" + packetsSent.get() + "/" + bytesSent.get() + "B"
+                + " dropped=" + packetsDropped.get()
+                + " errors=" + errors.get()
+                + (spool != null ? " " + spool + " backfilled=" + packetsBackfilled.get() : "")
+                + (clockEstimate != null ? " " + clockEstimate : "");
+    }
+}
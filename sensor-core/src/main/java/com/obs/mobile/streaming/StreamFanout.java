@@ -0,0 +1,409 @@
+package com.obs.mobile.streaming;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * StreamFanout - Sends one encoded packet to every enabled destination
+ *
+ * The packet is encoded once by the caller; each destination gets a read-only
+ * view of the same buffer, so the cost per extra receiver is one non-blocking
+ * send. Destinations can be added, removed or toggled from any thread while
+ * the sender is running.
+ *
+ * Telemetry: the time each destination's send takes goes into one
+ * histogram (getSendDurations()), and the per-destination counters can be
+ * summed with getPacketsSent(), getPacketsDropped() and getErrors().
+ *
+ * syncClocks() starts a clock sync exchange with every unicast receiver;
+ * replies are picked up by send() / poll() on the clock set with setClock().
+ *
+ * setSpoolDirectory() gives every unicast destination its own PacketSpool
+ * (one subdirectory per destination name), so packets sent while a receiver
+ * is unreachable are backfilled once it comes back. The size cap holds for
+ * all subdirectories together. A removed destination's subdirectory stays,
+ * so a receiver that comes back under the same name (e.g. a rediscovered
+ * one) still gets its backfill, but it is deleted once older than the age
+ * cap and is the first to go when the directory is over the size cap; after
+ * that the oldest segments of the live spools are evicted.
+ *
+ * Usage:
+ *      fanout.addDestination(new StreamDestination("dashboard", "192.168.1.20", 5000, 10));
+ *      fanout.send(ByteBuffer.wrap(bytes));     // on the sender thread
+ */
+public class StreamFanout {
+
+    private static final long SPOOL_SWEEP_INTERVAL_MS = 10_000L;
+
+    private final CopyOnWriteArrayList<StreamDestination> destinations = new CopyOnWriteArrayList<>();
+
+    // Removed destinations whose sockets the sender thread still has to close
+    private final ConcurrentLinkedQueue<StreamDestination> removed = new ConcurrentLinkedQueue<>();
+
+    private final LatencyHistogram sendDurations = new LatencyHistogram();
+    private volatile StreamDestination.FeedbackListener feedbackListener;
+    private volatile LongSupplier clock = System::nanoTime;
+    private volatile File spoolDirectory;
+    private volatile long spoolMaxBytes = PacketSpool.DEFAULT_MAX_BYTES;
+    private volatile long spoolMaxAgeMs = PacketSpool.DEFAULT_MAX_AGE_MS;
+
+    // Subdirectories no destination uses, oldest first (sender thread)
+    private final List<File> orphanedSpools = new ArrayList<>();
+    private long orphanedSpoolBytes = 0L;
+    private long nextSpoolSweepMs = 0L;
+
+    /**
+     * Add a destination, replacing one with the same name
+     */
+    public void addDestination(StreamDestination destination) {
+        StreamDestination previous = getDestination(destination.getName());
+        if (previous != null) {
+            destinations.remove(previous);
+            removed.add(previous);
+        }
+        destination.setFeedbackListener(this::onFeedback);
+        destination.setClock(clock);
+        File spoolDirectory = this.spoolDirectory;
+        if (spoolDirectory != null && destination.getSpool() == null) {
+            destination.setSpool(new PacketSpool(new File(spoolDirectory, spoolName(destination.getName())),
+                    spoolMaxBytes, spoolMaxAgeMs));
+        }
+        destinations.add(destination);
+    }
+
+    /**
+     * Remove a destination by name; its socket is closed on the next send
+     */
+    public StreamDestination removeDestination(String name) {
+        StreamDestination destination = getDestination(name);
+        if (destination != null) {
+            destinations.remove(destination);
+            removed.add(destination);
+        }
+        return destination;
+    }
+
+    /**
+     * Receive feedback from every destination's receiver (sender thread)
+     */
+    public void setFeedbackListener(StreamDestination.FeedbackListener feedbackListener) {
+        this.feedbackListener = feedbackListener;
+    }
+
+    /**
+     * Clock of the timestamps in the packets, used for clock sync; set before
+     * adding destinations
+     */
+    public void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Spool packets for unreachable receivers under directory, with the
+     * default size and age caps; set before adding destinations
+     */
+    public void setSpoolDirectory(File directory) {
+        setSpoolDirectory(directory, PacketSpool.DEFAULT_MAX_BYTES, PacketSpool.DEFAULT_MAX_AGE_MS);
+    }
+
+    /**
+     * @param maxBytes disk space all destinations' spools may use together
+     * @param maxAgeMs how long a spooled packet is kept for backfill
+     */
+    public void setSpoolDirectory(File directory, long maxBytes, long maxAgeMs) {
+        this.spoolMaxBytes = maxBytes;
+        this.spoolMaxAgeMs = maxAgeMs;
+        this.spoolDirectory = directory;
+    }
+
+    public StreamDestination getDestination(String name) {
+        for (StreamDestination destination : destinations) {
+            if (destination.getName().equals(name)) return destination;
+        }
+        return null;
+    }
+
+    /**
+     * Live view of the destinations, for reading their counters
+     */
+    public List<StreamDestination> getDestinations() {
+        return destinations;
+    }
+
+    /**
+     * Send one packet to every destination (sender thread only)
+     *
+     * @return number of destinations the packet was handed to
+     */
+    public int send(ByteBuffer payload) {
+        return send(payload, -1L);
+    }
+
+    /**
+     * Send one packet to every destination (sender thread only)
+     *
+     * @param seq the packet's sequence number; receiver feedback echoes it
+     *            back, which tells the spool what arrived
+     * @return number of destinations the packet was handed to
+     */
+    public int send(ByteBuffer payload, long seq) {
+        closeRemoved();
+
+        long nowNs = System.nanoTime();
+        long nowMs = System.currentTimeMillis();
+        ByteBuffer shared = payload.asReadOnlyBuffer();
+
+        int delivered = 0;
+        for (StreamDestination destination : destinations) {
+            if (!destination.isEnabled()) {
+                destination.close();
+                continue;
+            }
+            long startNs = System.nanoTime();
+            if (destination.send(shared, seq, nowNs, nowMs)) {
+                delivered++;
+            }
+            sendDurations.record(System.nanoTime() - startNs);
+        }
+        enforceSpoolLimits(nowMs);
+        return delivered;
+    }
+
+    /**
+     * Read pending receiver feedback without sending (sender thread only);
+     * call between sends so round-trip times are not inflated by the send interval
+     */
+    public void poll() {
+        long nowNs = System.nanoTime();
+        long nowMs = System.currentTimeMillis();
+        for (StreamDestination destination : destinations) {
+            destination.poll(nowNs, nowMs);
+        }
+    }
+
+    /**
+     * Send a clock sync request to every connected unicast receiver (sender
+     * thread only); poll() soon after so the reply is timed precisely
+     *
+     * @return number of requests sent
+     */
+    public int syncClocks() {
+        long nowMs = System.currentTimeMillis();
+        int requested = 0;
+        for (StreamDestination destination : destinations) {
+            if (destination.requestClockSync(nowMs)) {
+                requested++;
+            }
+        }
+        return requested;
+    }
+
+    /**
+     * Whether a clock sync reply is still outstanding
+     */
+    public boolean isClockSyncPending() {
+        for (StreamDestination destination : destinations) {
+            if (destination.isClockSyncPending()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Time spent in each destination's send, one sample per destination and packet
+     */
+    public LatencyHistogram getSendDurations() {
+        return sendDurations;
+    }
+
+    public long getPacketsSent() {
+        long total = 0L;
+        for (StreamDestination destination : destinations) {
+            total += destination.getPacketsSent();
+        }
+        return total;
+    }
+
+    /**
+     * Packets dropped by policy: rate limits, full socket buffers and full queues
+     */
+    public long getPacketsDropped() {
+        long total = 0L;
+        for (StreamDestination destination : destinations) {
+            total += destination.getPacketsDropped();
+        }
+        return total;
+    }
+
+    /**
+     * Spooled packets sent again after their receiver came back
+     */
+    public long getPacketsBackfilled() {
+        long total = 0L;
+        for (StreamDestination destination : destinations) {
+            total += destination.getPacketsBackfilled();
+        }
+        return total;
+    }
+
+    public long getErrors() {
+        long total = 0L;
+        for (StreamDestination destination : destinations) {
+            total += destination.getErrors();
+        }
+        return total;
+    }
+
+    /**
+     * Close every socket (sender thread only); destinations stay configured
+     */
+    public void close() {
+        closeRemoved();
+        for (StreamDestination destination : destinations) {
+            destination.close();
+            closeSpool(destination);
+        }
+    }
+
+    private void onFeedback(StreamDestination destination, FeedbackMessage feedback) {
+        StreamDestination.FeedbackListener listener = feedbackListener;
+        if (listener != null) {
+            listener.onFeedback(destination, feedback);
+        }
+    }
+
+    private static void closeSpool(StreamDestination destination) {
+        PacketSpool spool = destination.getSpool();
+        if (spool != null) {
+            spool.close();
+        }
+    }
+
+    private static String spoolName(String destinationName) {
+        return destinationName.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private void closeRemoved() {
+        StreamDestination destination;
+        while ((destination = removed.poll()) != null) {
+            destination.close();
+            closeSpool(destination);
+            // Count its spool as orphaned from now on
+            nextSpoolSweepMs = 0L;
+        }
+    }
+
+    // ============================================================
+    // Spool directory (sender thread)
+    // ============================================================
+
+    /**
+     * Keep the whole spool directory under the size cap: orphaned
+     * subdirectories go first, then the oldest segment of any live spool
+     */
+    private void enforceSpoolLimits(long nowMs) {
+        File directory = spoolDirectory;
+        if (directory == null) return;
+        if (nowMs >= nextSpoolSweepMs) {
+            nextSpoolSweepMs = nowMs + SPOOL_SWEEP_INTERVAL_MS;
+            sweepOrphanedSpools(directory, nowMs);
+        }
+
+        long total = orphanedSpoolBytes;
+        for (StreamDestination destination : destinations) {
+            PacketSpool spool = destination.getSpool();
+            if (spool != null) {
+                total += spool.getBytes();
+            }
+        }
+        while (total > spoolMaxBytes) {
+            if (!orphanedSpools.isEmpty()) {
+                File orphan = orphanedSpools.remove(0);
+                long bytes = directoryBytes(orphan);
+                deleteDirectory(orphan);
+                orphanedSpoolBytes -= bytes;
+                total -= bytes;
+                continue;
+            }
+            PacketSpool oldest = null;
+            for (StreamDestination destination : destinations) {
+                PacketSpool spool = destination.getSpool();
+                if (spool != null && spool.getOldestSegmentMs() != Long.MAX_VALUE
+                        && (oldest == null || spool.getOldestSegmentMs() < oldest.getOldestSegmentMs())) {
+                    oldest = spool;
+                }
+            }
+            if (oldest == null) return;
+            long before = oldest.getBytes();
+            oldest.evictOldest();
+            total -= before - oldest.getBytes();
+        }
+    }
+
+    /**
+     * Find the subdirectories no destination spools to; those older than the
+     * age cap are deleted, the rest are kept for a receiver that comes back
+     */
+    private void sweepOrphanedSpools(File directory, long nowMs) {
+        orphanedSpools.clear();
+        orphanedSpoolBytes = 0L;
+        File[] children = directory.listFiles(File::isDirectory);
+        if (children == null) return;
+
+        Set<File> live = new HashSet<>();
+        for (StreamDestination destination : destinations) {
+            PacketSpool spool = destination.getSpool();
+            if (spool != null) {
+                live.add(spool.getDirectory());
+            }
+        }
+        for (File child : children) {
+            if (live.contains(child)) continue;
+            if (nowMs - newestModifiedMs(child) > spoolMaxAgeMs) {
+                deleteDirectory(child);
+                continue;
+            }
+            orphanedSpools.add(child);
+            orphanedSpoolBytes += directoryBytes(child);
+        }
+        orphanedSpools.sort((a, b) -> Long.compare(newestModifiedMs(a), newestModifiedMs(b)));
+    }
+
+    private static long directoryBytes(File directory) {
+        long bytes = 0L;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                bytes += file.length();
+            }
+        }
+        return bytes;
+    }
+
+    private static long newestModifiedMs(File directory) {
+        long newest = directory.lastModified();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                newest = Math.max(newest, file.lastModified());
+            }
+        }
+        return newest;
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,184 @@
+package com.obs.mobile.streaming;
+
+import java.util.Locale;
+
+/**
+ * StreamStats - Receiver-side loss, reordering and latency of one stream
+ *
+ * Fed with the "seq", "capture_ts_ns" and "timestamp_ns" (send time) fields of
+ * every packet plus the local receive time. Sequence numbers are tracked in a
+ * sliding window of WINDOW packets so late (reordered) and duplicate packets
+ * are told apart; a packet older than the window counts as late but cannot be
+ * checked for duplication.
+ *
+ * Sender and receiver clocks differ, so the send -> receive latency is the
+ * transit time above the smallest one seen so far (queueing and jitter on
+ * top of the fixed path delay) until an absolute clock offset is supplied.
+ *
+ * Not thread-safe; feed it from one receive thread.
+ */
+public class StreamStats {
+
+    private static final int WINDOW = 1024;
+
+    private final long[] seenWindow = new long[WINDOW / 64];
+    private final LatencyHistogram captureToSend = new LatencyHistogram();
+    private final LatencyHistogram transit = new LatencyHistogram();
+
+    private long firstSeq = -1L;
+    private long highestSeq = -1L;
+    private long received = 0L;
+    private long reordered = 0L;
+    private long duplicates = 0L;
+
+    private long minTransitNs = Long.MAX_VALUE;
+    private boolean hasClockOffset = false;
+    private long clockOffsetNs = 0L;
+
+    /**
+     * Use an absolute sender -> receiver clock offset for transit latency
+     * (receiverTime = senderTime + offset)
+     */
+    public void setClockOffset(long offsetNs) {
+        clockOffsetNs = offsetNs;
+        hasClockOffset = true;
+    }
+
+    /**
+     * @param captureNs 0 if the packet carried no capture time
+     */
+    public void onPacket(long seq, long captureNs, long sendNs, long receiveNs) {
+        if (firstSeq < 0L) {
+            firstSeq = seq;
+            highestSeq = seq - 1;
+        }
+
+        if (seq > highestSeq) {
+            // Slide the window, clearing the slots of skipped sequence numbers
+            long advance = Math.min(seq - highestSeq, WINDOW);
+            for (long s = seq - advance + 1; s <= seq; s++) {
+                clearSeen(s);
+            }
+            highestSeq = seq;
+        } else if (seq <= highestSeq - WINDOW || seq < firstSeq) {
+            reordered++;
+            received++;
+            recordLatency(captureNs, sendNs, receiveNs);
+            return;
+        } else if (isSeen(seq)) {
+            duplicates++;
+            return;
+        } else {
+            reordered++;
+        }
+
+        markSeen(seq);
+        received++;
+        recordLatency(captureNs, sendNs, receiveNs);
+    }
+
+    /**
+     * A packet resent from the sender's spool after an outage: fills its gap
+     * in the loss count without counting as reordered or adding latency
+     *
+     * @return false if it was already received; older than the window it is taken as new
+     */
+    public boolean onBackfill(long seq) {
+        if (firstSeq < 0L || seq > highestSeq) {
+            onPacket(seq, 0L, 0L, 0L);
+            return true;
+        }
+        if (seq < firstSeq) return true;   // Before this receiver's first packet, outside the loss range
+        if (seq > highestSeq - WINDOW) {
+            if (isSeen(seq)) {
+                duplicates++;
+                return false;
+            }
+            markSeen(seq);
+        }
+        received++;
+        return true;
+    }
+
+    private void recordLatency(long captureNs, long sendNs, long receiveNs) {
+        if (captureNs > 0L && sendNs >= captureNs) {
+            captureToSend.record(sendNs - captureNs);
+        }
+        if (sendNs <= 0L) return;
+
+        if (hasClockOffset) {
+            transit.record(receiveNs - (sendNs + clockOffsetNs));
+        } else {
+            long rawTransit = receiveNs - sendNs;
+            minTransitNs = Math.min(minTransitNs, rawTransit);
+            transit.record(rawTransit - minTransitNs);
+        }
+    }
+
+    /**
+     * Sequence numbers between the first and the highest one never received
+     */
+    public long getLost() {
+        if (firstSeq < 0L) return 0L;
+        return Math.max(0L, highestSeq - firstSeq + 1 - received);
+    }
+
+    public double getLossRate() {
+        if (firstSeq < 0L) return 0.0;
+        return (double) getLost() / (highestSeq - firstSeq + 1);
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public long getReordered() {
+        return reordered;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public LatencyHistogram getCaptureToSend() {
+        return captureToSend;
+    }
+
+    /**
+     * Send -> receive latency, above the minimum unless a clock offset is set
+     */
+    public LatencyHistogram getTransit() {
+        return transit;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "received=%d lost=%d (%.2f%%) reordered=%d duplicates=%d%n  capture->send %s%n  transit%s %s",
+                received, getLost(), getLossRate() * 100.0, reordered, duplicates,
+                captureToSend.summary(), hasClockOffset ? "" : " (above min)", transit.summary());
+    }
+
+    // ============================================================
+    // Sequence window
+    // ============================================================
+
+    private int slot(long seq) {
+        return (int) Math.floorMod(seq, (long) WINDOW);
+    }
+
+    private boolean isSeen(long seq) {
+        int slot = slot(seq);
+        return (seenWindow[slot >>> 6] & (1L << (slot & 63))) != 0L;
+    }
+
+    private void markSeen(long seq) {
+        int slot = slot(seq);
+        seenWindow[slot >>> 6] |= 1L << (slot & 63);
+    }
+
+    private void clearSeen(long seq) {
+        int slot = slot(seq);
+        seenWindow[slot >>> 6] &= ~(1L << (slot & 63));
+    }
+}
@@ -0,0 +1,238 @@
+package com.obs.mobile.streaming;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * TcpTransport - Reliable, ordered stream of length-prefixed packets
+ *
+ * Wire format: every packet is a 4-byte big-endian length followed by that
+ * many payload bytes. Nagle is disabled so small packets go out at once.
+ *
+ * Packets wait in a bounded queue and are written as far as the socket
+ * accepts on each send/flush; the sender thread never blocks on a slow
+ * receiver. When the queue is full the OverflowPolicy decides what is lost.
+ * The queue survives reconnects: a packet that was only partly written on
+ * the broken connection is sent again from its start on the new one.
+ *
+ * The receiver sends FeedbackMessages and clock sync replies back on the
+ * same connection, framed the same way.
+ */
+public class TcpTransport implements Transport {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private static final int LENGTH_PREFIX_BYTES = 4;
+    private static final int MAX_FEEDBACK_FRAME = 512;
+
+    public enum OverflowPolicy {
+        /** Drop the oldest queued packet, keep the new one */
+        DROP_OLDEST,
+        /** Drop the new packet, keep what is queued */
+        DROP_NEWEST,
+        /** Replace the newest queued packet; right for full-state snapshots */
+        COALESCE
+    }
+
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final ArrayDeque<ByteBuffer> queue;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(4 * (LENGTH_PREFIX_BYTES + MAX_FEEDBACK_FRAME));
+
+    private SocketChannel channel;
+    private Listener listener;
+    private boolean connected = false;
+
+    public TcpTransport() {
+        this(DEFAULT_QUEUE_CAPACITY, OverflowPolicy.DROP_OLDEST);
+    }
+
+    public TcpTransport(int queueCapacity, OverflowPolicy overflowPolicy) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.queue = new ArrayDeque<>(queueCapacity);
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Packets waiting to be written, including a partly written one
+     */
+    @Override
+    public int getQueuedPackets() {
+        return queue.size();
+    }
+
+    @Override
+    public int discardQueued() {
+        // close() rewinds the head, so only a live connection can have one in flight
+        ByteBuffer head = queue.peekFirst();
+        boolean headInFlight = head != null && head.position() > 0;
+        int discarded = queue.size() - (headInFlight ? 1 : 0);
+        queue.clear();
+        if (headInFlight) {
+            queue.addFirst(head);
+        }
+        return discarded;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void open(InetSocketAddress address) throws IOException {
+        SocketChannel opened = SocketChannel.open();
+        try {
+            opened.configureBlocking(false);
+            opened.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            connected = opened.connect(address);
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        channel = opened;
+    }
+
+    @Override
+    public void send(ByteBuffer payload) throws IOException {
+        ByteBuffer source = payload.duplicate();
+        ByteBuffer frame = ByteBuffer.allocate(LENGTH_PREFIX_BYTES + source.remaining());
+        frame.putInt(source.remaining());
+        frame.put(source);
+        frame.flip();
+
+        enqueue(frame);
+        flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (channel == null) return;
+        if (!connected) {
+            // Throws when the connection was refused
+            connected = channel.finishConnect();
+            if (!connected) return;
+        }
+        readFeedback();
+
+        int packets = 0;
+        long bytes = 0L;
+        try {
+            while (!queue.isEmpty()) {
+                ByteBuffer head = queue.peekFirst();
+                bytes += channel.write(head);
+                if (head.hasRemaining()) break;   // Socket buffer full
+                queue.pollFirst();
+                packets++;
+            }
+        } finally {
+            if (packets > 0) {
+                listener.onPacketsWritten(packets, bytes);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+        connected = false;
+        readBuffer.clear();
+        ByteBuffer head = queue.peekFirst();
+        if (head != null) {
+            head.rewind();
+        }
+    }
+
+    /**
+     * Read whatever the receiver sent and report complete feedback / sync frames
+     */
+    private void readFeedback() throws IOException {
+        if (channel.read(readBuffer) < 0) {
+            throw new IOException("Connection closed by receiver");
+        }
+        readBuffer.flip();
+        while (readBuffer.remaining() >= LENGTH_PREFIX_BYTES) {
+            int length = readBuffer.getInt(readBuffer.position());
+            if (length < 0 || length > MAX_FEEDBACK_FRAME) {
+                throw new IOException("Bad feedback frame length " + length);
+            }
+            if (readBuffer.remaining() < LENGTH_PREFIX_BYTES + length) break;
+
+            int start = readBuffer.position() + LENGTH_PREFIX_BYTES;
+            FeedbackMessage feedback = FeedbackMessage.parse(readBuffer.array(), start, length);
+            ClockSyncMessage sync = feedback == null
+                    ? ClockSyncMessage.parse(readBuffer.array(), start, length) : null;
+            readBuffer.position(start + length);
+            if (feedback != null) {
+                listener.onFeedback(feedback);
+            } else if (sync != null) {
+                listener.onClockSync(sync);
+            }
+        }
+        readBuffer.compact();
+    }
+
+    private void enqueue(ByteBuffer frame) {
+        if (queue.size() < queueCapacity) {
+            queue.addLast(frame);
+            return;
+        }
+
+        // A partly written head must be finished, or the stream loses framing
+        ByteBuffer head = queue.peekFirst();
+        boolean headInFlight = head.position() > 0;
+
+        switch (overflowPolicy) {
+            case DROP_NEWEST:
+                listener.onPacketsDropped(1);
+                return;
+
+            case COALESCE:
+                if (queue.size() > 1 || !headInFlight) {
+                    queue.pollLast();
+                    queue.addLast(frame);
+                }
+                listener.onPacketsDropped(1);
+                return;
+
+            case DROP_OLDEST:
+            default:
+                if (headInFlight) {
+                    if (queue.size() == 1) {
+                        listener.onPacketsDropped(1);
+                        return;
+                    }
+                    // Drop the oldest packet behind the one being written
+                    queue.pollFirst();
+                    queue.pollFirst();
+                    queue.addFirst(head);
+                } else {
+                    queue.pollFirst();
+                }
+                queue.addLast(frame);
+                listener.onPacketsDropped(1);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "tcp";
+    }
+}
@@ -0,0 +1,73 @@
+package com.obs.mobile.streaming;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Transport - How a StreamDestination moves packets to its receiver
+ *
+ * Implementations never block the sender thread: send() either hands the
+ * packet to the socket, queues it or drops it, and flush() only does what the
+ * socket accepts right now. An IOException means the connection is broken;
+ * the destination then closes the transport and opens it again after a
+ * backoff. Receiver feedback (FeedbackMessage) and clock sync replies
+ * (ClockSyncMessage) coming back on the same socket are read during
+ * send()/flush() and reported to the listener.
+ *
+ * All methods are called on the sender thread only.
+ */
+public interface Transport {
+
+    /**
+     * Outcome of sends, reported as they happen
+     */
+    interface Listener {
+        void onPacketsWritten(int packets, long bytes);
+        void onPacketsDropped(int packets);
+        void onFeedback(FeedbackMessage feedback);
+        void onClockSync(ClockSyncMessage message);
+    }
+
+    /**
+     * Set once by the owning destination, before the first open()
+     */
+    void setListener(Listener listener);
+
+    /**
+     * Start connecting to the receiver; may finish later without blocking
+     */
+    void open(InetSocketAddress address) throws IOException;
+
+    /**
+     * Send or queue one packet; the payload's position is not moved
+     */
+    void send(ByteBuffer payload) throws IOException;
+
+    /**
+     * Make progress on a pending connect or queued data
+     */
+    void flush() throws IOException;
+
+    /**
+     * Close the socket; a transport can be opened again afterwards
+     */
+    void close();
+
+    /**
+     * Packets accepted by send() but not yet written to the socket
+     */
+    default int getQueuedPackets() {
+        return 0;
+    }
+
+    /**
+     * Forget queued packets that were not written yet, e.g. because they are
+     * spooled instead; a packet partly written to a live connection is kept
+     *
+     * @return packets discarded
+     */
+    default int discardQueued() {
+        return 0;
+    }
+}
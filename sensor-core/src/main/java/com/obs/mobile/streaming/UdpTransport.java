@@ -0,0 +1,129 @@
+package com.obs.mobile.streaming;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * UdpTransport - One datagram per packet, the low-latency default
+ *
+ * Uses a non-blocking, connected DatagramChannel so a receiver that is down
+ * shows up as an error (ICMP port unreachable) on the next send. A datagram
+ * the socket buffer has no room for is dropped, never waited for. Feedback
+ * and clock sync datagrams from the receiver arrive on the same connected
+ * channel.
+ *
+ * A multicast group address is a valid receiver: the datagram then reaches
+ * every listener that joined the group (TTL DiscoveryProtocol.MULTICAST_TTL,
+ * local loopback on), so any number of receivers cost a single send.
+ */
+public class UdpTransport implements Transport {
+
+    private final NetworkInterface multicastInterface;
+
+    private static final int MAX_FEEDBACK_DATAGRAM = 512;
+
+    private final ByteBuffer feedbackBuffer = ByteBuffer.allocate(MAX_FEEDBACK_DATAGRAM);
+    private DatagramChannel channel;
+    private Listener listener;
+
+    public UdpTransport() {
+        this(null);
+    }
+
+    /**
+     * @param multicastInterface interface for multicast sends, null for the system default
+     */
+    public UdpTransport(NetworkInterface multicastInterface) {
+        this.multicastInterface = multicastInterface;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void open(InetSocketAddress address) throws IOException {
+        boolean ipv6 = address.getAddress() instanceof Inet6Address;
+        DatagramChannel opened = DatagramChannel.open(ipv6 ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+        try {
+            opened.configureBlocking(false);
+            if (address.getAddress().isMulticastAddress()) {
+                opened.setOption(StandardSocketOptions.IP_MULTICAST_TTL, DiscoveryProtocol.MULTICAST_TTL);
+                opened.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+                if (multicastInterface != null) {
+                    opened.setOption(StandardSocketOptions.IP_MULTICAST_IF, multicastInterface);
+                }
+            }
+            opened.connect(address);
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        channel = opened;
+    }
+
+    @Override
+    public void send(ByteBuffer payload) throws IOException {
+        if (channel == null) {
+            // Waiting to reopen after an error
+            listener.onPacketsDropped(1);
+            return;
+        }
+        int written = channel.write(payload.duplicate());
+        if (written == 0) {
+            // Socket buffer full, drop rather than wait
+            listener.onPacketsDropped(1);
+        } else {
+            listener.onPacketsWritten(1, written);
+        }
+        readFeedback();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // Nothing is ever queued, only pick up feedback
+        if (channel != null) {
+            readFeedback();
+        }
+    }
+
+    private void readFeedback() throws IOException {
+        while (true) {
+            feedbackBuffer.clear();
+            if (channel.read(feedbackBuffer) <= 0) return;
+            int length = feedbackBuffer.position();
+            FeedbackMessage feedback = FeedbackMessage.parse(feedbackBuffer.array(), 0, length);
+            if (feedback != null) {
+                listener.onFeedback(feedback);
+                continue;
+            }
+            ClockSyncMessage sync = ClockSyncMessage.parse(feedbackBuffer.array(), 0, length);
+            if (sync != null) {
+                listener.onClockSync(sync);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "udp";
+    }
+}
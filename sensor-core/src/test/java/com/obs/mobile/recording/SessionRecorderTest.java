@@ -0,0 +1,126 @@
+package com.obs.mobile.recording;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Recording across segment rolls, reading back, seeking and damaged tails
+ */
+public class SessionRecorderTest {
+
+    private static final int SEGMENT_SIZE = 128 * 1024;
+    private static final long INTERVAL_NS = 5_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackEveryRecordAcrossSegments() throws Exception {
+        File directory = folder.newFolder("session");
+        int count = record(directory, 20_000);
+
+        SessionReader reader = new SessionReader(directory);
+        assertTrue(reader.getSegmentCount() > 3);
+        SessionRecord record = new SessionRecord();
+        for (int i = 0; i < count; i++) {
+            assertTrue(reader.next(record));
+            assertSample(i, record);
+        }
+        assertFalse(reader.next(record));
+        assertEquals(0L, reader.getCorruptRecords());
+    }
+
+    @Test
+    public void seeksThroughTheIndex() throws Exception {
+        File directory = folder.newFolder("session");
+        record(directory, 20_000);
+
+        SessionReader reader = new SessionReader(directory);
+        SessionRecord record = new SessionRecord();
+        reader.seek(12_345 * INTERVAL_NS + 1);
+        assertTrue(reader.next(record));
+        assertSample(12_346, record);
+
+        reader.seek(0L);
+        assertTrue(reader.next(record));
+        assertSample(0, record);
+
+        reader.seek(Long.MAX_VALUE);
+        assertFalse(reader.next(record));
+    }
+
+    @Test
+    public void stopsSegmentAtCorruptRecord() throws Exception {
+        File directory = folder.newFolder("session");
+        record(directory, 100);
+
+        // Flip a payload byte of record 50: an accelerometer record is 30 bytes
+        File segment = SessionFormat.segmentFile(directory, 0);
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            long offset = SessionFormat.SEGMENT_HEADER_SIZE + 50L * 30 + SessionFormat.RECORD_HEADER_SIZE;
+            file.seek(offset);
+            int b = file.read();
+            file.seek(offset);
+            file.write(b ^ 0x40);
+        }
+
+        SessionReader reader = new SessionReader(directory);
+        SessionRecord record = new SessionRecord();
+        int read = 0;
+        while (reader.next(record)) {
+            assertSample(read++, record);
+        }
+        assertEquals(50, read);
+        assertEquals(1L, reader.getCorruptRecords());
+    }
+
+    @Test
+    public void resumesNumberingAndDropsAfterClose() throws Exception {
+        File directory = folder.newFolder("session");
+        record(directory, 10);
+
+        SessionRecorder recorder = new SessionRecorder(directory, SEGMENT_SIZE, 50L);
+        assertTrue(recorder.append(SessionRecord.LIGHT, 1_000_000_000L, 250f));
+        recorder.close();
+        assertFalse(recorder.append(SessionRecord.LIGHT, 1_000_000_001L, 251f));
+        assertEquals(1L, recorder.getDroppedCount());
+        assertTrue(SessionFormat.segmentFile(directory, 1).isFile());
+
+        SessionReader reader = new SessionReader(directory);
+        SessionRecord record = new SessionRecord();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(reader.next(record));
+        }
+        assertTrue(reader.next(record));
+        assertEquals(SessionRecord.LIGHT, record.type);
+        assertEquals(1, record.getFloatCount());
+        assertEquals(250f, record.getFloat(0), 0f);
+        assertFalse(reader.next(record));
+    }
+
+    private static int record(File directory, int count) throws Exception {
+        SessionRecorder recorder = new SessionRecorder(directory, SEGMENT_SIZE, 20L);
+        for (int i = 0; i < count; i++) {
+            assertTrue(recorder.append(SessionRecord.ACCELEROMETER, i * INTERVAL_NS, i, -i, 9.81f));
+        }
+        recorder.close();
+        assertEquals(count, recorder.getRecordCount());
+        assertEquals(0L, recorder.getDroppedCount());
+        return count;
+    }
+
+    private static void assertSample(int i, SessionRecord record) {
+        assertEquals(SessionRecord.ACCELEROMETER, record.type);
+        assertEquals(i * INTERVAL_NS, record.timestampNs);
+        assertEquals(3, record.getFloatCount());
+        assertEquals((float) i, record.getFloat(0), 0f);
+        assertEquals((float) -i, record.getFloat(1), 0f);
+        assertEquals(9.81f, record.getFloat(2), 0f);
+    }
+}
@@ -0,0 +1,81 @@
+package com.obs.mobile.recording;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replay order, range and pacing of recorded sessions
+ */
+public class SessionReplayerTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysSameRecordsAtAnySpeed() throws Exception {
+        File directory = record(1000);   // 10 ms apart, 10 s
+        List<String> fast = replay(directory, SessionReplayer.AS_FAST_AS_POSSIBLE);
+        List<String> paced = replay(directory, 100.0);
+
+        assertEquals(1000, fast.size());
+        assertEquals(fast, paced);
+        assertEquals("gyroscope @1010000000 1.0, 0.5, -0.0", fast.get(0));
+    }
+
+    @Test
+    public void pacesByRecordedTime() throws Exception {
+        File directory = record(101);    // 1 s
+        SessionReplayer replayer = new SessionReplayer(directory);
+        replayer.setSpeed(5.0);
+        assertEquals(101L, replayer.replay(record -> { }));
+
+        long elapsedMs = replayer.getElapsedNs() / MS;
+        assertTrue("took " + elapsedMs + " ms", elapsedMs >= 195 && elapsedMs < 1000);
+    }
+
+    @Test
+    public void replaysRangeAndStops() throws Exception {
+        File directory = record(1000);
+        SessionReplayer replayer = new SessionReplayer(directory);
+        replayer.setSpeed(SessionReplayer.AS_FAST_AS_POSSIBLE);
+        replayer.setRange(3000 * MS, 4000 * MS);
+        List<Long> timestamps = new ArrayList<>();
+        replayer.replay(record -> timestamps.add(record.timestampNs));
+
+        assertEquals(100, timestamps.size());
+        assertEquals(3000 * MS, (long) timestamps.get(0));
+        assertEquals(3990 * MS, (long) timestamps.get(99));
+
+        replayer.setRange(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(10L, replayer.replay(record -> {
+            if (record.timestampNs >= 1100 * MS) replayer.stop();
+        }));
+    }
+
+    private File record(int count) throws Exception {
+        File directory = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(directory);
+        for (int i = 1; i <= count; i++) {
+            recorder.append(SessionRecord.GYROSCOPE, 1000 * MS + i * 10 * MS, i % 7, 0.5f, -0.0f);
+        }
+        recorder.close();
+        return directory;
+    }
+
+    private static List<String> replay(File directory, double speed) throws Exception {
+        SessionReplayer replayer = new SessionReplayer(directory);
+        replayer.setSpeed(speed);
+        List<String> records = new ArrayList<>();
+        replayer.replay(record -> records.add(record.toString()));
+        return records;
+    }
+}
@@ -0,0 +1,109 @@
+package com.obs.mobile.sensors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Gyro path integration, low-pass smoothing and crop clamping of the stabiliser
+ */
+public class GyroStabilizerTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void integratesTheRateWithTrapezoidsClippedToTheFrameInterval() {
+        ImuRingBuffer gyro = new ImuRingBuffer(16);
+        // Pitch rate ramps 0, 1, 2, 3 rad/s at 0, 10, 20, 30 ms
+        for (int i = 0; i <= 3; i++) {
+            gyro.add(i * 10 * MS, i, 0f, 0f);
+        }
+        // With smoothing 0.5 and a zero start the correction is -path / 2
+        GyroStabilizer stabilizer = new GyroStabilizer(gyro, 0.25f, 0.5f);
+        float[] matrix = new float[16];
+
+        stabilizer.update(5 * MS, matrix);
+        assertArrayEquals(new float[] {0f, 0f, 0f}, stabilizer.getCorrection(), 0f);
+
+        // Integral of 100 t over 5..25 ms is 0.03 rad, exact for a linear rate
+        stabilizer.update(25 * MS, matrix);
+        assertEquals(-0.015f, stabilizer.getCorrection()[0], 1e-6f);
+        assertEquals(0f, stabilizer.getCorrection()[1], 0f);
+
+        // 25..30 ms averages 2.75 rad/s, then the last rate is held to 40 ms:
+        // path 0.03 + 0.01375 + 0.03, smoothed 0.5 * 0.015 + 0.5 * path
+        stabilizer.update(40 * MS, matrix);
+        assertEquals(0.044375f - 0.07375f, stabilizer.getCorrection()[0], 1e-6f);
+    }
+
+    @Test
+    public void lowPassPathLagsASteadyPanByAFixedAngle() {
+        ImuRingBuffer gyro = new ImuRingBuffer(1024);
+        for (int i = 0; i <= 400; i++) {
+            gyro.add(i * 5 * MS, 0f, 1f, 0f);   // 1 rad/s yaw
+        }
+        GyroStabilizer smooth = new GyroStabilizer(gyro, 0.25f, 0.9f);
+        GyroStabilizer raw = new GyroStabilizer(gyro, 0.25f, 0f);
+        float[] matrix = new float[16];
+        for (long t = 10 * MS; t <= 1500 * MS; t += 10 * MS) {
+            smooth.update(t, matrix);
+            raw.update(t, matrix);
+        }
+        // 0.01 rad per frame: the smoothed path settles 0.9 / 0.1 frames behind
+        assertEquals(-0.09f, smooth.getCorrection()[1], 1e-4f);
+        assertEquals(0f, raw.getCorrection()[1], 1e-6f);
+
+        // A long gap restarts the path
+        smooth.update(2500 * MS, matrix);
+        assertEquals(0f, smooth.getCorrection()[1], 0f);
+    }
+
+    @Test
+    public void correctionIsClampedToTheCropMargin() {
+        ImuRingBuffer gyro = new ImuRingBuffer(64);
+        for (int i = 0; i <= 20; i++) {
+            gyro.add(i * 5 * MS, 20f, 0f, 20f);   // Violent pitch and roll
+        }
+        GyroStabilizer stabilizer = new GyroStabilizer(gyro, 0.1f, 0.9f);
+        stabilizer.setCameraGeometry(90, false, 0.8f, 1.4f);
+        float[] matrix = new float[16];
+
+        // First frame: no correction, just the zoom into the 10% margin
+        stabilizer.update(10 * MS, matrix);
+        assertCorner(matrix, 0f, 0f, 0.1f, 0.1f);
+        assertCorner(matrix, 1f, 1f, 0.9f, 0.9f);
+
+        // 0.2 rad in one frame is far beyond what the margin can absorb; at a
+        // sensor orientation of 90 pitch moves the buffer along x
+        stabilizer.update(20 * MS, matrix);
+        assertEquals(-0.1f / 0.8f, stabilizer.getCorrection()[0], 1e-6f);
+        assertEquals(-0.1f, stabilizer.getCorrection()[2], 1e-6f);
+
+        // Without roll the shifted crop never leaves the frame, whichever
+        // buffer axis pitch and yaw end up on
+        ImuRingBuffer pitchOnly = new ImuRingBuffer(64);
+        for (int i = 0; i <= 20; i++) {
+            pitchOnly.add(i * 5 * MS, -20f, 20f, 0f);
+        }
+        stabilizer = new GyroStabilizer(pitchOnly, 0.1f, 0.9f);
+        stabilizer.update(10 * MS, matrix);
+        stabilizer.update(20 * MS, matrix);
+        for (float x = 0f; x <= 1f; x += 1f) {
+            for (float y = 0f; y <= 1f; y += 1f) {
+                float[] p = apply(matrix, x, y);
+                assertTrue("x " + p[0], p[0] >= -1e-6f && p[0] <= 1f + 1e-6f);
+                assertTrue("y " + p[1], p[1] >= -1e-6f && p[1] <= 1f + 1e-6f);
+            }
+        }
+    }
+
+    private static void assertCorner(float[] matrix, float x, float y, float expectedX, float expectedY) {
+        float[] p = apply(matrix, x, y);
+        assertEquals(expectedX, p[0], 1e-5f);
+        assertEquals(expectedY, p[1], 1e-5f);
+    }
+
+    private static float[] apply(float[] m, float x, float y) {
+        return new float[] {m[0] * x + m[4] * y + m[12], m[1] * x + m[5] * y + m[13]};
+    }
+}
@@ -0,0 +1,121 @@
+package com.obs.mobile.sensors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * IMU history interpolation across the ring boundaries, and the
+ * exposure-midpoint lookup of camera frames
+ */
+public class ImuAlignmentTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void interpolatesAcrossTheWrapAround() {
+        ImuRingBuffer ring = new ImuRingBuffer(4);
+        // Six samples into four slots: 30..60 ms are kept, 50 and 60 wrapped to the front
+        for (int i = 1; i <= 6; i++) {
+            assertTrue(ring.add(i * 10 * MS, i, -i, 10f * i));
+        }
+        assertEquals(4, ring.size());
+        assertEquals(60 * MS, ring.newestTimestamp());
+
+        float[] out = new float[3];
+        // Between the last slot of the array (40 ms) and the first (50 ms)
+        assertEquals(0L, ring.interpolate(47 * MS, 0L, out));
+        assertArrayEquals(new float[] {4.7f, -4.7f, 47f}, out, 1e-4f);
+        // Exactly on a stored sample
+        assertEquals(0L, ring.interpolate(50 * MS, 0L, out));
+        assertArrayEquals(new float[] {5f, -5f, 50f}, out, 1e-6f);
+
+        // Out-of-order and duplicate samples are dropped
+        assertFalse(ring.add(55 * MS, 0f, 0f, 0f));
+        assertFalse(ring.add(60 * MS, 0f, 0f, 0f));
+        assertEquals(0L, ring.interpolate(55 * MS, 0L, out));
+        assertEquals(5.5f, out[0], 1e-4f);
+    }
+
+    @Test
+    public void holdsTheNearestSampleOnlyWithinTheExtrapolationLimit() {
+        ImuRingBuffer ring = new ImuRingBuffer(3);
+        for (int i = 1; i <= 5; i++) {
+            ring.add(i * 10 * MS, i, 0f, 0f);
+        }
+        float[] out = new float[3];
+
+        // Oldest kept is 30 ms, newest 50 ms
+        assertEquals(0L, ring.interpolate(30 * MS, 0L, out));
+        assertEquals(3f, out[0], 0f);
+        assertEquals(5 * MS, ring.interpolate(25 * MS, 5 * MS, out));
+        assertEquals(3f, out[0], 0f);
+        assertEquals(-1L, ring.interpolate(24 * MS, 5 * MS, out));
+
+        assertEquals(0L, ring.interpolate(50 * MS, 0L, out));
+        assertEquals(5f, out[0], 0f);
+        assertEquals(8 * MS, ring.interpolate(58 * MS, 10 * MS, out));
+        assertEquals(5f, out[0], 0f);
+        assertEquals(-1L, ring.interpolate(61 * MS, 10 * MS, out));
+
+        ring.clear();
+        assertEquals(-1L, ring.interpolate(50 * MS, Long.MAX_VALUE, out));
+    }
+
+    @Test
+    public void copyRangeIncludesOneSampleOnEitherSide() {
+        ImuRingBuffer ring = new ImuRingBuffer(4);
+        for (int i = 1; i <= 6; i++) {
+            ring.add(i * 10 * MS, i, 0f, 0f);
+        }
+        long[] timestamps = new long[8];
+        float[] values = new float[24];
+
+        // Nothing inside 42..48 ms, so just the samples bracketing it
+        assertEquals(2, ring.copyRange(42 * MS, 48 * MS, timestamps, values));
+        assertEquals(40 * MS, timestamps[0]);
+        assertEquals(50 * MS, timestamps[1]);
+        assertEquals(4f, values[0], 0f);
+        assertEquals(5f, values[3], 0f);
+
+        // From before the oldest kept sample: starts at the oldest
+        assertEquals(3, ring.copyRange(0L, 45 * MS, timestamps, values));
+        assertEquals(30 * MS, timestamps[0]);
+        assertEquals(50 * MS, timestamps[2]);
+
+        // Limited by the output arrays
+        assertEquals(2, ring.copyRange(0L, 100 * MS, new long[2], new float[6]));
+    }
+
+    @Test
+    public void framesAreAlignedAtTheMiddleOfTheExposure() {
+        SensorTimeAligner aligner = new SensorTimeAligner();
+        aligner.addGyroSample(1010 * MS, 1f, 0f, -1f);
+        aligner.addGyroSample(1020 * MS, 3f, 0f, -3f);
+        aligner.addAccelSample(1000 * MS, 0f, 0f, 9f);
+        aligner.addAccelSample(1030 * MS, 0f, 0f, 12f);
+
+        FrameImuState[] seen = new FrameImuState[1];
+        aligner.addOnFrameAlignedListener(state -> seen[0] = state);
+
+        // First row starts at 1000 ms, 10 ms exposure, 20 ms readout: the
+        // middle row is exposed 1010..1020, its middle is 1015
+        FrameImuState state = aligner.alignFrame(7L, 555L, 1000 * MS, 10 * MS, 20 * MS);
+        assertSame(state, seen[0]);
+        assertEquals(7L, state.frameNumber);
+        assertEquals(555L, state.sensorTimestampNs);
+        assertEquals(1015 * MS, state.exposureMidTimestampNs);
+        assertTrue(state.hasGyro);
+        assertArrayEquals(new float[] {2f, 0f, -2f}, state.gyro, 1e-5f);
+        assertTrue(state.hasAccel);
+        assertEquals(10.5f, state.accel[2], 1e-4f);
+
+        // Sensor batches may lag the frame by up to 20 ms; beyond that there is no state
+        state = aligner.alignFrame(8L, 0L, 1040 * MS, 0L, 0L);
+        assertTrue(state.hasGyro);
+        assertEquals(3f, state.gyro[0], 0f);
+        state = aligner.alignFrame(9L, 0L, 1041 * MS, 0L, 0L);
+        assertFalse(state.hasGyro);
+        assertTrue(state.hasAccel);
+    }
+}
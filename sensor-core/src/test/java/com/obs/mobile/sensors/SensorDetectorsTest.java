@@ -0,0 +1,73 @@
+package com.obs.mobile.sensors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Shake, rotation gesture, proximity, light and compass logic on the JVM
+ */
+public class SensorDetectorsTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void shakesAreSpacedByTheMinimumInterval() {
+        ShakeDetector detector = new ShakeDetector();
+        assertFalse(detector.onSample(1000 * MS, 0f, 0f, 9.81f));
+        assertTrue(detector.onSample(1010 * MS, 12f, 12f, 9.81f));
+        assertEquals(19.6f, detector.getMagnitude(), 0.1f);
+        assertFalse(detector.onSample(1400 * MS, 12f, 12f, 9.81f));
+        assertTrue(detector.onSample(1600 * MS, 12f, 12f, 9.81f));
+    }
+
+    @Test
+    public void rotationGestureKeepsDirection() {
+        RotationGestureDetector detector = new RotationGestureDetector();
+        assertFalse(detector.onSample(1000 * MS, 1.0f));    // ~57 deg/s
+        assertTrue(detector.onSample(1010 * MS, -2.5f));
+        assertFalse(detector.isClockwise());
+        assertFalse(detector.onSample(1200 * MS, 2.5f));
+        assertTrue(detector.onSample(1400 * MS, 2.5f));
+        assertTrue(detector.isClockwise());
+    }
+
+    @Test
+    public void proximityIgnoresFlickerInsideDebounce() {
+        ProximityDebouncer debouncer = new ProximityDebouncer();
+        assertTrue(debouncer.onReading(1000 * MS, 0f));
+        assertTrue(debouncer.isNear());
+        assertFalse(debouncer.onReading(1100 * MS, 5f));
+        assertFalse(debouncer.onReading(1200 * MS, 0f));
+        assertTrue(debouncer.onReading(1400 * MS, 5f));
+        assertFalse(debouncer.isNear());
+    }
+
+    @Test
+    public void lightBands() {
+        assertEquals(LightCategory.VERY_DARK, LightCategory.of(0f));
+        assertEquals(LightCategory.DARK, LightCategory.of(10f));
+        assertEquals(LightCategory.NORMAL, LightCategory.of(320f));
+        assertEquals(LightCategory.BRIGHT, LightCategory.of(500f));
+        assertEquals(LightCategory.VERY_BRIGHT, LightCategory.of(20000f));
+        assertEquals("Enable night mode", LightCategory.of(3f).getCameraRecommendation());
+    }
+
+    @Test
+    public void compassHeadingFromGravityAndField() {
+        Compass compass = new Compass();
+        assertFalse(compass.onMagneticField(0f, 30f, -40f));
+        assertTrue(compass.onGravity(0f, 0f, 9.81f));
+        assertEquals(0f, compass.getAzimuth(), 0.01f);
+        assertEquals(CompassDirection.NORTH, compass.getDirection());
+
+        // Field along +x: the top of the phone points west
+        assertTrue(compass.onMagneticField(30f, 0f, -40f));
+        assertEquals(270f, compass.getAzimuth(), 0.01f);
+        assertEquals(CompassDirection.WEST, compass.getDirection());
+
+        // Free fall gives no heading
+        assertFalse(compass.onGravity(0f, 0f, 0.1f));
+        assertEquals(CompassDirection.WEST, compass.getDirection());
+    }
+}
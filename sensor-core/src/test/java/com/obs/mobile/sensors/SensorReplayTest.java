@@ -0,0 +1,137 @@
+package com.obs.mobile.sensors;
+
+import com.obs.mobile.recording.SessionRecord;
+import com.obs.mobile.recording.SessionRecorder;
+import com.obs.mobile.recording.SessionReplayer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * A recorded session replayed through the shake, gesture, proximity and
+ * compass detectors
+ */
+public class SensorReplayTest {
+
+    private static final long MS = 1_000_000L;
+    private static final long START_MS = 10_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replayDetectsTheRecordedEventsAtAnySpeed() throws Exception {
+        File directory = record();
+        List<String> fast = replay(directory, SessionReplayer.AS_FAST_AS_POSSIBLE);
+        List<String> paced = replay(directory, 20.0);
+
+        assertEquals(fast, paced);
+        assertEquals(List.of(
+                "proximity @300 near",
+                "shake @500 19.6",
+                // The shakes also tilt the compass's gravity input
+                "heading @500 NORTH_WEST",
+                "heading @510 NORTH",
+                "heading @520 NORTH_WEST",
+                "heading @530 NORTH",
+                "rotation @700 -143 ccw",
+                "proximity @900 far",
+                "heading @1000 WEST",
+                "shake @1200 19.6",
+                "rotation @1500 143 cw"), fast);
+    }
+
+    @Test
+    public void countsDetectionsPerDetector() throws Exception {
+        SensorReplay target = new SensorReplay(new SensorReplay.Listener() { });
+        SessionReplayer replayer = new SessionReplayer(record());
+        replayer.setSpeed(SessionReplayer.AS_FAST_AS_POSSIBLE);
+        replayer.replay(target);
+
+        assertEquals(2L, target.getShakes());
+        assertEquals(2L, target.getRotationGestures());
+        assertEquals(2L, target.getProximityChanges());
+        // Every accelerometer record, and every field record but the first (no gravity yet)
+        assertEquals(200L + 19L, target.getHeadings());
+    }
+
+    /**
+     * 2 s at 100 Hz: shakes at 500 and 1200 ms (520 is too soon after the
+     * first), turns at 700 (710 too soon) and 1500 ms, near at 300 ms with a
+     * flicker at 400 inside the debounce, far at 900 ms, and the field
+     * turning from north to west at 1000 ms
+     */
+    private File record() throws Exception {
+        File directory = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(directory);
+        for (long ms = 0; ms < 2000; ms += 10) {
+            long timestampNs = (START_MS + ms) * MS;
+            if (ms % 100 == 0) {
+                if (ms < 1000) {
+                    recorder.append(SessionRecord.MAGNETIC_FIELD, timestampNs, 0f, 30f, -40f);
+                } else {
+                    recorder.append(SessionRecord.MAGNETIC_FIELD, timestampNs, 30f, 0f, -40f);
+                }
+            }
+            boolean shaking = ms == 500 || ms == 520 || ms == 1200;
+            recorder.append(SessionRecord.ACCELEROMETER, timestampNs, shaking ? 12f : 0f, shaking ? 12f : 0f, 9.81f);
+            float rotationZ = ms == 700 || ms == 710 ? -2.5f : ms == 1500 ? 2.5f : 0f;
+            recorder.append(SessionRecord.GYROSCOPE, timestampNs, 0f, 0f, rotationZ);
+            if (ms == 0 || ms == 400 || ms == 900) {
+                recorder.append(SessionRecord.PROXIMITY, timestampNs, 5f);
+            } else if (ms == 300) {
+                recorder.append(SessionRecord.PROXIMITY, timestampNs, 0f);
+            }
+        }
+        recorder.close();
+        return directory;
+    }
+
+    private static List<String> replay(File directory, double speed) throws Exception {
+        List<String> events = new ArrayList<>();
+        SensorReplay target = new SensorReplay(new SensorReplay.Listener() {
+            private CompassDirection direction;
+
+            @Override
+            public void onShake(long timestampNs, float magnitude) {
+                events.add(String.format(Locale.US, "shake @%d %.1f", ms(timestampNs), magnitude));
+            }
+
+            @Override
+            public void onRotationGesture(long timestampNs, float degreesPerSecond, boolean clockwise) {
+                events.add(String.format(Locale.US, "rotation @%d %.0f %s", ms(timestampNs), degreesPerSecond,
+                        clockwise ? "cw" : "ccw"));
+            }
+
+            @Override
+            public void onProximityChanged(long timestampNs, boolean near) {
+                events.add("proximity @" + ms(timestampNs) + (near ? " near" : " far"));
+            }
+
+            @Override
+            public void onHeading(long timestampNs, float azimuth, CompassDirection direction) {
+                // Only changes of direction, after the first
+                if (this.direction != null && direction != this.direction) {
+                    events.add("heading @" + ms(timestampNs) + " " + direction);
+                }
+                this.direction = direction;
+            }
+        });
+        SessionReplayer replayer = new SessionReplayer(directory);
+        replayer.setSpeed(speed);
+        replayer.replay(target);
+        return events;
+    }
+
+    private static long ms(long timestampNs) {
+        return timestampNs / MS - START_MS;
+    }
+}
@@ -0,0 +1,100 @@
+package com.obs.mobile.stats;
+
+import com.obs.mobile.sensors.ImuRingBuffer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * FFT against a direct DFT, and peaks and bands of synthetic vibrations
+ */
+public class SpectrumAnalyzerTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void realFftMatchesTheDefinition() {
+        int n = 64;
+        float[] input = new float[n];
+        Random random = new Random(1);
+        for (int i = 0; i < n; i++) {
+            input[i] = (float) random.nextGaussian();
+        }
+        float[] re = new float[n / 2 + 1];
+        float[] im = new float[n / 2 + 1];
+        float[] power = new float[n / 2 + 1];
+        RealFft fft = new RealFft(n);
+        fft.transform(input, re, im);
+        fft.powerSpectrum(input, power);
+
+        for (int k = 0; k <= n / 2; k++) {
+            double sumRe = 0.0;
+            double sumIm = 0.0;
+            for (int t = 0; t < n; t++) {
+                double angle = -2.0 * Math.PI * k * t / n;
+                sumRe += input[t] * Math.cos(angle);
+                sumIm += input[t] * Math.sin(angle);
+            }
+            assertEquals("re " + k, sumRe, re[k], 1e-4);
+            assertEquals("im " + k, sumIm, im[k], 1e-4);
+            assertEquals("power " + k, sumRe * sumRe + sumIm * sumIm, power[k], 1e-3);
+        }
+    }
+
+    @Test
+    public void findsPeaksAndBandEnergyOnAnyAxis() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(256, 64, 3, new float[] {0f, 10f, 20f, 50f});
+        int spectra = 0;
+        for (int i = 0; i < 1000; i++) {
+            double t = i / 200.0;
+            // 37.3 Hz at 0.5 m/s^2 across gravity, 12 Hz at 0.2 m/s^2 along it
+            float x = (float) (0.5 * Math.sin(2 * Math.PI * 37.3 * t));
+            float z = 9.81f + (float) (0.2 * Math.sin(2 * Math.PI * 12.0 * t + 1.0));
+            if (analyzer.add(i * 5 * MS, x, 0f, z)) spectra++;
+        }
+        // First at the 256th sample, then every 64
+        assertEquals(1 + (1000 - 256) / 64, spectra);
+        assertEquals(200f, analyzer.getSampleRateHz(), 0.01f);
+        assertEquals((255 + 11 * 64) * 5 * MS, analyzer.getSpectrumTimestampNs());
+
+        assertEquals(3, analyzer.getPeakCount());
+        assertEquals(37.3f, analyzer.getPeakFrequencyHz(0), 0.1f);
+        assertEquals(0.5f, analyzer.getPeakAmplitude(0), 0.05f);
+        assertEquals(12.0f, analyzer.getPeakFrequencyHz(1), 0.1f);
+        assertEquals(0.2f, analyzer.getPeakAmplitude(1), 0.02f);
+        assertTrue(analyzer.getPeakAmplitude(2) < 0.01f);
+
+        // RMS of a sine is A / sqrt(2); gravity is not vibration
+        assertEquals(0f, analyzer.getBandRms(0), 0.01f);
+        assertEquals(0.2f / Math.sqrt(2), analyzer.getBandRms(1), 0.01f);
+        assertEquals(0.5f / Math.sqrt(2), analyzer.getBandRms(2), 0.01f);
+    }
+
+    @Test
+    public void readingTheWindowFromAnImuRingBufferGivesTheSameSpectra() {
+        SpectrumAnalyzer own = new SpectrumAnalyzer(256, 64, 3, SpectrumAnalyzer.DEFAULT_BAND_EDGES_HZ);
+        SpectrumAnalyzer shared = new SpectrumAnalyzer(256, 64, 3, SpectrumAnalyzer.DEFAULT_BAND_EDGES_HZ);
+        ImuRingBuffer history = new ImuRingBuffer(512);
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; i++) {
+            long t = i * 5 * MS + random.nextInt(200_000);   // Jittered 200 Hz
+            float x = (float) (0.4 * Math.sin(2 * Math.PI * 23.0 * i / 200.0) + 0.05 * random.nextGaussian());
+            float z = 9.81f + (float) (0.05 * random.nextGaussian());
+            history.add(t, x, 0f, z);
+            assertEquals(own.add(t, x, 0f, z), shared.addFrom(history));
+        }
+        assertEquals(own.getSpectrumCount(), shared.getSpectrumCount());
+        assertEquals(own.getSpectrumTimestampNs(), shared.getSpectrumTimestampNs());
+        assertEquals(own.getSampleRateHz(), shared.getSampleRateHz(), 0f);
+        for (int i = 0; i < own.getPeakCount(); i++) {
+            assertEquals(own.getPeakFrequencyHz(i), shared.getPeakFrequencyHz(i), 1e-4f);
+            assertEquals(own.getPeakAmplitude(i), shared.getPeakAmplitude(i), 1e-5f);
+        }
+        for (int band = 0; band < own.getBandCount(); band++) {
+            assertEquals(own.getBandRms(band), shared.getBandRms(band), 1e-5f);
+        }
+    }
+}
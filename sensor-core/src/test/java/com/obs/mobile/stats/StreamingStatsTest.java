@@ -0,0 +1,156 @@
+package com.obs.mobile.stats;
+
+import com.obs.mobile.streaming.SampleBatch;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Streaming operators against brute force over the same samples
+ */
+public class StreamingStatsTest {
+
+    private static final long MS = 1_000_000L;
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void runningStatsKeepsSmallSpreadOnLargeOffset() {
+        RunningStats all = new RunningStats();
+        RunningStats first = new RunningStats();
+        RunningStats second = new RunningStats();
+        Random random = new Random(1);
+        double[] values = new double[10_000];
+        for (int i = 0; i < values.length; i++) {
+            float value = 9.81f + (float) random.nextGaussian() * 0.001f;
+            values[i] = value;
+            all.add(i * 5 * MS, value);
+            (i < 3000 ? first : second).add(i * 5 * MS, value);
+        }
+        double mean = Arrays.stream(values).average().orElse(0.0);
+        double variance = Arrays.stream(values).map(v -> (v - mean) * (v - mean)).sum() / (values.length - 1);
+
+        assertEquals(mean, all.getMean(), 1e-9);
+        assertEquals(variance, all.getVariance(), variance * 1e-6);
+        first.merge(second);
+        assertEquals(values.length, first.getCount());
+        assertEquals(variance, first.getVariance(), variance * 1e-6);
+        assertEquals(all.getMin(), first.getMin(), 0f);
+    }
+
+    @Test
+    public void ewmaFollowsTimeNotSampleCount() {
+        Ewma slow = new Ewma(SECOND);
+        Ewma fast = new Ewma(SECOND);
+        assertTrue(Double.isNaN(slow.getValue()));
+        slow.add(0L, 0f);
+        fast.add(0L, 0f);
+        // A step to 1 for one time constant, at 50 Hz and at 200 Hz
+        for (long t = 20 * MS; t <= SECOND; t += 20 * MS) slow.add(t, 1f);
+        for (long t = 5 * MS; t <= SECOND; t += 5 * MS) fast.add(t, 1f);
+        assertEquals(1.0 - Math.exp(-1.0), slow.getValue(), 1e-9);
+        assertEquals(slow.getValue(), fast.getValue(), 1e-9);
+    }
+
+    @Test
+    public void slidingMinMaxAndRmsMatchTheWindow() {
+        long window = 500 * MS;
+        SlidingMinMax minMax = new SlidingMinMax(window, 128);
+        SlidingRms rms = new SlidingRms(window, 128, true);
+        SlidingRms plainRms = new SlidingRms(window, 128, false);
+        Random random = new Random(2);
+        float[] values = new float[5000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 9.81f + (float) random.nextGaussian() * (i < 2500 ? 0.05f : 2f);
+            long t = i * 5 * MS;
+            minMax.add(t, values[i]);
+            rms.add(t, values[i]);
+            plainRms.add(t, values[i]);
+            if (i % 97 != 0) continue;
+
+            // Samples newer than t - window: the last 100
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            double sum = 0.0;
+            double sumSquares = 0.0;
+            int from = Math.max(0, i - 99);
+            for (int j = from; j <= i; j++) {
+                min = Math.min(min, values[j]);
+                max = Math.max(max, values[j]);
+                sum += values[j];
+                sumSquares += (double) values[j] * values[j];
+            }
+            int n = i - from + 1;
+            double mean = sum / n;
+            assertEquals(min, minMax.getMin(), 0f);
+            assertEquals(max, minMax.getMax(), 0f);
+            assertEquals(n, rms.getCount());
+            assertEquals(Math.sqrt(Math.max(0.0, sumSquares / n - mean * mean)), rms.getValue(), 1e-6);
+            assertEquals(Math.sqrt(sumSquares / n), plainRms.getValue(), 1e-6);
+        }
+    }
+
+    @Test
+    public void quantilesAreWithinTheRelativeAccuracy() {
+        QuantileSketch sketch = new QuantileSketch(0.95, 0.01, 0L);
+        Random random = new Random(3);
+        float[] values = new float[20_000];
+        for (int i = 0; i < values.length; i++) {
+            // Both signs, a few zeros and five decades of magnitude
+            values[i] = i % 100 == 0 ? 0f : (float) (Math.exp(random.nextGaussian() * 3.0) * (i % 3 == 0 ? -1 : 1));
+            sketch.add(i * MS, values[i]);
+        }
+        float[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double q : new double[] {0.0, 0.01, 0.25, 0.5, 0.9, 0.95, 0.99, 1.0}) {
+            double exact = sorted[(int) Math.floor(q * (sorted.length - 1))];
+            assertEquals("q=" + q, exact, sketch.getQuantile(q), Math.abs(exact) * 0.01 + 1e-9);
+        }
+        assertEquals(sketch.getQuantile(0.95), sketch.getValue(), 0.0);
+    }
+
+    @Test
+    public void windowedQuantilesForgetOldSamples() {
+        QuantileSketch sketch = new QuantileSketch(0.5, 0.01, SECOND);
+        for (long t = 0; t < 3 * SECOND; t += 10 * MS) sketch.add(t, 100f);
+        for (long t = 3 * SECOND; t < 6 * SECOND; t += 10 * MS) sketch.add(t, 1f);
+        assertEquals(1.0, sketch.getValue(), 0.01);
+        assertTrue(sketch.getCount() <= 200);
+
+        // Values far outside the initial bucket range still land within accuracy
+        sketch.reset();
+        sketch.add(0L, 1e-30f);
+        sketch.add(1L, 1e30f);
+        assertEquals(1e30, sketch.getQuantile(1.0), 1e28);
+    }
+
+    @Test
+    public void derivedChannelsFeedEveryStatFromItsInput() {
+        DerivedChannels derived = DerivedChannels.forImu()
+                .add("gx_mean", 0, new RunningStats());
+        assertEquals(5, derived.size());
+        assertEquals(6, derived.getInputChannels());
+        float[] out = new float[derived.size()];
+        derived.getValues(out);
+        assertTrue(Float.isNaN(out[derived.indexOf("accel_rms")]));
+
+        // Lying still: gravity on z, no rotation, then a gyro spike
+        SampleBatch batch = new SampleBatch(400, 6);
+        for (int i = 0; i < 400; i++) {
+            batch.add(i * 5 * MS, 1f, 0f, 0f, 0f, 0f, 9.81f);
+        }
+        batch.add(400 * 5 * MS, 30f, 40f, 0f, 0f, 0f, 9.81f);
+        derived.updateAll(batch);
+        derived.getValues(out);
+
+        assertEquals(0f, out[derived.indexOf("accel_rms")], 1e-4f);
+        assertEquals(9.81f, out[derived.indexOf("accel_p95")], 0.1f);
+        assertEquals(9.81f, out[derived.indexOf("accel_ewma")], 1e-4f);
+        assertEquals(50f, out[derived.indexOf("gyro_max")], 1e-4f);
+        assertEquals(430f / 401f, out[derived.indexOf("gx_mean")], 1e-4f);
+        assertSame(derived.getNames(), derived.getNames());
+    }
+}
@@ -0,0 +1,113 @@
+package com.obs.mobile.streaming;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * AIMD behaviour of the send-rate controller and the feedback wire format
+ */
+public class AdaptiveRateControllerTest {
+
+    private static final long SECOND_NS = 1_000_000_000L;
+
+    @Test
+    public void increasesAdditivelyWhileHealthy() {
+        AdaptiveRateController controller = new AdaptiveRateController(2f, 20f, 50f, 10);
+        float start = controller.getRateHz();
+        for (long t = 1; t <= 5; t++) {
+            controller.onFeedback(0.0, 10_000_000L, t * SECOND_NS);
+            controller.update(t * SECOND_NS);
+        }
+        assertEquals(start + 4f, controller.getRateHz(), 0.01f);
+    }
+
+    @Test
+    public void halvesOnLossOncePerHoldOff() {
+        AdaptiveRateController controller = new AdaptiveRateController(2f, 20f, 50f, 10);
+        float start = controller.getRateHz();
+        controller.onFeedback(0.10, 0L, SECOND_NS);
+        controller.onFeedback(0.10, 0L, SECOND_NS + 100_000_000L);   // Same burst
+        assertEquals(start / 2f, controller.getRateHz(), 0.01f);
+        assertEquals(1, controller.getDecreases());
+
+        controller.onLocalCongestion(3 * SECOND_NS);
+        assertEquals(Math.max(2f, start / 4f), controller.getRateHz(), 0.01f);
+    }
+
+    @Test
+    public void growingRttCountsAsCongestion() {
+        AdaptiveRateController controller = new AdaptiveRateController();
+        controller.onFeedback(0.0, 10_000_000L, SECOND_NS);
+        assertEquals(0, controller.getDecreases());
+        controller.onFeedback(0.0, 100_000_000L, 2 * SECOND_NS);
+        assertEquals(1, controller.getDecreases());
+    }
+
+    @Test
+    public void rttBaselineFollowsAPermanentRouteChange() {
+        AdaptiveRateController controller = new AdaptiveRateController();
+        controller.onFeedback(0.0, 10_000_000L, SECOND_NS);
+        // The path now takes 100 ms for good: congestion at first...
+        controller.onFeedback(0.0, 100_000_000L, 2 * SECOND_NS);
+        assertEquals(1, controller.getDecreases());
+        for (long t = 3; t < 21; t++) {
+            controller.onFeedback(0.0, 100_000_000L, t * SECOND_NS);
+        }
+        assertEquals(10_000_000L, controller.getMinRttNs());
+
+        // ...until the 10 ms sample has aged out of both windows
+        long decreases = controller.getDecreases();
+        for (long t = 21; t <= 40; t++) {
+            controller.onFeedback(0.0, 100_000_000L, t * SECOND_NS);
+        }
+        assertEquals(100_000_000L, controller.getMinRttNs());
+        controller.onFeedback(0.0, 110_000_000L, 41 * SECOND_NS);
+        assertEquals(decreases, controller.getDecreases());
+    }
+
+    @Test
+    public void imuFloorHoldsUpThePacketRate() {
+        AdaptiveRateController controller = new AdaptiveRateController(1f, 20f, 50f, 10);
+        controller.setImuRateLimits(30f, 50f);
+        for (long t = 1; t <= 10; t++) {
+            controller.onLocalCongestion(t * SECOND_NS);
+        }
+        // 30 Hz of IMU in batches of at most 10 needs 3 packets per second
+        assertEquals(3f, controller.getRateHz(), 0.01f);
+        assertEquals(10, controller.getBatchSize());
+        assertEquals(30f, controller.getEffectiveSampleRateHz(), 0.01f);
+
+        // The batch never carries more than the IMU maximum
+        controller.setImuRateLimits(0f, 20f);
+        controller.setRateLimits(10f, 10f);
+        assertEquals(2, controller.getBatchSize());
+        assertEquals(20f, controller.getEffectiveSampleRateHz(), 0.01f);
+    }
+
+    @Test
+    public void batchingKeepsImuRateUntilMaxBatch() {
+        AdaptiveRateController controller = new AdaptiveRateController(2f, 20f, 50f, 10);
+        controller.setRateLimits(10f, 10f);
+        assertEquals(5, controller.getBatchSize());
+        assertEquals(50f, controller.getEffectiveSampleRateHz(), 0.01f);
+
+        controller.setRateLimits(2f, 2f);
+        assertEquals(10, controller.getBatchSize());
+        assertEquals(20f, controller.getEffectiveSampleRateHz(), 0.01f);
+        assertEquals(500L, controller.getSendIntervalMs());
+    }
+
+    @Test
+    public void feedbackRoundTrips() {
+        byte[] bytes = new FeedbackMessage(42L, 123_456_789L, 1_000L, 40L, 2L).encode();
+        FeedbackMessage parsed = FeedbackMessage.parse(bytes, 0, bytes.length);
+        assertNotNull(parsed);
+        assertEquals(42L, parsed.echoSequence);
+        assertEquals(123_456_789L, parsed.echoSendNs);
+        assertEquals(1_000L, parsed.holdNs);
+        assertEquals(40L, parsed.received);
+        assertEquals(2L, parsed.lost);
+        assertNull(FeedbackMessage.parse("OBS-RECEIVER 1 5000 x".getBytes(), 0, 21));
+    }
+}
@@ -0,0 +1,117 @@
+package com.obs.mobile.streaming;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips of both batch codecs on IMU-like data and edge cases
+ */
+public class BatchCodecTest {
+
+    @Test
+    public void deltaVarintStaysWithinHalfAStep() {
+        SampleBatch batch = imuBatch(100, new Random(7));
+        DeltaVarintCodec codec = DeltaVarintCodec.forImu();
+        SampleBatch decoded = roundTrip(codec, batch);
+
+        for (int i = 0; i < batch.count; i++) {
+            assertEquals(batch.timestampsNs[i], decoded.timestampsNs[i], DeltaVarintCodec.DEFAULT_TIMESTAMP_STEP_NS / 2);
+            for (int c = 0; c < 3; c++) {
+                assertEquals(batch.get(i, c), decoded.get(i, c), DeltaVarintCodec.DEFAULT_GYRO_STEP / 2 + 1e-5f);
+            }
+            for (int c = 3; c < 6; c++) {
+                assertEquals(batch.get(i, c), decoded.get(i, c), DeltaVarintCodec.DEFAULT_ACCEL_STEP / 2 + 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    public void gorillaIsLossless() {
+        SampleBatch batch = imuBatch(100, new Random(7));
+        batch.values[13] = Float.NaN;
+        batch.values[20] = -0.0f;
+        batch.values[21] = Float.MAX_VALUE;
+        SampleBatch decoded = roundTrip(new GorillaXorCodec(), batch);
+
+        for (int i = 0; i < batch.count; i++) {
+            assertEquals(batch.timestampsNs[i], decoded.timestampsNs[i]);
+        }
+        for (int i = 0; i < batch.count * batch.channels; i++) {
+            assertEquals(Float.floatToRawIntBits(batch.values[i]), Float.floatToRawIntBits(decoded.values[i]));
+        }
+    }
+
+    @Test
+    public void compressesBelowRawBinary() {
+        SampleBatch batch = imuBatch(50, new Random(3));
+        int raw = batch.count * (8 + 4 * batch.channels);
+        assertTrue(encodedSize(DeltaVarintCodec.forImu(), batch) < raw / 2);
+        assertTrue(encodedSize(new GorillaXorCodec(), batch) < raw);
+    }
+
+    @Test
+    public void emptyAndSingleSampleBatches() {
+        SampleBatch batch = new SampleBatch(1, 2);
+        for (BatchCodec codec : new BatchCodec[]{new DeltaVarintCodec(1L, 0.5f, 0.5f), new GorillaXorCodec()}) {
+            batch.reset(2);
+            assertEquals(0, roundTrip(codec, batch).count);
+
+            batch.add(-5L, 1.5f, -2.0f);
+            SampleBatch decoded = roundTrip(codec, batch);
+            assertEquals(1, decoded.count);
+            assertEquals(-5L, decoded.timestampsNs[0]);
+            assertEquals(1.5f, decoded.get(0, 0), 0f);
+            assertEquals(-2.0f, decoded.get(0, 1), 0f);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void channelMismatchIsRejected() {
+        SampleBatch batch = new SampleBatch(1, 2);
+        batch.add(0L, 1f, 2f);
+        encodedSize(DeltaVarintCodec.forImu(), batch);
+    }
+
+    /**
+     * 200 Hz of slow motion plus noise, gyro in deg/s and accelerometer in
+     * m/s^2 like the streamer's samples, with timestamp jitter
+     */
+    private static SampleBatch imuBatch(int samples, Random random) {
+        SampleBatch batch = new SampleBatch(samples, 6);
+        long t = 1_000_000_000_000L;
+        float[] sample = new float[6];
+        for (int i = 0; i < samples; i++) {
+            double seconds = i * 0.005;
+            double motion = Math.sin(2 * Math.PI * 0.5 * seconds);
+            sample[0] = (float) (20.0 * motion + 0.3 * random.nextGaussian());
+            sample[1] = (float) (-8.0 * motion + 0.3 * random.nextGaussian());
+            sample[2] = (float) (3.0 * Math.cos(2 * Math.PI * 0.2 * seconds) + 0.3 * random.nextGaussian());
+            sample[3] = (float) (0.5 * motion + 0.02 * random.nextGaussian());
+            sample[4] = (float) (9.81 + 0.02 * random.nextGaussian());
+            sample[5] = (float) (0.3 * motion + 0.02 * random.nextGaussian());
+            batch.add(t, sample);
+            t += 5_000_000L + (long) (20_000 * random.nextGaussian());
+        }
+        return batch;
+    }
+
+    private static SampleBatch roundTrip(BatchCodec codec, SampleBatch batch) {
+        ByteBuffer buffer = ByteBuffer.allocate(codec.maxEncodedSize(batch.count, batch.channels));
+        codec.encode(batch, buffer);
+        buffer.flip();
+        SampleBatch decoded = new SampleBatch();
+        BatchCodec.decode(buffer, decoded);
+        assertFalse("payload fully consumed", buffer.hasRemaining());
+        return decoded;
+    }
+
+    private static int encodedSize(BatchCodec codec, SampleBatch batch) {
+        ByteBuffer buffer = ByteBuffer.allocate(codec.maxEncodedSize(batch.count, batch.channels));
+        codec.encode(batch, buffer);
+        return buffer.position();
+    }
+}
@@ -0,0 +1,91 @@
+package com.obs.mobile.streaming;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Offset/drift estimation and the sync exchange against ReferenceReceiver
+ */
+public class ClockSyncTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void estimatesOffsetAndIgnoresQueuedSamples() {
+        ClockSyncEstimator estimator = new ClockSyncEstimator();
+        long offset = 5_000_000_000L;   // receiver = phone + 5 s
+        // Symmetric 1 ms each way, then one exchange queued 30 ms on the way back
+        exchange(estimator, 100 * MS, offset, MS, MS);
+        exchange(estimator, 200 * MS, offset, MS, 31 * MS);
+
+        assertEquals(offset, estimator.getOffsetNs());
+        assertEquals(2 * MS, estimator.getRttNs());
+        assertEquals(0L, estimator.getDriftPpb());
+    }
+
+    @Test
+    public void estimatesDrift() {
+        ClockSyncEstimator estimator = new ClockSyncEstimator();
+        long driftPpb = 50_000L;   // Receiver clock runs 50 ppm fast
+        for (int i = 0; i <= 20; i++) {
+            long t1 = i * 1000 * MS;
+            exchange(estimator, t1, 7 * MS + t1 * driftPpb / 1_000_000_000L, MS, MS);
+        }
+
+        assertEquals(driftPpb, estimator.getDriftPpb(), 500L);
+        long deviceNs = 25_000 * MS;
+        long expected = deviceNs + 7 * MS + deviceNs * driftPpb / 1_000_000_000L;
+        assertEquals(expected, estimator.toReceiverNs(deviceNs), 10_000L);
+        assertEquals(expected, estimator.toMessage().toReceiverNs(deviceNs), 10_000L);
+    }
+
+    @Test
+    public void referenceReceiverAnswersAndAppliesEstimate() {
+        ReferenceReceiver receiver = new ReferenceReceiver(0, false, false);
+        long t1 = 123_000L;
+        byte[] request = ClockSyncMessage.request(t1).encode();
+
+        byte[] replyBytes = receiver.onMessage("phone", request, request.length, 500_000L);
+        ClockSyncMessage reply = ClockSyncMessage.parse(replyBytes, 0, replyBytes.length);
+        assertNotNull(reply);
+        assertEquals(ClockSyncMessage.Type.REPLY, reply.type);
+        assertEquals(t1, reply.originNs);
+        assertEquals(500_000L, reply.receiveNs);
+
+        byte[] estimate = ClockSyncMessage.estimate(1_000L, 0L, 0L, 10L).encode();
+        assertNull(receiver.onMessage("phone", estimate, estimate.length, 600_000L));
+        assertEquals(1_000L, receiver.getClock("phone").offsetNs);
+
+        // JSON packets still go to the stats
+        byte[] packet = "{\"seq\":1,\"timestamp_ns\":2000}".getBytes(StandardCharsets.UTF_8);
+        assertNotNull(receiver.onMessage("phone", packet, packet.length, 5_000L));
+        assertEquals(1, receiver.getStats("phone").getReceived());
+        assertEquals(2_000L, receiver.getStats("phone").getTransit().getPercentile(50), 300L);
+    }
+
+    @Test
+    public void messagesRoundTrip() {
+        ClockSyncMessage estimate = ClockSyncMessage.estimate(-42L, 1_500L, 9_000_000L, 800L);
+        byte[] bytes = estimate.encode();
+        ClockSyncMessage parsed = ClockSyncMessage.parse(bytes, 0, bytes.length);
+        assertEquals(ClockSyncMessage.Type.ESTIMATE, parsed.type);
+        assertEquals(-42L, parsed.offsetNs);
+        assertEquals(1_500L, parsed.driftPpb);
+        assertEquals(9_000_000L, parsed.referenceNs);
+        byte[] feedback = new FeedbackMessage(1, 2, 3, 4, 5).encode();
+        assertNull(ClockSyncMessage.parse(feedback, 0, feedback.length));
+    }
+
+    /**
+     * One exchange with the given one-way delays; receiver = phone + offset
+     */
+    private static void exchange(ClockSyncEstimator estimator, long t1, long offset, long upNs, long downNs) {
+        long t2 = t1 + upNs + offset;
+        long t3 = t2 + 10_000L;
+        long t4 = t3 - offset + downNs;
+        assertTrue(estimator.addSample(t1, t2, t3, t4));
+    }
+}
@@ -0,0 +1,129 @@
+package com.obs.mobile.streaming;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Discovery and multicast streaming over the loopback interface
+ *
+ * Groups are joined on the loopback interface with IP_MULTICAST_LOOP, so
+ * nothing leaves the host.
+ */
+public class MulticastLoopbackTest {
+
+    // Test-only groups and ports so a receiver running on the same host is not disturbed
+    private static final String DISCOVERY_GROUP = "239.255.77.177";
+    private static final String STREAM_GROUP = "239.255.77.178";
+    private static final int DISCOVERY_PORT = 45099;
+    private static final int STREAM_PORT = 45000;
+
+    private NetworkInterface loopback;
+
+    @Before
+    public void setUp() throws Exception {
+        loopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+        assumeTrue("no loopback interface", loopback != null);
+    }
+
+    @Test
+    public void discoveryFindsAnnouncingReceiver() throws Exception {
+        InetSocketAddress group = new InetSocketAddress(DISCOVERY_GROUP, DISCOVERY_PORT);
+        CountDownLatch found = new CountDownLatch(1);
+        ReceiverDiscovery.Receiver[] result = new ReceiverDiscovery.Receiver[1];
+
+        ReceiverAnnouncer announcer = new ReceiverAnnouncer(loopback, group, "test-receiver", 5123);
+        ReceiverDiscovery discovery = new ReceiverDiscovery(loopback, group, new ReceiverDiscovery.Listener() {
+            @Override
+            public void onReceiverFound(ReceiverDiscovery.Receiver receiver) {
+                result[0] = receiver;
+                found.countDown();
+            }
+
+            @Override
+            public void onReceiverLost(ReceiverDiscovery.Receiver receiver) {
+            }
+        });
+
+        announcer.start();
+        discovery.start();
+        try {
+            // The probe on start gets an answer well before the periodic announcement
+            assertTrue("receiver not discovered", found.await(5, TimeUnit.SECONDS));
+            assertEquals("test-receiver", result[0].name);
+            assertEquals(5123, result[0].port);
+            assertEquals(1, discovery.getReceivers().size());
+        } finally {
+            discovery.stop();
+            announcer.stop();
+        }
+    }
+
+    @Test
+    public void parseRejectsForeignDatagrams() {
+        byte[] probe = DiscoveryProtocol.encodeProbe();
+        assertNull(DiscoveryProtocol.parseAnnouncement(probe, probe.length));
+        assertTrue(DiscoveryProtocol.isProbe(probe, probe.length));
+
+        byte[] garbage = "OBS-RECEIVER 1 notaport x".getBytes(StandardCharsets.UTF_8);
+        assertNull(DiscoveryProtocol.parseAnnouncement(garbage, garbage.length));
+
+        byte[] announcement = DiscoveryProtocol.encodeAnnouncement(5000, "desk pc");
+        DiscoveryProtocol.Announcement parsed = DiscoveryProtocol.parseAnnouncement(announcement, announcement.length);
+        assertNotNull(parsed);
+        assertEquals(5000, parsed.streamPort);
+        assertEquals("desk pc", parsed.name);
+    }
+
+    @Test
+    public void multicastDestinationReachesEveryListener() throws Exception {
+        InetSocketAddress group = new InetSocketAddress(STREAM_GROUP, STREAM_PORT);
+        MulticastSocket first = joinedSocket(group);
+        MulticastSocket second = joinedSocket(group);
+
+        StreamFanout fanout = new StreamFanout();
+        StreamDestination multicast = new StreamDestination("multicast", STREAM_GROUP, STREAM_PORT,
+                StreamDestination.UNLIMITED, new UdpTransport(loopback));
+        fanout.addDestination(multicast);
+
+        try {
+            byte[] payload = "{\"timestamp_ns\":1}".getBytes(StandardCharsets.UTF_8);
+            assertEquals(1, fanout.send(ByteBuffer.wrap(payload)));
+            assertEquals(1, multicast.getPacketsSent());
+            assertEquals(payload.length, multicast.getBytesSent());
+
+            assertEquals("{\"timestamp_ns\":1}", receive(first));
+            assertEquals("{\"timestamp_ns\":1}", receive(second));
+        } finally {
+            fanout.close();
+            first.close();
+            second.close();
+        }
+    }
+
+    private MulticastSocket joinedSocket(InetSocketAddress group) throws Exception {
+        MulticastSocket socket = new MulticastSocket(group.getPort());
+        socket.setSoTimeout(5000);
+        socket.joinGroup(group, loopback);
+        return socket;
+    }
+
+    private static String receive(MulticastSocket socket) throws Exception {
+        byte[] buffer = new byte[512];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        socket.receive(packet);
+        return new String(buffer, 0, packet.getLength(), StandardCharsets.UTF_8);
+    }
+}
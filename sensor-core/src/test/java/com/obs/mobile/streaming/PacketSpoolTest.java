@@ -0,0 +1,116 @@
+package com.obs.mobile.streaming;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Spool order, unconfirmed packets, size and age caps, and restarts
+ */
+public class PacketSpoolTest {
+
+    private static final long NOW_MS = 1_700_000_000_000L;
+    private static final long MAX_BYTES = 8L * 65535 + 8L * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackInOrderWithoutMovingThePacket() throws Exception {
+        PacketSpool spool = new PacketSpool(folder.newFolder());
+        ByteBuffer packet = packet(0);
+        spool.append(packet, 0L, NOW_MS);
+        assertEquals(0, packet.position());
+        for (int seq = 1; seq < 100; seq++) {
+            spool.append(packet(seq), seq, NOW_MS);
+        }
+        assertEquals(100L, spool.getPackets());
+
+        for (int seq = 0; seq < 100; seq++) {
+            assertEquals("packet " + seq, next(spool, NOW_MS));
+        }
+        assertNull(next(spool, NOW_MS));
+        assertTrue(spool.isEmpty());
+    }
+
+    @Test
+    public void spillsOnlyUnconfirmedPackets() throws Exception {
+        PacketSpool spool = new PacketSpool(folder.newFolder());
+        for (int seq = 0; seq < 10; seq++) {
+            spool.remember(packet(seq), seq);
+        }
+        spool.confirm(6L);
+        spool.spillUnconfirmed(NOW_MS);
+        spool.append(packet(10), 10L, NOW_MS);
+
+        assertEquals("packet 7", next(spool, NOW_MS));
+        assertEquals("packet 8", next(spool, NOW_MS));
+        assertEquals("packet 9", next(spool, NOW_MS));
+        assertEquals("packet 10", next(spool, NOW_MS));
+        assertNull(next(spool, NOW_MS));
+    }
+
+    @Test
+    public void evictsOldestSegmentsBeyondTheCaps() throws Exception {
+        PacketSpool spool = new PacketSpool(folder.newFolder(), MAX_BYTES, 60_000L);
+        ByteBuffer large = ByteBuffer.allocate(4000);
+        for (int seq = 0; seq < 1000; seq++) {
+            spool.append(large, seq, NOW_MS);
+        }
+        assertTrue(spool.getBytes() <= MAX_BYTES);
+        assertTrue(spool.getPacketsEvicted() > 0);
+        assertEquals(1000L, spool.getPackets() + spool.getPacketsEvicted());
+
+        // Everything is older than a minute by now
+        assertNull(next(spool, NOW_MS + 61_000L));
+        assertEquals(1000L, spool.getPacketsEvicted());
+        assertEquals(0L, spool.getBytes());
+    }
+
+    @Test
+    public void recoversPacketsAfterRestartAndCutsTornTail() throws Exception {
+        File directory = folder.newFolder();
+        PacketSpool spool = new PacketSpool(directory);
+        for (int seq = 0; seq < 5; seq++) {
+            spool.append(packet(seq), seq, NOW_MS);
+        }
+        spool.close();
+
+        // Half-written sixth record
+        File segment = directory.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(file.length());
+            file.writeInt(100);
+            file.writeLong(5L);
+        }
+
+        long tornLength = segment.length();
+        PacketSpool reopened = new PacketSpool(directory);
+        reopened.append(packet(6), 6L, NOW_MS);
+        assertEquals(6L, reopened.getPackets());
+        assertEquals(tornLength - 12, segment.length());
+        for (int seq : new int[] {0, 1, 2, 3, 4, 6}) {
+            assertEquals("packet " + seq, next(reopened, NOW_MS));
+        }
+        assertNull(next(reopened, NOW_MS));
+    }
+
+    private static ByteBuffer packet(int seq) {
+        return ByteBuffer.wrap(("packet " + seq).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String next(PacketSpool spool, long nowMs) throws Exception {
+        ByteBuffer out = ByteBuffer.allocate(PacketSpool.MAX_PACKET);
+        int length = spool.next(out, nowMs);
+        if (length < 0) return null;
+        assertEquals(length, out.position());
+        return new String(out.array(), 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,178 @@
+package com.obs.mobile.streaming;
+
+import com.obs.mobile.sensors.FrameImuState;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The hand-written JSON packet parses back to the values that went in, and
+ * to the same tree as the org.json packet the app sends
+ */
+public class SensorPacketWriterTest {
+
+    @Test
+    public void packetParsesBackToTheValues() {
+        SensorPacket packet = packet();
+        JSONObject json = parse(new SensorPacketWriter().write(packet));
+
+        assertEquals(42L, json.getLong("seq"));
+        assertEquals(123_456_789_000L, json.getLong("timestamp_ns"));
+        assertEquals(123_456_000_000L, json.getLong("capture_ts_ns"));
+        assertEquals("9.81", json.getJSONObject("accelerometer").get("z").toString());
+        assertEquals(-0.0123f, (float) json.getJSONObject("gyroscope").getDouble("x"), 0f);
+        assertEquals("Very \"Bright\"", json.getJSONObject("light").getString("category"));
+        assertTrue(json.getJSONObject("proximity").getBoolean("is_near"));
+        assertEquals("NE", json.getJSONObject("magnetometer").getString("direction"));
+        assertEquals(0.25f, (float) json.getJSONObject("derived").getDouble("accel_rms"), 0f);
+        assertTrue(json.getJSONObject("derived").isNull("gyro_max"));
+        JSONObject spectrum = json.getJSONObject("spectrum");
+        assertEquals(1, spectrum.getJSONArray("peaks").length());
+        assertEquals(37.5f, (float) spectrum.getJSONArray("peaks").getJSONArray(0).getDouble(0), 0f);
+        assertEquals(3, spectrum.getJSONArray("band_edges_hz").length());
+        assertEquals(0.125f, (float) spectrum.getJSONArray("band_rms").getDouble(1), 0f);
+
+        JSONObject faces = json.getJSONObject("faces");
+        assertEquals(4000, faces.getJSONArray("active_array").getInt(0));
+        assertEquals(2, faces.getJSONArray("rects").length());
+        assertEquals(99, faces.getJSONArray("rects").getJSONArray(1).getInt(4));
+        assertFalse(json.has("imu"));
+    }
+
+    @Test
+    public void floatsKeepSevenSignificantDigits() {
+        Random random = new Random(7);
+        SensorPacketWriter writer = new SensorPacketWriter();
+        SensorPacket packet = new SensorPacket();
+        for (int i = 0; i < 100_000; i++) {
+            float value = (float) (Math.pow(10, random.nextInt(16) - 7) * (random.nextDouble() - 0.5));
+            packet.accelX = value;
+            float parsed = (float) parse(writer.write(packet)).getJSONObject("accelerometer").getDouble("x");
+            assertEquals("value " + value, value, parsed, Math.abs(value) * 1e-6f);
+        }
+
+        packet.accelX = Float.NaN;
+        assertTrue(parse(writer.write(packet)).getJSONObject("accelerometer").isNull("x"));
+    }
+
+    @Test
+    public void imuBatchAsArrayOrPacked() {
+        SampleBatch imu = new SampleBatch(10, 6);
+        for (int i = 0; i < 10; i++) {
+            imu.add(1_000_000_000L + i * 5_000_000L, 0.01f * i, -0.02f, 0.5f, 0.1f, 9.7f + 0.01f * i, 0.3f);
+        }
+        SensorPacketWriter writer = new SensorPacketWriter();
+
+        JSONArray samples = parse(writer.write(packet(), imu, null)).getJSONArray("imu");
+        assertEquals(10, samples.length());
+        assertEquals(1_045_000_000L, samples.getJSONArray(9).getLong(0));
+        assertEquals(9.79f, (float) samples.getJSONArray(9).getDouble(5), 1e-6f);
+
+        BatchCodec codec = DeltaVarintCodec.forImu();
+        String packed = parse(writer.write(packet(), imu, codec)).getString("imu_packed");
+        SampleBatch decoded = new SampleBatch();
+        BatchCodec.decode(ByteBuffer.wrap(Base64.getDecoder().decode(packed)), decoded);
+        assertEquals(10, decoded.count);
+        assertEquals(imu.timestampsNs[9], decoded.timestampsNs[9]);
+    }
+
+    @Test
+    public void matchesTheOrgJsonPacket() {
+        SampleBatch imu = new SampleBatch(3, 6);
+        for (int i = 0; i < 3; i++) {
+            imu.add(1_000_000_000L + i * 5_000_000L, 0.01f * i, -0.02f, 0.5f, 0.1f, 9.7f, 0.3f);
+        }
+        SensorPacketJson orgJson = new SensorPacketJson();
+        SensorPacketWriter writer = new SensorPacketWriter();
+        for (BatchCodec codec : new BatchCodec[] {null, DeltaVarintCodec.forImu()}) {
+            JSONObject expected = new JSONObject(new String(orgJson.assemble(packet(), null, imu, codec),
+                    StandardCharsets.UTF_8));
+            assertSameTree("", expected, parse(writer.write(packet(), imu, codec)));
+        }
+
+        // Camera frames only go through the org.json path
+        FrameImuState state = new FrameImuState();
+        state.frameNumber = 7L;
+        state.exposureMidTimestampNs = 1_015_000_000L;
+        state.hasGyro = true;
+        state.gyro[2] = -2f;
+        JSONArray frames = new JSONArray().put(SensorPacketJson.frameToJSON(state));
+        JSONObject packet = new JSONObject(new String(orgJson.assemble(packet(), frames, imu, null),
+                StandardCharsets.UTF_8));
+        JSONObject frame = packet.getJSONArray("frame_imu").getJSONObject(0);
+        assertEquals(1_015_000_000L, frame.getLong("exposure_mid_ns"));
+        assertEquals(-2.0, frame.getJSONArray("gyro").getDouble(2), 0.0);
+        assertFalse(frame.has("accel"));
+    }
+
+    /**
+     * Same keys and values; numbers as floats, since org.json writes a float's double expansion
+     */
+    private static void assertSameTree(String path, Object expected, Object actual) {
+        if (expected instanceof JSONObject) {
+            JSONObject object = (JSONObject) expected;
+            assertTrue(path, actual instanceof JSONObject);
+            assertEquals(path, object.keySet(), ((JSONObject) actual).keySet());
+            for (String key : object.keySet()) {
+                assertSameTree(path + "." + key, object.get(key), ((JSONObject) actual).get(key));
+            }
+        } else if (expected instanceof JSONArray) {
+            JSONArray array = (JSONArray) expected;
+            assertTrue(path, actual instanceof JSONArray);
+            assertEquals(path, array.length(), ((JSONArray) actual).length());
+            for (int i = 0; i < array.length(); i++) {
+                assertSameTree(path + "[" + i + "]", array.get(i), ((JSONArray) actual).get(i));
+            }
+        } else if (expected instanceof Number && !(expected instanceof Long || expected instanceof Integer)) {
+            assertEquals(path, ((Number) expected).floatValue(), ((Number) actual).floatValue(), 0f);
+        } else if (expected instanceof Number) {
+            assertEquals(path, ((Number) expected).longValue(), ((Number) actual).longValue());
+        } else {
+            assertEquals(path, expected, actual);
+        }
+    }
+
+    private static SensorPacket packet() {
+        SensorPacket packet = new SensorPacket();
+        packet.sequence = 42L;
+        packet.timestampNs = 123_456_789_000L;
+        packet.captureTimestampNs = 123_456_000_000L;
+        packet.accelX = 0.1f;
+        packet.accelY = -0.2f;
+        packet.accelZ = 9.81f;
+        packet.accelMagnitude = 9.8125f;
+        packet.gyroX = -0.0123f;
+        packet.lightLux = 12000f;
+        packet.lightCategory = "Very \"Bright\"";
+        packet.proximityIsNear = true;
+        packet.magnetometerAzimuth = 45.5f;
+        packet.magnetometerDirection = "NE";
+        packet.faceFrameTimestampNs = 123_400_000_000L;
+        packet.faceActiveArrayWidth = 4000;
+        packet.faceActiveArrayHeight = 3000;
+        packet.faceRects = new int[] {10, 20, 110, 120, 80, 200, 210, 300, 310, 99};
+        packet.derivedNames = new String[] {"accel_rms", "gyro_max"};
+        packet.derivedValues = new float[] {0.25f, Float.NaN, 7f};
+        packet.spectrumTimestampNs = 123_000_000_000L;
+        packet.spectrumSampleRateHz = 200f;
+        packet.spectrumPeakCount = 1;
+        packet.spectrumPeakHz = new float[] {37.5f, 0f};
+        packet.spectrumPeakAmplitudes = new float[] {0.5f, 0f};
+        packet.spectrumBandEdgesHz = new float[] {0f, 10f, 50f};
+        packet.spectrumBandRms = new float[] {0.01f, 0.125f};
+        return packet;
+    }
+
+    private static JSONObject parse(ByteBuffer packet) {
+        assertEquals(0, packet.position());
+        return new JSONObject(new String(packet.array(), 0, packet.limit(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,211 @@
+package com.obs.mobile.streaming;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Host lookup off the sender thread, and store-and-forward over a TCP outage
+ */
+public class StreamDestinationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void unresolvableHostDoesNotHoldUpOtherDestinations() throws Exception {
+        try (DatagramSocket receiver = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            receiver.setSoTimeout(5000);
+            StreamFanout fanout = new StreamFanout();
+            StreamDestination missing = new StreamDestination("missing", "receiver.invalid", 5000,
+                    StreamDestination.UNLIMITED);
+            StreamDestination local = new StreamDestination("local", "127.0.0.1", receiver.getLocalPort(),
+                    StreamDestination.UNLIMITED);
+            fanout.addDestination(missing);
+            fanout.addDestination(local);
+
+            try {
+                // The lookup runs in the background; the literal address needs none
+                long startNs = System.nanoTime();
+                fanout.send(payload("first"));
+                assertTrue(System.nanoTime() - startNs < 500_000_000L);
+                assertEquals(1, local.getPacketsSent());
+                assertEquals("first", receive(receiver));
+
+                for (int i = 0; i < 500 && missing.getErrors() == 0; i++) {
+                    Thread.sleep(10);
+                    fanout.send(payload("next"));
+                }
+                assertEquals(1, missing.getErrors());
+                assertTrue(missing.getLastError(), missing.getLastError().contains("Cannot resolve receiver.invalid"));
+                assertEquals(0, missing.getPacketsSent());
+            } finally {
+                fanout.close();
+            }
+        }
+    }
+
+    @Test
+    public void tcpOutageIsBackfilledExactlyOnce() throws Exception {
+        StreamFanout fanout = new StreamFanout();
+        fanout.setSpoolDirectory(folder.newFolder());
+        Receiver receiver = new Receiver(0);
+        int port = receiver.server.getLocalPort();
+        StreamDestination destination = new StreamDestination("tcp", "127.0.0.1", port,
+                StreamDestination.UNLIMITED, new TcpTransport());
+        destination.setBackfillPacketsPerSecond(1000);
+        fanout.addDestination(destination);
+
+        try {
+            long seq = 0L;
+            for (; seq < 10; seq++) {
+                sendAndPoll(fanout, seq);
+            }
+            for (int i = 0; i < 500 && receiver.lastConfirmed() < 9; i++) {
+                pollFor(fanout, 10);
+            }
+            assertEquals(9L, receiver.lastConfirmed());
+
+            // Receiver goes away; the destination notices and spools
+            receiver.close();
+            for (int i = 0; i < 500 && !destination.isUnreachable(); i++) {
+                sendAndPoll(fanout, seq++);
+            }
+            assertTrue(destination.isUnreachable());
+            for (int i = 0; i < 20; i++) {
+                sendAndPoll(fanout, seq++);
+            }
+            assertEquals(0, destination.getTransport().getQueuedPackets());
+
+            // Back on the same port: live packets resume, the gap is backfilled
+            Receiver restarted = new Receiver(port);
+            try {
+                long outageEnd = seq;
+                for (int i = 0; i < 2000 && (restarted.count(outageEnd) == 0 || !destination.getSpool().isEmpty()); i++) {
+                    sendAndPoll(fanout, seq++);
+                }
+                pollFor(fanout, 200);
+
+                for (long s = 0; s < seq; s++) {
+                    int copies = receiver.count(s) + restarted.count(s);
+                    assertEquals("seq " + s, 1, copies);
+                }
+                assertTrue(destination.getPacketsBackfilled() > 20);
+            } finally {
+                restarted.close();
+            }
+        } finally {
+            fanout.close();
+            receiver.close();
+        }
+    }
+
+    private static void sendAndPoll(StreamFanout fanout, long seq) throws InterruptedException {
+        fanout.send(payload("seq " + seq), seq);
+        pollFor(fanout, 5);
+    }
+
+    private static void pollFor(StreamFanout fanout, long ms) throws InterruptedException {
+        long endMs = System.currentTimeMillis() + ms;
+        while (System.currentTimeMillis() < endMs) {
+            fanout.poll();
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * TCP receiver that counts every packet by seq, live or backfilled, and
+     * confirms live ones with feedback
+     */
+    private static final class Receiver implements Runnable {
+        final ServerSocket server;
+        final Map<Long, Integer> counts = new ConcurrentHashMap<>();
+        private volatile long lastConfirmed = -1L;
+        private volatile Socket client;
+        private final Thread thread;
+
+        Receiver(int port) throws IOException {
+            server = new ServerSocket();
+            server.setReuseAddress(true);
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            thread = new Thread(this, "test-receiver");
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try (Socket socket = server.accept()) {
+                    client = socket;
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    while (true) {
+                        byte[] frame = new byte[in.readInt()];
+                        in.readFully(frame);
+                        String text = new String(frame, StandardCharsets.UTF_8);
+                        boolean backfill = text.startsWith(new String(PacketSpool.BACKFILL_PREFIX, StandardCharsets.US_ASCII));
+                        if (backfill) {
+                            text = text.substring(PacketSpool.BACKFILL_PREFIX.length);
+                        }
+                        if (!text.startsWith("seq ")) continue;   // Clock sync
+                        long seq = Long.parseLong(text.substring(4));
+                        counts.merge(seq, 1, Integer::sum);
+                        if (!backfill) {
+                            byte[] feedback = new FeedbackMessage(seq, 0L, 0L, 0L, 0L).encode();
+                            out.writeInt(feedback.length);
+                            out.write(feedback);
+                            out.flush();
+                            lastConfirmed = seq;
+                        }
+                    }
+                } catch (IOException e) {
+                    if (server.isClosed()) return;
+                }
+            }
+        }
+
+        long lastConfirmed() {
+            return lastConfirmed;
+        }
+
+        int count(long seq) {
+            return counts.getOrDefault(seq, 0);
+        }
+
+        void close() throws Exception {
+            server.close();
+            Socket socket = client;
+            if (socket != null) {
+                socket.close();
+            }
+            thread.join(5000);
+        }
+    }
+
+    private static ByteBuffer payload(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String receive(DatagramSocket socket) throws Exception {
+        byte[] buffer = new byte[512];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        socket.receive(packet);
+        return new String(buffer, 0, packet.getLength(), StandardCharsets.UTF_8);
+    }
+}
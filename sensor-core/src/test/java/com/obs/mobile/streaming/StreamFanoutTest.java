@@ -0,0 +1,75 @@
+package com.obs.mobile.streaming;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * One size cap for the whole spool directory, and spools of destinations
+ * that are gone
+ */
+public class StreamFanoutTest {
+
+    private static final long MAX_BYTES = 8L * 65535 + 8L * 1024;
+    private static final long MAX_AGE_MS = 60_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void spoolCapCoversAllDestinationsAndOrphansGoFirst() throws Exception {
+        File directory = folder.newFolder();
+        File stale = orphan(directory, "stale", 1000, System.currentTimeMillis() - 2 * MAX_AGE_MS);
+        File gone = orphan(directory, "gone", 100_000, System.currentTimeMillis());
+
+        StreamFanout fanout = new StreamFanout();
+        fanout.setSpoolDirectory(directory, MAX_BYTES, MAX_AGE_MS);
+        // Never reachable, so everything sent is spooled
+        StreamDestination a = new StreamDestination("a", "receiver.invalid", 5000, StreamDestination.UNLIMITED);
+        StreamDestination b = new StreamDestination("b", "receiver.invalid", 5000, StreamDestination.UNLIMITED);
+        fanout.addDestination(a);
+        fanout.addDestination(b);
+
+        try {
+            ByteBuffer packet = ByteBuffer.allocate(4000);
+            fanout.send(packet, 0L);
+            assertFalse("older than the age cap", stale.exists());
+            assertTrue("kept for a receiver that comes back", gone.exists());
+
+            for (long seq = 1; seq < 200; seq++) {
+                fanout.send(packet, seq);
+            }
+            // 2 x 200 packets would be ~1.6 MB; each spool alone is under the cap too
+            assertFalse("evicted before the live spools", gone.exists());
+            assertTrue(a.getSpool().getBytes() + b.getSpool().getBytes() <= MAX_BYTES);
+            assertTrue(a.getSpool().getPackets() > 0);
+            assertTrue(b.getSpool().getPackets() > 0);
+            assertTrue(a.getSpool().getPacketsEvicted() + b.getSpool().getPacketsEvicted() > 0);
+
+            // A removed destination's spool is kept while the directory is under the cap
+            fanout.removeDestination("b");
+            fanout.send(packet, 200L);
+            assertTrue(new File(directory, "b").exists());
+        } finally {
+            fanout.close();
+        }
+    }
+
+    private static File orphan(File directory, String name, int bytes, long modifiedMs) throws Exception {
+        File spool = new File(directory, name);
+        assertTrue(spool.mkdirs());
+        File segment = new File(spool, "spool-000000.bin");
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(bytes);
+        }
+        assertTrue(segment.setLastModified(modifiedMs));
+        assertTrue(spool.setLastModified(modifiedMs));
+        return spool;
+    }
+}
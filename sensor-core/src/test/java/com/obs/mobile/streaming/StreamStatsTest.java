@@ -0,0 +1,73 @@
+package com.obs.mobile.streaming;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Receiver-side loss/reorder accounting and the latency histogram
+ */
+public class StreamStatsTest {
+
+    @Test
+    public void countsLossReorderAndDuplicates() {
+        StreamStats stats = new StreamStats();
+        long[] arrivals = {10, 11, 13, 12, 12, 16, 17};
+        for (long seq : arrivals) {
+            stats.onPacket(seq, 0L, 1_000L, 2_000L);
+        }
+
+        assertEquals(6, stats.getReceived());
+        assertEquals(1, stats.getReordered());     // 12 after 13
+        assertEquals(1, stats.getDuplicates());    // second 12
+        assertEquals(2, stats.getLost());          // 14 and 15
+    }
+
+    @Test
+    public void transitIsMeasuredAboveTheMinimum() {
+        StreamStats stats = new StreamStats();
+        // Different clock origins on both sides; only the variation matters
+        stats.onPacket(0, 0L, 1_000_000L, 50_000_000L);
+        stats.onPacket(1, 0L, 2_000_000L, 53_000_000L);
+        assertEquals(0L, stats.getTransit().getPercentile(0));
+        long p100 = stats.getTransit().getPercentile(100);
+        assertTrue("~2ms above minimum, was " + p100, p100 > 1_800_000L && p100 < 2_300_000L);
+    }
+
+    @Test
+    public void histogramPercentilesAreWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000L);    // 1us .. 1ms
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_000.0, histogram.getPercentile(50), 500_000.0 * 0.125);
+        assertEquals(990_000.0, histogram.getPercentile(99), 990_000.0 * 0.125);
+    }
+
+    @Test
+    public void histogramBucketsCoverTheirValues() {
+        long[] values = {0, 1, 7, 8, 9, 1023, 1024, 123_456_789L, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value + " below bucket", LatencyHistogram.lowerBound(bucket) <= value);
+            assertTrue(value + " above bucket", LatencyHistogram.upperBound(bucket) >= value);
+        }
+    }
+
+    @Test
+    public void referenceReceiverReadsPacketFields() {
+        ReferenceReceiver receiver = new ReferenceReceiver(0, false, false);
+        byte[] packet = "{\"seq\":5,\"timestamp_ns\":2000,\"capture_ts_ns\":1500,\"gyroscope\":{\"x\":1}}"
+                .getBytes(StandardCharsets.UTF_8);
+        receiver.onPacket("phone", packet, packet.length, 10_000L);
+
+        StreamStats stats = receiver.getStats("phone");
+        assertNotNull(stats);
+        assertEquals(1, stats.getReceived());
+        assertEquals(1, stats.getCaptureToSend().getCount());
+        assertEquals(-1L, ReferenceReceiver.longField("{\"a\":1}", "seq"));
+    }
+}
@@ -0,0 +1,222 @@
+package com.obs.mobile.streaming;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Length-prefixed framing, overflow policies and reconnect of TcpTransport
+ */
+public class TcpTransportTest {
+
+    private ServerSocket server;
+    private final Counters counters = new Counters();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        server.setSoTimeout(5000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void framesArriveLengthPrefixedAndInOrder() throws Exception {
+        TcpTransport transport = new TcpTransport();
+        transport.setListener(counters);
+        transport.open(address());
+
+        try (Socket client = server.accept()) {
+            DataInputStream in = new DataInputStream(client.getInputStream());
+            for (int i = 0; i < 3; i++) {
+                transport.send(payload("packet-" + i));
+            }
+            flushUntilEmpty(transport);
+
+            for (int i = 0; i < 3; i++) {
+                assertEquals("packet-" + i, readFrame(in));
+            }
+        } finally {
+            transport.close();
+        }
+        assertEquals(3, counters.written);
+        assertEquals(0, counters.dropped);
+    }
+
+    @Test
+    public void queuedPacketsSurviveUntilConnected() throws Exception {
+        // Not opened yet: packets wait in the queue, oldest evicted when full
+        TcpTransport transport = new TcpTransport(2, TcpTransport.OverflowPolicy.DROP_OLDEST);
+        transport.setListener(counters);
+        transport.send(payload("a"));
+        transport.send(payload("b"));
+        transport.send(payload("c"));
+        assertEquals(2, transport.getQueuedPackets());
+        assertEquals(1, counters.dropped);
+
+        transport.open(address());
+        try (Socket client = server.accept()) {
+            flushUntilEmpty(transport);
+            DataInputStream in = new DataInputStream(client.getInputStream());
+            assertEquals("b", readFrame(in));
+            assertEquals("c", readFrame(in));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void dropNewestKeepsQueue() throws Exception {
+        TcpTransport transport = new TcpTransport(2, TcpTransport.OverflowPolicy.DROP_NEWEST);
+        transport.setListener(counters);
+        transport.send(payload("a"));
+        transport.send(payload("b"));
+        transport.send(payload("c"));
+
+        transport.open(address());
+        try (Socket client = server.accept()) {
+            flushUntilEmpty(transport);
+            DataInputStream in = new DataInputStream(client.getInputStream());
+            assertEquals("a", readFrame(in));
+            assertEquals("b", readFrame(in));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void coalesceReplacesNewest() throws Exception {
+        TcpTransport transport = new TcpTransport(2, TcpTransport.OverflowPolicy.COALESCE);
+        transport.setListener(counters);
+        transport.send(payload("a"));
+        transport.send(payload("b"));
+        transport.send(payload("c"));
+        transport.send(payload("d"));
+        assertEquals(2, counters.dropped);
+
+        transport.open(address());
+        try (Socket client = server.accept()) {
+            flushUntilEmpty(transport);
+            DataInputStream in = new DataInputStream(client.getInputStream());
+            assertEquals("a", readFrame(in));
+            assertEquals("d", readFrame(in));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void feedbackFramesAreReadBack() throws Exception {
+        TcpTransport transport = new TcpTransport();
+        transport.setListener(counters);
+        transport.open(address());
+
+        try (Socket client = server.accept()) {
+            byte[] feedback = new FeedbackMessage(41, 123_456L, 1_000L, 40, 2).encode();
+            DataOutputStream out = new DataOutputStream(client.getOutputStream());
+            out.writeInt(feedback.length);
+            out.write(feedback);
+            out.flush();
+
+            for (int i = 0; i < 500 && counters.feedback == null; i++) {
+                transport.flush();
+                Thread.sleep(2);
+            }
+        } finally {
+            transport.close();
+        }
+        assertNotNull("no feedback read", counters.feedback);
+        assertEquals(41, counters.feedback.echoSequence);
+        assertEquals(123_456L, counters.feedback.echoSendNs);
+        assertEquals(2, counters.feedback.lost);
+    }
+
+    @Test
+    public void refusedConnectionFailsOnFlush() throws Exception {
+        int port = server.getLocalPort();
+        server.close();
+
+        TcpTransport transport = new TcpTransport();
+        transport.setListener(counters);
+        try {
+            transport.open(new InetSocketAddress("127.0.0.1", port));
+            transport.send(payload("lost?"));
+            for (int i = 0; i < 100; i++) {
+                transport.flush();
+                Thread.sleep(10);
+            }
+            fail("connect to a closed port should fail");
+        } catch (IOException expected) {
+            // The packet stays queued for the next connection
+            assertEquals(1, transport.getQueuedPackets());
+        } finally {
+            transport.close();
+        }
+    }
+
+    // ============================================================
+    // Helpers
+    // ============================================================
+
+    private InetSocketAddress address() {
+        return new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+    }
+
+    private static ByteBuffer payload(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void flushUntilEmpty(TcpTransport transport) throws Exception {
+        for (int i = 0; i < 500 && transport.getQueuedPackets() > 0; i++) {
+            transport.flush();
+            Thread.sleep(2);
+        }
+        assertEquals(0, transport.getQueuedPackets());
+    }
+
+    private static String readFrame(DataInputStream in) throws Exception {
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    private static class Counters implements Transport.Listener {
+        int written;
+        int dropped;
+        FeedbackMessage feedback;
+
+        @Override
+        public void onPacketsWritten(int packets, long bytes) {
+            written += packets;
+        }
+
+        @Override
+        public void onPacketsDropped(int packets) {
+            dropped += packets;
+        }
+
+        @Override
+        public void onFeedback(FeedbackMessage feedback) {
+            this.feedback = feedback;
+        }
+
+        @Override
+        public void onClockSync(ClockSyncMessage message) {
+        }
+    }
+}
@@ -10,24 +10,160 @@ import json
 import threading
 import time
 import queue
+import struct
+import base64
 from datetime import datetime
 
+# Discovery protocol, must match com.obs.mobile.streaming.DiscoveryProtocol
+DISCOVERY_GROUP = '239.255.77.77'
+DISCOVERY_PORT = 5099
+STREAM_GROUP = '239.255.77.78'
+ANNOUNCE_INTERVAL_S = 2.0
+
+# Receiver reports for the phone's rate controller, must match
+# com.obs.mobile.streaming.FeedbackMessage
+FEEDBACK_PREFIX = 'OBS-FEEDBACK 1'
+FEEDBACK_INTERVAL_S = 0.5
+
+# Clock sync, must match com.obs.mobile.streaming.ClockSyncMessage. Receiver
+# times are time.monotonic_ns(); the phone sends its offset/drift estimate.
+SYNC_REQUEST = 'OBS-SYNC'
+SYNC_REPLY = 'OBS-SYNC-REPLY'
+CLOCK_ESTIMATE = 'OBS-CLOCK'
+
+# Packets the phone spooled while this receiver was unreachable, sent again
+# later; must match com.obs.mobile.streaming.PacketSpool.BACKFILL_PREFIX
+BACKFILL_PREFIX = b'OBS-BACKFILL 1\n'
+
+# Batch codecs, must match com.obs.mobile.streaming.BatchCodec
+CODEC_DELTA_VARINT = 1
+CODEC_GORILLA_XOR = 2
+
+
+def _read_varint(data, pos):
+    """Unsigned LEB128 at pos, returns (value, next pos)"""
+    value = 0
+    shift = 0
+    while True:
+        byte = data[pos]
+        pos += 1
+        value |= (byte & 0x7F) << shift
+        if byte < 0x80:
+            return value, pos
+        shift += 7
+        if shift >= 70:
+            raise ValueError("varint too long")
+
+
+def _read_zigzag(data, pos):
+    value, pos = _read_varint(data, pos)
+    return (value >> 1) ^ -(value & 1), pos
+
+
+def _read_timestamps(data, pos, count, step_ns):
+    """First value, first delta, then delta-of-delta, all zigzag varints"""
+    timestamps = []
+    previous = delta = 0
+    for i in range(count):
+        value, pos = _read_zigzag(data, pos)
+        if i == 0:
+            t = value
+        else:
+            delta = value if i == 1 else delta + value
+            t = previous + delta
+        timestamps.append(t * step_ns)
+        previous = t
+    return timestamps, pos
+
+
+def decode_batch(payload):
+    """Decode a BatchCodec payload ("imu_packed") into [[timestamp_ns, v0, v1, ...], ...]"""
+    codec = payload[0]
+    count, pos = _read_varint(payload, 1)
+    channels, pos = _read_varint(payload, pos)
+    columns = []
+
+    if codec == CODEC_DELTA_VARINT:
+        step_ns, pos = _read_varint(payload, pos)
+        steps = struct.unpack_from(f'>{channels}f', payload, pos)
+        pos += 4 * channels
+        timestamps, pos = _read_timestamps(payload, pos, count, step_ns)
+        for step in steps:
+            q = 0
+            column = []
+            for _ in range(count):
+                delta, pos = _read_zigzag(payload, pos)
+                q += delta
+                column.append(q * step)
+            columns.append(column)
+
+    elif codec == CODEC_GORILLA_XOR:
+        timestamps, pos = _read_timestamps(payload, pos, count, 1)
+        bits = int.from_bytes(payload[pos:], 'big')
+        remaining = 8 * (len(payload) - pos)
+
+        def read(n):
+            nonlocal remaining
+            remaining -= n
+            if remaining < 0:
+                raise ValueError("truncated gorilla stream")
+            return (bits >> remaining) & ((1 << n) - 1)
+
+        for _ in range(channels):
+            previous = leading = trailing = 0
+            column = []
+            for i in range(count):
+                if i == 0:
+                    value = read(32)
+                elif read(1) == 0:
+                    value = previous
+                elif read(1) == 0:
+                    value = previous ^ (read(32 - leading - trailing) << trailing)
+                else:
+                    leading = read(5)
+                    length = read(5) + 1
+                    trailing = 32 - leading - length
+                    value = previous ^ (read(length) << trailing)
+                column.append(struct.unpack('>f', struct.pack('>I', value))[0])
+                previous = value
+            columns.append(column)
+
+    else:
+        raise ValueError(f"unknown batch codec {codec}")
+
+    return [[timestamps[i]] + [column[i] for column in columns] for i in range(count)]
+
+
 class SensorReceiver:
-    def __init__(self, host='192.168.1.100', port=5000):
+    def __init__(self, host='192.168.1.100', port=5000, announce=True, multicast=False, name=None, tcp=False):
         """
         Initialize sensor data receiver
 
         Args:
             host: IP address to listen on
             port: Port to listen on
+            announce: Announce this receiver so phones find it without configuration
+            multicast: Also receive the phones' multicast stream (STREAM_GROUP)
+            name: Name shown to phones, defaults to the host name
+            tcp: Also accept the reliable length-prefixed TCP stream on the same port
         """
         self.host = host
         self.port = port
+        self.announce = announce
+        self.multicast = multicast
+        self.name = name or socket.gethostname()
+        self.tcp = tcp
         self.socket = None
+        self.tcp_socket = None
+        self.announce_socket = None
         self.running = False
         self.data_queue = queue.Queue()
         self.clients = []
         self.lock = threading.Lock()
+        # Per-sender sequence tracking for feedback: first/highest seq, received, last report
+        self.feedback_state = {}
+        # Per-sender clock estimate from OBS-CLOCK: offset_ns, drift_ppb, reference_ns
+        self.clocks = {}
 
         # Current sensor values
         self.sensor_data = {
@@ -36,6 +172,16 @@ class SensorReceiver:
             'light': {'lux': 0, 'category': 'Normal'},
             'proximity': {'distance': 0.0, 'is_near': False},
             'magnetometer': {'azimuth': 0.0, 'direction': 'N'},
+            'faces': {'frame_timestamp_ns': 0, 'active_array': [0, 0],
+                      'sensor_orientation': 0, 'mirrored': False, 'rects': []},
+            # Phone clock (elapsedRealtimeNanos) and per-frame IMU state on that clock
+            'timestamp_ns': 0,
+            # Packet number and when its newest value was captured, for loss/latency checks
+            'seq': 0,
+            'capture_ts_ns': 0,
+            'frame_imu': [],
+            # Batched IMU samples, [capture_ts_ns, gx, gy, gz, ax, ay, az] each
+            'imu': [],
             'timestamp': datetime.now().isoformat()
         }
 
@@ -43,7 +189,12 @@ class SensorReceiver:
         """Start UDP/TCP server to receive sensor data"""
         try:
             self.socket = socket.socket(socket.AF_INET, socket.SOCK_DGRAM)
+            self.socket.setsockopt(socket.SOL_SOCKET, socket.SO_REUSEADDR, 1)
             self.socket.bind((self.host, self.port))
+            if self.multicast:
+                membership = struct.pack('4s4s', socket.inet_aton(STREAM_GROUP), socket.inet_aton('0.0.0.0'))
+                self.socket.setsockopt(socket.IPPROTO_IP, socket.IP_ADD_MEMBERSHIP, membership)
+                print(f"📡 Joined multicast stream {STREAM_GROUP}:{self.port}")
             self.running = True
 
             print(f"✅ Sensor server listening on {self.host}:{self.port}")
@@ -53,6 +204,19 @@ class SensorReceiver:
             receiver_thread = threading.Thread(target=self._receive_loop, daemon=True)
             receiver_thread.start()
 
+            if self.tcp:
+                self.tcp_socket = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
+                self.tcp_socket.setsockopt(socket.SOL_SOCKET, socket.SO_REUSEADDR, 1)
+                self.tcp_socket.bind((self.host, self.port))
+                self.tcp_socket.listen()
+                threading.Thread(target=self._accept_loop, daemon=True).start()
+                print(f"✅ TCP stream listening on {self.host}:{self.port}")
+
+            if self.announce:
+                announce_thread = threading.Thread(target=self._announce_loop, daemon=True)
+                announce_thread.start()
+                print(f"📣 Announcing as '{self.name}' on {DISCOVERY_GROUP}:{DISCOVERY_PORT}")
+
         except Exception as e:
             print(f"❌ Error starting server: {e}")
             self.running = False
@@ -61,25 +225,190 @@ class SensorReceiver:
         """Receive sensor data in background thread"""
         while self.running:
             try:
-                data, addr = self.socket.recvfrom(1024)
-                message = data.decode('utf-8')
+                data, addr = self.socket.recvfrom(65535)
+                reply = self._handle_message(data, addr, time.monotonic_ns())
+                if reply:
+                    self.socket.sendto(reply, addr)
 
-                try:
-                    json_data = json.loads(message)
+            except Exception as e:
+                if self.running:
+                    print(f"❌ Error receiving data: {e}")
+
+    def _accept_loop(self):
+        """Accept TCP streams from phones using the reliable transport"""
+        while self.running:
+            try:
+                conn, addr = self.tcp_socket.accept()
+                print(f"🔗 TCP stream connected from {addr}")
+                threading.Thread(target=self._tcp_stream_loop, args=(conn, addr), daemon=True).start()
+            except Exception as e:
+                if self.running:
+                    print(f"❌ Error accepting TCP stream: {e}")
+
+    def _tcp_stream_loop(self, conn, addr):
+        """Read 4-byte big-endian length-prefixed packets until the phone disconnects"""
+        with conn:
+            while self.running:
+                header = self._recv_exact(conn, 4)
+                if header is None:
+                    break
+                (length,) = struct.unpack('>I', header)
+                payload = self._recv_exact(conn, length)
+                if payload is None:
+                    break
+                reply = self._handle_message(payload, addr, time.monotonic_ns())
+                if reply:
+                    conn.sendall(struct.pack('>I', len(reply)) + reply)
+        print(f"🔌 TCP stream from {addr} closed")
+
+    @staticmethod
+    def _recv_exact(conn, count):
+        """Read exactly count bytes, None if the connection closed first"""
+        chunks = bytearray()
+        while len(chunks) < count:
+            chunk = conn.recv(count - len(chunks))
+            if not chunk:
+                return None
+            chunks.extend(chunk)
+        return bytes(chunks)
+
+    def _handle_message(self, data, addr, receive_ns):
+        """Dispatch a clock sync message, a backfilled or a live JSON packet, returns the reply bytes or None"""
+        if data.startswith(BACKFILL_PREFIX):
+            return self._handle_packet(data[len(BACKFILL_PREFIX):], addr, backfill=True)
+        if data.startswith(b'OBS-'):
+            return self._handle_clock_sync(data, addr, receive_ns)
+        return self._handle_packet(data, addr)
+
+    def _handle_clock_sync(self, data, addr, receive_ns):
+        """Answer OBS-SYNC requests and remember the phone's OBS-CLOCK estimate"""
+        parts = data.decode('utf-8', 'replace').split()
+        if len(parts) < 2 or parts[1] != '1':
+            return None
+        try:
+            if parts[0] == SYNC_REQUEST and len(parts) == 3:
+                origin_ns = int(parts[2])
+                return f"{SYNC_REPLY} 1 {origin_ns} {receive_ns} {time.monotonic_ns()}".encode('utf-8')
+            if parts[0] == CLOCK_ESTIMATE and len(parts) == 6:
+                with self.lock:
+                    self.clocks[addr] = {'offset_ns': int(parts[2]), 'drift_ppb': int(parts[3]),
+                                         'reference_ns': int(parts[4]), 'rtt_ns': int(parts[5])}
+        except ValueError:
+            print(f"⚠️  Invalid clock sync message: {data!r}")
+        return None
+
+    def to_receiver_time(self, addr, device_ns):
+        """Map a phone timestamp (elapsedRealtimeNanos) from addr to time.monotonic_ns(), None if unsynced"""
+        with self.lock:
+            clock = self.clocks.get(addr)
+        if clock is None or not device_ns:
+            return None
+        drift_ns = (device_ns - clock['reference_ns']) * clock['drift_ppb'] / 1e9
+        return device_ns + clock['offset_ns'] + round(drift_ns)
+
+    def _handle_packet(self, data, addr, backfill=False):
+        """Merge one JSON packet into the current sensor values, returns feedback bytes when due
 
-                    with self.lock:
-                        self.sensor_data.update(json_data)
-                        self.sensor_data['timestamp'] = datetime.now().isoformat()
+        Backfilled packets are old: they are queued with 'backfill': True but
+        do not replace the current values or count towards feedback.
+        """
+        receive_time = time.monotonic()
+        message = data.decode('utf-8')
+
+        try:
+            json_data = json.loads(message)
 
-                    self.data_queue.put(json_data)
-                    print(f"📡 Received sensor data from {addr}")
+            # Frames are only sent once - don't keep the previous packet's
+            json_data.setdefault('frame_imu', [])
+            if 'imu_packed' in json_data:
+                try:
+                    json_data['imu'] = decode_batch(base64.b64decode(json_data.pop('imu_packed')))
+                except (ValueError, IndexError, struct.error) as e:
+                    print(f"⚠️  Bad imu_packed payload: {e}")
+            json_data.setdefault('imu', [])
+
+            # With a clock estimate, stamp the data with its capture time on
+            # this machine's clock instead of the (jittery) arrival time
+            capture_ns = self.to_receiver_time(addr, json_data.get('capture_ts_ns') or json_data.get('timestamp_ns'))
+            if capture_ns is not None:
+                json_data['receiver_capture_ts_ns'] = capture_ns
+                json_data['receiver_timestamp_ns'] = self.to_receiver_time(addr, json_data.get('timestamp_ns'))
+                wall_ns = capture_ns + time.time_ns() - time.monotonic_ns()
+                timestamp = datetime.fromtimestamp(wall_ns / 1e9).isoformat()
+            else:
+                timestamp = datetime.now().isoformat()
+
+            if backfill:
+                json_data['backfill'] = True
+                json_data['timestamp'] = timestamp
+                self.data_queue.put(json_data)
+                return None
+
+            with self.lock:
+                self.sensor_data.update(json_data)
+                self.sensor_data['timestamp'] = timestamp
+
+            self.data_queue.put(json_data)
+            print(f"📡 Received sensor data from {addr}")
+            return self._feedback_for(addr, json_data, receive_time)
+
+        except json.JSONDecodeError:
+            print(f"⚠️  Invalid JSON received: {message}")
+        return None
+
+    def _feedback_for(self, addr, json_data, receive_time):
+        """Account the packet's seq; every FEEDBACK_INTERVAL_S build a FeedbackMessage"""
+        seq = json_data.get('seq')
+        if not isinstance(seq, int):
+            return None  # Sender predates sequence numbers
 
-                except json.JSONDecodeError:
-                    print(f"⚠️  Invalid JSON received: {message}")
+        with self.lock:
+            state = self.feedback_state.setdefault(
+                addr, {'first': seq, 'highest': seq, 'received': 0, 'last_report': 0.0})
+            state['received'] += 1
+            state['highest'] = max(state['highest'], seq)
+            if receive_time - state['last_report'] < FEEDBACK_INTERVAL_S:
+                return None
+            state['last_report'] = receive_time
+            lost = max(0, state['highest'] - state['first'] + 1 - state['received'])
+            received = state['received']
+
+        hold_ns = int((time.monotonic() - receive_time) * 1e9)
+        send_ns = json_data.get('timestamp_ns', 0)
+        return f"{FEEDBACK_PREFIX} {seq} {send_ns} {hold_ns} {received} {lost}".encode('utf-8')
+
+    def _announce_loop(self):
+        """Announce on the discovery group periodically and whenever a phone probes"""
+        try:
+            sock = socket.socket(socket.AF_INET, socket.SOCK_DGRAM, socket.IPPROTO_UDP)
+            sock.setsockopt(socket.SOL_SOCKET, socket.SO_REUSEADDR, 1)
+            sock.bind(('', DISCOVERY_PORT))
+            membership = struct.pack('4s4s', socket.inet_aton(DISCOVERY_GROUP), socket.inet_aton('0.0.0.0'))
+            sock.setsockopt(socket.IPPROTO_IP, socket.IP_ADD_MEMBERSHIP, membership)
+            sock.setsockopt(socket.IPPROTO_IP, socket.IP_MULTICAST_TTL, 1)
+            self.announce_socket = sock
+        except Exception as e:
+            print(f"⚠️  Discovery disabled: {e}")
+            return
 
+        announcement = f"OBS-RECEIVER 1 {self.port} {self.name}".encode('utf-8')
+        next_announce = 0.0
+        while self.running:
+            try:
+                now = time.time()
+                if now >= next_announce:
+                    sock.sendto(announcement, (DISCOVERY_GROUP, DISCOVERY_PORT))
+                    next_announce = now + ANNOUNCE_INTERVAL_S
+                sock.settimeout(max(0.01, next_announce - now))
+                data, _ = sock.recvfrom(512)
+                if data.startswith(b'OBS-PROBE '):
+                    sock.sendto(announcement, (DISCOVERY_GROUP, DISCOVERY_PORT))
+            except socket.timeout:
+                continue
             except Exception as e:
                 if self.running:
-                    print(f"❌ Error receiving data: {e}")
+                    print(f"⚠️  Discovery error: {e}")
+                break
 
     def get_latest_data(self):
         """Get latest sensor data"""
@@ -91,6 +420,10 @@ class SensorReceiver:
         self.running = False
         if self.socket:
             self.socket.close()
+        if self.tcp_socket:
+            self.tcp_socket.close()
+        if self.announce_socket:
+            self.announce_socket.close()
         print("✅ Sensor server stopped")
 
 
@@ -254,6 +587,14 @@ def main():
                        help='Host to listen on (default: 0.0.0.0)')
     parser.add_argument('--port', type=int, default=5000,
                        help='Port to listen on (default: 5000)')
+    parser.add_argument('--name', default=None,
+                       help='Receiver name announced to phones (default: host name)')
+    parser.add_argument('--no-announce', action='store_true',
+                       help='Do not announce this receiver for automatic discovery')
+    parser.add_argument('--multicast', action='store_true',
+                       help=f'Also receive the multicast stream on {STREAM_GROUP}')
+    parser.add_argument('--tcp', action='store_true',
+                       help='Also accept the reliable TCP stream on the same port')
     parser.add_argument('--setup', action='store_true',
                        help='Show setup instructions')
 
@@ -264,7 +605,11 @@ def main():
         return 0
 
     # Start receiver
-    receiver = SensorReceiver(host=args.host, port=args.port)
+    receiver = SensorReceiver(host=args.host, port=args.port,
+                              announce=not args.no_announce,
+                              multicast=args.multicast,
+                              name=args.name,
+                              tcp=args.tcp)
     receiver.start_server()
 
     # Get local IP for instructions
@@ -21,4 +21,7 @@ dependencyResolutionManagement {
 
 rootProject.name = "OBS"
 include(":app")
- 
\ No newline at end of file
+include(":sensor-core")
+include(":benchmarks")
+include(":loadgen")
+include(":ingest")